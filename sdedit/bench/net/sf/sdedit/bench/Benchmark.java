@@ -0,0 +1,92 @@
+// Copyright (c) 2006 - 2008, Markus Strauch.
+// All rights reserved.
+// 
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright notice, 
+// this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright notice, 
+// this list of conditions and the following disclaimer in the documentation 
+// and/or other materials provided with the distribution.
+// 
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.sf.sdedit.bench;
+
+import net.sf.sdedit.config.Configuration;
+import net.sf.sdedit.config.ConfigurationManager;
+
+/**
+ * A <tt>Benchmark</tt> measures one stage of the processing of a diagram.
+ * Before it is run, it is set up with the diagram, then
+ * {@linkplain #run()} is called repeatedly, and only the time spent there is
+ * measured.
+ * 
+ * @author Markus Strauch
+ */
+public abstract class Benchmark {
+
+	private final String name;
+
+	private DiagramGenerator generator;
+
+	private Configuration configuration;
+
+	protected Benchmark(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Returns the name by which the benchmark is selected.
+	 * 
+	 * @return the name by which the benchmark is selected
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Sets up the benchmark with the diagram produced by the given generator.
+	 * Subclasses that prepare more data must call <tt>super.setUp</tt>.
+	 * 
+	 * @param generator
+	 *            the generator of the diagram
+	 * @throws Exception
+	 *             if the benchmark cannot be set up
+	 */
+	public void setUp(DiagramGenerator generator) throws Exception {
+		this.generator = generator;
+		configuration = ConfigurationManager.createNewDefaultConfiguration()
+				.getDataObject();
+		configuration.setThreaded(generator.isThreaded());
+	}
+
+	protected DiagramGenerator getGenerator() {
+		return generator;
+	}
+
+	protected Configuration getConfiguration() {
+		return configuration;
+	}
+
+	/**
+	 * Runs the measured code once.
+	 * 
+	 * @return a number derived from the result, which is consumed by the
+	 *         caller such that the computation cannot be eliminated
+	 * @throws Exception
+	 *             if the measured code fails
+	 */
+	public abstract int run() throws Exception;
+}
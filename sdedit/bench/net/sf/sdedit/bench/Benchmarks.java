@@ -0,0 +1,477 @@
+// Copyright (c) 2006 - 2008, Markus Strauch.
+// All rights reserved.
+// 
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright notice, 
+// this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright notice, 
+// this list of conditions and the following disclaimer in the documentation 
+// and/or other materials provided with the distribution.
+// 
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.sf.sdedit.bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sf.sdedit.config.Configuration;
+import net.sf.sdedit.config.ConfigurationSnapshot;
+import net.sf.sdedit.diagram.Diagram;
+import net.sf.sdedit.diagram.MessageData;
+import net.sf.sdedit.diagram.PaintDevice;
+import net.sf.sdedit.server.Exporter;
+import net.sf.sdedit.text.TextBasedMessageData;
+import net.sf.sdedit.text.TextHandler;
+import net.sf.sdedit.ui.PanelPaintDevice;
+import net.sf.sdedit.ui.StripPaintDevice;
+import net.sf.sdedit.ui.TilePainter;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+
+/**
+ * Runs the benchmarks for all combinations of the diagram parameters given
+ * on the command line and prints the average time per operation. Each
+ * benchmark is run for a number of warm-up iterations, whose results are
+ * discarded, and then for a number of measured iterations. An iteration
+ * repeats the operation until a given time has passed.
+ * <p>
+ * The benchmarks are:
+ * <ul>
+ * <li><tt>message</tt>: parsing the message lines by
+ * {@linkplain TextBasedMessageData}</li>
+ * <li><tt>text</tt>: reading the objects and messages by a
+ * {@linkplain TextHandler}</li>
+ * <li><tt>bean</tt>, <tt>snapshot</tt>: reading a few properties of the
+ * configuration for each message, from the data object of a
+ * {@linkplain net.sf.sdedit.ui.components.configuration.Bean} or from a
+ * {@linkplain ConfigurationSnapshot} of it, as the diagram does</li>
+ * <li><tt>generate</tt>: generating the diagram into a paint device that does
+ * not paint</li>
+ * <li><tt>restore</tt>: rendering the diagram again after a message has been
+ * appended to it, by restoring it to its last checkpoint and resuming it, as done
+ * by the editor while typing</li>
+ * <li><tt>bounds</tt>: {@linkplain PaintDevice#computeAxes(int)} and
+ * {@linkplain PaintDevice#computeBounds()} for the generated diagram</li>
+ * <li><tt>paint</tt>: rendering all tiles of a generated diagram displayed by
+ * a {@linkplain PanelPaintDevice}</li>
+ * <li><tt>png</tt>, <tt>svg</tt>, <tt>svg-freehep</tt>, <tt>pdf</tt>:
+ * generating and exporting the diagram by an {@linkplain Exporter}, so the
+ * native SVG writer can be compared with FreeHEP's</li>
+ * <li><tt>strip</tt>: generating the diagram and writing it as a PNG image by
+ * a {@linkplain StripPaintDevice}, as done by the command line</li>
+ * </ul>
+ * 
+ * @author Markus Strauch
+ */
+public final class Benchmarks {
+
+	private static volatile int sink;
+
+	private Benchmarks() {
+		/* empty */
+	}
+
+	public static void main(String[] argv) throws Exception {
+		CommandLineParser parser = new PosixParser();
+		Options options = createOptions();
+		CommandLine cmd;
+		try {
+			cmd = parser.parse(options, argv);
+		} catch (ParseException pe) {
+			new HelpFormatter().printHelp("Benchmarks", options);
+			return;
+		}
+		if (cmd.hasOption('h')) {
+			new HelpFormatter().printHelp("Benchmarks", options);
+			return;
+		}
+		int[] lifelines = getInts(cmd, 'l', "10");
+		int[] messages = getInts(cmd, 'm', "1000");
+		int[] depths = getInts(cmd, 'd', "4");
+		int[] threads = getInts(cmd, 't', "1");
+		String[] densities = cmd.getOptionValue('f', "0.05").split(",");
+		int warmup = Integer.parseInt(cmd.getOptionValue('w', "3"));
+		int iterations = Integer.parseInt(cmd.getOptionValue('i', "5"));
+		long time = Long.parseLong(cmd.getOptionValue('r', "500")) * 1000000L;
+		long seed = Long.parseLong(cmd.getOptionValue('s', "1"));
+		List<Benchmark> benchmarks = selectBenchmarks(cmd.getOptionValue('b',
+				"all"));
+
+		System.out.println(String.format("%-11s %9s %9s %6s %8s %10s %14s %10s",
+				"benchmark", "lifelines", "messages", "depth", "threads",
+				"fragments", "us/op", "error"));
+		for (int l : lifelines) {
+			for (int m : messages) {
+				for (int d : depths) {
+					for (int t : threads) {
+						for (String f : densities) {
+							DiagramGenerator generator = new DiagramGenerator(
+									l, m, d, t, Double.parseDouble(f), seed);
+							for (Benchmark benchmark : benchmarks) {
+								String result;
+								try {
+									result = measure(benchmark, generator,
+											warmup, iterations, time);
+								} catch (Throwable e) {
+									result = "failed: " + e;
+								}
+								System.out.println(String.format(
+										"%-11s %9d %9d %6d %8d %10s %s",
+										benchmark.getName(), l, m, d, t, f,
+										result));
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private static String measure(Benchmark benchmark,
+			DiagramGenerator generator, int warmup, int iterations, long time)
+			throws Exception {
+		benchmark.setUp(generator);
+		for (int i = 0; i < warmup; i++) {
+			iterate(benchmark, time);
+		}
+		double[] results = new double[iterations];
+		double mean = 0;
+		for (int i = 0; i < iterations; i++) {
+			results[i] = iterate(benchmark, time);
+			mean += results[i];
+		}
+		mean /= iterations;
+		double variance = 0;
+		for (double result : results) {
+			variance += (result - mean) * (result - mean);
+		}
+		double error = iterations > 1 ? Math.sqrt(variance / (iterations - 1))
+				: 0;
+		return String.format("%14.1f %10.1f", mean / 1000, error / 1000);
+	}
+
+	/*
+	 * Runs the benchmark until the given time (in nanoseconds) has passed
+	 * and returns the average time per operation.
+	 */
+	private static double iterate(Benchmark benchmark, long time)
+			throws Exception {
+		int result = 0;
+		int operations = 0;
+		long start = System.nanoTime();
+		long elapsed;
+		do {
+			result += benchmark.run();
+			operations++;
+			elapsed = System.nanoTime() - start;
+		} while (elapsed < time);
+		sink += result;
+		return (double) elapsed / operations;
+	}
+
+	private static int[] getInts(CommandLine cmd, char option, String dflt) {
+		String[] values = cmd.getOptionValue(option, dflt).split(",");
+		int[] ints = new int[values.length];
+		for (int i = 0; i < values.length; i++) {
+			ints[i] = Integer.parseInt(values[i].trim());
+		}
+		return ints;
+	}
+
+	private static List<Benchmark> selectBenchmarks(String names) {
+		List<Benchmark> all = createBenchmarks();
+		if (names.equals("all")) {
+			return all;
+		}
+		List<Benchmark> selected = new ArrayList<Benchmark>();
+		for (String name : names.split(",")) {
+			boolean found = false;
+			for (Benchmark benchmark : all) {
+				if (benchmark.getName().equals(name.trim())) {
+					selected.add(benchmark);
+					found = true;
+				}
+			}
+			if (!found) {
+				throw new IllegalArgumentException("Unknown benchmark: " + name);
+			}
+		}
+		return selected;
+	}
+
+	@SuppressWarnings("static-access")
+	private static Options createOptions() {
+		Options options = new Options();
+		options.addOption(OptionBuilder.hasArg().withArgName("n,...")
+				.withDescription("numbers of lifelines (default 10)").create(
+						'l'));
+		options.addOption(OptionBuilder.hasArg().withArgName("n,...")
+				.withDescription("numbers of messages (default 1000)").create(
+						'm'));
+		options.addOption(OptionBuilder.hasArg().withArgName("n,...")
+				.withDescription("maximum nesting depths of messages "
+						+ "(default 4)").create('d'));
+		options.addOption(OptionBuilder.hasArg().withArgName("n,...")
+				.withDescription("numbers of threads (default 1)").create('t'));
+		options.addOption(OptionBuilder.hasArg().withArgName("p,...")
+				.withDescription("fragment densities (default 0.05)").create(
+						'f'));
+		options.addOption(OptionBuilder.hasArg().withArgName("name,...")
+				.withDescription("benchmarks to run: message, text, bean, "
+						+ "snapshot, generate, restore, bounds, paint, png, svg, "
+						+ "svg-freehep, pdf, strip "
+						+ "(default all)").create('b'));
+		options.addOption(OptionBuilder.hasArg().withArgName("n")
+				.withDescription("warm-up iterations (default 3)").create('w'));
+		options.addOption(OptionBuilder.hasArg().withArgName("n")
+				.withDescription("measured iterations (default 5)").create(
+						'i'));
+		options.addOption(OptionBuilder.hasArg().withArgName("ms")
+				.withDescription("duration of an iteration (default 500)")
+				.create('r'));
+		options.addOption(OptionBuilder.hasArg().withArgName("seed")
+				.withDescription("seed of the diagram generator (default 1)")
+				.create('s'));
+		options.addOption(OptionBuilder.withDescription("show this help")
+				.create('h'));
+		return options;
+	}
+
+	private static List<Benchmark> createBenchmarks() {
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		benchmarks.add(new Benchmark("message") {
+			@Override
+			public int run() throws Exception {
+				int result = 0;
+				for (String line : getGenerator().getMessageLines()) {
+					MessageData data = new TextBasedMessageData(line);
+					result += data.getMessage().length();
+				}
+				return result;
+			}
+		});
+		benchmarks.add(new Benchmark("text") {
+			@Override
+			public int run() throws Exception {
+				TextHandler handler = new TextHandler(getGenerator().getText());
+				new Diagram(getConfiguration(), handler, new NullPaintDevice());
+				int result = 0;
+				while (handler.advance()) {
+					if (handler.nextObject() == null) {
+						break;
+					}
+					result++;
+				}
+				while (handler.advance()) {
+					if (handler.openFragment() == null
+							&& handler.getFragmentSeparator() == null
+							&& !handler.closeFragment()) {
+						result += handler.nextMessage().getMessage().length();
+					}
+				}
+				return result;
+			}
+		});
+		benchmarks.add(new Benchmark("bean") {
+			@Override
+			public int run() {
+				return readConfiguration(getConfiguration(), getGenerator()
+						.getMessageLines().size());
+			}
+		});
+		benchmarks.add(new Benchmark("snapshot") {
+
+			private Configuration snapshot;
+
+			@Override
+			public void setUp(DiagramGenerator generator) throws Exception {
+				super.setUp(generator);
+				snapshot = ConfigurationSnapshot.of(getConfiguration());
+			}
+
+			@Override
+			public int run() {
+				return readConfiguration(snapshot, getGenerator()
+						.getMessageLines().size());
+			}
+		});
+		benchmarks.add(new Benchmark("generate") {
+			@Override
+			public int run() throws Exception {
+				PaintDevice paintDevice = new NullPaintDevice();
+				new Diagram(getConfiguration(), new TextHandler(getGenerator()
+						.getText()), paintDevice).generate();
+				return paintDevice.getHeight();
+			}
+		});
+		benchmarks.add(new Benchmark("restore") {
+
+			private PaintDevice paintDevice;
+
+			private Diagram diagram;
+
+			// the text and the text with its last message repeated
+			private String[] texts;
+
+			private int next;
+
+			@Override
+			public void setUp(DiagramGenerator generator) throws Exception {
+				super.setUp(generator);
+				String text = generator.getText();
+				List<String> messageLines = generator.getMessageLines();
+				texts = new String[] {
+						text,
+						text + messageLines.get(messageLines.size() - 1)
+								+ "\n" };
+				next = 1;
+				TextHandler handler = new TextHandler(text);
+				handler.setCheckpointInterval(50);
+				paintDevice = new NullPaintDevice();
+				diagram = new Diagram(getConfiguration(), handler, paintDevice);
+				diagram.generate();
+			}
+
+			@Override
+			public int run() throws Exception {
+				TextHandler handler = (TextHandler) diagram.getDataProvider();
+				diagram.restore(handler.rewind(texts[next]));
+				next = 1 - next;
+				diagram.resume();
+				return paintDevice.getHeight();
+			}
+		});
+		benchmarks.add(new Benchmark("bounds") {
+
+			private PaintDevice paintDevice;
+
+			private int leftAxis;
+
+			@Override
+			public void setUp(DiagramGenerator generator) throws Exception {
+				super.setUp(generator);
+				paintDevice = new NullPaintDevice();
+				Diagram diagram = new Diagram(getConfiguration(),
+						new TextHandler(generator.getText()), paintDevice);
+				diagram.generate();
+				leftAxis = getConfiguration().getLeftMargin() + 6
+						+ diagram.getLifelineAt(0).getHead().getWidth() / 2;
+			}
+
+			@Override
+			public int run() {
+				paintDevice.computeAxes(leftAxis);
+				paintDevice.computeBounds();
+				return paintDevice.getHeight();
+			}
+		});
+		benchmarks.add(new Benchmark("paint") {
+
+			private PanelPaintDevice paintDevice;
+
+			@Override
+			public void setUp(DiagramGenerator generator) throws Exception {
+				super.setUp(generator);
+				paintDevice = new PanelPaintDevice(false);
+				new Diagram(getConfiguration(), new TextHandler(generator
+						.getText()), paintDevice).generate();
+			}
+
+			@Override
+			public int run() {
+				return TilePainter.paint(paintDevice, 1);
+			}
+		});
+		for (final String type : new String[] { "png", "svg",
+				"svg-freehep", "pdf" }) {
+			benchmarks.add(new Benchmark(type) {
+				@Override
+				public int run() throws Exception {
+					Sink sink = new Sink();
+					Exporter exporter = Exporter.getExporter(type, "Portrait",
+							"A4", sink);
+					if (exporter == null) {
+						throw new IllegalStateException(
+								"the export library is not available");
+					}
+					new Diagram(getConfiguration(), new TextHandler(
+							getGenerator().getText()), exporter).generate();
+					exporter.export();
+					return sink.getSize();
+				}
+			});
+		}
+		benchmarks.add(new Benchmark("strip") {
+			@Override
+			public int run() throws Exception {
+				Sink sink = new Sink();
+				StripPaintDevice paintDevice = new StripPaintDevice();
+				new Diagram(getConfiguration(), new TextHandler(getGenerator()
+						.getText()), paintDevice).generate();
+				paintDevice.writeToStream(sink);
+				return sink.getSize();
+			}
+		});
+		return benchmarks;
+	}
+
+	private static int readConfiguration(Configuration configuration,
+			int messages) {
+		int result = 0;
+		for (int i = 0; i < messages; i++) {
+			result += configuration.getArrowSize()
+					+ configuration.getMessagePadding()
+					+ configuration.getMessageLabelSpace()
+					+ configuration.getSpaceBeforeActivation()
+					+ configuration.getFont().getSize();
+			if (configuration.isThreaded()) {
+				result++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * An output stream that discards its output and counts the bytes.
+	 */
+	private static class Sink extends OutputStream {
+
+		private int size;
+
+		@Override
+		public void write(int b) throws IOException {
+			size++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			size += len;
+		}
+
+		int getSize() {
+			return size;
+		}
+	}
+}
@@ -0,0 +1,143 @@
+// Copyright (c) 2006 - 2008, Markus Strauch.
+// All rights reserved.
+// 
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright notice, 
+// this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright notice, 
+// this list of conditions and the following disclaimer in the documentation 
+// and/or other materials provided with the distribution.
+// 
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.sf.sdedit.bench;
+
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.sdedit.config.Configuration;
+import net.sf.sdedit.editor.DiagramLoader;
+import net.sf.sdedit.ui.components.configuration.Bean;
+import net.sf.sdedit.util.Pair;
+
+/**
+ * A <tt>Check</tt> verifies that two ways of computing the same result - an
+ * optimized one and the one it replaces, or two runs of the same computation
+ * - agree. Unlike a {@linkplain Benchmark}, it is run once, and it records a
+ * failure for every case where the results differ.
+ * 
+ * @author Markus Strauch
+ */
+public abstract class Check {
+
+	/**
+	 * The names of the example diagrams that are bundled with the
+	 * application.
+	 */
+	public static final String[] EXAMPLES = { "async.sdx", "bfs.sdx",
+			"levels.sdx", "order.sdx", "ssh.sdx", "webserver.sdx" };
+
+	private final String name;
+
+	private final List<String> failures;
+
+	private int cases;
+
+	protected Check(String name) {
+		this.name = name;
+		failures = new ArrayList<String>();
+	}
+
+	/**
+	 * Returns the name by which the check is selected.
+	 * 
+	 * @return the name by which the check is selected
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Runs the check, calling {@linkplain #verify(boolean, String)} for every
+	 * case.
+	 * 
+	 * @throws Exception
+	 *             if the check cannot be run
+	 */
+	public abstract void run() throws Exception;
+
+	/**
+	 * Counts a case and records a failure if it does not hold.
+	 * 
+	 * @param condition
+	 *            flag denoting if the case holds
+	 * @param description
+	 *            a description of the case, used as the failure message
+	 */
+	protected void verify(boolean condition, String description) {
+		cases++;
+		if (!condition) {
+			failures.add(description);
+		}
+	}
+
+	/**
+	 * Returns the number of cases that have been verified.
+	 * 
+	 * @return the number of cases that have been verified
+	 */
+	public int getCases() {
+		return cases;
+	}
+
+	/**
+	 * Returns the descriptions of the cases that did not hold.
+	 * 
+	 * @return the descriptions of the cases that did not hold
+	 */
+	public List<String> getFailures() {
+		return failures;
+	}
+
+	/**
+	 * Loads the bundled example diagrams.
+	 * 
+	 * @return a map from the names of the examples to pairs of their source
+	 *         and their configuration, in the order of {@linkplain #EXAMPLES}
+	 * @throws Exception
+	 *             if an example cannot be loaded
+	 */
+	public static Map<String, Pair<String, Bean<Configuration>>> loadExamples()
+			throws Exception {
+		Map<String, Pair<String, Bean<Configuration>>> examples = new LinkedHashMap<String, Pair<String, Bean<Configuration>>>();
+		for (String example : EXAMPLES) {
+			String resource = "/net/sf/sdedit/examples/" + example;
+			InputStream stream = Check.class.getResourceAsStream(resource);
+			if (stream == null) {
+				throw new FileNotFoundException("missing resource: " + resource);
+			}
+			try {
+				examples.put(example, DiagramLoader.load(stream, "UTF-8"));
+			} finally {
+				stream.close();
+			}
+		}
+		return examples;
+	}
+}
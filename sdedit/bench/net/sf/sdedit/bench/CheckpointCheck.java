@@ -0,0 +1,271 @@
+// Copyright (c) 2006 - 2008, Markus Strauch.
+// All rights reserved.
+// 
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright notice, 
+// this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright notice, 
+// this list of conditions and the following disclaimer in the documentation 
+// and/or other materials provided with the distribution.
+// 
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.sf.sdedit.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+
+import net.sf.sdedit.config.Configuration;
+import net.sf.sdedit.config.ConfigurationManager;
+import net.sf.sdedit.diagram.CancellationToken;
+import net.sf.sdedit.diagram.Checkpoint;
+import net.sf.sdedit.diagram.Diagram;
+import net.sf.sdedit.diagram.PaintDevice;
+import net.sf.sdedit.drawable.Drawable;
+import net.sf.sdedit.error.DiagramError;
+import net.sf.sdedit.text.TextHandler;
+import net.sf.sdedit.ui.components.configuration.Bean;
+import net.sf.sdedit.util.Pair;
+
+/**
+ * Checks that a diagram that is restored to a checkpoint (see
+ * {@linkplain Diagram#restore(Checkpoint)}) after its text has been edited
+ * yields the same drawable elements, the same error and the same metrics as
+ * a diagram that is generated from the edited text at once. The same diagram
+ * is edited and restored again and again, whether it has been finished or
+ * stopped by an error before. It also checks that a diagram whose generation
+ * has been cancelled while reading the messages can be resumed just the
+ * same. The diagrams are the bundled examples and some synthetic diagrams,
+ * edited and cancelled at random lines.
+ * 
+ * @author Markus Strauch
+ */
+public class CheckpointCheck extends Check {
+
+	private static final int EDITS = 24;
+
+	private static final int CANCELLATIONS = 8;
+
+	/**
+	 * The number of lines between two checkpoints, small enough for the
+	 * examples to have several of them.
+	 */
+	private static final int INTERVAL = 4;
+
+	public CheckpointCheck() {
+		super("checkpoint");
+	}
+
+	@Override
+	public void run() throws Exception {
+		for (Map.Entry<String, Pair<String, Bean<Configuration>>> example : loadExamples()
+				.entrySet()) {
+			check(example.getKey(), example.getValue().getFirst(), example
+					.getValue().getSecond().getDataObject());
+		}
+		for (int threads = 1; threads <= 3; threads += 2) {
+			DiagramGenerator generator = new DiagramGenerator(10, 400, 4,
+					threads, 0.1, 1);
+			Configuration configuration = ConfigurationManager
+					.createNewDefaultConfiguration().getDataObject();
+			configuration.setThreaded(generator.isThreaded());
+			check("synthetic/" + threads, generator.getText(), configuration);
+		}
+	}
+
+	private void check(String name, String text, Configuration configuration)
+			throws Exception {
+		Random random = new Random(1);
+		Diagram diagram = null;
+		int restored = 0;
+		for (int i = 0; i < EDITS; i++) {
+			String edited = edit(text, random);
+			List<String> reference = generate(edited, configuration);
+			Checkpoint checkpoint = diagram == null ? null
+					: ((TextHandler) diagram.getDataProvider()).rewind(edited);
+			if (checkpoint == null) {
+				diagram = new Diagram(configuration, newHandler(edited),
+						new NullPaintDevice());
+				List<String> generated = run(diagram, false);
+				verify(generated.equals(reference), name + ": edit " + i
+						+ " differs when generated with checkpoints");
+			} else {
+				diagram.restore(checkpoint);
+				List<String> resumed = run(diagram, true);
+				verify(resumed.equals(reference), name + ": edit " + i
+						+ " differs when restored to a checkpoint");
+				restored++;
+			}
+			if (reference.get(0).startsWith("fatal")) {
+				diagram = null;
+			}
+		}
+		verify(restored > 0, name + ": no edit could be restored");
+		for (int i = 0; i < CANCELLATIONS; i++) {
+			int index = text.indexOf('\n', random.nextInt(text.length())) + 1;
+			if (index == 0) {
+				continue;
+			}
+			List<String> resumed = cancel(text, configuration, index);
+			verify(resumed == null
+					|| resumed.equals(generate(text, configuration)), name
+					+ ": the diagram cancelled at " + index
+					+ " differs when it is resumed");
+		}
+	}
+
+	/*
+	 * Returns the text with a random edit in its lower two thirds: a line is
+	 * deleted or duplicated, the text is cut after a line, or it is left as
+	 * it is.
+	 */
+	private static String edit(String text, Random random) {
+		List<Integer> begins = new ArrayList<Integer>();
+		begins.add(0);
+		for (int i = text.indexOf('\n'); i >= 0 && i < text.length() - 1; i = text
+				.indexOf('\n', i + 1)) {
+			begins.add(i + 1);
+		}
+		int line = begins.size() / 3
+				+ random.nextInt(begins.size() - begins.size() / 3);
+		int begin = begins.get(line);
+		int end = line + 1 < begins.size() ? begins.get(line + 1) : text
+				.length();
+		switch (random.nextInt(4)) {
+		case 0:
+			return text.substring(0, begin) + text.substring(end);
+		case 1:
+			return text.substring(0, end) + text.substring(begin, end)
+					+ text.substring(end);
+		case 2:
+			return text.substring(0, end);
+		default:
+			return text;
+		}
+	}
+
+	private static TextHandler newHandler(String text) {
+		TextHandler handler = new TextHandler(text);
+		handler.setCheckpointInterval(INTERVAL);
+		return handler;
+	}
+
+	/*
+	 * Generates the diagram at once, without checkpoints.
+	 */
+	private static List<String> generate(String text,
+			Configuration configuration) {
+		return run(new Diagram(configuration, new TextHandler(text),
+				new NullPaintDevice()), false);
+	}
+
+	/*
+	 * Generates or resumes the diagram and returns the descriptions of the
+	 * error, the metrics and the drawables.
+	 */
+	private static List<String> run(Diagram diagram, boolean resume) {
+		String error = "none";
+		try {
+			if (resume) {
+				diagram.resume();
+			} else {
+				diagram.generate();
+			}
+		} catch (DiagramError e) {
+			TextHandler handler = (TextHandler) e.getProvider();
+			error = e.getClass().getSimpleName() + " " + e.getMessage()
+					+ " at " + handler.getLineNumber() + ","
+					+ handler.getLineBegin();
+		} catch (RuntimeException e) {
+			error = "fatal " + e;
+		}
+		List<String> descriptions = describe(diagram);
+		descriptions.add(0, error);
+		return descriptions;
+	}
+
+	/*
+	 * Generates the diagram, cancelling it as soon as the text handler has
+	 * reached the given index, and resumes it with a fresh token. Returns
+	 * the descriptions, or null if the generation has not been cancelled
+	 * while reading the messages.
+	 */
+	private static List<String> cancel(String text,
+			Configuration configuration, final int index) {
+		final CancellationToken token = new CancellationToken();
+		TextHandler handler = new TextHandler(text) {
+			@Override
+			public boolean advance() {
+				boolean advanced = super.advance();
+				if (getLineBegin() >= index) {
+					token.cancel();
+				}
+				return advanced;
+			}
+		};
+		Diagram diagram = new Diagram(configuration, handler,
+				new NullPaintDevice());
+		diagram.setCancellationToken(token);
+		try {
+			diagram.generate();
+			return null;
+		} catch (CancellationException e) {
+			if (!diagram.isSuspended()) {
+				return null;
+			}
+		} catch (Exception e) {
+			return null;
+		}
+		diagram.setCancellationToken(new CancellationToken());
+		return run(diagram, true);
+	}
+
+	/*
+	 * Describes the size of the diagram, the numbers of lines and messages
+	 * read, the drawables with their bounds and the lines they have been
+	 * created for, and the drawables found for the lines.
+	 */
+	private static List<String> describe(Diagram diagram) {
+		PaintDevice paintDevice = diagram.getPaintDevice();
+		List<String> descriptions = new ArrayList<String>();
+		descriptions.add(paintDevice.getWidth() + "x"
+				+ paintDevice.getHeight() + " "
+				+ diagram.getMetrics().getLines() + " lines "
+				+ diagram.getMetrics().getMessages() + " messages");
+		for (Drawable drawable : paintDevice) {
+			Object state = diagram.getStateForDrawable(drawable);
+			descriptions.add(describe(drawable) + " " + state + " "
+					+ (state != null && diagram.getDrawableForState(state) == drawable));
+		}
+		int length = ((TextHandler) diagram.getDataProvider()).getText()
+				.length();
+		for (int i = 0; i <= length + 1; i++) {
+			Drawable drawable = diagram.getDrawableForState(i);
+			if (drawable != null) {
+				descriptions.add("line " + i + " " + describe(drawable));
+			}
+		}
+		return descriptions;
+	}
+
+	private static String describe(Drawable drawable) {
+		return drawable.getClass().getSimpleName() + " " + drawable.getLeft()
+				+ "," + drawable.getTop() + "," + drawable.getWidth() + ","
+				+ drawable.getHeight();
+	}
+}
@@ -0,0 +1,125 @@
+// Copyright (c) 2006 - 2008, Markus Strauch.
+// All rights reserved.
+// 
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright notice, 
+// this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright notice, 
+// this list of conditions and the following disclaimer in the documentation 
+// and/or other materials provided with the distribution.
+// 
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.sf.sdedit.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sf.sdedit.config.ConfigurationSnapshotCheck;
+import net.sf.sdedit.diagram.LifelineExtensionCheck;
+import net.sf.sdedit.server.ExportCheck;
+import net.sf.sdedit.server.SVGCheck;
+import net.sf.sdedit.text.MessageScannerCheck;
+import net.sf.sdedit.ui.DisplayListCheck;
+
+/**
+ * Runs the checks whose names are given on the command line (or all checks if
+ * there are none) and prints the number of cases and the failures of each
+ * check. The exit code is 1 if any check failed.
+ * <p>
+ * The checks are:
+ * <ul>
+ * <li><tt>snapshot</tt>: a configuration snapshot copies every property of
+ * the configuration interface</li>
+ * <li><tt>scanner</tt>: the message scanner and the regular expressions
+ * parse message lines equally</li>
+ * <li><tt>checkpoint</tt>: diagrams restored to a checkpoint after an edit
+ * and resumed equal diagrams generated from the edited text</li>
+ * <li><tt>lifelines</tt>: extending the lifelines lazily yields the same
+ * drawable elements and pixels as extending them one by one</li>
+ * <li><tt>displaylist</tt>: the display list of a diagram finds the same
+ * elements, tool tips, sources and links as the diagram</li>
+ * <li><tt>svg</tt>: the native SVG writer paints the same as FreeHEP's</li>
+ * <li><tt>export</tt>: exporting a diagram twice yields the same bytes, for
+ * every output type</li>
+ * </ul>
+ * 
+ * @author Markus Strauch
+ */
+public final class Checks {
+
+	// the maximum number of failures printed per check
+	private static final int MAX_REPORTED = 20;
+
+	private Checks() {
+		/* empty */
+	}
+
+	public static void main(String[] argv) throws Exception {
+		List<Check> checks = selectChecks(argv);
+		boolean failed = false;
+		for (Check check : checks) {
+			List<String> failures;
+			try {
+				check.run();
+				failures = check.getFailures();
+			} catch (Throwable e) {
+				e.printStackTrace();
+				failures = new ArrayList<String>(check.getFailures());
+				failures.add("aborted: " + e);
+			}
+			System.out.println(String.format("%-10s %8d cases %6d failures",
+					check.getName(), check.getCases(), failures.size()));
+			for (int i = 0; i < Math.min(MAX_REPORTED, failures.size()); i++) {
+				System.out.println("    " + failures.get(i));
+			}
+			failed |= !failures.isEmpty();
+		}
+		System.exit(failed ? 1 : 0);
+	}
+
+	private static List<Check> selectChecks(String[] names) throws Exception {
+		List<Check> all = createChecks();
+		if (names.length == 0) {
+			return all;
+		}
+		List<Check> selected = new ArrayList<Check>();
+		for (String name : names) {
+			boolean found = false;
+			for (Check check : all) {
+				if (check.getName().equals(name)) {
+					selected.add(check);
+					found = true;
+				}
+			}
+			if (!found) {
+				throw new IllegalArgumentException("Unknown check: " + name);
+			}
+		}
+		return selected;
+	}
+
+	private static List<Check> createChecks() throws Exception {
+		List<Check> checks = new ArrayList<Check>();
+		checks.add(new ConfigurationSnapshotCheck());
+		checks.add(new MessageScannerCheck());
+		checks.add(new CheckpointCheck());
+		checks.add(new LifelineExtensionCheck());
+		checks.add(new DisplayListCheck());
+		checks.add(new SVGCheck());
+		checks.add(new ExportCheck());
+		return checks;
+	}
+}
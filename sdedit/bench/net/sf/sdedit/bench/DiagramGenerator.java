@@ -0,0 +1,211 @@
+// Copyright (c) 2006 - 2008, Markus Strauch.
+// All rights reserved.
+// 
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright notice, 
+// this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright notice, 
+// this list of conditions and the following disclaimer in the documentation 
+// and/or other materials provided with the distribution.
+// 
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.sf.sdedit.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A <tt>DiagramGenerator</tt> produces the text of a synthetic sequence
+ * diagram. The diagram is determined by the parameters and the seed only, so
+ * benchmark results obtained on different builds can be compared.
+ * <p>
+ * If there is just one thread, the diagram is not threaded and all messages
+ * are sent, directly or indirectly, by the first object. Otherwise each thread is
+ * owned by a lifeline declared with the <tt>t</tt> flag, and the messages
+ * are distributed evenly among the threads.
+ * 
+ * @author Markus Strauch
+ */
+public final class DiagramGenerator {
+
+	private static final String[] FRAGMENT_TYPES = { "loop", "alt", "opt" };
+
+	// the maximum nesting depth of fragments
+	private static final int MAX_FRAGMENT_DEPTH = 3;
+
+	private final int lifelines;
+
+	private final int messages;
+
+	private final int depth;
+
+	private final int threads;
+
+	private final double fragmentDensity;
+
+	private final long seed;
+
+	private final List<String> messageLines;
+
+	private String text;
+
+	/**
+	 * Creates a new <tt>DiagramGenerator</tt>.
+	 * 
+	 * @param lifelines
+	 *            the number of lifelines, including the first object resp.
+	 *            the lifelines owning the threads
+	 * @param messages
+	 *            the number of messages
+	 * @param depth
+	 *            the maximum nesting depth of messages
+	 * @param threads
+	 *            the number of threads
+	 * @param fragmentDensity
+	 *            the probability that a fragment is opened (or closed) before
+	 *            a message
+	 * @param seed
+	 *            the seed of the pseudo-random numbers
+	 */
+	public DiagramGenerator(int lifelines, int messages, int depth,
+			int threads, double fragmentDensity, long seed) {
+		if (threads < 1 || depth < 1 || lifelines <= threads) {
+			throw new IllegalArgumentException("lifelines=" + lifelines
+					+ " depth=" + depth + " threads=" + threads);
+		}
+		this.lifelines = lifelines;
+		this.messages = messages;
+		this.depth = depth;
+		this.threads = threads;
+		this.fragmentDensity = fragmentDensity;
+		this.seed = seed;
+		messageLines = new ArrayList<String>();
+	}
+
+	/**
+	 * Returns true if the diagram must be generated with multithreading
+	 * enabled.
+	 * 
+	 * @return true if the diagram must be generated with multithreading
+	 *         enabled
+	 */
+	public boolean isThreaded() {
+		return threads > 1;
+	}
+
+	/**
+	 * Returns the text of the diagram.
+	 * 
+	 * @return the text of the diagram
+	 */
+	public String getText() {
+		if (text == null) {
+			text = generate();
+		}
+		return text;
+	}
+
+	/**
+	 * Returns the lines of the diagram that describe messages.
+	 * 
+	 * @return the lines of the diagram that describe messages
+	 */
+	public List<String> getMessageLines() {
+		getText();
+		return messageLines;
+	}
+
+	private String generate() {
+		Random random = new Random(seed);
+		StringBuilder sb = new StringBuilder();
+		String[] roots = new String[threads];
+		if (isThreaded()) {
+			for (int i = 0; i < threads; i++) {
+				roots[i] = "w" + i;
+				sb.append(roots[i] + ":Worker[t]\n");
+			}
+		} else {
+			roots[0] = "main";
+			sb.append("main:Main\n");
+		}
+		int objects = lifelines - threads;
+		for (int i = 0; i < objects; i++) {
+			sb.append("o" + i + ":Class" + i + "\n");
+		}
+		sb.append("\n");
+
+		List<List<String>> stacks = new ArrayList<List<String>>();
+		for (int i = 0; i < threads; i++) {
+			List<String> stack = new ArrayList<String>();
+			stack.add(roots[i]);
+			stacks.add(stack);
+		}
+		List<String> fragments = new ArrayList<String>();
+		for (int i = 0; i < messages; i++) {
+			if (random.nextDouble() < fragmentDensity) {
+				if (!fragments.isEmpty() && random.nextBoolean()) {
+					sb.append("[/c]\n");
+					fragments.remove(fragments.size() - 1);
+				} else if (fragments.size() < MAX_FRAGMENT_DEPTH) {
+					String type = FRAGMENT_TYPES[random
+							.nextInt(FRAGMENT_TYPES.length)];
+					sb.append("[c:" + type + " condition " + i + "]\n");
+					fragments.add(type);
+				}
+			} else if (!fragments.isEmpty()
+					&& fragments.get(fragments.size() - 1).equals("alt")
+					&& random.nextDouble() < fragmentDensity) {
+				sb.append("--[else]\n");
+			}
+			int thread = random.nextInt(threads);
+			List<String> stack = stacks.get(thread);
+			String caller = stack.get(random.nextInt(stack.size()));
+			// the most recent activation of the caller sends the message
+			int level = stack.lastIndexOf(caller);
+			while (stack.size() > level + 1) {
+				stack.remove(stack.size() - 1);
+			}
+			String callee = "o" + random.nextInt(objects);
+			String line = caller;
+			if (isThreaded() && level > 0) {
+				line += "[," + thread + "]";
+			}
+			line += ":result" + i + "=" + callee + ".method" + i + "(arg"
+					+ i + ")";
+			sb.append(line + "\n");
+			messageLines.add(line);
+			stack.add(callee);
+			if (stack.size() > depth) {
+				stack.subList(1, stack.size()).clear();
+			}
+		}
+		for (int i = 0; i < fragments.size(); i++) {
+			sb.append("[/c]\n");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "lifelines=" + lifelines + " messages=" + messages + " depth="
+				+ depth + " threads=" + threads + " fragments="
+				+ fragmentDensity;
+	}
+}
@@ -0,0 +1,88 @@
+// Copyright (c) 2006 - 2008, Markus Strauch.
+// All rights reserved.
+// 
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright notice, 
+// this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright notice, 
+// this list of conditions and the following disclaimer in the documentation 
+// and/or other materials provided with the distribution.
+// 
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+package net.sf.sdedit.bench;
+
+import net.sf.sdedit.config.Configuration;
+import net.sf.sdedit.config.ConfigurationManager;
+import net.sf.sdedit.diagram.Diagram;
+import net.sf.sdedit.text.TextHandler;
+import net.sf.sdedit.ui.PanelPaintDevice;
+
+/**
+ * Prints how much heap is retained for a diagram displayed in a tab: the
+ * diagram along with its paint device, as the tab kept it before, and the
+ * paint device after it has been released (see
+ * {@linkplain PanelPaintDevice#release()}), so only its display list is
+ * kept. The numbers of messages of the synthetic diagrams are given on the
+ * command line (default 2000,10000,40000).
+ * 
+ * @author Markus Strauch
+ */
+public final class Footprint {
+
+	// keeps what is measured reachable
+	private static Object retained;
+
+	private Footprint() {
+		/* empty */
+	}
+
+	public static void main(String[] argv) throws Exception {
+		String[] messages = (argv.length > 0 ? argv[0] : "2000,10000,40000")
+				.split(",");
+		System.out.println(String.format("%9s %10s %12s %12s", "messages",
+				"elements", "diagram MB", "released MB"));
+		for (String m : messages) {
+			DiagramGenerator generator = new DiagramGenerator(10, Integer
+					.parseInt(m.trim()), 4, 1, 0.05, 1);
+			Configuration configuration = ConfigurationManager
+					.createNewDefaultConfiguration().getDataObject();
+			String text = generator.getText();
+			long base = usedMemory();
+			PanelPaintDevice paintDevice = new PanelPaintDevice(false);
+			Diagram diagram = new Diagram(configuration, new TextHandler(text),
+					paintDevice);
+			diagram.generate();
+			retained = diagram;
+			diagram = null;
+			long withDiagram = usedMemory() - base;
+			retained = paintDevice;
+			paintDevice.release();
+			long released = usedMemory() - base;
+			System.out.println(String.format("%9s %10d %12.1f %12.1f", m
+					.trim(), paintDevice.getDisplayList().size(),
+					withDiagram / 1048576.0, released / 1048576.0));
+			retained = null;
+		}
+	}
+
+	private static long usedMemory() throws InterruptedException {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 5; i++) {
+			System.gc();
+			Thread.sleep(50);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,173 @@
+// Copyright (c) 2006 - 2008, Markus Strauch.
+// All rights reserved.
+// 
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright notice, 
+// this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright notice, 
+// this list of conditions and the following disclaimer in the documentation 
+// and/or other materials provided with the distribution.
+// 
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+package net.sf.sdedit.config;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.sdedit.bench.Check;
+
+/**
+ * Checks that a {@linkplain ConfigurationSnapshot} copies every property of
+ * the {@linkplain Configuration} interface. The get-methods of the interface
+ * are found by reflection. A configuration whose get-methods return a
+ * different value for every property is copied, and the get-methods of the
+ * snapshot must return the same values. This is repeated with each boolean
+ * property set alone, so two boolean properties that are mixed up are found
+ * as well. A property of a type that the check cannot provide values for is
+ * a failure, as is a set-method of the snapshot that does not throw an
+ * <tt>UnsupportedOperationException</tt>.
+ * 
+ * @author Markus Strauch
+ */
+public class ConfigurationSnapshotCheck extends Check {
+
+	public ConfigurationSnapshotCheck() {
+		super("snapshot");
+	}
+
+	@Override
+	public void run() throws Exception {
+		List<Method> getters = new ArrayList<Method>();
+		List<Method> setters = new ArrayList<Method>();
+		for (Method method : Configuration.class.getMethods()) {
+			String name = method.getName();
+			if (method.getParameterTypes().length == 0
+					&& (name.startsWith("get") || name.startsWith("is"))) {
+				getters.add(method);
+			} else if (method.getParameterTypes().length == 1
+					&& name.startsWith("set")) {
+				setters.add(method);
+			}
+		}
+		check("distinct values", getters, null);
+		for (Method getter : getters) {
+			if (getter.getReturnType() == boolean.class) {
+				check(getter.getName() + " alone", getters, getter);
+			}
+		}
+		Configuration snapshot = ConfigurationSnapshot.of(createConfiguration(
+				getters, null));
+		for (Method setter : setters) {
+			Class<?> type = setter.getParameterTypes()[0];
+			Object value = valueOf(type, 0, false);
+			if (value == null) {
+				verify(false, setter.getName() + ": no value for type "
+						+ type.getName());
+				continue;
+			}
+			boolean unsupported = false;
+			try {
+				setter.invoke(snapshot, value);
+			} catch (InvocationTargetException e) {
+				unsupported = e.getCause() instanceof UnsupportedOperationException;
+			}
+			verify(unsupported, setter.getName()
+					+ " does not throw an UnsupportedOperationException");
+		}
+	}
+
+	/*
+	 * Copies a configuration that returns a different value for every
+	 * property, where all boolean properties but the given one (if any) are
+	 * false, and compares the values of the copy.
+	 */
+	private void check(String name, List<Method> getters, Method set)
+			throws Exception {
+		Map<String, Object> values = createValues(getters, set);
+		Configuration snapshot = ConfigurationSnapshot
+				.of(createConfiguration(values));
+		for (Method getter : getters) {
+			Object expected = values.get(getter.getName());
+			if (expected == null) {
+				verify(false, getter.getName() + ": no value for type "
+						+ getter.getReturnType().getName());
+				continue;
+			}
+			Object actual = getter.invoke(snapshot);
+			verify(expected.equals(actual), name + ": " + getter.getName()
+					+ " returns " + actual + " instead of " + expected);
+		}
+	}
+
+	private Configuration createConfiguration(List<Method> getters, Method set) {
+		return createConfiguration(createValues(getters, set));
+	}
+
+	private Configuration createConfiguration(final Map<String, Object> values) {
+		return (Configuration) Proxy.newProxyInstance(Configuration.class
+				.getClassLoader(), new Class[] { Configuration.class },
+				new InvocationHandler() {
+					public Object invoke(Object proxy, Method method,
+							Object[] args) {
+						if (!values.containsKey(method.getName())) {
+							throw new UnsupportedOperationException(method
+									.getName());
+						}
+						return values.get(method.getName());
+					}
+				});
+	}
+
+	private static Map<String, Object> createValues(List<Method> getters,
+			Method set) {
+		Map<String, Object> values = new HashMap<String, Object>();
+		int i = 1;
+		for (Method getter : getters) {
+			Object value = valueOf(getter.getReturnType(), i++, getter == set);
+			if (value != null) {
+				values.put(getter.getName(), value);
+			}
+		}
+		return values;
+	}
+
+	/*
+	 * Returns the i-th value of the given type, or null if the check cannot
+	 * provide values for the type.
+	 */
+	private static Object valueOf(Class<?> type, int i, boolean flag) {
+		if (type == int.class) {
+			return 1000 + i;
+		}
+		if (type == boolean.class) {
+			return flag;
+		}
+		if (type == Color.class) {
+			return new Color(i, 255 - i, 2 * i);
+		}
+		if (type == Font.class) {
+			return new Font("Serif", Font.ITALIC, 100 + i);
+		}
+		return null;
+	}
+}
@@ -0,0 +1,244 @@
+// Copyright (c) 2006 - 2008, Markus Strauch.
+// All rights reserved.
+// 
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright notice, 
+// this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright notice, 
+// this list of conditions and the following disclaimer in the documentation 
+// and/or other materials provided with the distribution.
+// 
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+package net.sf.sdedit.diagram;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import net.sf.sdedit.bench.Check;
+import net.sf.sdedit.bench.DiagramGenerator;
+import net.sf.sdedit.config.Configuration;
+import net.sf.sdedit.config.ConfigurationManager;
+import net.sf.sdedit.drawable.Drawable;
+import net.sf.sdedit.drawable.Note;
+import net.sf.sdedit.error.SyntaxError;
+import net.sf.sdedit.text.TextHandler;
+import net.sf.sdedit.ui.ImagePaintDevice;
+import net.sf.sdedit.ui.components.configuration.Bean;
+import net.sf.sdedit.util.Pair;
+
+/**
+ * Checks that extending the views of the lifelines lazily (see
+ * {@linkplain Diagram#extendLifelines(int)}) yields the same diagram as
+ * keeping their heights up to date all the time. For the latter, the diagram
+ * reads its data through a {@linkplain MaterializingProvider}, which brings
+ * the heights of all views up to date whenever the diagram asks it for the
+ * next element, so a view whose height is not brought up to date when it
+ * should be (for example before it is replaced by a new one) ends up with a
+ * different height. The drawable elements and the pixels of the images of
+ * both diagrams are compared, for the bundled examples and some synthetic
+ * diagrams, generated at once and suspended at random lines and laid out, as
+ * in streaming mode.
+ *
+ * @author Markus Strauch
+ */
+public class LifelineExtensionCheck extends Check {
+
+	private static final int SUSPENSIONS = 4;
+
+	public LifelineExtensionCheck() {
+		super("lifelines");
+	}
+
+	@Override
+	public void run() throws Exception {
+		for (Map.Entry<String, Pair<String, Bean<Configuration>>> example : loadExamples()
+				.entrySet()) {
+			check(example.getKey(), example.getValue().getFirst(), example
+					.getValue().getSecond().getDataObject());
+		}
+		for (int threads = 1; threads <= 3; threads += 2) {
+			DiagramGenerator generator = new DiagramGenerator(10, 300, 4,
+					threads, 0.1, 1);
+			Configuration configuration = ConfigurationManager
+					.createNewDefaultConfiguration().getDataObject();
+			configuration.setThreaded(generator.isThreaded());
+			check("synthetic/" + threads, generator.getText(), configuration);
+		}
+	}
+
+	private void check(String name, String text, Configuration configuration)
+			throws Exception {
+		compare(name, text, configuration, -1);
+		Random random = new Random(1);
+		for (int i = 0; i < SUSPENSIONS; i++) {
+			int index = text.indexOf('\n', random.nextInt(text.length())) + 1;
+			if (index > 0) {
+				compare(name + " suspended at " + index, text, configuration,
+						index);
+			}
+		}
+	}
+
+	private void compare(String name, String text,
+			Configuration configuration, int index) throws Exception {
+		ImagePaintDevice lazy = render(text, configuration, index, false);
+		ImagePaintDevice materialized = render(text, configuration, index, true);
+		verify(describe(lazy).equals(describe(materialized)), name
+				+ ": the drawable elements differ");
+		verify(haveSamePixels(lazy, materialized), name + ": the pixels differ");
+	}
+
+	private static ImagePaintDevice render(String text,
+			Configuration configuration, int index, boolean materializing)
+			throws Exception {
+		TextHandler handler = new TextHandler(text);
+		handler.setSuspensionIndex(index);
+		ImagePaintDevice paintDevice = new ImagePaintDevice();
+		Diagram diagram = new Diagram(configuration,
+				materializing ? new MaterializingProvider(handler) : handler,
+				paintDevice);
+		diagram.generate();
+		if (diagram.isSuspended()) {
+			diagram.layout();
+		}
+		paintDevice.drawAll();
+		return paintDevice;
+	}
+
+	private static boolean haveSamePixels(ImagePaintDevice paintDevice1,
+			ImagePaintDevice paintDevice2) {
+		BufferedImage image1 = (BufferedImage) paintDevice1.getImage();
+		BufferedImage image2 = (BufferedImage) paintDevice2.getImage();
+		int width = image1.getWidth();
+		if (width != image2.getWidth()
+				|| image1.getHeight() != image2.getHeight()) {
+			return false;
+		}
+		// row by row, as the images of the larger examples are huge
+		int[] row1 = new int[width];
+		int[] row2 = new int[width];
+		for (int y = 0; y < image1.getHeight(); y++) {
+			image1.getRGB(0, y, width, 1, row1, 0, width);
+			image2.getRGB(0, y, width, 1, row2, 0, width);
+			if (!Arrays.equals(row1, row2)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static List<String> describe(PaintDevice paintDevice) {
+		List<String> descriptions = new ArrayList<String>();
+		descriptions.add(paintDevice.getWidth() + "x"
+				+ paintDevice.getHeight());
+		for (Drawable drawable : paintDevice) {
+			descriptions.add(drawable.getClass().getSimpleName() + " "
+					+ drawable.getLeft() + "," + drawable.getTop() + ","
+					+ drawable.getWidth() + "," + drawable.getHeight());
+		}
+		return descriptions;
+	}
+
+	/**
+	 * A <tt>DiagramDataProvider</tt> that brings the heights of the views of
+	 * all lifelines up to date before it passes a call on to the provider it
+	 * wraps.
+	 */
+	private static class MaterializingProvider implements DiagramDataProvider {
+
+		private final DiagramDataProvider provider;
+
+		private Diagram diagram;
+
+		MaterializingProvider(DiagramDataProvider provider) {
+			this.provider = provider;
+		}
+
+		private void materialize() {
+			if (diagram != null) {
+				for (Lifeline lifeline : diagram.getAllLifelines()) {
+					for (Lifeline line : lifeline.getAllLifelines()) {
+						line.materialize();
+					}
+				}
+			}
+		}
+
+		public String getTitle() {
+			materialize();
+			return provider.getTitle();
+		}
+
+		public String[] getDescription() {
+			materialize();
+			return provider.getDescription();
+		}
+
+		public boolean advance() {
+			materialize();
+			return provider.advance();
+		}
+
+		public Lifeline nextObject() throws SyntaxError {
+			materialize();
+			return provider.nextObject();
+		}
+
+		public MessageData nextMessage() throws SyntaxError {
+			materialize();
+			return provider.nextMessage();
+		}
+
+		public Object getState() {
+			materialize();
+			return provider.getState();
+		}
+
+		public String openFragment() {
+			materialize();
+			return provider.openFragment();
+		}
+
+		public boolean closeFragment() {
+			materialize();
+			return provider.closeFragment();
+		}
+
+		public Note getNote() throws SyntaxError {
+			materialize();
+			return provider.getNote();
+		}
+
+		public void setDiagram(Diagram diagram) {
+			this.diagram = diagram;
+			provider.setDiagram(diagram);
+		}
+
+		public Pair<Lifeline, Integer> getEventAssociation()
+				throws SyntaxError {
+			materialize();
+			return provider.getEventAssociation();
+		}
+
+		public String getFragmentSeparator() {
+			materialize();
+			return provider.getFragmentSeparator();
+		}
+	}
+}
@@ -0,0 +1,214 @@
+// Copyright (c) 2006 - 2008, Markus Strauch.
+// All rights reserved.
+// 
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright notice, 
+// this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright notice, 
+// this list of conditions and the following disclaimer in the documentation 
+// and/or other materials provided with the distribution.
+// 
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+package net.sf.sdedit.server;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import net.sf.sdedit.bench.Check;
+import net.sf.sdedit.bench.DiagramGenerator;
+import net.sf.sdedit.config.Configuration;
+import net.sf.sdedit.config.ConfigurationManager;
+import net.sf.sdedit.diagram.Diagram;
+import net.sf.sdedit.text.TextHandler;
+import net.sf.sdedit.ui.components.configuration.Bean;
+import net.sf.sdedit.util.Pair;
+
+/**
+ * Checks that exporting a diagram twice yields the same bytes, for every
+ * output type of the {@linkplain Exporter}, the bundled examples and a large
+ * synthetic diagram, whose documents are long enough that FreeHEP writes
+ * the creation date far from their beginning. All diagrams are exported
+ * once, then again after the clock has advanced by more than a second, so
+ * a creation date that is not replaced makes the documents differ. Types
+ * that cannot be exported in the current environment (FreeHEP's raster
+ * types need a JDK that it supports, EMF needs a display) are skipped, and a
+ * note is printed.
+ * <p>
+ * As the bundled examples are small, the filter that replaces the creation
+ * dates (see {@linkplain ExporterImpl.TimestampFilter}) is also checked
+ * directly: it must replace the dates in the same way as if the whole
+ * document were searched at once, in synthetic documents of text and binary
+ * data where the dates appear anywhere, written in pieces of random sizes.
+ * 
+ * @author Markus Strauch
+ */
+public class ExportCheck extends Check {
+
+	private static final String[] TYPES = { "png", "svg", "svg-freehep", "pdf",
+			"ps", "emf", "swf", "gif", "jpg", "bmp" };
+
+	// lines with creation dates, as FreeHEP writes them
+	private static final String[][] DATES = {
+			{ "pdf", "      /CreationDate (D:20261018170000Z)\n"
+					+ "      /ModDate (D:20261018170000Z)\n" },
+			{ "ps", "%%CreationDate: Sun Oct 18 17:00:00 UTC 2026\n" },
+			{ "svg-freehep", "<desc>Creator: FreeHEP Graphics2D Driver "
+					+ "Producer: org.freehep.graphicsio.svg.SVGGraphics2D "
+					+ "Revision: 12753  Source:  Date: Sunday, October 18, "
+					+ "2026 5:00:00 PM UTC</desc>\n" } };
+
+	// the number of synthetic documents per type
+	private static final int DOCUMENTS = 50;
+
+	public ExportCheck() {
+		super("export");
+	}
+
+	@Override
+	public void run() throws Exception {
+		checkFilter();
+		List<String> names = new ArrayList<String>();
+		List<Pair<String, Configuration>> diagrams = new ArrayList<Pair<String, Configuration>>();
+		for (Map.Entry<String, Pair<String, Bean<Configuration>>> example : loadExamples()
+				.entrySet()) {
+			names.add(example.getKey());
+			diagrams.add(new Pair<String, Configuration>(example.getValue()
+					.getFirst(), example.getValue().getSecond()
+					.getDataObject()));
+		}
+		DiagramGenerator generator = new DiagramGenerator(10, 1000, 4, 1, 0.1,
+				1);
+		Configuration configuration = ConfigurationManager
+				.createNewDefaultConfiguration().getDataObject();
+		names.add("synthetic");
+		diagrams.add(new Pair<String, Configuration>(generator.getText(),
+				configuration));
+		List<String> types = new ArrayList<String>();
+		for (String type : TYPES) {
+			try {
+				export(type, diagrams.get(0));
+				types.add(type);
+			} catch (Throwable t) {
+				System.out.println("export: skipping " + type + ", it cannot "
+						+ "be exported here: " + t);
+			}
+		}
+		List<byte[]> first = exportAll(types, diagrams);
+		Thread.sleep(1100);
+		List<byte[]> second = exportAll(types, diagrams);
+		for (int i = 0; i < first.size(); i++) {
+			verify(Arrays.equals(first.get(i), second.get(i)), names.get(i
+					/ types.size())
+					+ " exported as " + types.get(i % types.size())
+					+ " twice: " + first.get(i).length + " and "
+					+ second.get(i).length + " bytes that differ");
+		}
+	}
+
+	private void checkFilter() throws Exception {
+		Random random = new Random(1);
+		for (String[] date : DATES) {
+			Pair<Pattern, String> timestamp = ExporterImpl.timestamps
+					.get(date[0]);
+			for (int i = 0; i < DOCUMENTS; i++) {
+				byte[] document = createDocument(random, date[1]);
+				String text = new String(document, "ISO-8859-1");
+				byte[] expected = timestamp.getFirst().matcher(text)
+						.replaceAll(timestamp.getSecond()).getBytes(
+								"ISO-8859-1");
+				ByteArrayOutputStream stream = new ByteArrayOutputStream();
+				ExporterImpl.TimestampFilter filter = new ExporterImpl.TimestampFilter(
+						stream, timestamp);
+				int offset = 0;
+				while (offset < document.length) {
+					int length = Math.min(document.length - offset, random
+							.nextInt(3000) + 1);
+					if (length == 1) {
+						filter.write(document[offset]);
+					} else {
+						filter.write(document, offset, length);
+					}
+					if (random.nextInt(10) == 0) {
+						filter.flush();
+					}
+					offset += length;
+				}
+				filter.finish();
+				verify(!Arrays.equals(document, expected)
+						&& Arrays.equals(stream.toByteArray(), expected),
+						date[0] + ": the dates in synthetic document " + i
+								+ " of " + document.length
+								+ " bytes are not replaced");
+			}
+		}
+	}
+
+	/*
+	 * Returns a document of lines of text and binary data, some of them
+	 * longer than the lines searched for dates, and of the given date lines,
+	 * which appear at least once.
+	 */
+	private static byte[] createDocument(Random random, String dates)
+			throws Exception {
+		ByteArrayOutputStream document = new ByteArrayOutputStream();
+		int parts = random.nextInt(40) + 1;
+		int datePart = random.nextInt(parts);
+		for (int i = 0; i < parts; i++) {
+			if (i == datePart || random.nextInt(10) == 0) {
+				document.write(dates.getBytes("ISO-8859-1"));
+			} else if (random.nextBoolean()) {
+				int length = random.nextInt(200);
+				for (int j = 0; j < length; j++) {
+					document.write(' ' + random.nextInt(95));
+				}
+			} else {
+				byte[] data = new byte[random.nextInt(
+						3 * ExporterImpl.TimestampFilter.MAX_LINE)];
+				random.nextBytes(data);
+				document.write(data);
+			}
+			// every date begins a line
+			document.write(random.nextBoolean() ? '\n' : '\r');
+		}
+		return document.toByteArray();
+	}
+
+	private static List<byte[]> exportAll(List<String> types,
+			List<Pair<String, Configuration>> diagrams) throws Exception {
+		List<byte[]> documents = new ArrayList<byte[]>();
+		for (Pair<String, Configuration> diagram : diagrams) {
+			for (String type : types) {
+				documents.add(export(type, diagram));
+			}
+		}
+		return documents;
+	}
+
+	private static byte[] export(String type,
+			Pair<String, Configuration> diagram) throws Exception {
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		Exporter exporter = Exporter.getExporter(type, "Portrait", "A4",
+				stream);
+		new Diagram(diagram.getSecond(), new TextHandler(diagram.getFirst()),
+				exporter).generate();
+		exporter.export();
+		return stream.toByteArray();
+	}
+}
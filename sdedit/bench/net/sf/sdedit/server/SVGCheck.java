@@ -0,0 +1,522 @@
+// Copyright (c) 2006 - 2008, Markus Strauch.
+// All rights reserved.
+// 
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright notice, 
+// this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright notice, 
+// this list of conditions and the following disclaimer in the documentation 
+// and/or other materials provided with the distribution.
+// 
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+package net.sf.sdedit.server;
+
+import java.awt.Graphics2D;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import net.sf.sdedit.bench.Check;
+import net.sf.sdedit.bench.DiagramGenerator;
+import net.sf.sdedit.config.Configuration;
+import net.sf.sdedit.config.ConfigurationManager;
+import net.sf.sdedit.diagram.Diagram;
+import net.sf.sdedit.diagram.TextMetrics;
+import net.sf.sdedit.text.TextHandler;
+import net.sf.sdedit.ui.components.configuration.Bean;
+import net.sf.sdedit.util.Pair;
+
+import org.freehep.graphics2d.VectorGraphics;
+import org.freehep.graphicsio.svg.SVGGraphics2D;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Checks that the SVG written by an {@linkplain SVGExporter} draws the same
+ * as the SVG written by FreeHEP (<tt>svg-freehep</tt>), for the bundled
+ * examples, a diagram with broadcast messages, whose arrows are drawn as
+ * arcs, and some synthetic diagrams. Both documents are parsed and reduced
+ * to the sequence of the outlines, fills and strings they paint, with
+ * absolute coordinates and the effective colors, strokes and fonts, so it
+ * does not matter how they are organized into groups and paths, whether path
+ * commands are relative, or how numbers are written. Curved outlines, which
+ * FreeHEP writes as Bézier curves and the <tt>SVGExporter</tt> as arcs, are
+ * compared by their bounds. Empty strings, which FreeHEP omits, fills without
+ * an area (of empty rectangles), which the <tt>SVGExporter</tt> omits, and
+ * font families, which the documents name differently, are ignored.
+ * <p>
+ * FreeHEP's exporter is set up to measure text like the <tt>SVGExporter</tt>
+ * and to write strings as text instead of outlines, otherwise the layouts
+ * and the strings could not be compared.
+ * 
+ * @author Markus Strauch
+ */
+public class SVGCheck extends Check {
+
+	// the maximal difference of the bounds of curved outlines
+	private static final double TOLERANCE = 0.05;
+
+	// the number of points at which a curve is sampled
+	private static final int SAMPLES = 64;
+
+	// broadcast messages in both directions, called by an actor
+	private static final String BROADCASTS = "u:Actor\na:A\nb:B\nc:C\n\n"
+			+ "u:a.start()\na:{b,c}.broadcast()\nc:{a,b}.back()\n";
+
+	private final DocumentBuilder builder;
+
+	public SVGCheck() throws Exception {
+		super("svg");
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setValidating(false);
+		builder = factory.newDocumentBuilder();
+	}
+
+	@Override
+	public void run() throws Exception {
+		for (Map.Entry<String, Pair<String, Bean<Configuration>>> example : loadExamples()
+				.entrySet()) {
+			check(example.getKey(), example.getValue().getFirst(), example
+					.getValue().getSecond().getDataObject());
+		}
+		check("broadcasts", BROADCASTS, ConfigurationManager
+				.createNewDefaultConfiguration().getDataObject());
+		for (int threads = 1; threads <= 3; threads += 2) {
+			DiagramGenerator generator = new DiagramGenerator(10, 300, 4,
+					threads, 0.1, 1);
+			Configuration configuration = ConfigurationManager
+					.createNewDefaultConfiguration().getDataObject();
+			configuration.setThreaded(generator.isThreaded());
+			check("synthetic/" + threads, generator.getText(), configuration);
+		}
+	}
+
+	private void check(String name, String text, Configuration configuration)
+			throws Exception {
+		ByteArrayOutputStream nativeSVG = new ByteArrayOutputStream();
+		export(new SVGExporter(), nativeSVG, text, configuration);
+		ByteArrayOutputStream freehepSVG = new ByteArrayOutputStream();
+		export(new FreeHEPExporter(), freehepSVG, text, configuration);
+		List<Primitive> expected = reduce(freehepSVG.toByteArray());
+		List<Primitive> actual = reduce(nativeSVG.toByteArray());
+		int n = Math.min(expected.size(), actual.size());
+		int i = 0;
+		while (i < n && actual.get(i).matches(expected.get(i))) {
+			i++;
+		}
+		if (i == n && expected.size() == actual.size()) {
+			verify(true, name);
+		} else {
+			verify(false, name + ": primitive " + i + " of "
+					+ expected.size() + " is "
+					+ (i < actual.size() ? actual.get(i) : "missing")
+					+ ", but should be "
+					+ (i < expected.size() ? expected.get(i) : "missing"));
+		}
+	}
+
+	private static void export(Exporter exporter, ByteArrayOutputStream stream,
+			String text, Configuration configuration) throws Exception {
+		exporter.setOutputStream(stream);
+		new Diagram(configuration, new TextHandler(text), exporter).generate();
+		exporter.export();
+	}
+
+	/*
+	 * Parses an SVG document and returns the primitives it paints, in the
+	 * order in which they are painted, preceded by one for its size.
+	 */
+	private List<Primitive> reduce(byte[] svg) throws Exception {
+		Document document = builder.parse(new ByteArrayInputStream(svg));
+		Element root = document.getDocumentElement();
+		List<Primitive> primitives = new ArrayList<Primitive>();
+		primitives.add(new Primitive("size "
+				+ root.getAttribute("width").replace("px", "") + "x"
+				+ root.getAttribute("height").replace("px", ""), null));
+		reduce(root, new HashMap<String, String>(), 0, 0, primitives);
+		return primitives;
+	}
+
+	private void reduce(Element element, Map<String, String> inherited,
+			double tx, double ty, List<Primitive> primitives) {
+		Map<String, String> style = new HashMap<String, String>(inherited);
+		NamedNodeMap attributes = element.getAttributes();
+		for (int i = 0; i < attributes.getLength(); i++) {
+			Node attribute = attributes.item(i);
+			style.put(attribute.getNodeName(), attribute.getNodeValue());
+		}
+		String transform = element.getAttribute("transform");
+		if (transform.length() > 0) {
+			double[] matrix = numbers(transform.substring(transform
+					.indexOf('(') + 1, transform.indexOf(')')));
+			if (!transform.startsWith("matrix") || matrix[0] != 1
+					|| matrix[1] != 0 || matrix[2] != 0 || matrix[3] != 1) {
+				throw new IllegalArgumentException("unsupported transform: "
+						+ transform);
+			}
+			tx += matrix[4];
+			ty += matrix[5];
+		}
+		String tag = element.getTagName();
+		if (tag.equals("path")) {
+			String fill = color(style, "fill", "#000000");
+			String stroke = color(style, "stroke", "none");
+			if (!fill.equals("none")) {
+				path(element.getAttribute("d"), "fill " + fill + " "
+						+ get(style, "fill-opacity", "1"), tx, ty, primitives);
+			}
+			if (!stroke.equals("none")) {
+				path(element.getAttribute("d"), "stroke " + stroke + " "
+						+ get(style, "stroke-opacity", "1") + " width="
+						+ get(style, "stroke-width", "1") + " dash="
+						+ get(style, "stroke-dasharray", "none") + "/"
+						+ get(style, "stroke-dashoffset", "0") + " cap="
+						+ get(style, "stroke-linecap", "butt") + " join="
+						+ get(style, "stroke-linejoin", "miter"), tx, ty,
+						primitives);
+			}
+		} else if (tag.equals("text")) {
+			String string = element.getTextContent();
+			if (string.length() > 0) {
+				primitives.add(new Primitive("text "
+						+ color(style, "fill", "#000000") + " "
+						+ get(style, "fill-opacity", "1") + " "
+						+ get(style, "font-size", "medium") + " "
+						+ get(style, "font-weight", "normal") + " "
+						+ get(style, "font-style", "normal") + " at "
+						+ number(tx + numbers(element.getAttribute("x"))[0])
+						+ ","
+						+ number(ty + numbers(element.getAttribute("y"))[0])
+						+ ": " + string, null));
+			}
+		} else {
+			for (Node child = element.getFirstChild(); child != null; child = child
+					.getNextSibling()) {
+				if (child instanceof Element) {
+					reduce((Element) child, style, tx, ty, primitives);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Adds a primitive for each subpath of the path with the given data.
+	 * Straight subpaths are described by their points, curved ones by their
+	 * bounds.
+	 */
+	private static void path(String data, String description, double tx,
+			double ty, List<Primitive> primitives) {
+		List<double[]> points = new ArrayList<double[]>();
+		boolean curved = false;
+		double x = 0;
+		double y = 0;
+		char command = 'M';
+		int i = 0;
+		int length = data.length();
+		while (true) {
+			while (i < length
+					&& (data.charAt(i) == ' ' || data.charAt(i) == ',')) {
+				i++;
+			}
+			if (i == length || Character.isLetter(data.charAt(i))) {
+				char next = i == length ? 'M' : data.charAt(i);
+				if ((next == 'M' || next == 'm') && !points.isEmpty()) {
+					subpath(description, points, false, curved, primitives);
+					points = new ArrayList<double[]>();
+					curved = false;
+				}
+				if (i == length) {
+					return;
+				}
+				command = next;
+				i++;
+				if (command == 'z' || command == 'Z') {
+					subpath(description, points, true, curved, primitives);
+					x = points.get(0)[0];
+					y = points.get(0)[1];
+					points = new ArrayList<double[]>();
+					curved = false;
+				}
+				continue;
+			}
+			int count = "MmLlTt".indexOf(command) >= 0 ? 2 : "HhVv"
+					.indexOf(command) >= 0 ? 1 : "Cc".indexOf(command) >= 0 ? 6
+					: "SsQq".indexOf(command) >= 0 ? 4 : 7;
+			double[] args = new double[count];
+			for (int j = 0; j < count; j++) {
+				while (data.charAt(i) == ' ' || data.charAt(i) == ',') {
+					i++;
+				}
+				int begin = i;
+				i++;
+				while (i < length
+						&& (Character.isDigit(data.charAt(i))
+								|| data.charAt(i) == '.'
+								|| data.charAt(i) == 'e' || data.charAt(i) == 'E')) {
+					i++;
+				}
+				args[j] = Double.parseDouble(data.substring(begin, i));
+			}
+			boolean relative = Character.isLowerCase(command);
+			double ox = relative ? x : 0;
+			double oy = relative ? y : 0;
+			switch (Character.toUpperCase(command)) {
+			case 'M':
+			case 'L':
+				x = ox + args[0];
+				y = oy + args[1];
+				// further coordinates after a moveto are linetos
+				command = relative ? 'l' : 'L';
+				break;
+			case 'H':
+				x = ox + args[0];
+				break;
+			case 'V':
+				y = oy + args[0];
+				break;
+			case 'C':
+				sample(points, x, y, ox + args[0], oy + args[1], ox + args[2],
+						oy + args[3], ox + args[4], oy + args[5], tx, ty);
+				x = ox + args[4];
+				y = oy + args[5];
+				curved = true;
+				break;
+			case 'A':
+				sampleArc(points, x, y, args[0], args[1], args[3] != 0,
+						args[4] != 0, ox + args[5], oy + args[6], tx, ty);
+				x = ox + args[5];
+				y = oy + args[6];
+				curved = true;
+				break;
+			default:
+				throw new IllegalArgumentException("unsupported path command: "
+						+ command);
+			}
+			points.add(new double[] { tx + x, ty + y });
+		}
+	}
+
+	private static void subpath(String description, List<double[]> points,
+			boolean closed, boolean curved, List<Primitive> primitives) {
+		double[] bounds = { Double.MAX_VALUE, Double.MAX_VALUE,
+				-Double.MAX_VALUE, -Double.MAX_VALUE };
+		for (double[] point : points) {
+			bounds[0] = Math.min(bounds[0], point[0]);
+			bounds[1] = Math.min(bounds[1], point[1]);
+			bounds[2] = Math.max(bounds[2], point[0]);
+			bounds[3] = Math.max(bounds[3], point[1]);
+		}
+		if (description.startsWith("fill")
+				&& (bounds[0] == bounds[2] || bounds[1] == bounds[3])) {
+			return;
+		}
+		if (curved) {
+			primitives.add(new Primitive(description + " curve", bounds));
+			return;
+		}
+		int n = points.size();
+		// a closed subpath may or may not return to its start explicitly
+		while (closed && n > 1 && points.get(n - 1)[0] == points.get(0)[0]
+				&& points.get(n - 1)[1] == points.get(0)[1]) {
+			n--;
+		}
+		StringBuffer buffer = new StringBuffer(description);
+		buffer.append(closed ? " polygon" : " polyline");
+		for (int i = 0; i < n; i++) {
+			buffer.append(" " + number(points.get(i)[0]) + ","
+					+ number(points.get(i)[1]));
+		}
+		primitives.add(new Primitive(buffer.toString(), null));
+	}
+
+	private static void sample(List<double[]> points, double x0, double y0,
+			double x1, double y1, double x2, double y2, double x3, double y3,
+			double tx, double ty) {
+		for (int i = 1; i < SAMPLES; i++) {
+			double t = (double) i / SAMPLES;
+			double s = 1 - t;
+			points.add(new double[] {
+					tx + s * s * s * x0 + 3 * s * s * t * x1 + 3 * s * t * t
+							* x2 + t * t * t * x3,
+					ty + s * s * s * y0 + 3 * s * s * t * y1 + 3 * s * t * t
+							* y2 + t * t * t * y3 });
+		}
+	}
+
+	/*
+	 * Samples an elliptical arc without rotation, which is given as in SVG by
+	 * its end points, its radii and its flags (see the implementation notes
+	 * of the SVG specification, F.6.5).
+	 */
+	private static void sampleArc(List<double[]> points, double x1, double y1,
+			double rx, double ry, boolean large, boolean sweep, double x2,
+			double y2, double tx, double ty) {
+		double x = (x1 - x2) / 2;
+		double y = (y1 - y2) / 2;
+		double lambda = x * x / (rx * rx) + y * y / (ry * ry);
+		if (lambda > 1) {
+			rx *= Math.sqrt(lambda);
+			ry *= Math.sqrt(lambda);
+		}
+		double numerator = rx * rx * ry * ry - rx * rx * y * y - ry * ry * x
+				* x;
+		double coefficient = Math.sqrt(Math.max(0, numerator
+				/ (rx * rx * y * y + ry * ry * x * x)));
+		if (large == sweep) {
+			coefficient = -coefficient;
+		}
+		double cx = coefficient * rx * y / ry + (x1 + x2) / 2;
+		double cy = -coefficient * ry * x / rx + (y1 + y2) / 2;
+		double start = Math.atan2((y1 - cy) / ry, (x1 - cx) / rx);
+		double extent = Math.atan2((y2 - cy) / ry, (x2 - cx) / rx) - start;
+		if (sweep && extent <= 0) {
+			extent += 2 * Math.PI;
+		} else if (!sweep && extent >= 0) {
+			extent -= 2 * Math.PI;
+		}
+		for (int i = 1; i < SAMPLES; i++) {
+			double angle = start + extent * i / SAMPLES;
+			points.add(new double[] { tx + cx + rx * Math.cos(angle),
+					ty + cy + ry * Math.sin(angle) });
+		}
+	}
+
+	private static String get(Map<String, String> style, String name,
+			String dflt) {
+		String value = style.get(name);
+		if (value == null || value.trim().length() == 0) {
+			value = dflt;
+		}
+		value = value.trim();
+		if (value.length() > 0
+				&& (Character.isDigit(value.charAt(0)) || value.charAt(0) == '.')) {
+			StringBuffer buffer = new StringBuffer();
+			for (double number : numbers(value)) {
+				if (buffer.length() > 0) {
+					buffer.append(",");
+				}
+				buffer.append(number(number));
+			}
+			return buffer.toString();
+		}
+		return value;
+	}
+
+	private static String color(Map<String, String> style, String name,
+			String dflt) {
+		String color = get(style, name, dflt).toLowerCase();
+		if (color.equals("black")) {
+			return "#000000";
+		}
+		if (color.length() == 4 && color.charAt(0) == '#') {
+			return "#" + color.charAt(1) + color.charAt(1) + color.charAt(2)
+					+ color.charAt(2) + color.charAt(3) + color.charAt(3);
+		}
+		return color;
+	}
+
+	private static double[] numbers(String string) {
+		String[] parts = string.trim().split("[ ,]+");
+		double[] numbers = new double[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			numbers[i] = Double.parseDouble(parts[i].replace("px", ""));
+		}
+		return numbers;
+	}
+
+	private static String number(double number) {
+		long thousandths = Math.round(number * 1000);
+		return thousandths % 1000 == 0 ? String.valueOf(thousandths / 1000)
+				: String.valueOf(thousandths / 1000.0);
+	}
+
+	/**
+	 * Something an SVG document paints: an outline, a fill or a string.
+	 */
+	private static final class Primitive {
+
+		// the kind, the style and the position, except for the bounds
+		private final String description;
+
+		// the bounds of a curved outline or fill, or null
+		private final double[] bounds;
+
+		Primitive(String description, double[] bounds) {
+			this.description = description;
+			this.bounds = bounds;
+		}
+
+		boolean matches(Primitive primitive) {
+			if (!description.equals(primitive.description)) {
+				return false;
+			}
+			if (bounds == null || primitive.bounds == null) {
+				return bounds == primitive.bounds;
+			}
+			for (int i = 0; i < 4; i++) {
+				if (Math.abs(bounds[i] - primitive.bounds[i]) > TOLERANCE) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public String toString() {
+			if (bounds == null) {
+				return description;
+			}
+			return description + " " + number(bounds[0]) + ","
+					+ number(bounds[1]) + "-" + number(bounds[2]) + ","
+					+ number(bounds[3]);
+		}
+	}
+
+	/**
+	 * FreeHEP's SVG exporter, measuring text like the {@linkplain SVGExporter}
+	 * and writing strings as text.
+	 */
+	private static final class FreeHEPExporter extends ExporterImpl {
+
+		FreeHEPExporter() {
+			super("Portrait", "A4");
+			setType("svg-freehep");
+		}
+
+		@Override
+		protected TextMetrics getTextMetrics(boolean bold) {
+			return TextMetrics.getInstance(getFont(bold));
+		}
+
+		@Override
+		protected Graphics2D createGraphics() {
+			Graphics2D graphics = super.createGraphics();
+			Properties properties = new Properties();
+			properties.setProperty(SVGGraphics2D.TEXT_AS_SHAPES, "false");
+			((VectorGraphics) graphics).setProperties(properties);
+			return graphics;
+		}
+	}
+}
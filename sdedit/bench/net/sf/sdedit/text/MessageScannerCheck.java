@@ -0,0 +1,139 @@
+// Copyright (c) 2006 - 2008, Markus Strauch.
+// All rights reserved.
+// 
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright notice, 
+// this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright notice, 
+// this list of conditions and the following disclaimer in the documentation 
+// and/or other materials provided with the distribution.
+// 
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.sf.sdedit.text;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import net.sf.sdedit.bench.Check;
+import net.sf.sdedit.bench.DiagramGenerator;
+import net.sf.sdedit.config.Configuration;
+import net.sf.sdedit.ui.components.configuration.Bean;
+import net.sf.sdedit.util.Pair;
+
+/**
+ * Checks that the {@linkplain MessageScanner} and the regular expressions of
+ * {@linkplain TextBasedMessageData} yield the same message data, or both
+ * reject the string. The strings are the message lines of the bundled
+ * examples, of some synthetic diagrams and random strings over the alphabet
+ * of separators.
+ * 
+ * @author Markus Strauch
+ */
+public class MessageScannerCheck extends Check {
+
+	private static final String ALPHABET = "ab :>.=[](){},\\&01";
+
+	private static final int RANDOM_LINES = 200000;
+
+	public MessageScannerCheck() {
+		super("scanner");
+	}
+
+	@Override
+	public void run() throws Exception {
+		for (Map.Entry<String, Pair<String, Bean<Configuration>>> example : loadExamples()
+				.entrySet()) {
+			for (String line : getMessageLines(example.getValue().getFirst())) {
+				compare(example.getKey(), line);
+			}
+		}
+		for (int threads = 1; threads <= 3; threads += 2) {
+			DiagramGenerator generator = new DiagramGenerator(10, 1000, 4,
+					threads, 0.05, 1);
+			for (String line : generator.getMessageLines()) {
+				compare("synthetic", line);
+			}
+		}
+		Random random = new Random(1);
+		for (int i = 0; i < RANDOM_LINES; i++) {
+			compare("random", randomLine(random));
+		}
+	}
+
+	/*
+	 * Returns the lines following the object declarations that are neither
+	 * empty nor comments.
+	 */
+	private static List<String> getMessageLines(String source) {
+		List<String> lines = new ArrayList<String>();
+		boolean objects = true;
+		boolean started = false;
+		for (String line : source.split("\n")) {
+			line = line.trim();
+			if (objects) {
+				if (!line.equals("") && !line.startsWith("#")) {
+					started = true;
+				} else if (started && line.equals("")) {
+					objects = false;
+				}
+			} else if (!line.equals("") && !line.startsWith("#")) {
+				lines.add(line);
+			}
+		}
+		return lines;
+	}
+
+	private static String randomLine(Random random) {
+		int length = 1 + random.nextInt(24);
+		StringBuilder line = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			line.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+		}
+		if (line.indexOf(":") == -1) {
+			line.insert(random.nextInt(line.length() + 1), ':');
+		}
+		return line.toString();
+	}
+
+	private void compare(String origin, String line) {
+		Object scanned = parse(line, TextBasedMessageData.SCAN);
+		Object matched = parse(line, TextBasedMessageData.REGEX);
+		boolean same;
+		if (scanned instanceof TextBasedMessageData
+				&& matched instanceof TextBasedMessageData) {
+			same = ((TextBasedMessageData) scanned)
+					.hasSameData((TextBasedMessageData) matched);
+		} else {
+			same = scanned.equals(matched);
+		}
+		verify(same, origin + ": " + line + " (scanner: " + scanned
+				+ ", regex: " + matched + ")");
+	}
+
+	/*
+	 * Returns the message data, or the class of the exception if the line
+	 * cannot be parsed.
+	 */
+	private static Object parse(String line, int mode) {
+		try {
+			return new TextBasedMessageData(line, mode);
+		} catch (Exception e) {
+			return e.getClass();
+		}
+	}
+}
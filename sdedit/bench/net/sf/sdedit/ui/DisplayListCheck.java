@@ -0,0 +1,199 @@
+// Copyright (c) 2006 - 2008, Markus Strauch.
+// All rights reserved.
+// 
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright notice, 
+// this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright notice, 
+// this list of conditions and the following disclaimer in the documentation 
+// and/or other materials provided with the distribution.
+// 
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+package net.sf.sdedit.ui;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.sdedit.bench.Check;
+import net.sf.sdedit.bench.DiagramGenerator;
+import net.sf.sdedit.config.Configuration;
+import net.sf.sdedit.config.ConfigurationManager;
+import net.sf.sdedit.diagram.Diagram;
+import net.sf.sdedit.diagram.DisplayList;
+import net.sf.sdedit.diagram.Lifeline;
+import net.sf.sdedit.drawable.Arrow;
+import net.sf.sdedit.drawable.Drawable;
+import net.sf.sdedit.drawable.ExtensibleDrawable;
+import net.sf.sdedit.drawable.Fragment;
+import net.sf.sdedit.drawable.Note;
+import net.sf.sdedit.error.DiagramError;
+import net.sf.sdedit.text.TextHandler;
+import net.sf.sdedit.ui.components.configuration.Bean;
+import net.sf.sdedit.util.Pair;
+
+/**
+ * Checks that the {@linkplain DisplayList} of a diagram answers the questions
+ * the user interface asks while the diagram is displayed like the diagram
+ * itself did before: which elements are under the mouse, their tool tips,
+ * positions in the source text and links, and which element to scroll to for
+ * a line of the source text. The bundled examples and some synthetic
+ * diagrams are probed at a grid of points and at the beginning of each line.
+ * 
+ * @author Markus Strauch
+ */
+public class DisplayListCheck extends Check {
+
+	// the maximum number of points probed per diagram
+	private static final int POINTS = 40000;
+
+	public DisplayListCheck() {
+		super("displaylist");
+	}
+
+	@Override
+	public void run() throws Exception {
+		for (Map.Entry<String, Pair<String, Bean<Configuration>>> example : loadExamples()
+				.entrySet()) {
+			check(example.getKey(), example.getValue().getFirst(), example
+					.getValue().getSecond().getDataObject());
+		}
+		for (int threads = 1; threads <= 3; threads += 2) {
+			DiagramGenerator generator = new DiagramGenerator(10, 300, 4,
+					threads, 0.1, 1);
+			Configuration configuration = ConfigurationManager
+					.createNewDefaultConfiguration().getDataObject();
+			configuration.setThreaded(generator.isThreaded());
+			check("synthetic/" + threads, generator.getText(), configuration);
+		}
+	}
+
+	private void check(String name, String text, Configuration configuration) {
+		PanelPaintDevice paintDevice = new PanelPaintDevice(false);
+		Diagram diagram = new Diagram(configuration, new TextHandler(text),
+				paintDevice);
+		try {
+			diagram.generate();
+		} catch (DiagramError e) {
+			// the part before the error is displayed as well
+		}
+		DisplayList list = paintDevice.getDisplayList();
+		if (list == null) {
+			verify(paintDevice.isEmpty(), name + ": there is no display list");
+			return;
+		}
+		// a drawable element may be delivered more than once, so it may
+		// have more than one index
+		Map<Drawable, List<Integer>> indices = new IdentityHashMap<Drawable, List<Integer>>();
+		int size = 0;
+		for (Drawable drawable : paintDevice) {
+			if (!indices.containsKey(drawable)) {
+				indices.put(drawable, new ArrayList<Integer>());
+			}
+			indices.get(drawable).add(size++);
+		}
+		verify(size == list.size(), name + ": the number of elements differs");
+		int step = (int) Math.ceil(Math.sqrt((double) list.getWidth()
+				* list.getHeight() / POINTS));
+		for (int y = 0; y < list.getHeight(); y += step) {
+			for (int x = 0; x < list.getWidth(); x += step) {
+				Point point = new Point(x, y);
+				String expected = describe(diagram, indices, point);
+				String actual = describe(list, point);
+				verify(expected.equals(actual), name + " at " + x + "," + y
+						+ ": " + actual + " instead of " + expected);
+			}
+		}
+		// the state of the text handler for a line is the index of the
+		// line break before it plus two (see TextArea#getCurrentLineBegin())
+		int state = 0;
+		while (state <= text.length()) {
+			Drawable drawable = diagram.getDrawableForState(state);
+			Integer index = drawable == null || !indices.containsKey(drawable) ? null
+					: indices.get(drawable).get(0);
+			String expected = index == null ? "none" : index + " "
+					+ anchor(drawable);
+			int element = list.indexOfSource(state);
+			String actual = element == -1 ? "none" : element + " "
+					+ list.getAnchor(element);
+			verify(expected.equals(actual), name + " for the line at " + state
+					+ ": " + actual + " instead of " + expected);
+			int lineBreak = text.indexOf('\n', state);
+			if (lineBreak == -1) {
+				break;
+			}
+			state = lineBreak + 2;
+		}
+	}
+
+	/*
+	 * The elements at the point as found by the diagram, along with what the
+	 * user interface looked up for them.
+	 */
+	private static String describe(Diagram diagram,
+			Map<Drawable, List<Integer>> indices, Point point) {
+		StringBuilder description = new StringBuilder();
+		String toolTip = null;
+		Map<Drawable, Integer> occurrences = new IdentityHashMap<Drawable, Integer>();
+		for (Drawable drawable : diagram.getPaintDevice().hit(point)) {
+			int occurrence = occurrences.containsKey(drawable) ? occurrences
+					.get(drawable) + 1 : 0;
+			occurrences.put(drawable, occurrence);
+			Object state = diagram.getStateForDrawable(drawable);
+			Object link = drawable instanceof Note ? ((Note) drawable)
+					.getLink() : null;
+			description.append(indices.get(drawable).get(occurrence) + ":"
+					+ (state instanceof Integer ? state : -1) + ":" + link
+					+ ":" + (drawable instanceof Fragment) + " ");
+			if (drawable instanceof ExtensibleDrawable) {
+				ExtensibleDrawable ed = (ExtensibleDrawable) drawable;
+				Lifeline lifeline = ed.getLifeline();
+				toolTip = lifeline.toString();
+				if (lifeline.getDiagram().getConfiguration().isThreaded()
+						&& !lifeline.isAlwaysActive()
+						&& (ed instanceof net.sf.sdedit.drawable.Rectangle)) {
+					toolTip = toolTip + " [thread=" + lifeline.getThread()
+							+ "]";
+				}
+			}
+		}
+		return description.append(toolTip).toString();
+	}
+
+	private static String describe(DisplayList list, Point point) {
+		StringBuilder description = new StringBuilder();
+		String toolTip = null;
+		for (int element : list.hit(point)) {
+			description.append(element + ":" + list.getSource(element) + ":"
+					+ list.getLink(element) + ":" + list.isFragment(element)
+					+ " ");
+			if (list.getToolTip(element) != null) {
+				toolTip = list.getToolTip(element);
+			}
+		}
+		return description.append(toolTip).toString();
+	}
+
+	private static Point anchor(Drawable drawable) {
+		if (drawable instanceof Arrow
+				&& ((Arrow) drawable).getTextPosition() != null) {
+			return new Point(((Arrow) drawable).getTextPosition().x, drawable
+					.getTop());
+		}
+		return new Point(drawable.getLeft(), drawable.getTop());
+	}
+}
@@ -0,0 +1,66 @@
+// Copyright (c) 2006 - 2008, Markus Strauch.
+// All rights reserved.
+// 
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright notice, 
+// this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright notice, 
+// this list of conditions and the following disclaimer in the documentation 
+// and/or other materials provided with the distribution.
+// 
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.sf.sdedit.ui;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Renders all tiles of a {@linkplain PanelPaintDevice} synchronously, as the
+ * {@linkplain TileCache} does in the background when the diagram is
+ * displayed.
+ * 
+ * @author Markus Strauch
+ */
+public final class TilePainter {
+
+	private TilePainter() {
+		/* empty */
+	}
+
+	/**
+	 * Renders all tiles of the diagram displayed by the given paint device at
+	 * the given scale.
+	 * 
+	 * @param paintDevice
+	 *            a paint device that has been closed
+	 * @param scale
+	 *            the scale at which the diagram is displayed
+	 * @return a checksum of the pixels in the lower right corners of the tiles
+	 */
+	public static int paint(PanelPaintDevice paintDevice, double scale) {
+		int tileSize = TileCache.TILE_SIZE;
+		int columns = (int) Math.ceil(paintDevice.getWidth() * scale
+				/ tileSize);
+		int rows = (int) Math.ceil(paintDevice.getHeight() * scale / tileSize);
+		int sum = 0;
+		for (int row = 0; row < rows; row++) {
+			for (int column = 0; column < columns; column++) {
+				BufferedImage tile = paintDevice.renderTile(scale, column, row);
+				sum += tile.getRGB(tileSize - 1, tileSize - 1);
+			}
+		}
+		return sum;
+	}
+}
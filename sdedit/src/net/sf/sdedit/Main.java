@@ -31,19 +31,38 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
 
 import javax.swing.SwingUtilities;
 
 import net.sf.sdedit.config.Configuration;
 import net.sf.sdedit.config.ConfigurationManager;
 import net.sf.sdedit.diagram.Diagram;
+import net.sf.sdedit.diagram.DiagramMetrics;
+import net.sf.sdedit.diagram.DiagramMetrics.Phase;
+import net.sf.sdedit.diagram.ValidatingPaintDevice;
 import net.sf.sdedit.editor.DiagramLoader;
 import net.sf.sdedit.editor.Editor;
+import net.sf.sdedit.error.DiagramError;
 import net.sf.sdedit.error.SemanticError;
 import net.sf.sdedit.error.SyntaxError;
+import net.sf.sdedit.server.DiagramServer;
 import net.sf.sdedit.server.Exporter;
+import net.sf.sdedit.server.HttpEndpoint;
+import net.sf.sdedit.server.RenderCache;
 import net.sf.sdedit.text.TextHandler;
-import net.sf.sdedit.ui.ImagePaintDevice;
+import net.sf.sdedit.ui.StripPaintDevice;
 import net.sf.sdedit.ui.components.configuration.Adjustable;
 import net.sf.sdedit.ui.components.configuration.Bean;
 import net.sf.sdedit.util.OS;
@@ -70,6 +89,13 @@ import org.apache.commons.cli.PosixParser;
 public class Main implements Constants {
 
 	public static void main(String[] argv) throws Exception {
+		for (String arg : argv) {
+			if (arg.startsWith("--http")) {
+				// no editor is launched, so nothing needs a display, but
+				// this must be known before AWT is initialized
+				System.setProperty("java.awt.headless", "true");
+			}
+		}
 
 
 		CommandLineParser parser = new PosixParser();
@@ -90,10 +116,32 @@ public class Main implements Constants {
 			return;
 		}
 
-		if (cmd.getOptionValue('o') != null) {
-			createImage(cmd);
+		if (cmd.hasOption("check")) {
+			if (!checkAll(cmd)) {
+				System.exit(1);
+			}
+
+		} else if (cmd.getOptionValue("http") != null) {
+			String port = cmd.getOptionValue('s');
+			DiagramServer server = startServer(port == null ? "0" : port);
+			HttpEndpoint endpoint = new HttpEndpoint(server, Integer
+					.parseInt(cmd.getOptionValue("http")));
+			System.out.println("HTTP endpoint listening at port "
+					+ endpoint.getPort());
+			server.join();
+
+		} else if (cmd.getOptionValue('d') != null) {
+			if (!exportAll(cmd)) {
+				System.exit(1);
+			}
+
+		} else if (cmd.getOptionValue('o') != null) {
+			DiagramMetrics metrics = createImage(cmd);
 			System.out
 					.println("created image file: " + cmd.getOptionValue('o'));
+			if (cmd.hasOption("stats")) {
+				System.out.println(metrics);
+			}
 
 		} else {
 			if (OS.TYPE == OS.Type.MAC) {
@@ -105,6 +153,9 @@ public class Main implements Constants {
 				System.setProperty("com.apple.mrj.application.live-resize",
 						"true");
 			}
+			if (cmd.getOptionValue('s') != null) {
+				startServer(cmd.getOptionValue('s'));
+			}
 			final String[] files = getInputFiles(cmd);
 			if (files.length > 0) {
 				SwingUtilities.invokeLater(new Runnable() {
@@ -174,6 +225,18 @@ public class Main implements Constants {
 				.create('o');
 		options.addOption(output);
 
+		Option directory = OptionBuilder.hasArg().withArgName(
+				"output directory").withDescription(
+				"exports all input files (files, directories or patterns "
+						+ "like dir/*.sdx) into the directory").create('d');
+		options.addOption(directory);
+
+		Option threads = OptionBuilder.hasArg().withArgName("threads")
+				.withDescription(
+						"number of threads exporting into an output directory")
+				.create('j');
+		options.addOption(threads);
+
 		Option type = OptionBuilder.hasArg().withArgName("output file type")
 				.withDescription("one of " + availableTypes()).hasArg().create(
 						't');
@@ -187,6 +250,31 @@ public class Main implements Constants {
 				.withDescription("one of {A0, ..., A6}").create('f');
 		options.addOption(format);
 
+		Option server = OptionBuilder.hasArg().withArgName("port")
+				.withDescription("starts the diagram server at the given port")
+				.create('s');
+		options.addOption(server);
+
+		Option http = OptionBuilder.hasArg().withArgName("port")
+				.withDescription(
+						"starts the diagram server (at the port given by -s, "
+								+ "if any) and an HTTP endpoint for it at the "
+								+ "given port, without launching the editor")
+				.withLongOpt("http").create();
+		options.addOption(http);
+
+		Option stats = OptionBuilder.withDescription(
+				"prints the time spent in the phases of the generation of "
+						+ "each diagram, and its size").withLongOpt("stats")
+				.create();
+		options.addOption(stats);
+
+		Option check = OptionBuilder.withDescription(
+				"checks all input files (files, directories or patterns) "
+						+ "for errors without drawing the diagrams")
+				.withLongOpt("check").create();
+		options.addOption(check);
+
 		Option help = OptionBuilder.withDescription(
 				"show long options (for diagram preferences)").create('h');
 		options.addOption(help);
@@ -215,14 +303,194 @@ public class Main implements Constants {
 		return cmd.getArgs();
 	}
 
-	private static void createImage(CommandLine cmd) throws IOException,
-			XMLException, SyntaxError, SemanticError {
-		File inFile = new File(getInputFiles(cmd)[0]);
-		File outFile = new File(cmd.getOptionValue('o'));
-		String type = "png";
+	private static String getType(CommandLine cmd) {
 		if (cmd.getOptionValue('t') != null) {
-			type = cmd.getOptionValue('t').toLowerCase();
+			return cmd.getOptionValue('t').toLowerCase();
+		}
+		return "png";
+	}
+
+	private static DiagramMetrics createImage(CommandLine cmd)
+			throws IOException, XMLException, SyntaxError, SemanticError {
+		return createImage(new File(getInputFiles(cmd)[0]), new File(cmd
+				.getOptionValue('o')), cmd);
+	}
+
+	/*
+	 * Exports the diagrams of all input files (files, directories containing
+	 * .sd or .sdx files, or file name patterns) into the directory given by
+	 * the -d option, using -j threads (by default, one per processor). Reports
+	 * success or failure (and with --stats, the metrics) for each file and
+	 * returns false if there was a failure.
+	 */
+	private static boolean exportAll(final CommandLine cmd)
+			throws InterruptedException {
+		File directory = new File(cmd.getOptionValue('d'));
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			System.err.println("cannot create output directory " + directory);
+			return false;
+		}
+		int threads = Runtime.getRuntime().availableProcessors();
+		if (cmd.getOptionValue('j') != null) {
+			threads = Math.max(1, Integer.parseInt(cmd.getOptionValue('j')));
+		}
+		List<File> inFiles = expand(getInputFiles(cmd));
+		List<Future<DiagramMetrics>> results = new ArrayList<Future<DiagramMetrics>>();
+		List<File> outputs = new ArrayList<File>();
+		Set<File> outFiles = new HashSet<File>();
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		for (final File inFile : inFiles) {
+			String name = inFile.getName();
+			int dot = name.lastIndexOf('.');
+			if (dot > 0) {
+				name = name.substring(0, dot);
+			}
+			final File outFile = new File(directory, name + "."
+					+ getType(cmd));
+			final boolean duplicate = !outFiles.add(outFile);
+			outputs.add(outFile);
+			results.add(pool.submit(new Callable<DiagramMetrics>() {
+				public DiagramMetrics call() throws Exception {
+					if (duplicate) {
+						throw new IOException(outFile
+								+ " is the output file of another input file");
+					}
+					try {
+						return createImage(inFile, outFile, cmd);
+					} catch (Exception e) {
+						outFile.delete();
+						throw e;
+					}
+				}
+			}));
+		}
+		pool.shutdown();
+		int failed = 0;
+		for (int i = 0; i < inFiles.size(); i++) {
+			try {
+				DiagramMetrics metrics = results.get(i).get();
+				System.out.println("exported " + inFiles.get(i) + " to "
+						+ outputs.get(i));
+				if (cmd.hasOption("stats")) {
+					System.out.println("  " + metrics);
+				}
+			} catch (ExecutionException e) {
+				failed++;
+				System.out.println("FAILED: " + inFiles.get(i) + ": "
+						+ describe(e.getCause()));
+			}
+		}
+		System.out.println((inFiles.size() - failed) + " of "
+				+ inFiles.size() + " diagrams exported, " + failed + " failed");
+		return failed == 0;
+	}
+
+	/*
+	 * Checks the diagrams of all input files (see expand) for errors, using a
+	 * ValidatingPaintDevice, so no diagram is drawn. Reports success or the
+	 * first error (and with --stats, the metrics) for each file and returns
+	 * false if an error has been found.
+	 */
+	private static boolean checkAll(CommandLine cmd) {
+		List<File> inFiles = expand(getInputFiles(cmd));
+		int failed = 0;
+		for (File inFile : inFiles) {
+			try {
+				DiagramMetrics metrics = check(inFile, cmd);
+				System.out.println("checked " + inFile);
+				if (cmd.hasOption("stats")) {
+					System.out.println("  " + metrics);
+				}
+			} catch (Exception e) {
+				failed++;
+				System.out.println("FAILED: " + inFile + ": " + describe(e));
+			}
 		}
+		System.out.println((inFiles.size() - failed) + " of "
+				+ inFiles.size() + " diagrams checked, " + failed + " failed");
+		return failed == 0;
+	}
+
+	private static DiagramMetrics check(File inFile, CommandLine cmd)
+			throws IOException, XMLException, SyntaxError, SemanticError {
+		InputStream in = new FileInputStream(inFile);
+		try {
+			Pair<String, Bean<Configuration>> pair = DiagramLoader.load(in,
+					ConfigurationManager.getGlobalConfiguration()
+							.getFileEncoding());
+			Bean<Configuration> conf = pair.getSecond();
+			configure(conf, cmd);
+			Diagram diagram = new Diagram(conf.getDataObject(),
+					new TextHandler(pair.getFirst()),
+					new ValidatingPaintDevice());
+			diagram.generate();
+			return diagram.getMetrics();
+		} finally {
+			in.close();
+		}
+	}
+
+	private static String describe(Throwable t) {
+		if (t instanceof DiagramError) {
+			DiagramError error = (DiagramError) t;
+			String kind = t instanceof SyntaxError ? "syntax error"
+					: "semantic error";
+			return kind + " in line "
+					+ ((TextHandler) error.getProvider()).getLineNumber()
+					+ ": " + t.getMessage();
+		}
+		if (t instanceof XMLException) {
+			return "XML error: " + t.getMessage();
+		}
+		return t.getClass().getSimpleName() + ": " + t.getMessage();
+	}
+
+	/*
+	 * Replaces directories by the .sd and .sdx files they contain and file
+	 * name patterns (with * and ?) by the files matching them. Other names
+	 * are taken as they are. A file named more than once is only listed once.
+	 */
+	private static List<File> expand(String[] names) {
+		Set<File> files = new LinkedHashSet<File>();
+		for (String name : names) {
+			File file = new File(name);
+			Pattern pattern = null;
+			File[] children = null;
+			if (file.isDirectory()) {
+				pattern = Pattern.compile(".*\\.sdx?");
+				children = file.listFiles();
+			} else if (file.getName().indexOf('*') >= 0
+					|| file.getName().indexOf('?') >= 0) {
+				pattern = Pattern.compile(Pattern.quote(file.getName())
+						.replace("*", "\\E.*\\Q").replace("?", "\\E.\\Q"));
+				File parent = file.getParentFile();
+				children = (parent == null ? new File(".") : parent)
+						.listFiles();
+			}
+			if (pattern == null || children == null) {
+				files.add(file);
+				continue;
+			}
+			Arrays.sort(children);
+			boolean found = false;
+			for (File child : children) {
+				if (child.isFile()
+						&& pattern.matcher(child.getName()).matches()) {
+					files.add(child);
+					found = true;
+				}
+			}
+			if (!found && !file.isDirectory()) {
+				files.add(file);
+			}
+		}
+		return new ArrayList<File>(files);
+	}
+
+	private static DiagramMetrics createImage(File inFile, File outFile,
+			CommandLine cmd) throws IOException, XMLException, SyntaxError,
+			SemanticError {
+		String type = getType(cmd);
 		String format = "A4";
 		if (cmd.getOptionValue('f') != null) {
 			format = cmd.getOptionValue('f').toUpperCase();
@@ -237,6 +505,7 @@ public class Main implements Constants {
 		}
 		InputStream in = null;
 		OutputStream out = null;
+		DiagramMetrics metrics;
 		in = new FileInputStream(inFile);
 		try {
 			out = new FileOutputStream(outFile);
@@ -248,16 +517,24 @@ public class Main implements Constants {
 				Bean<Configuration> conf = pair.getSecond();
 				configure(conf, cmd);
 				if (type.equals("png")) {
-					ImagePaintDevice paintDevice = new ImagePaintDevice();
-					new Diagram(conf.getDataObject(), th, paintDevice)
-							.generate();
+					StripPaintDevice paintDevice = new StripPaintDevice();
+					Diagram diagram = new Diagram(conf.getDataObject(), th,
+							paintDevice);
+					diagram.generate();
+					metrics = diagram.getMetrics();
+					long start = System.nanoTime();
 					paintDevice.writeToStream(out);
+					metrics.addTime(Phase.PAINT, System.nanoTime() - start);
 				} else {
 					Exporter paintDevice = Exporter.getExporter(type,
 							orientation, format, out);
-					new Diagram(conf.getDataObject(), th, paintDevice)
-							.generate();
+					Diagram diagram = new Diagram(conf.getDataObject(), th,
+							paintDevice);
+					diagram.generate();
+					metrics = diagram.getMetrics();
+					long start = System.nanoTime();
 					paintDevice.export();
+					metrics.addTime(Phase.PAINT, System.nanoTime() - start);
 				}
 				out.flush();
 			} finally {
@@ -266,7 +543,43 @@ public class Main implements Constants {
 		} finally {
 			in.close();
 		}
+		return metrics;
+	}
 
+	/*
+	 * The number of worker threads, the capacity of the work queue and the
+	 * timeouts of the server can be changed by setting the system properties
+	 * sdedit.server.workers, sdedit.server.queue, sdedit.server.readTimeout
+	 * and sdedit.server.renderTimeout.
+	 * 
+	 * The images that have been sent are cached in memory, up to
+	 * sdedit.server.cacheSize bytes (0 turns the cache off). If
+	 * sdedit.server.cacheDir is set, they are also stored as files in that
+	 * directory, up to sdedit.server.diskCacheSize bytes.
+	 */
+	private static DiagramServer startServer(String port) throws IOException {
+		DiagramServer server = new DiagramServer(Integer.parseInt(port),
+				Integer.getInteger("sdedit.server.workers",
+						DiagramServer.DEFAULT_WORKERS), Integer.getInteger(
+						"sdedit.server.queue",
+						DiagramServer.DEFAULT_QUEUE_CAPACITY), Long.getLong(
+						"sdedit.server.readTimeout",
+						DiagramServer.DEFAULT_READ_TIMEOUT), Long.getLong(
+						"sdedit.server.renderTimeout",
+						DiagramServer.DEFAULT_RENDER_TIMEOUT));
+		server.setLog(System.out);
+		long cacheSize = Long.getLong("sdedit.server.cacheSize",
+				RenderCache.DEFAULT_SIZE);
+		String cacheDir = System.getProperty("sdedit.server.cacheDir");
+		if (cacheSize > 0 || cacheDir != null) {
+			server.setCache(new RenderCache(cacheSize, cacheDir == null ? null
+					: new File(cacheDir), Long.getLong(
+					"sdedit.server.diskCacheSize",
+					RenderCache.DEFAULT_DISK_SIZE)));
+		}
+		System.out.println("diagram server listening at port "
+				+ server.getPort());
+		return server;
 	}
 
 	private static void configure(Bean<Configuration> conf, CommandLine cmd) {
@@ -286,8 +599,8 @@ public class Main implements Constants {
 
 	private static String availableTypes() {
 		if (Exporter.isAvailable()) {
-			return "{ps, pdf, swf, emf, svg, png, gif, jpg, bmp}";
+			return "{ps, pdf, swf, emf, svg, svg-freehep, png, gif, jpg, bmp}";
 		}
-		return "{png}";
+		return "{png, svg}";
 	}
 }
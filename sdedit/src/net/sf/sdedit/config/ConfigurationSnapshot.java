@@ -0,0 +1,594 @@
+// Copyright (c) 2006 - 2008, Markus Strauch.
+// All rights reserved.
+// 
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright notice, 
+// this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright notice, 
+// this list of conditions and the following disclaimer in the documentation 
+// and/or other materials provided with the distribution.
+// 
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+package net.sf.sdedit.config;
+
+import java.awt.Color;
+import java.awt.Font;
+
+/**
+ * An immutable copy of a {@linkplain Configuration}. The data object of a
+ * {@linkplain net.sf.sdedit.ui.components.configuration.Bean} is a dynamic
+ * proxy, so each call of one of its get-methods involves reflection and map
+ * lookups, and primitive values are boxed. A <tt>ConfigurationSnapshot</tt>
+ * stores the values in plain fields instead, so a diagram, which reads its
+ * configuration very often, uses a snapshot taken when it is created (see
+ * {@linkplain #of(Configuration)}).
+ * <p>
+ * All set-methods throw an <tt>UnsupportedOperationException</tt>.
+ * <p>
+ * A property that is added to the configuration interface must be copied
+ * here as well, the <tt>snapshot</tt> check of the bench verifies that every
+ * get-method returns the value of the configuration that has been copied.
+ * 
+ * @author Markus Strauch
+ * 
+ */
+public final class ConfigurationSnapshot implements Configuration {
+
+	private final int actorWidth;
+
+	private final int arrowSize;
+
+	private final int destructorWidth;
+
+	private final Font font;
+
+	private final int fragmentMargin;
+
+	private final int fragmentPadding;
+
+	private final int fragmentTextPadding;
+
+	private final int glue;
+
+	private final int headHeight;
+
+	private final int headLabelPadding;
+
+	private final int headWidth;
+
+	private final int initialSpace;
+
+	private final int leftMargin;
+
+	private final boolean lineWrap;
+
+	private final int lowerMargin;
+
+	private final int mainLifelineWidth;
+
+	private final int messageLabelSpace;
+
+	private final int messagePadding;
+
+	private final int noteMargin;
+
+	private final int notePadding;
+
+	private final int rightMargin;
+
+	private final int selfMessageHorizontalSpace;
+
+	private final int separatorBottomMargin;
+
+	private final int separatorTopMargin;
+
+	private final boolean shouldShadowParticipants;
+
+	private final int spaceBeforeActivation;
+
+	private final int spaceBeforeAnswerToSelf;
+
+	private final int spaceBeforeConstruction;
+
+	private final int spaceBeforeSelfMessage;
+
+	private final int subLifelineWidth;
+
+	private final int upperMargin;
+
+	private final Color tc0;
+
+	private final Color tc1;
+
+	private final Color tc2;
+
+	private final Color tc3;
+
+	private final Color tc4;
+
+	private final Color tc5;
+
+	private final Color tc6;
+
+	private final Color tc7;
+
+	private final Color tc8;
+
+	private final Color tc9;
+
+	private final boolean colorizeThreads;
+
+	private final boolean opaqueMessageText;
+
+	private final boolean allowMessageProperties;
+
+	private final boolean threaded;
+
+	private final boolean threadNumbersVisible;
+
+	private final boolean returnArrowVisible;
+
+	private final boolean verticallySplit;
+
+	/**
+	 * Returns an immutable copy of the given configuration, or the
+	 * configuration itself if it is already a snapshot.
+	 * 
+	 * @param configuration
+	 *            a configuration
+	 * @return an immutable copy of the configuration
+	 */
+	public static ConfigurationSnapshot of(Configuration configuration) {
+		if (configuration instanceof ConfigurationSnapshot) {
+			return (ConfigurationSnapshot) configuration;
+		}
+		return new ConfigurationSnapshot(configuration);
+	}
+
+	private ConfigurationSnapshot(Configuration configuration) {
+		actorWidth = configuration.getActorWidth();
+		arrowSize = configuration.getArrowSize();
+		destructorWidth = configuration.getDestructorWidth();
+		font = configuration.getFont();
+		fragmentMargin = configuration.getFragmentMargin();
+		fragmentPadding = configuration.getFragmentPadding();
+		fragmentTextPadding = configuration.getFragmentTextPadding();
+		glue = configuration.getGlue();
+		headHeight = configuration.getHeadHeight();
+		headLabelPadding = configuration.getHeadLabelPadding();
+		headWidth = configuration.getHeadWidth();
+		initialSpace = configuration.getInitialSpace();
+		leftMargin = configuration.getLeftMargin();
+		lineWrap = configuration.isLineWrap();
+		lowerMargin = configuration.getLowerMargin();
+		mainLifelineWidth = configuration.getMainLifelineWidth();
+		messageLabelSpace = configuration.getMessageLabelSpace();
+		messagePadding = configuration.getMessagePadding();
+		noteMargin = configuration.getNoteMargin();
+		notePadding = configuration.getNotePadding();
+		rightMargin = configuration.getRightMargin();
+		selfMessageHorizontalSpace = configuration.getSelfMessageHorizontalSpace();
+		separatorBottomMargin = configuration.getSeparatorBottomMargin();
+		separatorTopMargin = configuration.getSeparatorTopMargin();
+		shouldShadowParticipants = configuration.getShouldShadowParticipants();
+		spaceBeforeActivation = configuration.getSpaceBeforeActivation();
+		spaceBeforeAnswerToSelf = configuration.getSpaceBeforeAnswerToSelf();
+		spaceBeforeConstruction = configuration.getSpaceBeforeConstruction();
+		spaceBeforeSelfMessage = configuration.getSpaceBeforeSelfMessage();
+		subLifelineWidth = configuration.getSubLifelineWidth();
+		upperMargin = configuration.getUpperMargin();
+		tc0 = configuration.getTc0();
+		tc1 = configuration.getTc1();
+		tc2 = configuration.getTc2();
+		tc3 = configuration.getTc3();
+		tc4 = configuration.getTc4();
+		tc5 = configuration.getTc5();
+		tc6 = configuration.getTc6();
+		tc7 = configuration.getTc7();
+		tc8 = configuration.getTc8();
+		tc9 = configuration.getTc9();
+		colorizeThreads = configuration.isColorizeThreads();
+		opaqueMessageText = configuration.isOpaqueMessageText();
+		allowMessageProperties = configuration.isAllowMessageProperties();
+		threaded = configuration.isThreaded();
+		threadNumbersVisible = configuration.isThreadNumbersVisible();
+		returnArrowVisible = configuration.isReturnArrowVisible();
+		verticallySplit = configuration.isVerticallySplit();
+	}
+
+	public int getActorWidth() {
+		return actorWidth;
+	}
+
+	public int getArrowSize() {
+		return arrowSize;
+	}
+
+	public int getDestructorWidth() {
+		return destructorWidth;
+	}
+
+	public Font getFont() {
+		return font;
+	}
+
+	public int getFragmentMargin() {
+		return fragmentMargin;
+	}
+
+	public int getFragmentPadding() {
+		return fragmentPadding;
+	}
+
+	public int getFragmentTextPadding() {
+		return fragmentTextPadding;
+	}
+
+	public int getGlue() {
+		return glue;
+	}
+
+	public int getHeadHeight() {
+		return headHeight;
+	}
+
+	public int getHeadLabelPadding() {
+		return headLabelPadding;
+	}
+
+	public int getHeadWidth() {
+		return headWidth;
+	}
+
+	public int getInitialSpace() {
+		return initialSpace;
+	}
+
+	public int getLeftMargin() {
+		return leftMargin;
+	}
+
+	public boolean isLineWrap() {
+		return lineWrap;
+	}
+
+	public int getLowerMargin() {
+		return lowerMargin;
+	}
+
+	public int getMainLifelineWidth() {
+		return mainLifelineWidth;
+	}
+
+	public int getMessageLabelSpace() {
+		return messageLabelSpace;
+	}
+
+	public int getMessagePadding() {
+		return messagePadding;
+	}
+
+	public int getNoteMargin() {
+		return noteMargin;
+	}
+
+	public int getNotePadding() {
+		return notePadding;
+	}
+
+	public int getRightMargin() {
+		return rightMargin;
+	}
+
+	public int getSelfMessageHorizontalSpace() {
+		return selfMessageHorizontalSpace;
+	}
+
+	public int getSeparatorBottomMargin() {
+		return separatorBottomMargin;
+	}
+
+	public int getSeparatorTopMargin() {
+		return separatorTopMargin;
+	}
+
+	public boolean getShouldShadowParticipants() {
+		return shouldShadowParticipants;
+	}
+
+	public int getSpaceBeforeActivation() {
+		return spaceBeforeActivation;
+	}
+
+	public int getSpaceBeforeAnswerToSelf() {
+		return spaceBeforeAnswerToSelf;
+	}
+
+	public int getSpaceBeforeConstruction() {
+		return spaceBeforeConstruction;
+	}
+
+	public int getSpaceBeforeSelfMessage() {
+		return spaceBeforeSelfMessage;
+	}
+
+	public int getSubLifelineWidth() {
+		return subLifelineWidth;
+	}
+
+	public int getUpperMargin() {
+		return upperMargin;
+	}
+
+	public Color getTc0() {
+		return tc0;
+	}
+
+	public Color getTc1() {
+		return tc1;
+	}
+
+	public Color getTc2() {
+		return tc2;
+	}
+
+	public Color getTc3() {
+		return tc3;
+	}
+
+	public Color getTc4() {
+		return tc4;
+	}
+
+	public Color getTc5() {
+		return tc5;
+	}
+
+	public Color getTc6() {
+		return tc6;
+	}
+
+	public Color getTc7() {
+		return tc7;
+	}
+
+	public Color getTc8() {
+		return tc8;
+	}
+
+	public Color getTc9() {
+		return tc9;
+	}
+
+	public boolean isColorizeThreads() {
+		return colorizeThreads;
+	}
+
+	public boolean isOpaqueMessageText() {
+		return opaqueMessageText;
+	}
+
+	public boolean isAllowMessageProperties() {
+		return allowMessageProperties;
+	}
+
+	public boolean isThreaded() {
+		return threaded;
+	}
+
+	public boolean isThreadNumbersVisible() {
+		return threadNumbersVisible;
+	}
+
+	public boolean isReturnArrowVisible() {
+		return returnArrowVisible;
+	}
+
+	public boolean isVerticallySplit() {
+		return verticallySplit;
+	}
+
+	public void setActorWidth(int actorWidth) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setArrowSize(int arrowSize) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setColorizeThreads(boolean colorizeThreads) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setDestructorWidth(int destructorWidth) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setFont(Font font) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setFragmentMargin(int fragmentMargin) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setFragmentPadding(int commentPadding) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setFragmentTextPadding(int commentTextPadding) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setGlue(int glue) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setHeadHeight(int headHeight) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setHeadLabelPadding(int headLabelPadding) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setHeadWidth(int headWidth) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setInitialSpace(int initialSpace) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setLeftMargin(int leftMargin) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setLineWrap(boolean lineWrap) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setLowerMargin(int lowerMargin) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setMainLifelineWidth(int width) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setMessageLabelSpace(int messageLabelSpace) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setMessagePadding(int messagePadding) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setReturnArrowVisible(boolean visible) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setNoteMargin(int noteMargin) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setNotePadding(int notePadding) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setOpaqueMessageText(boolean opaqueMessageText) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setAllowMessageProperties(boolean on) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setRightMargin(int rightMargin) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setSelfMessageHorizontalSpace(int selfMessageHorizontalSpace) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setSeparatorBottomMargin(int beforeFragmentText) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setSeparatorTopMargin(int beforeSeparator) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setShouldShadowParticipants(boolean shouldShadowParticipants) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setSpaceBeforeActivation(int spaceBeforeActivation) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setSpaceBeforeAnswerToSelf(int spaceBeforeAnswerToSelf) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setSpaceBeforeConstruction(int spaceBeforeConstruction) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setSpaceBeforeSelfMessage(int spaceBeforeSelfMessage) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setSubLifelineWidth(int subLifelineWidth) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setTc0(Color tc0) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setTc1(Color tc1) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setTc2(Color tc2) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setTc3(Color tc3) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setTc4(Color tc4) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setTc5(Color tc5) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setTc6(Color tc6) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setTc7(Color tc7) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setTc8(Color tc8) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setTc9(Color tc9) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setThreaded(boolean threaded) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setThreadNumbersVisible(boolean threadNumbersVisible) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setUpperMargin(int upperMargin) {
+		throw new UnsupportedOperationException();
+	}
+
+	public void setVerticallySplit(boolean verticallySplit) {
+		throw new UnsupportedOperationException();
+	}
+}
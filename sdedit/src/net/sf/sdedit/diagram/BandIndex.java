@@ -0,0 +1,159 @@
+// Copyright (c) 2006 - 2008, Markus Strauch.
+// All rights reserved.
+// 
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright notice, 
+// this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright notice, 
+// this list of conditions and the following disclaimer in the documentation 
+// and/or other materials provided with the distribution.
+// 
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.sf.sdedit.diagram;
+
+import java.util.Arrays;
+
+/**
+ * A <tt>BandIndex</tt> is a uniform grid of horizontal bands over a sequence
+ * of elements, each of which covers a vertical interval. Each band knows the
+ * ascending indices of the elements whose interval overlaps it, so the
+ * elements near a point or a rectangle can be found without looking at all
+ * elements.
+ * 
+ * @author Markus Strauch
+ * 
+ */
+final class BandIndex {
+
+	private static final int MIN_BAND_HEIGHT = 32;
+
+	// the average number of elements a band should start in
+	private static final int ELEMENTS_PER_BAND = 8;
+
+	private static final int[] NONE = new int[0];
+
+	private final int top;
+
+	private final int bandHeight;
+
+	private final int count;
+
+	// for each band the ascending indices of the elements overlapping the band
+	private final int[][] bands;
+
+	/**
+	 * Creates a new <tt>BandIndex</tt> over elements, where the i-th element
+	 * covers the vertical interval from <tt>from[i]</tt> to <tt>to[i]</tt>.
+	 * 
+	 * @param from
+	 *            the upper ends of the intervals
+	 * @param to
+	 *            the lower ends of the intervals
+	 */
+	BandIndex(int[] from, int[] to) {
+		int n = from.length;
+		int min = Integer.MAX_VALUE;
+		int max = Integer.MIN_VALUE;
+		for (int i = 0; i < n; i++) {
+			min = Math.min(min, from[i]);
+			max = Math.max(max, to[i]);
+		}
+		if (n == 0) {
+			min = max = 0;
+		}
+		top = min;
+		int number = Math.max(1, n / ELEMENTS_PER_BAND);
+		bandHeight = Math.max(MIN_BAND_HEIGHT, (max - min) / number + 1);
+		count = (max - min) / bandHeight + 1;
+		int[] sizes = new int[count];
+		for (int i = 0; i < n; i++) {
+			for (int b = band(from[i]); b <= band(to[i]); b++) {
+				sizes[b]++;
+			}
+		}
+		bands = new int[count][];
+		for (int b = 0; b < count; b++) {
+			bands[b] = new int[sizes[b]];
+			sizes[b] = 0;
+		}
+		for (int i = 0; i < n; i++) {
+			for (int b = band(from[i]); b <= band(to[i]); b++) {
+				bands[b][sizes[b]++] = i;
+			}
+		}
+	}
+
+	private int band(int y) {
+		return Math.max(0, Math.min(count - 1, (y - top) / bandHeight));
+	}
+
+	/**
+	 * Returns the ascending indices of the elements that may cover the given
+	 * vertical position. The array must not be modified.
+	 * 
+	 * @param y
+	 *            a vertical position
+	 * @return the indices of the elements that may cover the position
+	 */
+	int[] at(int y) {
+		if (y < top || y >= top + count * bandHeight) {
+			return NONE;
+		}
+		return bands[band(y)];
+	}
+
+	/**
+	 * Returns the ascending indices, without duplicates, of the elements that
+	 * may overlap the vertical interval between the given positions. The array
+	 * must not be modified.
+	 * 
+	 * @param from
+	 *            the upper end of the interval
+	 * @param to
+	 *            the lower end of the interval
+	 * @return the indices of the elements that may overlap the interval
+	 */
+	int[] between(int from, int to) {
+		int first = band(from);
+		int last = band(to);
+		if (first == last) {
+			return bands[first];
+		}
+		int size = 0;
+		for (int b = first; b <= last; b++) {
+			size += bands[b].length;
+		}
+		int[] candidates = new int[size];
+		size = 0;
+		for (int b = first; b <= last; b++) {
+			System.arraycopy(bands[b], 0, candidates, size, bands[b].length);
+			size += bands[b].length;
+		}
+		Arrays.sort(candidates);
+		int distinct = 0;
+		for (int j = 0; j < size; j++) {
+			if (j == 0 || candidates[j] != candidates[j - 1]) {
+				candidates[distinct++] = candidates[j];
+			}
+		}
+		if (distinct < size) {
+			int[] copy = new int[distinct];
+			System.arraycopy(candidates, 0, copy, 0, distinct);
+			candidates = copy;
+		}
+		return candidates;
+	}
+}
@@ -0,0 +1,86 @@
+// Copyright (c) 2006 - 2008, Markus Strauch.
+// All rights reserved.
+// 
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright notice, 
+// this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright notice, 
+// this list of conditions and the following disclaimer in the documentation 
+// and/or other materials provided with the distribution.
+// 
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.sf.sdedit.diagram;
+
+/**
+ * A <tt>CancellationToken</tt> is used for cancelling the generation of a
+ * diagram from another thread (see
+ * {@linkplain Diagram#setCancellationToken(CancellationToken)}). The
+ * generation is not interrupted instantly, but as soon as the diagram checks
+ * the token, which it does before reading a line and between the phases of
+ * the layout.
+ * <p>
+ * A token can also have a deadline, then it counts as cancelled as soon as
+ * the deadline has passed, so the generation of a diagram can be limited in
+ * time.
+ * 
+ * @author Markus Strauch
+ */
+public final class CancellationToken {
+
+	private volatile boolean cancelled;
+
+	private final long deadline;
+
+	public CancellationToken() {
+		this(Long.MAX_VALUE);
+	}
+
+	/**
+	 * Creates a new token that is cancelled when the given deadline has
+	 * passed.
+	 * 
+	 * @param deadline
+	 *            the time (as returned by
+	 *            <tt>System.currentTimeMillis()</tt>) when the token is
+	 *            cancelled
+	 */
+	public CancellationToken(long deadline) {
+		cancelled = false;
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Cancels the generation of the diagrams using this token.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Returns true if {@linkplain #cancel()} has been called or the deadline
+	 * has passed.
+	 * 
+	 * @return true if {@linkplain #cancel()} has been called or the deadline
+	 *         has passed
+	 */
+	public boolean isCancelled() {
+		if (!cancelled && deadline != Long.MAX_VALUE
+				&& System.currentTimeMillis() > deadline) {
+			cancelled = true;
+		}
+		return cancelled;
+	}
+}
@@ -0,0 +1,94 @@
+// Copyright (c) 2006 - 2008, Markus Strauch.
+// All rights reserved.
+// 
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright notice, 
+// this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright notice, 
+// this list of conditions and the following disclaimer in the documentation 
+// and/or other materials provided with the distribution.
+// 
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.sf.sdedit.diagram;
+
+import java.util.List;
+import java.util.Map;
+
+import net.sf.sdedit.message.Message;
+
+/**
+ * A <tt>Checkpoint</tt> records the state of the generation of a
+ * {@linkplain Diagram} between two message lines (see
+ * {@linkplain Diagram#takeCheckpoint()}), so the diagram can be restored to
+ * that state after the lines that follow have changed (see
+ * {@linkplain Diagram#restore(Checkpoint)}).
+ * <p>
+ * The drawable objects created before the checkpoint are not copied, as they
+ * are kept when the diagram is restored. Only the things that can still change
+ * are recorded: the answers on the thread stacks, the states of the
+ * lifelines, the vertical position, the open fragments and notes, and how
+ * many drawable objects the paint device has got.
+ * 
+ * @author Markus Strauch
+ */
+public final class Checkpoint {
+
+	final Diagram diagram;
+
+	int verticalPosition;
+
+	int extension;
+
+	int callerThread;
+
+	/**
+	 * Copies of the thread stacks, <tt>null</tt> for threads that have been
+	 * stopped.
+	 */
+	List<List<Message>> threadStacks;
+
+	List<Lifeline> first;
+
+	List<String> threadStates;
+
+	/**
+	 * The root lifelines that have not been destroyed.
+	 */
+	List<Lifeline> lifelines;
+
+	Map<String, Map<String, Lifeline>> mnemonicMap;
+
+	/**
+	 * The states of all root and sub lifelines.
+	 */
+	List<Lifeline.State> lifelineStates;
+
+	FragmentManager.State fragmentManagerState;
+
+	NoteManager.State noteManagerState;
+
+	PaintDevice.State paintDeviceState;
+
+	MessageProcessor.State processorState;
+
+	int lines;
+
+	int messages;
+
+	Checkpoint(Diagram diagram) {
+		this.diagram = diagram;
+	}
+}
@@ -28,16 +28,22 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
 
 import net.sf.sdedit.Constants;
 import net.sf.sdedit.config.Configuration;
+import net.sf.sdedit.config.ConfigurationSnapshot;
+import net.sf.sdedit.diagram.DiagramMetrics.Phase;
 import net.sf.sdedit.drawable.Arrow;
 import net.sf.sdedit.drawable.Drawable;
+import net.sf.sdedit.drawable.ExtensibleDrawable;
 import net.sf.sdedit.drawable.Fragment;
+import net.sf.sdedit.drawable.SequenceElement;
 import net.sf.sdedit.drawable.Text;
 import net.sf.sdedit.error.SemanticError;
 import net.sf.sdedit.error.SyntaxError;
@@ -105,6 +111,13 @@ public final class Diagram implements Constants {
 	 */
 	private int verticalPosition;
 
+	/**
+	 * The total amount by which the lifelines have been extended. The views
+	 * of the lifelines are not extended one by one, they compare this amount
+	 * to the one they have last been brought up to date with.
+	 */
+	private int extension;
+
 	/**
 	 * We read the object and message specifications from a DiagramDataProvider.
 	 */
@@ -138,6 +151,12 @@ public final class Diagram implements Constants {
 	 */
 	private final Bijection<Drawable, Object> drawableBijection;
 
+	/**
+	 * The times spent in the phases of the generation and the size of the
+	 * diagram.
+	 */
+	private final DiagramMetrics metrics;
+
 	/**
 	 * The number of the thread where the current message is processed.
 	 */
@@ -170,10 +189,32 @@ public final class Diagram implements Constants {
 	private final MessageProcessor processor;
 
 	private boolean finished;
+
+	/**
+	 * Flag denoting if the generation of the diagram has been suspended by the
+	 * data provider (see {@linkplain #suspend()}).
+	 */
+	private boolean suspended;
+
+	/**
+	 * The token by which the generation of the diagram can be cancelled, or
+	 * <tt>null</tt>.
+	 */
+	private CancellationToken cancellationToken;
+
+	/**
+	 * The frame around the diagram, if there is a title.
+	 */
+	private Fragment frame;
+
+	/**
+	 * The text displaying the description of the diagram, if there is one.
+	 */
+	private Text descriptionText;
 	
 	// These attributes are here for performance reasons
-	// The JIT cannot inline calls to the corresponding configuration
-	// get methods because the configuration object is synthesized
+	// (they date from the time when conf was the synthesized data object
+	// of a Bean, now conf is a ConfigurationSnapshot with plain fields)
 	public final int arrowSize;
 	
 	public final int messagePadding;
@@ -194,7 +235,8 @@ public final class Diagram implements Constants {
 	 * by the given <tt>DiagramDataProvider</tt>.
 	 * 
 	 * @param configuration
-	 *            the configuration of the diagram
+	 *            the configuration of the diagram; changes made to it after
+	 *            the diagram has been created do not affect the diagram
 	 * @param provider
 	 *            for reading the object and message specifications
 	 * @param paintDevice
@@ -202,16 +244,16 @@ public final class Diagram implements Constants {
 	 */
 	public Diagram(Configuration configuration, DiagramDataProvider provider,
 			PaintDevice paintDevice) {
-		arrowSize = configuration.getArrowSize();
-		messagePadding = configuration.getMessagePadding();
-		subLifelineWidth = configuration.getMessagePadding();
-		mainLifelineWidth = configuration.getMainLifelineWidth();
-		messageLabelSpace = configuration.getMessageLabelSpace();
-		returnArrowVisible = configuration.isReturnArrowVisible();
+		conf = ConfigurationSnapshot.of(configuration);
+		arrowSize = conf.getArrowSize();
+		messagePadding = conf.getMessagePadding();
+		subLifelineWidth = conf.getMessagePadding();
+		mainLifelineWidth = conf.getMainLifelineWidth();
+		messageLabelSpace = conf.getMessageLabelSpace();
+		returnArrowVisible = conf.isReturnArrowVisible();
 		this.paintDevice = paintDevice;
 		lifelineMap = new HashMap<String, Lifeline>();
 		lifelineList = new ArrayList<Lifeline>();
-		conf = configuration;
 		paintDevice.setDiagram(this);
 		verticalPosition = 0;
 		first = new ArrayList<Lifeline>();
@@ -220,6 +262,7 @@ public final class Diagram implements Constants {
 		threadStacks = new ArrayList<LinkedList<Message>>();
 		threadStates = new ArrayList<String>();
 		drawableBijection = new Bijection<Drawable, Object>();
+		metrics = new DiagramMetrics();
 		this.threaded = conf.isThreaded();
 		if (!threaded) {
 			/* spawn the only single thread */
@@ -230,12 +273,9 @@ public final class Diagram implements Constants {
 		fragmentManager = new FragmentManager(this);
 		processor = new MessageProcessor(this);
 		finished = false;
-		threadColors = new Color[] { configuration.getTc0(),
-				configuration.getTc1(), configuration.getTc2(),
-				configuration.getTc3(), configuration.getTc4(),
-				configuration.getTc5(), configuration.getTc6(),
-				configuration.getTc7(), configuration.getTc8(),
-				configuration.getTc9(), };
+		threadColors = new Color[] { conf.getTc0(), conf.getTc1(),
+				conf.getTc2(), conf.getTc3(), conf.getTc4(), conf.getTc5(),
+				conf.getTc6(), conf.getTc7(), conf.getTc8(), conf.getTc9(), };
 
 	}
 
@@ -250,16 +290,16 @@ public final class Diagram implements Constants {
 	 */
 	public void generate() throws SemanticError, SyntaxError {
 
-		Fragment frame = null;
-		Text text = null;
+		long start = System.nanoTime();
+
 		String title = provider.getTitle();
 
 		String description[] = provider.getDescription();
 		if (description != null) {
-			text = new Text(description, paintDevice);
-			text.setTop(conf.getUpperMargin());
-			text.setLeft(conf.getLeftMargin());
-			verticalPosition = text.getBottom() + 3;
+			descriptionText = new Text(description, paintDevice);
+			descriptionText.setTop(conf.getUpperMargin());
+			descriptionText.setLeft(conf.getLeftMargin());
+			verticalPosition = descriptionText.getBottom() + 3;
 		} else {
 			verticalPosition = conf.getUpperMargin();
 		}
@@ -272,6 +312,7 @@ public final class Diagram implements Constants {
 
 		readObjects();
 		if (lifelineList.isEmpty()) {
+			record(Phase.PARSE, start);
 			return;
 		}
 
@@ -298,36 +339,355 @@ public final class Diagram implements Constants {
 			readMessages();
 
 		} finally {
+			record(Phase.PARSE, start);
+			if (!suspended) {
+				complete();
+			}
+		}
+	}
 
-			fragmentManager.finishFragments();
+	/**
+	 * Suspends the generation of the diagram. This method is called by the
+	 * <tt>DiagramDataProvider</tt> from inside its <tt>advance()</tt> method,
+	 * which must then return <tt>false</tt>. {@linkplain #generate()} returns
+	 * without finishing the diagram. The diagram can be finished later by
+	 * {@linkplain #resume()}, typically after the provider has been given more
+	 * data.
+	 */
+	public void suspend() {
+		suspended = true;
+	}
+
+	/**
+	 * Sets the token by which the generation of this diagram can be cancelled
+	 * from another thread. When the token has been cancelled,
+	 * {@linkplain #generate()}, {@linkplain #resume()} and
+	 * {@linkplain #layout()} throw a <tt>CancellationException</tt> as soon
+	 * as they check it, before reading a line or between the phases of the
+	 * layout. If this happens while messages are read, the generation is
+	 * suspended before the next line, as if the data provider had suspended
+	 * it (see {@linkplain #suspend()}), so the diagram can be resumed with a
+	 * new token later. Otherwise the diagram is unusable.
+	 * 
+	 * @param cancellationToken
+	 *            the token, or <tt>null</tt> if the generation cannot be
+	 *            cancelled
+	 */
+	public void setCancellationToken(CancellationToken cancellationToken) {
+		this.cancellationToken = cancellationToken;
+	}
 
-			if (getNumberOfLifelines() > 0) {
+	/**
+	 * Throws a <tt>CancellationException</tt> if the generation of this
+	 * diagram has been cancelled. This is also called by the paint device
+	 * while it is being closed.
+	 */
+	void checkCancelled() {
+		if (cancellationToken != null && cancellationToken.isCancelled()) {
+			throw new CancellationException(
+					"the generation of the diagram has been cancelled");
+		}
+	}
 
-				paintDevice.computeAxes(conf.getLeftMargin() + 6
-						+ getLifelineAt(0).getHead().getWidth() / 2);
-				paintDevice.computeBounds();
-				
-				// fixes bug 2019730 (notes appear outside of diagram)
-				for (Lifeline lifeline : getAllLifelines()) {
-					noteManager.closeNote(lifeline.getName());
-				}
-				//
-				
-				noteManager.computeArrowAssociations();
-
-				if (frame != null) {
-					frame.setLeft(conf.getLeftMargin());
-					frame.setRight(paintDevice.getWidth()
-							- conf.getRightMargin() + 6);
-					frame.setBottom(verticalPosition + 4);
-					paintDevice.addOtherDrawable(frame);
-				}
-				if (text != null) {
-					paintDevice.addOtherDrawable(text);
+	/**
+	 * Returns true if the generation of the diagram has been suspended (see
+	 * {@linkplain #suspend()}) and not yet resumed.
+	 * 
+	 * @return true if the generation of the diagram has been suspended
+	 */
+	public boolean isSuspended() {
+		return suspended;
+	}
+
+	/**
+	 * Continues the generation of a diagram that has been suspended, reading
+	 * the messages that the data provider delivers from now on.
+	 * 
+	 * @throws SyntaxError
+	 *             if a message or object specification is syntactically wrong
+	 * @throws SemanticError
+	 *             if a message or object specification is semantically wrong
+	 */
+	public void resume() throws SemanticError, SyntaxError {
+		if (!suspended) {
+			throw new IllegalStateException(
+					"the generation of the diagram has not been suspended");
+		}
+		suspended = false;
+		finished = false;
+		detachFrame();
+		long start = System.nanoTime();
+		try {
+			readMessages();
+		} finally {
+			record(Phase.PARSE, start);
+			if (!suspended) {
+				complete();
+			}
+		}
+	}
+
+	/**
+	 * Records the current state of the generation of this diagram, so it can
+	 * be restored later (see {@linkplain #restore(Checkpoint)}). Like
+	 * {@linkplain #suspend()}, this method is called by the
+	 * <tt>DiagramDataProvider</tt> from inside its <tt>advance()</tt> method,
+	 * before it reads the next message line.
+	 * 
+	 * @return a checkpoint of this diagram
+	 */
+	public Checkpoint takeCheckpoint() {
+		Checkpoint checkpoint = new Checkpoint(this);
+		checkpoint.verticalPosition = verticalPosition;
+		checkpoint.extension = extension;
+		checkpoint.callerThread = callerThread;
+		checkpoint.threadStacks = new ArrayList<List<Message>>();
+		for (LinkedList<Message> stack : threadStacks) {
+			checkpoint.threadStacks.add(stack == null ? null
+					: new ArrayList<Message>(stack));
+		}
+		checkpoint.first = new ArrayList<Lifeline>(first);
+		checkpoint.threadStates = new ArrayList<String>(threadStates);
+		checkpoint.lifelines = new ArrayList<Lifeline>();
+		checkpoint.lifelineStates = new ArrayList<Lifeline.State>();
+		for (Lifeline lifeline : lifelineList) {
+			if (lifelineMap.get(lifeline.getName()) == lifeline) {
+				checkpoint.lifelines.add(lifeline);
+			}
+			for (Lifeline line : lifeline.getAllLifelines()) {
+				checkpoint.lifelineStates.add(line.saveState());
+			}
+		}
+		checkpoint.mnemonicMap = copy(mnemonicMap);
+		checkpoint.fragmentManagerState = fragmentManager.saveState();
+		checkpoint.noteManagerState = noteManager.saveState();
+		checkpoint.paintDeviceState = paintDevice.saveState();
+		checkpoint.processorState = processor.saveState();
+		checkpoint.lines = metrics.getLines();
+		checkpoint.messages = metrics.getMessages();
+		return checkpoint;
+	}
+
+	/**
+	 * Restores this diagram to the state it was in when the given checkpoint
+	 * was taken, no matter how far the generation has got since then. The
+	 * drawable objects created before the checkpoint are kept, the ones
+	 * created afterwards are removed. The generation is suspended then, so it
+	 * can be resumed (see {@linkplain #resume()}) after the data provider has
+	 * been reset to the line where the checkpoint was taken. A checkpoint can
+	 * be used for restoring the diagram more than once.
+	 * 
+	 * @param checkpoint
+	 *            a checkpoint taken from this diagram
+	 */
+	public void restore(Checkpoint checkpoint) {
+		if (checkpoint.diagram != this) {
+			throw new IllegalArgumentException(
+					"the checkpoint has been taken from another diagram");
+		}
+		detachFrame();
+		for (SequenceElement elem : checkpoint.paintDeviceState.restore()) {
+			drawableBijection.remove(elem);
+		}
+		for (Lifeline.State state : checkpoint.lifelineStates) {
+			state.restore();
+		}
+		lifelineMap.clear();
+		for (Lifeline lifeline : checkpoint.lifelines) {
+			lifelineMap.put(lifeline.getName(), lifeline);
+		}
+		threadStacks.clear();
+		for (List<Message> stack : checkpoint.threadStacks) {
+			if (stack == null) {
+				threadStacks.add(null);
+			} else {
+				for (Message answer : stack) {
+					answer.discardArrow();
 				}
+				threadStacks.add(new LinkedList<Message>(stack));
 			}
+		}
+		first.clear();
+		first.addAll(checkpoint.first);
+		threadStates.clear();
+		threadStates.addAll(checkpoint.threadStates);
+		mnemonicMap.clear();
+		mnemonicMap.putAll(copy(checkpoint.mnemonicMap));
+		callerThread = checkpoint.callerThread;
+		verticalPosition = checkpoint.verticalPosition;
+		extension = checkpoint.extension;
+		checkpoint.fragmentManagerState.restore();
+		checkpoint.noteManagerState.restore();
+		checkpoint.processorState.restore();
+		metrics.restore(checkpoint.lines, checkpoint.messages);
+		suspended = true;
+		finished = false;
+	}
+
+	private static Map<String, Map<String, Lifeline>> copy(
+			Map<String, Map<String, Lifeline>> mnemonicMap) {
+		Map<String, Map<String, Lifeline>> copy = new HashMap<String, Map<String, Lifeline>>();
+		for (Map.Entry<String, Map<String, Lifeline>> entry : mnemonicMap
+				.entrySet()) {
+			copy.put(entry.getKey(), new HashMap<String, Lifeline>(entry
+					.getValue()));
+		}
+		return copy;
+	}
+
+	/**
+	 * Computes the positions of the drawable objects of a diagram the
+	 * generation of which has been suspended (see {@linkplain #suspend()}) and
+	 * closes the paint device, so the part of the diagram that has been
+	 * generated so far can be displayed. Unlike finishing the diagram, this
+	 * neither sends pending answers nor closes fragments and notes, so the
+	 * generation can be resumed afterwards (see {@linkplain #resume()}) and
+	 * this method can be called again whenever it has been suspended again.
+	 */
+	public void layout() {
+		if (!suspended) {
+			throw new IllegalStateException(
+					"the generation of the diagram has not been suspended");
+		}
+		checkCancelled();
+		long start = System.nanoTime();
+		fragmentManager.layoutClosingFragments();
+		record(Phase.FRAGMENTS, start);
+		arrange(false);
+		finished = true;
+		close();
+	}
+
+	/**
+	 * Finishes the fragments, computes the positions of all drawable objects
+	 * and closes the paint device. When the diagram is only being checked
+	 * (see {@linkplain PaintDevice#isValidating()}), nothing of this is
+	 * necessary.
+	 */
+	private void complete() {
+		checkCancelled();
+		if (paintDevice.isValidating()) {
+			metrics.setCounts(lifelineList.size(), 0, 0, 0);
 			finished = true;
-			paintDevice.close();
+			return;
+		}
+		long start = System.nanoTime();
+		fragmentManager.finishFragments();
+		record(Phase.FRAGMENTS, start);
+		checkCancelled();
+		if (getNumberOfLifelines() > 0) {
+			arrange(true);
+		}
+		finished = true;
+		close();
+	}
+
+	/**
+	 * Closes the paint device and counts the lifelines, sub lifelines,
+	 * drawable objects and fragments of the diagram for its
+	 * {@linkplain DiagramMetrics}.
+	 */
+	private void close() {
+		checkCancelled();
+		long start = System.nanoTime();
+		paintDevice.close();
+		record(Phase.INDEX, start);
+		Set<Lifeline> subLifelines = new HashSet<Lifeline>();
+		for (Lifeline lifeline : lifelineList) {
+			for (ExtensibleDrawable view : lifeline.getAllViews()) {
+				if (view.getLifeline() != lifeline) {
+					subLifelines.add(view.getLifeline());
+				}
+			}
+		}
+		int drawables = 0;
+		int fragments = 0;
+		for (Drawable drawable : paintDevice) {
+			drawables++;
+			if (drawable instanceof Fragment && drawable != frame) {
+				fragments++;
+			}
+		}
+		metrics.setCounts(lifelineList.size(), subLifelines.size(), drawables,
+				fragments);
+	}
+
+	/**
+	 * Adds the time that has passed since <tt>start</tt> to the time spent in
+	 * the given phase and returns the current time.
+	 * 
+	 * @param phase
+	 *            the phase that has ended
+	 * @param start
+	 *            the time when the phase started, in nanoseconds
+	 * @return the current time, in nanoseconds
+	 */
+	private long record(Phase phase, long start) {
+		long now = System.nanoTime();
+		metrics.addTime(phase, now - start);
+		return now;
+	}
+
+	/**
+	 * Computes the positions of all drawable objects and adds the frame and
+	 * the description text to the paint device. This can be done repeatedly
+	 * for a diagram the generation of which is suspended and resumed (see
+	 * {@linkplain #layout()}), so the frame and the description text are
+	 * removed first if they have been added before (see
+	 * {@linkplain #detachFrame()}).
+	 * 
+	 * @param closeNotes
+	 *            flag denoting if all notes are to be closed, which is done
+	 *            when the diagram is finished
+	 */
+	private void arrange(boolean closeNotes) {
+		detachFrame();
+		materializeLifelines();
+		checkCancelled();
+
+		long time = System.nanoTime();
+		paintDevice.computeAxes(conf.getLeftMargin() + 6
+				+ getLifelineAt(0).getHead().getWidth() / 2);
+		time = record(Phase.LAYOUT, time);
+		checkCancelled();
+		paintDevice.computeBounds();
+		time = record(Phase.BOUNDS, time);
+		checkCancelled();
+
+		if (closeNotes) {
+			// fixes bug 2019730 (notes appear outside of diagram)
+			for (Lifeline lifeline : getAllLifelines()) {
+				noteManager.closeNote(lifeline.getName());
+			}
+			//
+		}
+
+		noteManager.computeArrowAssociations();
+
+		if (frame != null) {
+			frame.setLeft(conf.getLeftMargin());
+			frame.setRight(paintDevice.getWidth() - conf.getRightMargin() + 6);
+			frame.setBottom(verticalPosition + 4);
+			paintDevice.addOtherDrawable(frame);
+		}
+		if (descriptionText != null) {
+			paintDevice.addOtherDrawable(descriptionText);
+		}
+		record(Phase.NOTES, time);
+	}
+
+	/**
+	 * Removes the frame and the description text from the paint device if
+	 * they have been added by {@linkplain #arrange(boolean)}, so the drawable
+	 * objects added while the generation goes on follow the ones added
+	 * before.
+	 */
+	private void detachFrame() {
+		if (frame != null) {
+			paintDevice.removeOtherDrawable(frame);
+		}
+		if (descriptionText != null) {
+			paintDevice.removeOtherDrawable(descriptionText);
 		}
 	}
 
@@ -346,7 +706,9 @@ public final class Diagram implements Constants {
 	 *             if an object is declared twice
 	 */
 	private void readObjects() throws SyntaxError, SemanticError {
+		checkCancelled();
 		while (provider.advance()) {
+			metrics.addLine();
 			Lifeline lifeline = provider.nextObject();
 			if (lifeline == null) {
 				return;
@@ -359,7 +721,24 @@ public final class Diagram implements Constants {
 				drawableBijection.add(lifeline.getHead(), provider.getState());
 			}
 			addLifeline(lifeline);
+			checkCancelled();
+		}
+	}
+
+	/**
+	 * Lets the data provider advance to the next message line. If the
+	 * generation has been cancelled, it is suspended instead, before the
+	 * provider reads anything, and a <tt>CancellationException</tt> is thrown,
+	 * so the diagram can be resumed later.
+	 * 
+	 * @return the result of the provider's <tt>advance()</tt> method
+	 */
+	private boolean advanceToMessage() {
+		if (cancellationToken != null && cancellationToken.isCancelled()) {
+			suspend();
+			checkCancelled();
 		}
+		return provider.advance();
 	}
 
 	/**
@@ -378,13 +757,15 @@ public final class Diagram implements Constants {
 	 */
 	private void readMessages() throws SyntaxError, SemanticError {
 
-		while (provider.advance()) {
+		while (advanceToMessage()) {
+			metrics.addLine();
 			if (fragmentManager.readFragments()) {
 				continue;
 			}
 
 			if (!noteManager.step()) {
 				MessageData data = provider.nextMessage();
+				metrics.addMessage();
 				noteManager.closeNote(data.getCaller());
 				String[] callees = data.getCallees();
 				if (callees.length == 1) {
@@ -454,6 +835,9 @@ public final class Diagram implements Constants {
 			fragmentManager.clearSectionLabel();
 
 		}
+		if (suspended) {
+			return;
+		}
 		finish();
 		for (Lifeline line : getLifelines()) {
 			if (!line.isAlwaysActive()) {
@@ -462,6 +846,16 @@ public final class Diagram implements Constants {
 		}
 	}
 
+	/**
+	 * Returns the times spent in the phases of the generation of this diagram
+	 * and the numbers of lines, messages, lifelines etc. it consists of.
+	 * 
+	 * @return the metrics of this diagram
+	 */
+	public DiagramMetrics getMetrics() {
+		return metrics;
+	}
+
 	public int getNextFreeNoteNumber() {
 		return noteManager.getNextFreeNoteNumber();
 	}
@@ -513,24 +907,40 @@ public final class Diagram implements Constants {
 			first.set(thread, lifeline);
 			lifeline.setThread(thread);
 		}
+		lifeline.setPosition(lifelineList.size());
 		lifelineList.add(lifeline);
 		lifelineMap.put(lifeline.getName(), lifeline);
+		lifeline.updateExtension();
 		return true;
 	}
 
+	/**
+	 * Moves the current vertical position down by the given amount and
+	 * extends the views of all lifelines that are alive accordingly. This
+	 * takes constant time, a view is actually extended only when it is needed
+	 * (see {@linkplain Lifeline#getView()}) or when the layout is computed.
+	 * 
+	 * @param amount
+	 *            the amount of pixels by which the lifelines are extended
+	 */
 	public final void extendLifelines(final int amount) {
-		for (final Lifeline lifeline : getLifelines()) {
-			if (lifeline.isAlive()) {
-				for (final Lifeline line : lifeline.getAllLifelines()) {
-					line.getView().extend(amount);
-				}
+		extension += amount;
+		verticalPosition += amount;
+	}
+
+	/**
+	 * Brings the heights of the views of all lifelines up to date.
+	 */
+	private void materializeLifelines() {
+		for (Lifeline lifeline : lifelineList) {
+			for (Lifeline line : lifeline.getAllLifelines()) {
+				line.materialize();
 			}
 		}
-		verticalPosition += amount;
 	}
 
-	int getPositionOf(Lifeline lifeline) {
-		return lifelineList.indexOf(lifeline.getRoot());
+	int getExtension() {
+		return extension;
 	}
 
 	public boolean isThreaded() {
@@ -599,10 +1009,12 @@ public final class Diagram implements Constants {
 	 *            the name of the object of which the lifeline is to be removed
 	 */
 	public void removeLifeline(String name) {
-		if (lifelineMap.remove(name) == null) {
+		Lifeline lifeline = lifelineMap.remove(name);
+		if (lifeline == null) {
 			throw new IllegalArgumentException("lifeline " + name
 					+ " should be removed, but does not exist");
 		}
+		lifeline.updateExtension();
 	}
 
 	LinkedList<Message> currentStack() {
@@ -755,7 +1167,7 @@ public final class Diagram implements Constants {
 	}
 
 	private Set<Lifeline> getLifelines(int thread) {
-		Set<Lifeline> lifelines = new HashSet<Lifeline>();
+		Set<Lifeline> lifelines = new LinkedHashSet<Lifeline>();
 		Lifeline firstCaller = first.get(thread);
 		if (!firstCaller.isAlwaysActive()) {
 			lifelines.add(firstCaller);
@@ -0,0 +1,281 @@
+// Copyright (c) 2006 - 2008, Markus Strauch.
+// All rights reserved.
+// 
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright notice, 
+// this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright notice, 
+// this list of conditions and the following disclaimer in the documentation 
+// and/or other materials provided with the distribution.
+// 
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+package net.sf.sdedit.diagram;
+
+/**
+ * A <tt>DiagramMetrics</tt> object records how much time the generation of a
+ * {@linkplain Diagram} took in each of its phases, and how big the diagram is.
+ * All times are given in nanoseconds. When the generation of a diagram is
+ * suspended and resumed, the times of all parts add up, and so do the numbers
+ * of lines and messages. The other counts describe the diagram as it was
+ * when its layout was computed for the last time.
+ * <p>
+ * The time for painting or exporting the diagram is not known to the diagram
+ * itself, it must be added by the one who paints it, using
+ * {@linkplain #addTime(Phase, long)} with {@linkplain Phase#PAINT}.
+ * 
+ * @author Markus Strauch
+ * 
+ */
+public final class DiagramMetrics {
+
+	/**
+	 * The phases of the generation of a diagram.
+	 */
+	public enum Phase {
+
+		/**
+		 * Reading the object and message specifications and processing the
+		 * messages.
+		 */
+		PARSE("parse"),
+
+		/**
+		 * Closing the fragments.
+		 */
+		FRAGMENTS("fragments"),
+
+		/**
+		 * Computing the horizontal positions of the lifelines.
+		 */
+		LAYOUT("layout"),
+
+		/**
+		 * Computing the size of the diagram.
+		 */
+		BOUNDS("bounds"),
+
+		/**
+		 * Closing the notes, associating them with arrows and placing the
+		 * frame.
+		 */
+		NOTES("notes"),
+
+		/**
+		 * Closing the paint device, which indexes the drawable objects.
+		 */
+		INDEX("index"),
+
+		/**
+		 * Painting or exporting the diagram.
+		 */
+		PAINT("paint");
+
+		private final String name;
+
+		Phase(String name) {
+			this.name = name;
+		}
+
+		public String toString() {
+			return name;
+		}
+	}
+
+	private final long[] times;
+
+	private int lines;
+
+	private int messages;
+
+	private int lifelines;
+
+	private int subLifelines;
+
+	private int drawables;
+
+	private int fragments;
+
+	DiagramMetrics() {
+		times = new long[Phase.values().length];
+	}
+
+	/**
+	 * Adds the given amount of time to the time spent in a phase.
+	 * 
+	 * @param phase
+	 *            the phase
+	 * @param nanos
+	 *            the time to be added, in nanoseconds
+	 */
+	public void addTime(Phase phase, long nanos) {
+		times[phase.ordinal()] += nanos;
+	}
+
+	void addLine() {
+		lines++;
+	}
+
+	void addMessage() {
+		messages++;
+	}
+
+	/**
+	 * Sets the numbers of lines and messages to the ones recorded at a
+	 * checkpoint and resets the times, when a diagram is restored to the
+	 * checkpoint (see {@linkplain Diagram#restore(Checkpoint)}). The times
+	 * then cover the generation from the checkpoint on.
+	 * 
+	 * @param lines
+	 *            the number of lines read before the checkpoint
+	 * @param messages
+	 *            the number of messages read before the checkpoint
+	 */
+	void restore(int lines, int messages) {
+		this.lines = lines;
+		this.messages = messages;
+		for (int i = 0; i < times.length; i++) {
+			times[i] = 0;
+		}
+	}
+
+	void setCounts(int lifelines, int subLifelines, int drawables,
+			int fragments) {
+		this.lifelines = lifelines;
+		this.subLifelines = subLifelines;
+		this.drawables = drawables;
+		this.fragments = fragments;
+	}
+
+	/**
+	 * Returns the time spent in a phase.
+	 * 
+	 * @param phase
+	 *            the phase
+	 * @return the time spent in the phase, in nanoseconds
+	 */
+	public long getTime(Phase phase) {
+		return times[phase.ordinal()];
+	}
+
+	/**
+	 * Returns the time spent in all phases.
+	 * 
+	 * @return the time spent in all phases, in nanoseconds
+	 */
+	public long getTotalTime() {
+		long total = 0;
+		for (long time : times) {
+			total += time;
+		}
+		return total;
+	}
+
+	/**
+	 * Returns the number of lines with object, message, fragment or note
+	 * specifications that have been read.
+	 * 
+	 * @return the number of lines that have been read
+	 */
+	public int getLines() {
+		return lines;
+	}
+
+	/**
+	 * Returns the number of message specifications that have been read, a
+	 * broadcast message counting as one.
+	 * 
+	 * @return the number of message specifications
+	 */
+	public int getMessages() {
+		return messages;
+	}
+
+	/**
+	 * Returns the number of (root) lifelines.
+	 * 
+	 * @return the number of lifelines
+	 */
+	public int getLifelines() {
+		return lifelines;
+	}
+
+	/**
+	 * Returns the number of sub lifelines, i. e. activations of objects that
+	 * are already active.
+	 * 
+	 * @return the number of sub lifelines
+	 */
+	public int getSubLifelines() {
+		return subLifelines;
+	}
+
+	/**
+	 * Returns the number of visible drawable objects on the paint device,
+	 * including the fragments.
+	 * 
+	 * @return the number of visible drawable objects
+	 */
+	public int getDrawables() {
+		return drawables;
+	}
+
+	/**
+	 * Returns the number of fragments, not counting the frame around the
+	 * diagram.
+	 * 
+	 * @return the number of fragments
+	 */
+	public int getFragments() {
+		return fragments;
+	}
+
+	/**
+	 * Returns a short summary of the metrics that fits into a status bar.
+	 * 
+	 * @return a short summary of the metrics
+	 */
+	public String getSummary() {
+		return lines + " lines, " + drawables + " drawables, "
+				+ millis(getTotalTime()) + " ms";
+	}
+
+	/**
+	 * Returns a short summary of the metrics of a diagram that has only been
+	 * checked (see {@linkplain ValidatingPaintDevice}), which fits into a
+	 * status bar.
+	 * 
+	 * @return a short summary of the metrics of a checked diagram
+	 */
+	public String getValidationSummary() {
+		return lines + " lines checked, " + millis(getTotalTime()) + " ms";
+	}
+
+	private static String millis(long nanos) {
+		long tenths = (nanos + 50000) / 100000;
+		return tenths / 10 + "." + tenths % 10;
+	}
+
+	public String toString() {
+		StringBuffer buffer = new StringBuffer();
+		for (Phase phase : Phase.values()) {
+			buffer.append(phase + "=" + millis(getTime(phase)) + "ms ");
+		}
+		buffer.append("total=" + millis(getTotalTime()) + "ms lines=" + lines
+				+ " messages=" + messages + " lifelines=" + lifelines
+				+ " sublifelines=" + subLifelines + " drawables=" + drawables
+				+ " fragments=" + fragments);
+		return buffer.toString();
+	}
+}
@@ -0,0 +1,464 @@
+// Copyright (c) 2006 - 2008, Markus Strauch.
+// All rights reserved.
+// 
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright notice, 
+// this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright notice, 
+// this list of conditions and the following disclaimer in the documentation 
+// and/or other materials provided with the distribution.
+// 
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.sf.sdedit.diagram;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.Stroke;
+
+/**
+ * A <tt>DisplayList</tt> is a compact, immutable recording of what the
+ * drawable elements of a finished diagram draw. It can be painted without the
+ * {@linkplain Diagram} it has been recorded from, so the diagram with all its
+ * lifelines, messages and drawable elements can be garbage-collected while
+ * the display list is kept for painting (see
+ * {@linkplain PaintDevice#createDisplayList()}).
+ * <p>
+ * The drawing operations of all elements are stored in a single
+ * <tt>int</tt> array, each operation consisting of an opcode followed by its
+ * arguments. Strings, colors, strokes, fonts and shapes are stored in tables
+ * and referenced by their index. For each element there are its extent (see
+ * {@linkplain net.sf.sdedit.drawable.Drawable#getExtent()}), the area where
+ * it can be hit by the mouse (see
+ * {@linkplain net.sf.sdedit.drawable.Drawable#getArea()}) and the state of
+ * the {@linkplain DiagramDataProvider} when it was read (see
+ * {@linkplain Diagram#getStateForDrawable(net.sf.sdedit.drawable.Drawable)}),
+ * if this state is an integer, like the position in the source text. So
+ * everything the user interface needs to know about an element - its tool
+ * tip, the link of a note, where to scroll to - is found here, without
+ * touching the diagram.
+ * 
+ * @author Markus Strauch
+ * 
+ */
+public final class DisplayList {
+
+	static final int COLOR = 0;
+
+	static final int STROKE = 1;
+
+	static final int FONT = 2;
+
+	static final int LINE = 3;
+
+	static final int RECT = 4;
+
+	static final int FILL_RECT = 5;
+
+	static final int ROUND_RECT = 6;
+
+	static final int FILL_ROUND_RECT = 7;
+
+	static final int OVAL = 8;
+
+	static final int FILL_OVAL = 9;
+
+	static final int ARC = 10;
+
+	static final int FILL_ARC = 11;
+
+	static final int POLYLINE = 12;
+
+	static final int POLYGON = 13;
+
+	static final int FILL_POLYGON = 14;
+
+	static final int STRING = 15;
+
+	static final int FLOAT_STRING = 16;
+
+	static final int SHAPE = 17;
+
+	static final int FILL_SHAPE = 18;
+
+	/**
+	 * Flag of an element that is a fragment.
+	 */
+	static final int FRAGMENT = 1;
+
+	/**
+	 * Flag of an element that is the one the diagram associates with its
+	 * source (see
+	 * {@linkplain Diagram#getDrawableForState(Object)}).
+	 */
+	static final int PRIMARY = 2;
+
+	private final int width;
+
+	private final int height;
+
+	// the opcodes and arguments of the drawing operations
+	private final int[] ops;
+
+	// the operations of the i-th element start at starts[i] and end at
+	// starts[i+1]
+	private final int[] starts;
+
+	// x, y, width and height of the extent of each element
+	private final int[] bounds;
+
+	// x, y, width and height of the area of each element
+	private final int[] areas;
+
+	private final int[] sources;
+
+	// indices of strings, or -1
+	private final int[] toolTips;
+
+	// indices of strings, or -1
+	private final int[] links;
+
+	// the x coordinates where the elements are scrolled to
+	private final int[] anchors;
+
+	private final byte[] flags;
+
+	private final String[] strings;
+
+	private final Color[] colors;
+
+	private final Stroke[] strokes;
+
+	private final Font[] fonts;
+
+	private final Shape[] shapes;
+
+	private final BandIndex bands;
+
+	DisplayList(int width, int height, int[] ops, int[] starts, int[] bounds,
+			int[] areas, int[] sources, int[] toolTips, int[] links,
+			int[] anchors, byte[] flags, String[] strings, Color[] colors,
+			Stroke[] strokes, Font[] fonts, Shape[] shapes) {
+		this.width = width;
+		this.height = height;
+		this.ops = ops;
+		this.starts = starts;
+		this.bounds = bounds;
+		this.areas = areas;
+		this.sources = sources;
+		this.toolTips = toolTips;
+		this.links = links;
+		this.anchors = anchors;
+		this.flags = flags;
+		this.strings = strings;
+		this.colors = colors;
+		this.strokes = strokes;
+		this.fonts = fonts;
+		this.shapes = shapes;
+		int n = sources.length;
+		int[] from = new int[n];
+		int[] to = new int[n];
+		for (int i = 0; i < n; i++) {
+			from[i] = bounds[4 * i + 1];
+			to[i] = from[i] + bounds[4 * i + 3];
+		}
+		bands = new BandIndex(from, to);
+	}
+
+	/**
+	 * Returns the width of the diagram.
+	 * 
+	 * @return the width of the diagram
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Returns the height of the diagram.
+	 * 
+	 * @return the height of the diagram
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Returns the number of elements in this display list.
+	 * 
+	 * @return the number of elements in this display list
+	 */
+	public int size() {
+		return sources.length;
+	}
+
+	/**
+	 * Returns the extent of the i-th element.
+	 * 
+	 * @param i
+	 *            the index of an element
+	 * @return the extent of the element
+	 */
+	public Rectangle getBounds(int i) {
+		return new Rectangle(bounds[4 * i], bounds[4 * i + 1],
+				bounds[4 * i + 2], bounds[4 * i + 3]);
+	}
+
+	/**
+	 * Returns the area of the i-th element, where it can be hit by the mouse.
+	 * 
+	 * @param i
+	 *            the index of an element
+	 * @return the area of the element
+	 */
+	public Rectangle getArea(int i) {
+		return new Rectangle(areas[4 * i], areas[4 * i + 1], areas[4 * i + 2],
+				areas[4 * i + 3]);
+	}
+
+	/**
+	 * Returns the state of the {@linkplain DiagramDataProvider} when the data
+	 * for the i-th element was read, or -1 if it was not an integer.
+	 * 
+	 * @param i
+	 *            the index of an element
+	 * @return the state for the element, or -1
+	 */
+	public int getSource(int i) {
+		return sources[i];
+	}
+
+	/**
+	 * Returns the index of the element the diagram associated with the given
+	 * state of the {@linkplain DiagramDataProvider} (see
+	 * {@linkplain Diagram#getDrawableForState(Object)}), or -1 if there is no
+	 * such element.
+	 * 
+	 * @param source
+	 *            a state of the data provider
+	 * @return the index of the element for the state, or -1
+	 */
+	public int indexOfSource(int source) {
+		for (int i = 0; i < sources.length; i++) {
+			if (sources[i] == source && (flags[i] & PRIMARY) != 0) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the tool tip text for the i-th element, or <tt>null</tt>.
+	 * 
+	 * @param i
+	 *            the index of an element
+	 * @return the tool tip text for the element, or <tt>null</tt>
+	 */
+	public String getToolTip(int i) {
+		return toolTips[i] == -1 ? null : strings[toolTips[i]];
+	}
+
+	/**
+	 * Returns the link of the i-th element if it is a note with a link (see
+	 * {@linkplain net.sf.sdedit.drawable.Note#getLink()}), otherwise
+	 * <tt>null</tt>.
+	 * 
+	 * @param i
+	 *            the index of an element
+	 * @return the link of the element, or <tt>null</tt>
+	 */
+	public String getLink(int i) {
+		return links[i] == -1 ? null : strings[links[i]];
+	}
+
+	/**
+	 * Returns the point where the i-th element begins: for an arrow this is
+	 * where its text begins, for other elements it is their top-left corner.
+	 * 
+	 * @param i
+	 *            the index of an element
+	 * @return the point where the element begins
+	 */
+	public Point getAnchor(int i) {
+		return new Point(anchors[i], areas[4 * i + 1]);
+	}
+
+	/**
+	 * Returns true if the i-th element is a fragment.
+	 * 
+	 * @param i
+	 *            the index of an element
+	 * @return true if the element is a fragment
+	 */
+	public boolean isFragment(int i) {
+		return (flags[i] & FRAGMENT) != 0;
+	}
+
+	/**
+	 * Returns the indices of the elements whose areas contain the given
+	 * point, in painting order.
+	 * 
+	 * @param point
+	 *            a point
+	 * @return the indices of the elements whose areas contain the point
+	 */
+	public int[] hit(Point point) {
+		int[] candidates = bands.at(point.y);
+		int[] result = new int[candidates.length];
+		int size = 0;
+		for (int i : candidates) {
+			if (getArea(i).contains(point)) {
+				result[size++] = i;
+			}
+		}
+		int[] hit = new int[size];
+		System.arraycopy(result, 0, hit, 0, size);
+		return hit;
+	}
+
+	/**
+	 * Paints all elements into the given graphics context, which should use
+	 * the plain font of the diagram and black color.
+	 * 
+	 * @param g2d
+	 *            the graphics context to paint into
+	 */
+	public void paint(Graphics2D g2d) {
+		replay(g2d, 0, ops.length);
+	}
+
+	/**
+	 * Paints the elements whose extents intersect the given rectangle into the
+	 * given graphics context, which should use the plain font of the diagram
+	 * and black color.
+	 * 
+	 * @param g2d
+	 *            the graphics context to paint into
+	 * @param clip
+	 *            the rectangle to be painted
+	 */
+	public void paint(Graphics2D g2d, Rectangle clip) {
+		if (clip.width <= 0 || clip.height <= 0) {
+			return;
+		}
+		for (int i : bands.between(clip.y, clip.y + clip.height)) {
+			if (clip.intersects(bounds[4 * i], bounds[4 * i + 1],
+					bounds[4 * i + 2], bounds[4 * i + 3])) {
+				replay(g2d, starts[i], starts[i + 1]);
+			}
+		}
+	}
+
+	private void replay(Graphics2D g, int from, int to) {
+		int[] o = ops;
+		int i = from;
+		while (i < to) {
+			switch (o[i]) {
+			case COLOR:
+				g.setColor(colors[o[i + 1]]);
+				i += 2;
+				break;
+			case STROKE:
+				g.setStroke(strokes[o[i + 1]]);
+				i += 2;
+				break;
+			case FONT:
+				g.setFont(fonts[o[i + 1]]);
+				i += 2;
+				break;
+			case LINE:
+				g.drawLine(o[i + 1], o[i + 2], o[i + 3], o[i + 4]);
+				i += 5;
+				break;
+			case RECT:
+				g.drawRect(o[i + 1], o[i + 2], o[i + 3], o[i + 4]);
+				i += 5;
+				break;
+			case FILL_RECT:
+				g.fillRect(o[i + 1], o[i + 2], o[i + 3], o[i + 4]);
+				i += 5;
+				break;
+			case ROUND_RECT:
+				g.drawRoundRect(o[i + 1], o[i + 2], o[i + 3], o[i + 4],
+						o[i + 5], o[i + 6]);
+				i += 7;
+				break;
+			case FILL_ROUND_RECT:
+				g.fillRoundRect(o[i + 1], o[i + 2], o[i + 3], o[i + 4],
+						o[i + 5], o[i + 6]);
+				i += 7;
+				break;
+			case OVAL:
+				g.drawOval(o[i + 1], o[i + 2], o[i + 3], o[i + 4]);
+				i += 5;
+				break;
+			case FILL_OVAL:
+				g.fillOval(o[i + 1], o[i + 2], o[i + 3], o[i + 4]);
+				i += 5;
+				break;
+			case ARC:
+				g.drawArc(o[i + 1], o[i + 2], o[i + 3], o[i + 4], o[i + 5],
+						o[i + 6]);
+				i += 7;
+				break;
+			case FILL_ARC:
+				g.fillArc(o[i + 1], o[i + 2], o[i + 3], o[i + 4], o[i + 5],
+						o[i + 6]);
+				i += 7;
+				break;
+			case POLYLINE:
+			case POLYGON:
+			case FILL_POLYGON:
+				int n = o[i + 1];
+				int[] x = new int[n];
+				int[] y = new int[n];
+				System.arraycopy(o, i + 2, x, 0, n);
+				System.arraycopy(o, i + 2 + n, y, 0, n);
+				if (o[i] == POLYLINE) {
+					g.drawPolyline(x, y, n);
+				} else if (o[i] == POLYGON) {
+					g.drawPolygon(x, y, n);
+				} else {
+					g.fillPolygon(x, y, n);
+				}
+				i += 2 + 2 * n;
+				break;
+			case STRING:
+				g.drawString(strings[o[i + 1]], o[i + 2], o[i + 3]);
+				i += 4;
+				break;
+			case FLOAT_STRING:
+				g.drawString(strings[o[i + 1]], Float.intBitsToFloat(o[i + 2]),
+						Float.intBitsToFloat(o[i + 3]));
+				i += 4;
+				break;
+			case SHAPE:
+				g.draw(shapes[o[i + 1]]);
+				i += 2;
+				break;
+			case FILL_SHAPE:
+				g.fill(shapes[o[i + 1]]);
+				i += 2;
+				break;
+			default:
+				throw new IllegalStateException("illegal opcode: " + o[i]);
+			}
+		}
+	}
+}
@@ -0,0 +1,658 @@
+// Copyright (c) 2006 - 2008, Markus Strauch.
+// All rights reserved.
+// 
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright notice, 
+// this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright notice, 
+// this list of conditions and the following disclaimer in the documentation 
+// and/or other materials provided with the distribution.
+// 
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.sf.sdedit.diagram;
+
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.Paint;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.RenderingHints.Key;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.GeneralPath;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.ImageObserver;
+import java.awt.image.RenderedImage;
+import java.awt.image.renderable.RenderableImage;
+import java.text.AttributedCharacterIterator;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.sdedit.drawable.Arrow;
+import net.sf.sdedit.drawable.Drawable;
+import net.sf.sdedit.drawable.Fragment;
+import net.sf.sdedit.drawable.Note;
+
+/**
+ * A <tt>DisplayListRecorder</tt> is a graphics context that does not draw
+ * anything but records the drawing operations of drawable elements, so a
+ * {@linkplain DisplayList} can be built from them.
+ * <p>
+ * Only operations that can be replayed are supported, these are the usual
+ * drawing operations for lines, rectangles, ovals, arcs, polygons, strings and
+ * shapes along with changes of the color, the stroke and the font.
+ * Operations that draw images or change the transformation, the clip, the
+ * composite or the rendering hints throw an
+ * <tt>UnsupportedOperationException</tt>. Font metrics are taken from a
+ * small image.
+ * 
+ * @author Markus Strauch
+ * 
+ */
+final class DisplayListRecorder extends Graphics2D {
+
+	private final Graphics2D metrics;
+
+	private int[] ops;
+
+	private int size;
+
+	private final List<Integer> starts;
+
+	private final List<Integer> bounds;
+
+	private final List<Integer> areas;
+
+	private final List<Integer> sources;
+
+	private final List<Integer> toolTips;
+
+	private final List<Integer> links;
+
+	private final List<Integer> anchors;
+
+	private final List<Byte> flags;
+
+	private final Table<String> strings;
+
+	private final Table<Color> colors;
+
+	private final Table<Stroke> strokes;
+
+	private final Table<Font> fonts;
+
+	private final List<Shape> shapes;
+
+	private Color color;
+
+	private Stroke stroke;
+
+	private Font font;
+
+	/**
+	 * Creates a new <tt>DisplayListRecorder</tt> whose initial state is the
+	 * given font, black color and the default stroke.
+	 * 
+	 * @param font
+	 *            the initial font
+	 */
+	DisplayListRecorder(Font font) {
+		metrics = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB)
+				.createGraphics();
+		ops = new int[1024];
+		starts = new ArrayList<Integer>();
+		bounds = new ArrayList<Integer>();
+		areas = new ArrayList<Integer>();
+		sources = new ArrayList<Integer>();
+		toolTips = new ArrayList<Integer>();
+		links = new ArrayList<Integer>();
+		anchors = new ArrayList<Integer>();
+		flags = new ArrayList<Byte>();
+		strings = new Table<String>();
+		colors = new Table<Color>();
+		strokes = new Table<Stroke>();
+		fonts = new Table<Font>();
+		shapes = new ArrayList<Shape>();
+		color = Color.BLACK;
+		stroke = metrics.getStroke();
+		this.font = font;
+		metrics.setFont(font);
+	}
+
+	/**
+	 * Starts the recording of the operations of a new element.
+	 * 
+	 * @param drawable
+	 *            the drawable element
+	 * @param source
+	 *            the state of the <tt>DiagramDataProvider</tt> for the
+	 *            element, or -1
+	 * @param primary
+	 *            flag denoting if the diagram associates the element with
+	 *            the state (see {@linkplain Diagram#getDrawableForState(Object)})
+	 * @param toolTip
+	 *            the tool tip text for the element, or <tt>null</tt>
+	 */
+	void begin(Drawable drawable, int source, boolean primary, String toolTip) {
+		starts.add(size);
+		Rectangle extent = drawable.getExtent();
+		bounds.add(extent.x);
+		bounds.add(extent.y);
+		bounds.add(extent.width);
+		bounds.add(extent.height);
+		Rectangle area = drawable.getArea();
+		areas.add(area.x);
+		areas.add(area.y);
+		areas.add(area.width);
+		areas.add(area.height);
+		sources.add(source);
+		toolTips.add(toolTip == null ? -1 : strings.index(toolTip));
+		Object link = drawable instanceof Note ? ((Note) drawable).getLink()
+				: null;
+		links.add(link == null ? -1 : strings.index(link.toString()));
+		Point textPosition = drawable instanceof Arrow ? ((Arrow) drawable)
+				.getTextPosition() : null;
+		anchors.add(textPosition != null ? textPosition.x : drawable.getLeft());
+		flags.add((byte) ((drawable instanceof Fragment ? DisplayList.FRAGMENT
+				: 0) | (primary ? DisplayList.PRIMARY : 0)));
+	}
+
+	/**
+	 * Returns a display list of the elements recorded.
+	 * 
+	 * @param width
+	 *            the width of the diagram
+	 * @param height
+	 *            the height of the diagram
+	 * @return a display list of the elements recorded
+	 */
+	DisplayList finish(int width, int height) {
+		int[] o = new int[size];
+		System.arraycopy(ops, 0, o, 0, size);
+		starts.add(size);
+		byte[] f = new byte[flags.size()];
+		for (int i = 0; i < f.length; i++) {
+			f[i] = flags.get(i);
+		}
+		return new DisplayList(width, height, o, toArray(starts),
+				toArray(bounds), toArray(areas), toArray(sources),
+				toArray(toolTips), toArray(links), toArray(anchors), f, strings
+						.toArray(new String[0]), colors.toArray(new Color[0]),
+				strokes.toArray(new Stroke[0]), fonts.toArray(new Font[0]),
+				shapes.toArray(new Shape[0]));
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		int[] array = new int[list.size()];
+		int i = 0;
+		for (int value : list) {
+			array[i++] = value;
+		}
+		return array;
+	}
+
+	private void op(int... values) {
+		if (size + values.length > ops.length) {
+			int[] bigger = new int[Math.max(2 * ops.length, size
+					+ values.length)];
+			System.arraycopy(ops, 0, bigger, 0, size);
+			ops = bigger;
+		}
+		System.arraycopy(values, 0, ops, size, values.length);
+		size += values.length;
+	}
+
+	private void polygon(int opcode, int[] x, int[] y, int n) {
+		int[] values = new int[2 + 2 * n];
+		values[0] = opcode;
+		values[1] = n;
+		System.arraycopy(x, 0, values, 2, n);
+		System.arraycopy(y, 0, values, 2 + n, n);
+		op(values);
+	}
+
+	private static UnsupportedOperationException unsupported(String operation) {
+		return new UnsupportedOperationException(operation
+				+ " cannot be recorded");
+	}
+
+	/*
+	 * Recorded operations
+	 */
+
+	@Override
+	public void setColor(Color c) {
+		if (c != null) {
+			color = c;
+			op(DisplayList.COLOR, colors.index(c));
+		}
+	}
+
+	@Override
+	public void setPaint(Paint paint) {
+		if (paint instanceof Color) {
+			setColor((Color) paint);
+		} else if (paint != null) {
+			throw unsupported("setPaint");
+		}
+	}
+
+	@Override
+	public void setStroke(Stroke s) {
+		stroke = s;
+		op(DisplayList.STROKE, strokes.index(s));
+	}
+
+	@Override
+	public void setFont(Font f) {
+		if (f != null) {
+			font = f;
+			metrics.setFont(f);
+			op(DisplayList.FONT, fonts.index(f));
+		}
+	}
+
+	@Override
+	public void drawLine(int x1, int y1, int x2, int y2) {
+		op(DisplayList.LINE, x1, y1, x2, y2);
+	}
+
+	@Override
+	public void drawRect(int x, int y, int width, int height) {
+		op(DisplayList.RECT, x, y, width, height);
+	}
+
+	@Override
+	public void fillRect(int x, int y, int width, int height) {
+		op(DisplayList.FILL_RECT, x, y, width, height);
+	}
+
+	@Override
+	public void drawRoundRect(int x, int y, int width, int height,
+			int arcWidth, int arcHeight) {
+		op(DisplayList.ROUND_RECT, x, y, width, height, arcWidth, arcHeight);
+	}
+
+	@Override
+	public void fillRoundRect(int x, int y, int width, int height,
+			int arcWidth, int arcHeight) {
+		op(DisplayList.FILL_ROUND_RECT, x, y, width, height, arcWidth,
+				arcHeight);
+	}
+
+	@Override
+	public void drawOval(int x, int y, int width, int height) {
+		op(DisplayList.OVAL, x, y, width, height);
+	}
+
+	@Override
+	public void fillOval(int x, int y, int width, int height) {
+		op(DisplayList.FILL_OVAL, x, y, width, height);
+	}
+
+	@Override
+	public void drawArc(int x, int y, int width, int height, int startAngle,
+			int arcAngle) {
+		op(DisplayList.ARC, x, y, width, height, startAngle, arcAngle);
+	}
+
+	@Override
+	public void fillArc(int x, int y, int width, int height, int startAngle,
+			int arcAngle) {
+		op(DisplayList.FILL_ARC, x, y, width, height, startAngle, arcAngle);
+	}
+
+	@Override
+	public void drawPolyline(int[] xPoints, int[] yPoints, int nPoints) {
+		polygon(DisplayList.POLYLINE, xPoints, yPoints, nPoints);
+	}
+
+	@Override
+	public void drawPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+		polygon(DisplayList.POLYGON, xPoints, yPoints, nPoints);
+	}
+
+	@Override
+	public void fillPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+		polygon(DisplayList.FILL_POLYGON, xPoints, yPoints, nPoints);
+	}
+
+	@Override
+	public void drawString(String str, int x, int y) {
+		op(DisplayList.STRING, strings.index(str), x, y);
+	}
+
+	@Override
+	public void drawString(String str, float x, float y) {
+		op(DisplayList.FLOAT_STRING, strings.index(str), Float
+				.floatToIntBits(x), Float.floatToIntBits(y));
+	}
+
+	@Override
+	public void draw(Shape s) {
+		shapes.add(new GeneralPath(s));
+		op(DisplayList.SHAPE, shapes.size() - 1);
+	}
+
+	@Override
+	public void fill(Shape s) {
+		shapes.add(new GeneralPath(s));
+		op(DisplayList.FILL_SHAPE, shapes.size() - 1);
+	}
+
+	/*
+	 * State and metrics
+	 */
+
+	@Override
+	public Color getColor() {
+		return color;
+	}
+
+	@Override
+	public Paint getPaint() {
+		return color;
+	}
+
+	@Override
+	public Stroke getStroke() {
+		return stroke;
+	}
+
+	@Override
+	public Font getFont() {
+		return font;
+	}
+
+	@Override
+	public FontMetrics getFontMetrics(Font f) {
+		return metrics.getFontMetrics(f);
+	}
+
+	@Override
+	public FontRenderContext getFontRenderContext() {
+		return metrics.getFontRenderContext();
+	}
+
+	@Override
+	public GraphicsConfiguration getDeviceConfiguration() {
+		return metrics.getDeviceConfiguration();
+	}
+
+	@Override
+	public boolean hit(Rectangle rect, Shape s, boolean onStroke) {
+		return metrics.hit(rect, s, onStroke);
+	}
+
+	@Override
+	public Composite getComposite() {
+		return metrics.getComposite();
+	}
+
+	@Override
+	public Object getRenderingHint(Key hintKey) {
+		return metrics.getRenderingHint(hintKey);
+	}
+
+	@Override
+	public RenderingHints getRenderingHints() {
+		return metrics.getRenderingHints();
+	}
+
+	@Override
+	public AffineTransform getTransform() {
+		return new AffineTransform();
+	}
+
+	@Override
+	public Color getBackground() {
+		return metrics.getBackground();
+	}
+
+	@Override
+	public void setBackground(Color c) {
+		metrics.setBackground(c);
+	}
+
+	@Override
+	public Shape getClip() {
+		return null;
+	}
+
+	@Override
+	public Rectangle getClipBounds() {
+		return null;
+	}
+
+	@Override
+	public void setPaintMode() {
+		/* empty */
+	}
+
+	@Override
+	public void dispose() {
+		/* empty */
+	}
+
+	/*
+	 * Unsupported operations
+	 */
+
+	@Override
+	public Graphics create() {
+		throw unsupported("create");
+	}
+
+	@Override
+	public void setXORMode(Color c1) {
+		throw unsupported("setXORMode");
+	}
+
+	@Override
+	public void setComposite(Composite comp) {
+		throw unsupported("setComposite");
+	}
+
+	@Override
+	public void setRenderingHint(Key hintKey, Object hintValue) {
+		throw unsupported("setRenderingHint");
+	}
+
+	@Override
+	public void setRenderingHints(Map<?, ?> hints) {
+		throw unsupported("setRenderingHints");
+	}
+
+	@Override
+	public void addRenderingHints(Map<?, ?> hints) {
+		throw unsupported("addRenderingHints");
+	}
+
+	@Override
+	public void translate(int x, int y) {
+		throw unsupported("translate");
+	}
+
+	@Override
+	public void translate(double tx, double ty) {
+		throw unsupported("translate");
+	}
+
+	@Override
+	public void rotate(double theta) {
+		throw unsupported("rotate");
+	}
+
+	@Override
+	public void rotate(double theta, double x, double y) {
+		throw unsupported("rotate");
+	}
+
+	@Override
+	public void scale(double sx, double sy) {
+		throw unsupported("scale");
+	}
+
+	@Override
+	public void shear(double shx, double shy) {
+		throw unsupported("shear");
+	}
+
+	@Override
+	public void transform(AffineTransform tx) {
+		throw unsupported("transform");
+	}
+
+	@Override
+	public void setTransform(AffineTransform tx) {
+		throw unsupported("setTransform");
+	}
+
+	@Override
+	public void clip(Shape s) {
+		throw unsupported("clip");
+	}
+
+	@Override
+	public void clipRect(int x, int y, int width, int height) {
+		throw unsupported("clipRect");
+	}
+
+	@Override
+	public void setClip(int x, int y, int width, int height) {
+		throw unsupported("setClip");
+	}
+
+	@Override
+	public void setClip(Shape clip) {
+		throw unsupported("setClip");
+	}
+
+	@Override
+	public void copyArea(int x, int y, int width, int height, int dx, int dy) {
+		throw unsupported("copyArea");
+	}
+
+	@Override
+	public void clearRect(int x, int y, int width, int height) {
+		throw unsupported("clearRect");
+	}
+
+	@Override
+	public void drawString(AttributedCharacterIterator iterator, int x, int y) {
+		throw unsupported("drawString");
+	}
+
+	@Override
+	public void drawString(AttributedCharacterIterator iterator, float x,
+			float y) {
+		throw unsupported("drawString");
+	}
+
+	@Override
+	public void drawGlyphVector(GlyphVector g, float x, float y) {
+		throw unsupported("drawGlyphVector");
+	}
+
+	@Override
+	public boolean drawImage(Image img, AffineTransform xform, ImageObserver obs) {
+		throw unsupported("drawImage");
+	}
+
+	@Override
+	public void drawImage(BufferedImage img, BufferedImageOp op, int x, int y) {
+		throw unsupported("drawImage");
+	}
+
+	@Override
+	public void drawRenderedImage(RenderedImage img, AffineTransform xform) {
+		throw unsupported("drawRenderedImage");
+	}
+
+	@Override
+	public void drawRenderableImage(RenderableImage img,
+			AffineTransform xform) {
+		throw unsupported("drawRenderableImage");
+	}
+
+	@Override
+	public boolean drawImage(Image img, int x, int y, ImageObserver observer) {
+		throw unsupported("drawImage");
+	}
+
+	@Override
+	public boolean drawImage(Image img, int x, int y, int width, int height,
+			ImageObserver observer) {
+		throw unsupported("drawImage");
+	}
+
+	@Override
+	public boolean drawImage(Image img, int x, int y, Color bgcolor,
+			ImageObserver observer) {
+		throw unsupported("drawImage");
+	}
+
+	@Override
+	public boolean drawImage(Image img, int x, int y, int width, int height,
+			Color bgcolor, ImageObserver observer) {
+		throw unsupported("drawImage");
+	}
+
+	@Override
+	public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2,
+			int sx1, int sy1, int sx2, int sy2, ImageObserver observer) {
+		throw unsupported("drawImage");
+	}
+
+	@Override
+	public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2,
+			int sx1, int sy1, int sx2, int sy2, Color bgcolor,
+			ImageObserver observer) {
+		throw unsupported("drawImage");
+	}
+
+	/**
+	 * A table of distinct objects, each of which is referenced by its index.
+	 */
+	@SuppressWarnings("serial")
+	private static final class Table<T> extends ArrayList<T> {
+
+		private final Map<T, Integer> indices = new HashMap<T, Integer>();
+
+		int index(T object) {
+			Integer index = indices.get(object);
+			if (index == null) {
+				index = size();
+				add(object);
+				indices.put(object, index);
+			}
+			return index;
+		}
+	}
+}
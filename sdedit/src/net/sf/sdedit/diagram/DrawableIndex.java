@@ -0,0 +1,126 @@
+// Copyright (c) 2006 - 2008, Markus Strauch.
+// All rights reserved.
+// 
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright notice, 
+// this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright notice, 
+// this list of conditions and the following disclaimer in the documentation 
+// and/or other materials provided with the distribution.
+// 
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+package net.sf.sdedit.diagram;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.sf.sdedit.drawable.Drawable;
+
+/**
+ * A <tt>DrawableIndex</tt> is a {@linkplain BandIndex} over the drawable
+ * elements of a finished diagram, such that the elements that are hit by a
+ * point or that intersect a rectangle can be found without looking at all
+ * elements. The vertical interval of an element is given by its extent (see
+ * {@linkplain Drawable#getExtent()}).
+ * <p>
+ * The index only narrows down the candidates, the results are always checked
+ * by {@linkplain Drawable#contains(Point)} resp.
+ * {@linkplain Drawable#intersects(Rectangle)}, and they are returned in the
+ * order in which the {@linkplain PaintDevice} iterates over the elements,
+ * which is the order in which they are painted.
+ * 
+ * @author Markus Strauch
+ * 
+ */
+final class DrawableIndex {
+
+	private final Diagram diagram;
+
+	// the drawable elements in painting order
+	private final Drawable[] drawables;
+
+	private final BandIndex bands;
+
+	DrawableIndex(Diagram diagram, Iterable<Drawable> elements) {
+		this.diagram = diagram;
+		List<Drawable> list = new ArrayList<Drawable>();
+		for (Drawable drawable : elements) {
+			list.add(drawable);
+		}
+		drawables = list.toArray(new Drawable[list.size()]);
+		int n = drawables.length;
+		int[] from = new int[n];
+		int[] to = new int[n];
+		for (int i = 0; i < n; i++) {
+			Rectangle extent = drawables[i].getExtent();
+			from[i] = extent.y;
+			to[i] = extent.y + extent.height;
+		}
+		bands = new BandIndex(from, to);
+	}
+
+	Diagram getDiagram() {
+		return diagram;
+	}
+
+	/**
+	 * Returns the visible elements containing the given point, in painting
+	 * order.
+	 * 
+	 * @param point
+	 *            a point
+	 * @return the visible elements containing the point
+	 */
+	List<Drawable> hit(Point point) {
+		int[] candidates = bands.at(point.y);
+		if (candidates.length == 0) {
+			return Collections.emptyList();
+		}
+		List<Drawable> result = new ArrayList<Drawable>();
+		for (int i : candidates) {
+			Drawable drawable = drawables[i];
+			if (drawable.isVisible() && drawable.contains(point)) {
+				result.add(drawable);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the visible elements intersecting the given rectangle, in
+	 * painting order.
+	 * 
+	 * @param rectangle
+	 *            a rectangle
+	 * @return the visible elements intersecting the rectangle
+	 */
+	List<Drawable> query(Rectangle rectangle) {
+		if (rectangle.height <= 0 || rectangle.width <= 0) {
+			return Collections.emptyList();
+		}
+		List<Drawable> result = new ArrayList<Drawable>();
+		for (int i : bands.between(rectangle.y, rectangle.y
+				+ rectangle.height)) {
+			Drawable drawable = drawables[i];
+			if (drawable.isVisible() && drawable.intersects(rectangle)) {
+				result.add(drawable);
+			}
+		}
+		return result;
+	}
+}
@@ -24,7 +24,9 @@
 
 package net.sf.sdedit.diagram;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.ListIterator;
 
 import net.sf.sdedit.drawable.Arrow;
@@ -71,6 +73,15 @@ public final class FragmentManager {
 	 */
 	private final LinkedList<Fragment> closingFragments;
 
+	/**
+	 * The sequence elements that have been added to open or closing
+	 * fragments, in the order in which they have been added. The position of
+	 * an element in this list is its sequence index (see
+	 * {@linkplain SequenceElement#getSequenceIndex()}), a fragment only needs
+	 * to know the indices of its first and its last member.
+	 */
+	private final List<SequenceElement> sequenceElements;
+
 	/**
 	 * The list of fragment labels that have currently been opened. The list is
 	 * emptied when something else than a fragment label (for instance, a
@@ -95,6 +106,7 @@ public final class FragmentManager {
 		this.diagram = diagram;
 		openFragments = new LinkedList<Fragment>();
 		closingFragments = new LinkedList<Fragment>();
+		sequenceElements = new ArrayList<SequenceElement>();
 		fragmentLabels = new LinkedList<String>();
 	}
 
@@ -254,6 +266,23 @@ public final class FragmentManager {
 		closingFragments.clear();
 	}
 
+	/**
+	 * Sets the bottom lines of all the closing fragments to where they would
+	 * be if they were finished now, but without extending the lifelines, so
+	 * they can be displayed while the generation of the diagram is suspended
+	 * (see {@linkplain Diagram#layout()}).
+	 */
+	public void layoutClosingFragments() {
+		int padding = diagram.getConfiguration().getFragmentPadding();
+		int margin = diagram.getConfiguration().getFragmentMargin();
+		int bottom = diagram.getVerticalPosition();
+		for (Fragment comment : closingFragments) {
+			bottom += padding;
+			comment.setBottom(bottom);
+			bottom += margin;
+		}
+	}
+
 	/**
 	 * Sets the bottom line of a closing fragment when there will never be added
 	 * anything to it.
@@ -297,6 +326,11 @@ public final class FragmentManager {
 	 *            fragments
 	 */
 	public void addSequenceElement(SequenceElement elem) {
+		if (openFragments.isEmpty() && closingFragments.isEmpty()) {
+			return;
+		}
+		elem.setSequenceIndex(sequenceElements.size());
+		sequenceElements.add(elem);
 		for (Fragment comment : openFragments) {
 			comment.addElement(elem);
 		}
@@ -305,6 +339,17 @@ public final class FragmentManager {
 		}
 	}
 
+	/**
+	 * Returns the sequence elements that have been added to open or closing
+	 * fragments, in the order in which they have been added, so the position
+	 * of an element in the list is its sequence index.
+	 * 
+	 * @return the sequence elements that have been added to fragments
+	 */
+	public List<SequenceElement> getSequenceElements() {
+		return sequenceElements;
+	}
+
 	private void closeRecentFragment() throws SyntaxError {
 		if (openFragments.isEmpty()) {
 			throw new SyntaxError(diagram.getDataProvider(),
@@ -321,4 +366,85 @@ public final class FragmentManager {
 		return openFragments.getLast();
 	}
 
+	/**
+	 * Records the current state of this <tt>FragmentManager</tt> and of the
+	 * fragments that are not yet finished, for a checkpoint (see
+	 * {@linkplain Diagram#takeCheckpoint()}).
+	 * 
+	 * @return the current state of this <tt>FragmentManager</tt>
+	 */
+	State saveState() {
+		return new State();
+	}
+
+	/**
+	 * The state of a <tt>FragmentManager</tt> at a checkpoint.
+	 */
+	final class State {
+
+		private final List<Fragment> openFragments;
+
+		private final List<Fragment> closingFragments;
+
+		/**
+		 * For each fragment in <tt>openFragments</tt> and
+		 * <tt>closingFragments</tt>, its level, first and last element, number
+		 * of sections and height.
+		 */
+		private final int[][] fragmentStates;
+
+		private final int sequenceElements;
+
+		private final List<String> fragmentLabels;
+
+		private final String fragmentSectionLabel;
+
+		State() {
+			openFragments = new ArrayList<Fragment>(
+					FragmentManager.this.openFragments);
+			closingFragments = new ArrayList<Fragment>(
+					FragmentManager.this.closingFragments);
+			fragmentStates = new int[openFragments.size()
+					+ closingFragments.size()][];
+			int i = 0;
+			for (Fragment fragment : fragments()) {
+				fragmentStates[i++] = new int[] { fragment.getLevel(),
+						fragment.getFirstElement(), fragment.getLastElement(),
+						fragment.getNumberOfSections(), fragment.getHeight() };
+			}
+			sequenceElements = FragmentManager.this.sequenceElements.size();
+			fragmentLabels = new ArrayList<String>(
+					FragmentManager.this.fragmentLabels);
+			fragmentSectionLabel = FragmentManager.this.fragmentSectionLabel;
+		}
+
+		private List<Fragment> fragments() {
+			List<Fragment> fragments = new ArrayList<Fragment>(openFragments);
+			fragments.addAll(closingFragments);
+			return fragments;
+		}
+
+		/**
+		 * Resets the fragment manager and the fragments that were not finished
+		 * to this state.
+		 */
+		void restore() {
+			FragmentManager.this.openFragments.clear();
+			FragmentManager.this.openFragments.addAll(openFragments);
+			FragmentManager.this.closingFragments.clear();
+			FragmentManager.this.closingFragments.addAll(closingFragments);
+			int i = 0;
+			for (Fragment fragment : fragments()) {
+				int[] state = fragmentStates[i++];
+				fragment.restore(state[0], state[1], state[2], state[3]);
+				fragment.setHeight(state[4]);
+			}
+			FragmentManager.this.sequenceElements.subList(sequenceElements,
+					FragmentManager.this.sequenceElements.size()).clear();
+			FragmentManager.this.fragmentLabels.clear();
+			FragmentManager.this.fragmentLabels.addAll(fragmentLabels);
+			FragmentManager.this.fragmentSectionLabel = fragmentSectionLabel;
+		}
+	}
+
 }
@@ -23,8 +23,13 @@
 // THE POSSIBILITY OF SUCH DAMAGE.
 package net.sf.sdedit.diagram;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import net.sf.sdedit.drawable.Cross;
 import net.sf.sdedit.drawable.Drawable;
@@ -89,6 +94,38 @@ public final class Lifeline {
 
 	private Lifeline rightChild;
 
+	/**
+	 * For a root lifeline, an array containing the lifeline itself, its sub
+	 * lifelines on the left side and its sub lifelines on the right side, in
+	 * the order of {@linkplain #getAllLifelines()}. It is <tt>null</tt> if it
+	 * has to be computed again because a sub lifeline has been created or
+	 * disposed.
+	 */
+	private Lifeline[] family;
+
+	/**
+	 * An unmodifiable list view of <tt>family</tt>.
+	 */
+	private List<Lifeline> familyList;
+
+	/**
+	 * The number of sub lifelines on the left side in <tt>family</tt>.
+	 */
+	private int leftCount;
+
+	/**
+	 * For a root lifeline, maps thread numbers onto the sub lifelines that
+	 * belong to the respective thread, in the order in which they have been
+	 * created.
+	 */
+	private Map<Integer, List<Lifeline>> subLifelinesByThread;
+
+	/**
+	 * For a root lifeline, its position in the list of lifelines of the
+	 * diagram, -1 if it has not yet been added to the diagram.
+	 */
+	private int position;
+
 	/**
 	 * Flag relevant for root lifelines
 	 */
@@ -178,6 +215,22 @@ public final class Lifeline {
 
 	private boolean waiting;
 
+	/**
+	 * Flag denoting if the current view is extended whenever the diagram is
+	 * extended, which is the case as long as the root lifeline is alive and
+	 * part of the diagram and this lifeline has not been disposed. The height
+	 * of such a view is not changed by
+	 * {@linkplain Diagram#extendLifelines(int)}, it is brought up to date by
+	 * {@linkplain #materialize()} when it is needed.
+	 */
+	private boolean extended;
+
+	/**
+	 * The total amount by which the diagram had been extended when the height
+	 * of the current view was brought up to date for the last time.
+	 */
+	private int extension;
+
 	/**
 	 * Creates a new root <tt>Lifeline</tt> object that corresponds to an
 	 * object and is ready to receive messages. If the object receives a message
@@ -229,6 +282,7 @@ public final class Lifeline {
 		this.external = external;
 		parent = null;
 		root = this;
+		position = -1;
 		sideLevel = 0;
 		rectangleBottom = 0;
 		waiting = false;
@@ -297,14 +351,48 @@ public final class Lifeline {
 			}
 			parent.rightChild = this;
 		}
+		root.family = null;
+		root.addToThread(this);
 		sideLevel = parent.sideLevel + 1;
 		active = false;
 		view = new Rectangle(computeDrawableWidth(), this);
 		head = null;
 		process = false;
+		setExtended(root.extended);
 		// view's top will be set inside setActive(true)
 	}
 
+	/**
+	 * Brings the height of the current view up to date, if it is extended
+	 * whenever the diagram is extended.
+	 */
+	void materialize() {
+		if (extended) {
+			int current = diagram.getExtension();
+			view.extend(current - extension);
+			extension = current;
+		}
+	}
+
+	private void setExtended(boolean extended) {
+		materialize();
+		this.extended = extended;
+		extension = diagram.getExtension();
+	}
+
+	/**
+	 * Determines whether the views of the root lifeline and all of its sub
+	 * lifelines are to be extended whenever the diagram is extended. This must
+	 * be called when the root lifeline comes into existence, is terminated, or
+	 * is added to or removed from the diagram.
+	 */
+	void updateExtension() {
+		boolean extend = root.alive && diagram.getLifeline(name) == root;
+		for (Lifeline line : root.getAllLifelines()) {
+			line.setExtended(extend);
+		}
+	}
+
 	public void addView(ExtensibleDrawable view) {
 		root.allViews.add(view);
 	}
@@ -332,7 +420,29 @@ public final class Lifeline {
 	}
 
 	public void setThread(int thread) {
-		this.thread = thread;
+		if (this != root && thread != this.thread) {
+			root.removeFromThread(this);
+			this.thread = thread;
+			root.addToThread(this);
+		} else {
+			this.thread = thread;
+		}
+	}
+
+	private void addToThread(Lifeline line) {
+		if (subLifelinesByThread == null) {
+			subLifelinesByThread = new HashMap<Integer, List<Lifeline>>();
+		}
+		List<Lifeline> lines = subLifelinesByThread.get(line.thread);
+		if (lines == null) {
+			lines = new ArrayList<Lifeline>(2);
+			subLifelinesByThread.put(line.thread, lines);
+		}
+		lines.add(line);
+	}
+
+	private void removeFromThread(Lifeline line) {
+		subLifelinesByThread.get(line.thread).remove(line);
 	}
 
 	public int getThread() {
@@ -377,19 +487,14 @@ public final class Lifeline {
 	}
 
 	public Lifeline getLeftmost() {
-		Lifeline left = root;
-		while (left.leftChild != null) {
-			left = left.leftChild;
-		}
-		return left;
+		Lifeline[] lines = root.getFamily();
+		return lines[root.leftCount];
 	}
 
 	public Lifeline getRightmost() {
-		Lifeline right = root;
-		while (right.rightChild != null) {
-			right = right.rightChild;
-		}
-		return right;
+		Lifeline[] lines = root.getFamily();
+		return lines.length - 1 > root.leftCount ? lines[lines.length - 1]
+				: root;
 	}
 
 	/**
@@ -409,31 +514,71 @@ public final class Lifeline {
 
 	/**
 	 * Returns a list containing this lifeline and all of its sub lifelines.
+	 * For a root lifeline, the list is kept until a sub lifeline is created
+	 * or disposed, so it must not be modified.
 	 * 
 	 * @return a list containing this lifeline and all of its sub lifelines
 	 */
-	public LinkedList<Lifeline> getAllLifelines() {
-		LinkedList<Lifeline> list = new LinkedList<Lifeline>();
+	public List<Lifeline> getAllLifelines() {
+		if (this != root) {
+			return Arrays.asList(collectFamily());
+		}
+		getFamily();
+		return familyList;
+	}
+
+	private Lifeline[] getFamily() {
+		if (family == null) {
+			family = collectFamily();
+			familyList = Collections.unmodifiableList(Arrays.asList(family));
+		}
+		return family;
+	}
+
+	private Lifeline[] collectFamily() {
+		List<Lifeline> list = new ArrayList<Lifeline>();
 		list.add(this);
 		Lifeline line = leftChild;
 		while (line != null) {
 			list.add(line);
 			line = line.leftChild;
 		}
+		leftCount = list.size() - 1;
 		line = rightChild;
 		while (line != null) {
 			list.add(line);
 			line = line.rightChild;
 		}
-		return list;
+		return list.toArray(new Lifeline[list.size()]);
 	}
 
 	public Lifeline getLastInThread(int thread) {
 		Lifeline last = null;
-		for (Lifeline lifeline : getAllLifelines()) {
-			if (lifeline.getThread() == thread
-					&& (last == null || lifeline.level > last.level)) {
-				last = lifeline;
+		if (this != root) {
+			for (Lifeline lifeline : getAllLifelines()) {
+				if (lifeline.getThread() == thread
+						&& (last == null || lifeline.level > last.level)) {
+					last = lifeline;
+				}
+			}
+			return last;
+		}
+		if (this.thread == thread) {
+			last = this;
+		}
+		List<Lifeline> lines = subLifelinesByThread == null ? null
+				: subLifelinesByThread.get(thread);
+		if (lines != null) {
+			// sub lifelines on the left side come first in the order
+			// of getAllLifelines(), so they win if the levels are equal
+			for (Lifeline lifeline : lines) {
+				if (last == null
+						|| lifeline.level > last.level
+						|| lifeline.level == last.level
+						&& lifeline.direction == Direction.LEFT
+						&& last.direction == Direction.RIGHT) {
+					last = lifeline;
+				}
 			}
 		}
 		return last;
@@ -507,6 +652,7 @@ public final class Lifeline {
 		alive = true;
 		head.setVisible(true);
 		view.setVisible(true);
+		updateExtension();
 	}
 
 	/**
@@ -531,7 +677,11 @@ public final class Lifeline {
 	 * @return this lifeline's position
 	 */
 	public int getPosition() {
-		return diagram.getPositionOf(this);
+		return root.position;
+	}
+
+	void setPosition(int position) {
+		this.position = position;
 	}
 
 	/**
@@ -596,11 +746,13 @@ public final class Lifeline {
 			if (y > diagram.getVerticalPosition()) {
 				diagram.extendLifelines(y - diagram.getVerticalPosition());
 			}
+			materialize();
 			cross.setTop(_view.getTop() + lengthOfLastLine);
 			diagram.getPaintDevice().addOtherDrawable(cross);
 			_view.setHeight(lengthOfLastLine);
 		}
 		alive = false;
+		updateExtension();
 	}
 
 	/**
@@ -637,6 +789,9 @@ public final class Lifeline {
 			throw new IllegalStateException("The lifeline is not root, but"
 					+ " has center direction");
 		}
+		root.family = null;
+		root.removeFromThread(this);
+		setExtended(false);
 		getRoot().setRectangleBottom(diagram.getVerticalPosition());
 	}
 
@@ -646,6 +801,7 @@ public final class Lifeline {
 					"an inactive lifeline cannot change its waiting status");
 		}
 		waiting = !waiting;
+		materialize();
 		int y = view.getTop() + view.getHeight();
 
 		if (waiting) {
@@ -657,6 +813,7 @@ public final class Lifeline {
 			view = new Rectangle(computeDrawableWidth(), this);
 		}
 		view.setTop(y);
+		extension = diagram.getExtension();
 	}
 
 	public void setActive(boolean active) {
@@ -664,6 +821,7 @@ public final class Lifeline {
 			return;
 		}
 		this.active = active;
+		materialize();
 		if (this != getRoot()) {
 			if (active) {
 				view.setTop(parent.getView().getTop()
@@ -685,6 +843,7 @@ public final class Lifeline {
 			lastLine = (Line) view;
 		}
 		view.setTop(y);
+		extension = diagram.getExtension();
 	}
 
 	public void setRectangleBottom(int bottom) {
@@ -701,6 +860,7 @@ public final class Lifeline {
 	}
 
 	public ExtensibleDrawable getView() {
+		materialize();
 		return view;
 	}
 
@@ -727,4 +887,154 @@ public final class Lifeline {
 	public Cross getCross() {
 		return cross;
 	}
+
+	/**
+	 * Records the current state of this lifeline for a checkpoint (see
+	 * {@linkplain Diagram#takeCheckpoint()}).
+	 * 
+	 * @return the current state of this lifeline
+	 */
+	State saveState() {
+		return new State();
+	}
+
+	/**
+	 * The state of a lifeline at a checkpoint. Besides the fields of the
+	 * lifeline, it consists of the positions of the views that can still
+	 * change: the current view, the line most recently created and the head.
+	 */
+	final class State {
+
+		private final String mnemonic;
+
+		private final Lifeline parent;
+
+		private final Lifeline leftChild;
+
+		private final Lifeline rightChild;
+
+		private final boolean active;
+
+		private final boolean alive;
+
+		private final ExtensibleDrawable view;
+
+		private final int viewTop;
+
+		private final int viewHeight;
+
+		private final boolean viewVisible;
+
+		private final Line lastLine;
+
+		private final int lastLineTop;
+
+		private final int lastLineHeight;
+
+		private final Cross cross;
+
+		private final int thread;
+
+		private final int rectangleBottom;
+
+		private final boolean waiting;
+
+		private final boolean extended;
+
+		private final int extension;
+
+		/*
+		 * The following attributes are only relevant for root lifelines.
+		 */
+
+		private final int views;
+
+		private final int headTop;
+
+		private final boolean headVisible;
+
+		private final Map<Integer, List<Lifeline>> subLifelinesByThread;
+
+		State() {
+			mnemonic = Lifeline.this.mnemonic;
+			parent = Lifeline.this.parent;
+			leftChild = Lifeline.this.leftChild;
+			rightChild = Lifeline.this.rightChild;
+			active = Lifeline.this.active;
+			alive = Lifeline.this.alive;
+			view = Lifeline.this.view;
+			viewTop = view.getTop();
+			viewHeight = view.getHeight();
+			viewVisible = view.isVisible();
+			lastLine = Lifeline.this.lastLine;
+			lastLineTop = lastLine == null ? 0 : lastLine.getTop();
+			lastLineHeight = lastLine == null ? 0 : lastLine.getHeight();
+			cross = Lifeline.this.cross;
+			thread = Lifeline.this.thread;
+			rectangleBottom = Lifeline.this.rectangleBottom;
+			waiting = Lifeline.this.waiting;
+			extended = Lifeline.this.extended;
+			extension = Lifeline.this.extension;
+			if (root == Lifeline.this) {
+				views = allViews.size();
+				headTop = head.getTop();
+				headVisible = head.isVisible();
+				subLifelinesByThread = copy(Lifeline.this.subLifelinesByThread);
+			} else {
+				views = 0;
+				headTop = 0;
+				headVisible = false;
+				subLifelinesByThread = null;
+			}
+		}
+
+		/**
+		 * Resets the lifeline to this state. The sub lifelines and views that
+		 * have been created since then are forgotten.
+		 */
+		void restore() {
+			Lifeline.this.mnemonic = mnemonic;
+			Lifeline.this.parent = parent;
+			Lifeline.this.leftChild = leftChild;
+			Lifeline.this.rightChild = rightChild;
+			Lifeline.this.active = active;
+			Lifeline.this.alive = alive;
+			if (lastLine != null) {
+				lastLine.setTop(lastLineTop);
+				lastLine.setHeight(lastLineHeight);
+			}
+			Lifeline.this.lastLine = lastLine;
+			view.setTop(viewTop);
+			view.setHeight(viewHeight);
+			view.setVisible(viewVisible);
+			Lifeline.this.view = view;
+			Lifeline.this.cross = cross;
+			Lifeline.this.thread = thread;
+			Lifeline.this.rectangleBottom = rectangleBottom;
+			Lifeline.this.waiting = waiting;
+			Lifeline.this.extended = extended;
+			Lifeline.this.extension = extension;
+			if (root == Lifeline.this) {
+				allViews.subList(views, allViews.size()).clear();
+				head.setTop(headTop);
+				head.setVisible(headVisible);
+				Lifeline.this.subLifelinesByThread = copy(subLifelinesByThread);
+				family = null;
+				familyList = null;
+			}
+		}
+	}
+
+	private static Map<Integer, List<Lifeline>> copy(
+			Map<Integer, List<Lifeline>> subLifelinesByThread) {
+		if (subLifelinesByThread == null) {
+			return null;
+		}
+		Map<Integer, List<Lifeline>> copy = new HashMap<Integer, List<Lifeline>>();
+		for (Map.Entry<Integer, List<Lifeline>> entry : subLifelinesByThread
+				.entrySet()) {
+			copy.put(entry.getKey(), new ArrayList<Lifeline>(entry.getValue()));
+		}
+		return copy;
+	}
 }
@@ -23,6 +23,7 @@
 // THE POSSIBILITY OF SUCH DAMAGE.
 package net.sf.sdedit.diagram;
 
+import java.util.Arrays;
 import java.util.Properties;
 
 import net.sf.sdedit.message.BroadcastMessage;
@@ -139,6 +140,33 @@ public class MessageData {
 				&& (message.equals("destroy") || message.startsWith("destroy("));
 	}
 
+	/**
+	 * Returns true if another <tt>MessageData</tt> object describes the same
+	 * message as this one, i. e. if all of its attributes are equal to the
+	 * attributes of this object.
+	 * 
+	 * @param other
+	 *            another <tt>MessageData</tt> object
+	 * @return true if all attributes of <tt>other</tt> are equal to the
+	 *         attributes of this object
+	 */
+	public boolean hasSameData(MessageData other) {
+		return caller.equals(other.caller) && callee.equals(other.callee)
+				&& level == other.level && thread == other.thread
+				&& spawnMessage == other.spawnMessage
+				&& answer.equals(other.answer)
+				&& message.equals(other.message)
+				&& callerMnemonic.equals(other.callerMnemonic)
+				&& calleeMnemonic.equals(other.calleeMnemonic)
+				&& Arrays.equals(callees, other.callees)
+				&& returnsInstantly == other.returnsInstantly
+				&& noteNumber == other.noteNumber
+				&& answerNoteNumber == other.answerNoteNumber
+				&& broadcastType == other.broadcastType
+				&& (properties == null ? other.properties == null
+						: properties.equals(other.properties));
+	}
+
 	/**
 	 * @return the answer
 	 */
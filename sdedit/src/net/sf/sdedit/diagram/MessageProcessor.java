@@ -591,4 +591,34 @@ final class MessageProcessor {
 		}
 
 	}
+
+	/**
+	 * Records the thread numbers, which are kept from one message to the
+	 * next, for a checkpoint (see {@linkplain Diagram#takeCheckpoint()}).
+	 * 
+	 * @return the current state of this <tt>MessageProcessor</tt>
+	 */
+	State saveState() {
+		return new State();
+	}
+
+	/**
+	 * The state of a <tt>MessageProcessor</tt> at a checkpoint.
+	 */
+	final class State {
+
+		private final int callerThread;
+
+		private final int calleeThread;
+
+		State() {
+			callerThread = MessageProcessor.this.callerThread;
+			calleeThread = MessageProcessor.this.calleeThread;
+		}
+
+		void restore() {
+			MessageProcessor.this.callerThread = callerThread;
+			MessageProcessor.this.calleeThread = calleeThread;
+		}
+	}
 }
@@ -26,6 +26,7 @@ package net.sf.sdedit.diagram;
 
 import java.awt.Point;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -69,6 +70,7 @@ public class NoteManager {
 
 	public void computeArrowAssociations() {
 		for (Note description : notes) {
+			description.clearTargets();
 			List<Message> msgs = messageAssociation
 					.get(description.getNumber());
 			if (msgs != null) {
@@ -158,4 +160,79 @@ public class NoteManager {
 		}
 		return false;
 	}
+
+	/**
+	 * Records the current state of this <tt>NoteManager</tt> for a checkpoint
+	 * (see {@linkplain Diagram#takeCheckpoint()}).
+	 * 
+	 * @return the current state of this <tt>NoteManager</tt>
+	 */
+	State saveState() {
+		return new State();
+	}
+
+	/**
+	 * The state of a <tt>NoteManager</tt> at a checkpoint. Notes and
+	 * associations are only appended, so their numbers are recorded.
+	 */
+	final class State {
+
+		private final int notes;
+
+		private final Map<Integer, Integer> messageAssociation;
+
+		private final Map<Integer, Integer> eventAssociation;
+
+		private final Map<String, Note> pendingNotes;
+
+		private final int freeNoteNumber;
+
+		State() {
+			notes = NoteManager.this.notes.size();
+			messageAssociation = sizes(NoteManager.this.messageAssociation);
+			eventAssociation = sizes(NoteManager.this.eventAssociation);
+			pendingNotes = new HashMap<String, Note>(
+					NoteManager.this.pendingNotes);
+			freeNoteNumber = NoteManager.this.freeNoteNumber;
+		}
+
+		/**
+		 * Resets the note manager to this state, forgetting the notes and
+		 * associations that have been added since then.
+		 */
+		void restore() {
+			NoteManager.this.notes.subList(notes,
+					NoteManager.this.notes.size()).clear();
+			truncate(NoteManager.this.messageAssociation, messageAssociation);
+			truncate(NoteManager.this.eventAssociation, eventAssociation);
+			NoteManager.this.pendingNotes.clear();
+			NoteManager.this.pendingNotes.putAll(pendingNotes);
+			NoteManager.this.freeNoteNumber = freeNoteNumber;
+		}
+	}
+
+	private static <T> Map<Integer, Integer> sizes(
+			Map<Integer, List<T>> association) {
+		Map<Integer, Integer> sizes = new HashMap<Integer, Integer>();
+		for (Map.Entry<Integer, List<T>> entry : association.entrySet()) {
+			sizes.put(entry.getKey(), entry.getValue().size());
+		}
+		return sizes;
+	}
+
+	private static <T> void truncate(Map<Integer, List<T>> association,
+			Map<Integer, Integer> sizes) {
+		Iterator<Map.Entry<Integer, List<T>>> iterator = association
+				.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<Integer, List<T>> entry = iterator.next();
+			Integer size = sizes.get(entry.getKey());
+			if (size == null) {
+				iterator.remove();
+			} else {
+				List<T> list = entry.getValue();
+				list.subList(size, list.size()).clear();
+			}
+		}
+	}
 }
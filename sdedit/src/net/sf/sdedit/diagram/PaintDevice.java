@@ -26,15 +26,19 @@ package net.sf.sdedit.diagram;
 
 import java.awt.Color;
 import java.awt.Font;
+import java.awt.Point;
+import java.awt.Rectangle;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
@@ -76,10 +80,19 @@ public abstract class PaintDevice implements Iterable<Drawable> {
 	/**
 	 * The i-th entry of this list is the set of sequence elements that appear
 	 * in the space between the i-th and the (i+1)-th lifeline, where n+1
-	 * corresponds to rightBound
+	 * corresponds to rightBound. The sets iterate in the order in which the
+	 * elements have been announced, so the drawing order does not depend on
+	 * hash codes.
 	 */
 	private final ArrayList<Set<SequenceElement>> leftOf;
 
+	/**
+	 * The sequence elements in the order in which they have been added, so
+	 * the ones added after a checkpoint can be removed from the sets in
+	 * <tt>leftOf</tt> (see {@linkplain State#restore()}).
+	 */
+	private final List<SequenceElement> sequenceElements;
+
 	private final List<Drawable> other;
 
 	private Diagram diagram;
@@ -90,18 +103,47 @@ public abstract class PaintDevice implements Iterable<Drawable> {
 
 	private Font boldFont;
 
+	private TextMetrics plainMetrics;
+
+	private TextMetrics boldMetrics;
+
+	/**
+	 * The index over the drawable elements, built by {@linkplain #close()}.
+	 */
+	private volatile DrawableIndex index;
+
 	protected PaintDevice() {
 		height = 0;
 		leftOf = new ArrayList<Set<SequenceElement>>();
+		sequenceElements = new ArrayList<SequenceElement>();
 		other = new LinkedList<Drawable>();
 		rightBound = new Line(1, null);
 	}
 	
 	public void setDiagram (Diagram diagram) {
 		this.diagram = diagram;
+		index = null;
 		plainFont = diagram.getConfiguration().getFont();
 		boldFont = new Font(plainFont.getName(), Font.BOLD,
 				plainFont.getSize() + 1);
+		plainMetrics = getTextMetrics(false);
+		boldMetrics = getTextMetrics(true);
+	}
+
+	/**
+	 * Returns the metrics by which text in the plain resp. bold font is
+	 * measured. This method is called by {@linkplain #setDiagram(Diagram)}
+	 * when the fonts are known. The default implementation returns the metrics
+	 * for images (see {@linkplain TextMetrics#getInstance(Font)}), subclasses
+	 * drawing text in other contexts must override it.
+	 * 
+	 * @param bold
+	 *            flag denoting if the metrics of the bold font are to be
+	 *            returned
+	 * @return the metrics by which text is measured
+	 */
+	protected TextMetrics getTextMetrics(boolean bold) {
+		return TextMetrics.getInstance(getFont(bold));
 	}
 	
 	public Color getColor (String name) {
@@ -114,11 +156,13 @@ public abstract class PaintDevice implements Iterable<Drawable> {
 	 */
 	public void reinitialize() {
 		leftOf.clear();
+		sequenceElements.clear();
 		other.clear();
+		index = null;
 		rightBound.setLeft(0);
 		height = 0;
 		for (int i = 0; i < diagram.getNumberOfLifelines(); i++) {
-			leftOf.add(new HashSet<SequenceElement>());
+			leftOf.add(new LinkedHashSet<SequenceElement>());
 		}
 	}
 
@@ -140,11 +184,28 @@ public abstract class PaintDevice implements Iterable<Drawable> {
 		}
 	}
 
+	/**
+	 * Removes a drawable object that has been added via
+	 * {@linkplain #addOtherDrawable(Drawable)}. The objects are searched
+	 * backwards, so objects that have been added recently are found fastest.
+	 * 
+	 * @param drawable
+	 *            the drawable object to be removed
+	 */
+	public void removeOtherDrawable(Drawable drawable) {
+		ListIterator<Drawable> iterator = other.listIterator(other.size());
+		while (iterator.hasPrevious()) {
+			if (iterator.previous() == drawable) {
+				iterator.remove();
+				return;
+			}
+		}
+	}
+
 	public void addSequenceElement(SequenceElement elem) {
-		int index;
+		int index = getGap(elem);
 		ExtensibleDrawable left, right;
 		if (elem.getAlign() == Direction.RIGHT) {
-			index = elem.getLeftEndpoint().getLifeline().getPosition();
 			left = elem.getLeftEndpoint().getLifeline().getRightmost()
 					.getView();
 			if (index == diagram.getNumberOfLifelines() - 1) {
@@ -154,17 +215,33 @@ public abstract class PaintDevice implements Iterable<Drawable> {
 						.getView();
 			}
 		} else { // Direction.LEFT
-			index = elem.getRightEndpoint().getLifeline().getPosition() - 1;
 			right = elem.getRightEndpoint().getLifeline().getLeftmost()
 					.getView();
 			left = diagram.getLifelineAt(index).getRightmost().getView();
 		}
 		leftOf.get(index).add(elem);
+		sequenceElements.add(elem);
 		elem.setLeftLimit(left);
 		elem.setRightLimit(right);
 		diagram.getFragmentManager().addSequenceElement(elem);
 	}
 
+	/**
+	 * Returns the index of the set in <tt>leftOf</tt> that the given sequence
+	 * element belongs to.
+	 * 
+	 * @param elem
+	 *            a sequence element
+	 * @return the index of the space between two lifelines where the element
+	 *         appears
+	 */
+	private int getGap(SequenceElement elem) {
+		if (elem.getAlign() == Direction.RIGHT) {
+			return elem.getLeftEndpoint().getLifeline().getPosition();
+		}
+		return elem.getRightEndpoint().getLifeline().getPosition() - 1;
+	}
+
 	public boolean isEmpty() {
 		return diagram == null || diagram.getNumberOfLifelines() == 0;
 	}
@@ -231,19 +308,35 @@ public abstract class PaintDevice implements Iterable<Drawable> {
 					level = arrow.getRightLimit().getLifeline().getSideLevel();
 				}
 				axis = Math.max(axis, left + arrow.getSpace()
-						+ arrow.getWidth() + level * subWidth);
+						+ arrow.getMinimumWidth() + level * subWidth);
 			}
 		}
 		rightBound.setLeft(axis);
 	}
 
-	public abstract int getTextWidth(String text, boolean bold);
+	/**
+	 * Returns true if the diagram using this <tt>PaintDevice</tt> is only
+	 * being checked, so it is not laid out when its specification has been
+	 * read and nothing is added to this <tt>PaintDevice</tt> afterwards. The
+	 * default implementation returns false.
+	 * 
+	 * @return true if the diagram is only being checked
+	 */
+	public boolean isValidating() {
+		return false;
+	}
+
+	public int getTextWidth(String text, boolean bold) {
+		return (bold ? boldMetrics : plainMetrics).getWidth(text);
+	}
 
 	public int getTextWidth(String text) {
 		return getTextWidth(text, false);
 	}
 
-	public abstract int getTextHeight(boolean bold);
+	public int getTextHeight(boolean bold) {
+		return (bold ? boldMetrics : plainMetrics).getHeight();
+	}
 
 	public int getTextHeight() {
 		return getTextHeight(false);
@@ -261,6 +354,56 @@ public abstract class PaintDevice implements Iterable<Drawable> {
 	public void clear() {
 		// as a result of this, iterator() will return an empty iterator
 		diagram = null;
+		index = null;
+	}
+
+	/**
+	 * Records the <i>visible</i> drawable elements, in the order in which
+	 * {@linkplain #iterator()} delivers them, into a {@linkplain DisplayList}
+	 * that can be painted when the diagram is gone. This method should be
+	 * called when the diagram is finished.
+	 * 
+	 * @return a display list of the diagram
+	 */
+	public DisplayList createDisplayList() {
+		DisplayListRecorder recorder = new DisplayListRecorder(plainFont);
+		for (Drawable drawable : this) {
+			diagram.checkCancelled();
+			Object state = diagram.getStateForDrawable(drawable);
+			recorder.begin(drawable, state instanceof Integer ? (Integer) state
+					: -1, state != null
+					&& diagram.getDrawableForState(state) == drawable,
+					getToolTip(drawable));
+			drawable.draw(recorder);
+		}
+		return recorder.finish(getWidth(), getHeight());
+	}
+
+	/**
+	 * Returns the tool tip text that the {@linkplain DisplayList} created by
+	 * {@linkplain #createDisplayList()} holds for the given drawable element.
+	 * This implementation returns <tt>null</tt>.
+	 * 
+	 * @param drawable
+	 *            a visible drawable element
+	 * @return the tool tip text for the drawable element, or <tt>null</tt>
+	 */
+	protected String getToolTip(Drawable drawable) {
+		return null;
+	}
+
+	/**
+	 * Forgets the diagram and all drawable elements, such that they can be
+	 * garbage-collected even if this <tt>PaintDevice</tt> is still referenced.
+	 * Afterwards the <tt>PaintDevice</tt> is empty, like after
+	 * {@linkplain #clear()}, so a {@linkplain DisplayList} must have been
+	 * created before if the diagram is still to be painted.
+	 */
+	public void release() {
+		clear();
+		leftOf.clear();
+		sequenceElements.clear();
+		other.clear();
 	}
 
 	/**
@@ -268,6 +411,7 @@ public abstract class PaintDevice implements Iterable<Drawable> {
 	 * before a frame and a descriptive text can be set).
 	 */
 	public void computeBounds() {
+		height = 0;
 		for (int i = 0; i < diagram.getNumberOfLifelines(); i++) {
 			for (Drawable view : diagram.getLifelineAt(i).getAllViews()) {
 				processDrawable(view);
@@ -286,10 +430,48 @@ public abstract class PaintDevice implements Iterable<Drawable> {
 
 	/**
 	 * This method is called once when no {@linkplain Drawable} object will be
-	 * added anymore. Its default implementation is empty.
+	 * added anymore. It builds the index used by {@linkplain #hit(Point)} and
+	 * {@linkplain #query(Rectangle)}, so subclasses overriding it must call
+	 * <tt>super.close()</tt>.
 	 */
 	public void close() {
-		/* empty */
+		index = new DrawableIndex(diagram, this);
+	}
+
+	/**
+	 * Returns the <i>visible</i> drawable elements containing the given point
+	 * (see {@linkplain Drawable#contains(Point)}), in the order in which
+	 * {@linkplain #iterator()} delivers them. The result is empty if the
+	 * diagram has not been finished yet.
+	 * 
+	 * @param point
+	 *            a point
+	 * @return the visible drawable elements containing the point
+	 */
+	public List<Drawable> hit(Point point) {
+		DrawableIndex index = this.index;
+		if (index == null || index.getDiagram() != diagram) {
+			return Collections.emptyList();
+		}
+		return index.hit(point);
+	}
+
+	/**
+	 * Returns the <i>visible</i> drawable elements intersecting the given
+	 * rectangle (see {@linkplain Drawable#intersects(Rectangle)}), in the
+	 * order in which {@linkplain #iterator()} delivers them. The result is
+	 * empty if the diagram has not been finished yet.
+	 * 
+	 * @param rectangle
+	 *            a rectangle
+	 * @return the visible drawable elements intersecting the rectangle
+	 */
+	public List<Drawable> query(Rectangle rectangle) {
+		DrawableIndex index = this.index;
+		if (index == null || index.getDiagram() != diagram) {
+			return Collections.emptyList();
+		}
+		return index.query(rectangle);
 	}
 
 	private void processDrawable(Drawable drawable) {
@@ -302,6 +484,64 @@ public abstract class PaintDevice implements Iterable<Drawable> {
 		}
 	}
 	
+	/**
+	 * Records the current contents of this <tt>PaintDevice</tt> for a
+	 * checkpoint (see {@linkplain Diagram#takeCheckpoint()}).
+	 * 
+	 * @return the current state of this <tt>PaintDevice</tt>
+	 */
+	State saveState() {
+		return new State();
+	}
+
+	/**
+	 * The state of a <tt>PaintDevice</tt> at a checkpoint. As drawable objects
+	 * are only appended, it is given by the numbers of sequence elements and
+	 * other drawable objects, along with the bounds.
+	 */
+	final class State {
+
+		private final int sequenceElements;
+
+		private final int other;
+
+		private final int height;
+
+		private final int right;
+
+		State() {
+			sequenceElements = PaintDevice.this.sequenceElements.size();
+			other = PaintDevice.this.other.size();
+			height = PaintDevice.this.height;
+			right = rightBound.getLeft();
+		}
+
+		/**
+		 * Removes the drawable objects that have been added since this state
+		 * was recorded and resets the bounds. The index is dropped until the
+		 * paint device is closed again.
+		 * 
+		 * @return the sequence elements that have been removed
+		 */
+		List<SequenceElement> restore() {
+			List<SequenceElement> added = PaintDevice.this.sequenceElements
+					.subList(sequenceElements,
+							PaintDevice.this.sequenceElements.size());
+			List<SequenceElement> removed = new ArrayList<SequenceElement>(
+					added);
+			added.clear();
+			for (SequenceElement elem : removed) {
+				leftOf.get(getGap(elem)).remove(elem);
+			}
+			PaintDevice.this.other.subList(other,
+					PaintDevice.this.other.size()).clear();
+			PaintDevice.this.height = height;
+			rightBound.setLeft(right);
+			index = null;
+			return removed;
+		}
+	}
+
 	public void announce (int height) {
 		/* empty */
 	}
@@ -0,0 +1,232 @@
+// Copyright (c) 2006 - 2008, Markus Strauch.
+// All rights reserved.
+// 
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright notice, 
+// this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright notice, 
+// this list of conditions and the following disclaimer in the documentation 
+// and/or other materials provided with the distribution.
+// 
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.sf.sdedit.diagram;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.font.FontRenderContext;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <tt>TextMetrics</tt> measure strings in a certain font and
+ * {@linkplain FontRenderContext}, yielding the same widths and heights as
+ * the {@linkplain FontMetrics} of a graphics context that uses the font and
+ * the context. They are shared by all paint devices of the process (see
+ * {@linkplain #getInstance(Font, FontRenderContext)}) and can be used by
+ * several threads at the same time.
+ * <p>
+ * The advances of the Latin-1 characters are computed once, so the width of
+ * a string consisting of such characters is just the rounded sum of their
+ * advances, as with <tt>FontMetrics.stringWidth</tt>. The widths of other
+ * strings are computed by the font metrics and kept in a bounded cache.
+ * 
+ * @author Markus Strauch
+ * 
+ */
+public final class TextMetrics {
+
+	// the maximum number of instances kept
+	private static final int MAX_INSTANCES = 32;
+
+	// the maximum number of strings whose widths are cached per instance
+	private static final int MAX_STRINGS = 4096;
+
+	private static final Map<Key, TextMetrics> instances = new LinkedHashMap<Key, TextMetrics>(
+			16, 0.75F, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, TextMetrics> eldest) {
+			return size() > MAX_INSTANCES;
+		}
+	};
+
+	private static FontRenderContext defaultContext;
+
+	private final FontMetrics metrics;
+
+	private final int height;
+
+	// the advances of the Latin-1 characters, or null if the font has
+	// attributes that require a text layout
+	private final float[] latin;
+
+	private final Map<String, Integer> widths;
+
+	private TextMetrics(Font font, FontRenderContext context) {
+		Graphics2D g2d = createGraphics(context);
+		metrics = g2d.getFontMetrics(font);
+		FontRenderContext frc = g2d.getFontRenderContext();
+		g2d.dispose();
+		height = metrics.getHeight();
+		if (font.hasLayoutAttributes()) {
+			latin = null;
+		} else {
+			latin = new float[0x100];
+			for (char c = 0; c < 0x100; c++) {
+				latin[c] = (float) font.getStringBounds(String.valueOf(c),
+						frc).getWidth();
+			}
+		}
+		widths = new ConcurrentHashMap<String, Integer>();
+	}
+
+	/*
+	 * Creates a graphics context whose font render context has the
+	 * transformation and the hints of the given context.
+	 */
+	private static Graphics2D createGraphics(FontRenderContext context) {
+		Graphics2D g2d = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB)
+				.createGraphics();
+		if (context != null) {
+			g2d.setTransform(context.getTransform());
+			g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, context
+					.isAntiAliased() ? RenderingHints.VALUE_TEXT_ANTIALIAS_ON
+					: RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
+			g2d.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, context
+					.usesFractionalMetrics() ? RenderingHints.VALUE_FRACTIONALMETRICS_ON
+					: RenderingHints.VALUE_FRACTIONALMETRICS_OFF);
+		}
+		return g2d;
+	}
+
+	/**
+	 * Returns the <tt>TextMetrics</tt> for the given font, as used by
+	 * graphics contexts of images without special rendering hints.
+	 * 
+	 * @param font
+	 *            a font
+	 * @return the <tt>TextMetrics</tt> for the font
+	 */
+	public static TextMetrics getInstance(Font font) {
+		synchronized (instances) {
+			if (defaultContext == null) {
+				Graphics2D g2d = createGraphics(null);
+				defaultContext = g2d.getFontRenderContext();
+				g2d.dispose();
+			}
+		}
+		return getInstance(font, defaultContext);
+	}
+
+	/**
+	 * Returns the <tt>TextMetrics</tt> for the given font and font render
+	 * context.
+	 * 
+	 * @param font
+	 *            a font
+	 * @param context
+	 *            the font render context of the graphics context in which
+	 *            text will be drawn
+	 * @return the <tt>TextMetrics</tt> for the font and the context
+	 */
+	public static TextMetrics getInstance(Font font, FontRenderContext context) {
+		Key key = new Key(font, context);
+		synchronized (instances) {
+			TextMetrics textMetrics = instances.get(key);
+			if (textMetrics == null) {
+				textMetrics = new TextMetrics(font, context);
+				instances.put(key, textMetrics);
+			}
+			return textMetrics;
+		}
+	}
+
+	/**
+	 * Returns the standard height of a line of text.
+	 * 
+	 * @return the standard height of a line of text
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Returns the width of the given string, which is the same as
+	 * <tt>FontMetrics.stringWidth</tt> would return.
+	 * 
+	 * @param text
+	 *            a string
+	 * @return the width of the string
+	 */
+	public int getWidth(String text) {
+		if (latin != null) {
+			float width = 0;
+			int length = text.length();
+			for (int i = 0; i < length; i++) {
+				char c = text.charAt(i);
+				if (c >= 0x100) {
+					return getCachedWidth(text);
+				}
+				width += latin[c];
+			}
+			return (int) (0.5 + width);
+		}
+		return getCachedWidth(text);
+	}
+
+	private int getCachedWidth(String text) {
+		Integer width = widths.get(text);
+		if (width == null) {
+			width = metrics.stringWidth(text);
+			if (widths.size() >= MAX_STRINGS) {
+				widths.clear();
+			}
+			widths.put(text, width);
+		}
+		return width;
+	}
+
+	private static final class Key {
+
+		private final Font font;
+
+		private final FontRenderContext context;
+
+		Key(Font font, FontRenderContext context) {
+			this.font = font;
+			this.context = context;
+		}
+
+		@Override
+		public int hashCode() {
+			return font.hashCode() * 31 + context.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) obj;
+			return font.equals(key.font) && context.equals(key.context);
+		}
+	}
+}
@@ -0,0 +1,84 @@
+// Copyright (c) 2006 - 2008, Markus Strauch.
+// All rights reserved.
+// 
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright notice, 
+// this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright notice, 
+// this list of conditions and the following disclaimer in the documentation 
+// and/or other materials provided with the distribution.
+// 
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.sf.sdedit.diagram;
+
+import net.sf.sdedit.drawable.Drawable;
+import net.sf.sdedit.drawable.SequenceElement;
+
+/**
+ * A <tt>ValidatingPaintDevice</tt> is used for checking a diagram
+ * specification without drawing it. A {@linkplain Diagram} using it processes
+ * all objects, messages, notes and fragments in the same way as with any other
+ * paint device, so it reports the same errors with the same line numbers, and
+ * it measures text in the same way, but the layout is not computed when the
+ * specification has been read (see {@linkplain #isValidating()}). The
+ * drawable objects that the messages create are not kept, so nothing can be
+ * drawn from it.
+ * <p>
+ * Checking a large diagram this way takes only a fraction of the time it takes
+ * to generate it for display.
+ * 
+ * @author Markus Strauch
+ */
+public class ValidatingPaintDevice extends PaintDevice {
+
+	public ValidatingPaintDevice() {
+		super();
+	}
+
+	/**
+	 * Does nothing, the drawable object is not kept.
+	 * 
+	 * @param drawable
+	 *            a drawable object
+	 */
+	@Override
+	public void addOtherDrawable(Drawable drawable) {
+		/* empty */
+	}
+
+	/**
+	 * Only adds the sequence element to the fragments that are currently
+	 * open, because the fragment manager needs to know their members.
+	 * 
+	 * @param elem
+	 *            a sequence element
+	 */
+	@Override
+	public void addSequenceElement(SequenceElement elem) {
+		getDiagram().getFragmentManager().addSequenceElement(elem);
+	}
+
+	/**
+	 * Returns true, so the diagram is not laid out when its specification has
+	 * been read.
+	 * 
+	 * @return true
+	 */
+	@Override
+	public boolean isValidating() {
+		return true;
+	}
+}
@@ -49,6 +49,12 @@ public class Arrow extends SequenceElement {
 
 	private int space;
 
+	/**
+	 * The width of the arrow before it has been stretched by
+	 * {@linkplain #computeLayoutInformation()} for the first time, or -1.
+	 */
+	private int minimumWidth;
+
 	private Point[] pts;
 
 	private Point textPoint;
@@ -58,6 +64,7 @@ public class Arrow extends SequenceElement {
 		super(message.getDiagram(), boundary0, boundary1, message.getText()
 				.split("\\\\n"), align, y);
 		this.message = message;
+		minimumWidth = -1;
 		int headSize;
 		this.stroke = stroke;
 		if (stroke != ArrowStroke.NONE) {
@@ -161,6 +168,14 @@ public class Arrow extends SequenceElement {
 	public final void setSpace(int space) {
 		this.space = space;
 	}
+
+	/**
+	 * @see net.sf.sdedit.drawable.SequenceElement#getMinimumWidth()
+	 */
+	@Override
+	public int getMinimumWidth() {
+		return minimumWidth == -1 ? getWidth() : minimumWidth;
+	}
 	
 	protected void overrideColor (Graphics2D g2d) {
 		String col = message.getData().getProperty("colour");
@@ -227,7 +242,10 @@ public class Arrow extends SequenceElement {
 			right = right - space;
 		}
 		setLeft(left);
-		setWidth(Math.max(getWidth(), right - left));
+		if (minimumWidth == -1) {
+			minimumWidth = getWidth();
+		}
+		setWidth(Math.max(minimumWidth, right - left));
 
 		int x_from = align == Direction.LEFT ? getLeft() + getWidth()
 				: getLeft();
@@ -139,6 +139,33 @@ public abstract class Drawable implements Constants
                 height + 20);
     }
 
+    /**
+     * Returns a rectangle enclosing this drawable component, such that each
+     * point for which {@linkplain #contains(Point)} returns <tt>true</tt> lies
+     * inside the rectangle, and each rectangle for which
+     * {@linkplain #intersects(java.awt.Rectangle)} returns <tt>true</tt>
+     * intersects it. Subclasses overriding these methods must override this
+     * method as well.
+     * 
+     * @return a rectangle enclosing this drawable component
+     */
+    public java.awt.Rectangle getExtent() {
+        return new java.awt.Rectangle(Math.min(left, left + width) - 10, Math
+                .min(top, top + height) - 10, Math.abs(width) + 20, Math
+                .abs(height) + 20);
+    }
+
+    /**
+     * Returns the rectangle of the points for which {@linkplain #contains(Point)}
+     * returns <tt>true</tt>. Subclasses overriding {@linkplain #contains(Point)}
+     * must override this method as well.
+     * 
+     * @return the rectangle of the points contained in this drawable component
+     */
+    public java.awt.Rectangle getArea() {
+        return new java.awt.Rectangle(left, top, width + 1, height + 1);
+    }
+
     public boolean contains(Point point) {
         int x = point.x;
         int y = point.y;
@@ -25,10 +25,8 @@ package net.sf.sdedit.drawable;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
-import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Set;
 
 import net.sf.sdedit.diagram.Diagram;
 import net.sf.sdedit.message.ConstructorMessage;
@@ -64,9 +62,19 @@ public class Fragment extends Drawable
     private Diagram diagram;
 
     /**
-     * The sequence elements that are members of the fragment.
+     * The sequence index (see {@linkplain SequenceElement#getSequenceIndex()})
+     * of the first member of the fragment, -1 if there is no member yet.
      */
-    private Set<SequenceElement> includedElements;
+    private int firstElement;
+
+    /**
+     * The sequence index of the last member of the fragment that has been
+     * added so far. As a fragment is given all sequence elements from the
+     * moment it is opened until it is finished, its members are exactly the
+     * elements with sequence indices from <tt>firstElement</tt> to
+     * <tt>lastElement</tt>.
+     */
+    private int lastElement;
 
     /**
      * The space between the left border of the frame and the text representing
@@ -108,7 +116,8 @@ public class Fragment extends Drawable
             this.condition = condition.equals("") ? "" : "[" + condition + "]";
         }
         this.diagram = diagram;
-        includedElements = new HashSet<SequenceElement>();
+        firstElement = -1;
+        lastElement = -1;
         typeTextPadding = diagram.getConfiguration().getFragmentTextPadding();
         level = 0;
         separators = new LinkedList<Pair<Integer, String>>();
@@ -127,6 +136,68 @@ public class Fragment extends Drawable
         this.level = Math.max(this.level, level);
     }
 
+    /**
+     * Returns the number of fragments that surround this fragment.
+     * 
+     * @return the number of fragments that surround this fragment
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Returns the sequence index of the first member of this fragment, -1 if
+     * there is no member yet.
+     * 
+     * @return the sequence index of the first member
+     */
+    public int getFirstElement() {
+        return firstElement;
+    }
+
+    /**
+     * Returns the sequence index of the member that has been added last, -1
+     * if there is no member yet.
+     * 
+     * @return the sequence index of the last member
+     */
+    public int getLastElement() {
+        return lastElement;
+    }
+
+    /**
+     * Returns the number of sections that have been added via
+     * {@linkplain #addSection(String)}.
+     * 
+     * @return the number of sections that have been added
+     */
+    public int getNumberOfSections() {
+        return separators.size();
+    }
+
+    /**
+     * Resets the level, the members and the sections of this fragment to the
+     * values returned by the respective methods at an earlier point of the
+     * generation of the diagram (see
+     * {@linkplain Diagram#restore(net.sf.sdedit.diagram.Checkpoint)}).
+     * 
+     * @param level
+     *            the number of fragments that surround this fragment
+     * @param firstElement
+     *            the sequence index of the first member
+     * @param lastElement
+     *            the sequence index of the last member
+     * @param sections
+     *            the number of sections
+     */
+    public void restore(int level, int firstElement, int lastElement,
+            int sections) {
+        this.level = level;
+        this.firstElement = firstElement;
+        this.lastElement = lastElement;
+        separators.subList(sections, separators.size()).clear();
+    }
+
     /**
      * Returns the condition of this fragment (to be precise, of the first
      * section of the fragment).
@@ -138,13 +209,27 @@ public class Fragment extends Drawable
     }
 
     /**
-     * Adds a sequence element that is a member of this fragment.
+     * Adds a sequence element that is a member of this fragment. The elements
+     * must be added in the order of their sequence indices, without gaps, as
+     * the members are represented by the range of their indices only (see
+     * {@linkplain #containsElement(SequenceElement)}).
      * 
      * @param element
      *            a member of this fragment
+     * @throws IllegalArgumentException
+     *             if the element has no sequence index or its index does not
+     *             follow the one of the member that has been added last
      */
     public void addElement(SequenceElement element) {
-        includedElements.add(element);
+        int index = element.getSequenceIndex();
+        if (index < 0 || firstElement != -1 && index != lastElement + 1) {
+            throw new IllegalArgumentException("sequence element " + index
+                    + " cannot follow " + lastElement + " in a fragment");
+        }
+        if (firstElement == -1) {
+            firstElement = index;
+        }
+        lastElement = index;
     }
 
     /**
@@ -173,7 +258,9 @@ public class Fragment extends Drawable
      * @return true if the element is a member of this fragment
      */
     public boolean containsElement(SequenceElement element) {
-        return includedElements.contains(element);
+        int index = element.getSequenceIndex();
+        return firstElement != -1 && index >= firstElement
+                && index <= lastElement;
     }
 
     /**
@@ -182,7 +269,10 @@ public class Fragment extends Drawable
     public void computeLayoutInformation() {
         int min = Integer.MAX_VALUE;
         int max = Integer.MIN_VALUE;
-        for (SequenceElement element : includedElements) {
+        List<SequenceElement> elements = diagram.getFragmentManager()
+                .getSequenceElements();
+        for (int i = firstElement; i != -1 && i <= lastElement; i++) {
+            SequenceElement element = elements.get(i);
             int left = element.getLeft();
             int right = element.getLeft() + element.getWidth();
             if (element instanceof Arrow) {
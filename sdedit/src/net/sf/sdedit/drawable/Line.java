@@ -65,4 +65,10 @@ public class Line extends ExtensibleDrawable {
 		return x >= getLeft() - 5 && x <= getRight() + 5 && y >= getTop()
 				&& y <= getBottom();
 	}
+
+	@Override
+	public java.awt.Rectangle getArea() {
+		return new java.awt.Rectangle(getLeft() - 5, getTop(), getRight()
+				- getLeft() + 11, getBottom() - getTop() + 1);
+	}
 }
@@ -145,6 +145,14 @@ public class Note extends SequenceElement
         targets.add(target);
     }
 
+    /**
+     * Removes all points that have been added via
+     * {@linkplain #addTarget(Point)}.
+     */
+    public void clearTargets() {
+        targets = new LinkedList<Point>();
+    }
+
     /**
      * Returns the lifeline to the left of the note.
      * 
@@ -245,6 +253,16 @@ public class Note extends SequenceElement
         }
     }
 
+    @Override
+    public java.awt.Rectangle getExtent() {
+        java.awt.Rectangle extent = super.getExtent();
+        for (Point a : targets) {
+            extent.add(a.x - 10, a.y - 10);
+            extent.add(a.x + 10, a.y + 10);
+        }
+        return extent;
+    }
+
     @Override
     public boolean intersects(java.awt.Rectangle rectangle) {
         if (targets.isEmpty()) {
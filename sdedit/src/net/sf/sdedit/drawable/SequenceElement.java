@@ -52,6 +52,8 @@ public abstract class SequenceElement extends Drawable implements Constants
     private int rightPadding;
 
     private int leftPadding;
+
+    private int sequenceIndex;
     
 	protected final Configuration configuration;
 	
@@ -62,6 +64,7 @@ public abstract class SequenceElement extends Drawable implements Constants
         this.diagram = diagram;
         configuration = configuration();
         this.label = label;
+        sequenceIndex = -1;
         findEndpoints(boundary0, boundary1);
         computePadding();
     }
@@ -141,6 +144,42 @@ public abstract class SequenceElement extends Drawable implements Constants
         return 0;
     }
 
+    /**
+     * Returns the width that this sequence element needs between the
+     * lifelines limiting it. This is the width before the layout information
+     * has been computed, as the computation may stretch the element to the
+     * space between its endpoints.
+     * 
+     * @return the width that this sequence element needs between the
+     *         lifelines limiting it
+     */
+    public int getMinimumWidth() {
+        return getWidth();
+    }
+
+    /**
+     * Returns the position of this sequence element in the list of all
+     * elements that have been added to fragments (see
+     * {@linkplain net.sf.sdedit.diagram.FragmentManager#getSequenceElements()}),
+     * or -1 if there was no fragment to add it to.
+     * 
+     * @return the sequence index of this element, or -1
+     */
+    public int getSequenceIndex() {
+        return sequenceIndex;
+    }
+
+    /**
+     * Sets the position of this sequence element in the list of all elements
+     * that have been added to fragments.
+     * 
+     * @param sequenceIndex
+     *            the sequence index of this element
+     */
+    public void setSequenceIndex(int sequenceIndex) {
+        this.sequenceIndex = sequenceIndex;
+    }
+
     public ExtensibleDrawable getLeftEndpoint() {
         return leftEndpoint;
     }
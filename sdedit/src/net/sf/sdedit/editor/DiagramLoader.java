@@ -24,15 +24,30 @@
 
 package net.sf.sdedit.editor;
 
-import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
-import java.io.StringWriter;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import net.sf.sdedit.config.Configuration;
 import net.sf.sdedit.config.ConfigurationManager;
@@ -40,12 +55,9 @@ import net.sf.sdedit.ui.components.configuration.Bean;
 import net.sf.sdedit.ui.components.configuration.BeanConverter;
 import net.sf.sdedit.util.DocUtil;
 import net.sf.sdedit.util.Pair;
+import net.sf.sdedit.util.XMLWriter;
 import net.sf.sdedit.util.DocUtil.XMLException;
 
-import org.w3c.dom.CDATASection;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-
 /**
  * Auxiliary class for saving diagrams as plain text or in XML format, along
  * with a configuration.
@@ -54,17 +66,31 @@ import org.w3c.dom.Element;
  */
 public final class DiagramLoader {
 
+	/**
+	 * Files that have at least this number of bytes are mapped into memory
+	 * instead of being read into a buffer.
+	 */
+	private static final int MAPPING_THRESHOLD = 1 << 20;
+
+	private static final char BYTE_ORDER_MARK = '\uFEFF';
+
 	private DiagramLoader() {
 		/* empty */
 	}
 
 	/**
 	 * Loads a diagram from the text transmitted through the given
-	 * <tt>stream</tt>. If the text contains a line that starts with
-	 * <tt>&lt;?xml</tt>, it is interpreted as an XML file, containing the
-	 * diagram source as a CDATA section along with a configuration. Otherwise
-	 * the whole of the text is interpreted as a diagram source, and a default
-	 * configuration is used.
+	 * <tt>stream</tt>. If the text starts with <tt>&lt;?xml</tt> (after
+	 * white space or a byte order mark), it is interpreted as an XML file,
+	 * containing the diagram source as a CDATA section along with a
+	 * configuration. Otherwise the whole of the text is interpreted as a
+	 * diagram source, and a default configuration is used.
+	 * <p>
+	 * The text is decoded at once, if the stream is a
+	 * <tt>FileInputStream</tt> reading a large file, the file is mapped into
+	 * memory for this purpose. An XML file is parsed by StAX, so the source
+	 * and the configuration are extracted in a single pass, without building
+	 * a document.
 	 * 
 	 * @param stream
 	 *            the stream from where the diagram specification is read
@@ -78,43 +104,133 @@ public final class DiagramLoader {
 	 */
 	public static Pair<String, Bean<Configuration>> load(InputStream stream,
 			String encoding) throws IOException, DocUtil.XMLException {
-		InputStreamReader reader = new InputStreamReader(stream, encoding);
-		BufferedReader buffered = new BufferedReader(reader);
-		StringWriter stringWriter = new StringWriter();
-		PrintWriter writer = new PrintWriter(stringWriter);
-		boolean xml = false;
-		String line = buffered.readLine();
-		while (line != null) {
-			xml |= line.trim().startsWith("<?xml");
-			writer.println(line);
-			line = buffered.readLine();
-		}
-		writer.close();
+		CharBuffer text = decode(read(stream), encoding);
 		String source;
 		Bean<Configuration> configuration = ConfigurationManager
 				.createNewDefaultConfiguration();
-		if (xml) {
-			InputStream inputStream = new ByteArrayInputStream(stringWriter
-					.toString().getBytes(encoding));
-			try {
-				Document document = DocUtil.readDocument(inputStream, encoding);
-				source = DocUtil.evaluateCDATA(document, "/diagram/source");
-				Element confElement = (Element) DocUtil.evalXPathAsNode(
-						document, "/diagram/configuration");
-				BeanConverter converter = new BeanConverter(configuration,
-						document);
-				converter.setValues(confElement);
-			} finally {
-				inputStream.close();
-			}
+		int start = findXMLDeclaration(text);
+		if (start >= 0) {
+			// the parser does not accept anything before the declaration
+			text.position(start);
+			SdxReader handler = new SdxReader(new BeanConverter(
+					configuration), text.remaining());
+			DocUtil.parse(new CharBufferReader(text), handler);
+			source = handler.source.toString();
 		} else {
-			source = stringWriter.toString();
+			source = normalizeLineEnds(text);
 		}
 		return new Pair<String, Bean<Configuration>>(source, configuration);
 	}
 
+	/**
+	 * Reads all remaining bytes from the stream, mapping them into memory if
+	 * the stream reads a large file.
+	 */
+	private static ByteBuffer read(InputStream stream) throws IOException {
+		if (stream instanceof FileInputStream) {
+			FileChannel channel = ((FileInputStream) stream).getChannel();
+			long position = channel.position();
+			long size = channel.size() - position;
+			if (size >= MAPPING_THRESHOLD) {
+				return channel.map(FileChannel.MapMode.READ_ONLY, position,
+						size);
+			}
+			ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(0, size));
+			while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+				/* continue reading */
+			}
+			buffer.flip();
+			return buffer;
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int n;
+		while ((n = stream.read(buffer)) >= 0) {
+			bytes.write(buffer, 0, n);
+		}
+		return ByteBuffer.wrap(bytes.toByteArray());
+	}
+
+	/**
+	 * Decodes the bytes, replacing malformed input like an
+	 * <tt>InputStreamReader</tt> does.
+	 */
+	private static CharBuffer decode(ByteBuffer bytes, String encoding)
+			throws IOException {
+		Charset charset;
+		try {
+			charset = Charset.forName(encoding);
+		} catch (IllegalCharsetNameException e) {
+			throw new UnsupportedEncodingException(encoding);
+		} catch (UnsupportedCharsetException e) {
+			throw new UnsupportedEncodingException(encoding);
+		}
+		return charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE).decode(bytes);
+	}
+
+	/**
+	 * Returns the index of the XML declaration if the text starts with one,
+	 * after white space or a byte order mark, otherwise -1.
+	 */
+	private static int findXMLDeclaration(CharBuffer text) {
+		int i = 0;
+		int length = text.length();
+		if (length > 0 && text.charAt(0) == BYTE_ORDER_MARK) {
+			i++;
+		}
+		while (i < length && text.charAt(i) <= ' ') {
+			i++;
+		}
+		if (length - i >= 5
+				&& text.subSequence(i, i + 5).toString().equals("<?xml")) {
+			return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Replaces all line ends by the line separator of the platform and
+	 * terminates the last line, as if the text had been read line by line and
+	 * printed by a <tt>PrintWriter</tt>.
+	 */
+	private static String normalizeLineEnds(CharBuffer text) {
+		String separator = System.getProperty("line.separator");
+		int length = text.length();
+		String string = text.toString();
+		if (separator.equals("\n") && string.indexOf('\r') < 0) {
+			if (length == 0 || string.charAt(length - 1) == '\n') {
+				return string;
+			}
+			return string + separator;
+		}
+		StringBuilder builder = new StringBuilder(length + separator.length());
+		for (int i = 0; i < length; i++) {
+			char c = string.charAt(i);
+			if (c == '\r') {
+				builder.append(separator);
+				if (i + 1 < length && string.charAt(i + 1) == '\n') {
+					i++;
+				}
+			} else if (c == '\n') {
+				builder.append(separator);
+			} else {
+				builder.append(c);
+			}
+		}
+		if (length > 0) {
+			char last = string.charAt(length - 1);
+			if (last != '\r' && last != '\n') {
+				builder.append(separator);
+			}
+		}
+		return builder.toString();
+	}
+
 	/**
 	 * Saves a diagram specification (and a configuration), using a stream.
+	 * The XML representation is written element by element, no document is
+	 * built.
 	 * 
 	 * @param source
 	 *            the source text of the diagram
@@ -134,18 +250,16 @@ public final class DiagramLoader {
 			OutputStream stream, String encoding) throws IOException,
 			XMLException {
 		if (configuration != null) {
-			Document document = DocUtil.newDocument();
-			Element root = document.createElement("diagram");
-			document.appendChild(root);
-			BeanConverter converter = new BeanConverter(configuration, document);
-			Element sourceElem = document.createElement("source");
-			CDATASection sourceNode = document.createCDATASection(source);
-			sourceElem.appendChild(sourceNode);
-			root.appendChild(sourceElem);
-			Element configurationNode = converter
-					.createElement("configuration");
-			root.appendChild(configurationNode);
-			DocUtil.writeDocument(document, encoding, stream);
+			Writer writer = new BufferedWriter(new OutputStreamWriter(stream,
+					encoding));
+			XMLWriter xml = new XMLWriter(writer, encoding);
+			xml.startElement("diagram");
+			xml.startElement("source");
+			xml.cdata(source);
+			xml.endElement();
+			new BeanConverter(configuration).writeElement("configuration",
+					xml);
+			xml.finish();
 		} else {
 			OutputStreamWriter osw = new OutputStreamWriter(stream, encoding);
 			PrintWriter pw = new PrintWriter(osw);
@@ -153,4 +267,158 @@ public final class DiagramLoader {
 			pw.flush();
 		}
 	}
+
+	/**
+	 * A <tt>Reader</tt> reading the remaining characters of a
+	 * <tt>CharBuffer</tt>.
+	 */
+	private static class CharBufferReader extends Reader {
+
+		private final CharBuffer buffer;
+
+		CharBufferReader(CharBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read(char[] cbuf, int off, int len) {
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			int n = Math.min(len, buffer.remaining());
+			buffer.get(cbuf, off, n);
+			return n;
+		}
+
+		@Override
+		public void close() {
+			/* empty */
+		}
+	}
+
+	/**
+	 * Extracts the source and the configuration from an .sdx file while it is
+	 * being parsed. The source is the CDATA inside the first
+	 * <tt>/diagram/source</tt> element, along with the text between the CDATA
+	 * sections unless it is only white space (the text consists of the
+	 * characters that could not be encoded inside the CDATA, see
+	 * {@linkplain XMLWriter#cdata(String)}). The properties of the
+	 * configuration are the children of the first
+	 * <tt>/diagram/configuration</tt> element.
+	 */
+	private static class SdxReader implements DocUtil.StreamHandler {
+
+		private final BeanConverter converter;
+
+		final StringBuilder source;
+
+		private final StringBuilder text;
+
+		// text inside the source element, but outside a CDATA section
+		private final StringBuilder between;
+
+		private int depth;
+
+		private boolean diagram;
+
+		private boolean inSource;
+
+		private boolean sourceRead;
+
+		private boolean inConfiguration;
+
+		private boolean configurationRead;
+
+		// the attributes of the current property element
+		private Map<String, String> property;
+
+		SdxReader(BeanConverter converter, int capacity) {
+			this.converter = converter;
+			source = new StringBuilder(capacity);
+			text = new StringBuilder();
+			between = new StringBuilder();
+		}
+
+		public void read(XMLStreamReader reader) throws XMLStreamException {
+			while (reader.hasNext()) {
+				switch (reader.next()) {
+				case XMLStreamConstants.START_ELEMENT:
+					startElement(reader);
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					endElement();
+					break;
+				case XMLStreamConstants.CDATA:
+					if (inSource && depth == 2) {
+						appendBetween();
+						append(source, reader);
+					} else if (property != null) {
+						append(text, reader);
+					}
+					break;
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.SPACE:
+					if (inSource && depth == 2) {
+						append(between, reader);
+					} else if (property != null) {
+						append(text, reader);
+					}
+					break;
+				default:
+					break;
+				}
+			}
+		}
+
+		private void startElement(XMLStreamReader reader) {
+			depth++;
+			String name = reader.getLocalName();
+			if (depth == 1) {
+				diagram = name.equals("diagram");
+			} else if (depth == 2 && diagram) {
+				if (name.equals("source") && !sourceRead) {
+					inSource = true;
+				} else if (name.equals("configuration")
+						&& !configurationRead) {
+					inConfiguration = true;
+				}
+			} else if (depth == 3 && inConfiguration) {
+				property = new HashMap<String, String>();
+				for (int i = 0; i < reader.getAttributeCount(); i++) {
+					property.put(reader.getAttributeLocalName(i), reader
+							.getAttributeValue(i));
+				}
+				text.setLength(0);
+			}
+		}
+
+		private void endElement() {
+			if (depth == 2) {
+				if (inSource) {
+					appendBetween();
+					inSource = false;
+					sourceRead = true;
+				} else if (inConfiguration) {
+					inConfiguration = false;
+					configurationRead = true;
+				}
+			} else if (depth == 3 && property != null) {
+				converter.setValue(property, text.toString());
+				property = null;
+			}
+			depth--;
+		}
+
+		private static void append(StringBuilder builder, XMLStreamReader reader) {
+			builder.append(reader.getTextCharacters(), reader.getTextStart(),
+					reader.getTextLength());
+		}
+
+		private void appendBetween() {
+			if (between.toString().trim().length() > 0) {
+				source.append(between);
+			}
+			between.setLength(0);
+		}
+	}
 }
@@ -43,8 +43,7 @@ import net.sf.sdedit.config.Configuration;
 import net.sf.sdedit.config.ConfigurationManager;
 import net.sf.sdedit.config.GlobalConfiguration;
 import net.sf.sdedit.diagram.Diagram;
-import net.sf.sdedit.drawable.Drawable;
-import net.sf.sdedit.drawable.Note;
+import net.sf.sdedit.diagram.DisplayList;
 import net.sf.sdedit.editor.apple.AppInstaller;
 import net.sf.sdedit.server.RealtimeServer;
 import net.sf.sdedit.text.TextHandler;
@@ -691,79 +690,74 @@ public final class Editor implements Constants, PanelPaintDeviceListener,
 		return new UserInterfaceImpl();
 	}
 
-	// TODO move this to the GUI side (use diagram reference of paint device)
-
 	/**
 	 * Moves the cursor to the position in the text area where the object or
-	 * message corresponding to the drawable instance is declared.
+	 * message corresponding to the element is declared. If the element is a
+	 * note with a link, the linked file is opened.
 	 * 
-	 * @param drawable
-	 *            a drawable instance to show the corresponding declaration for
+	 * @param displayList
+	 *            the display list of the diagram
+	 * @param element
+	 *            the index of the element to show the corresponding
+	 *            declaration for
 	 */
-	public void mouseClickedDrawable(Drawable drawable) {
-		Diagram diag = ui.getDiagram();
-		if (diag != null) {
-			Integer pos = (Integer) diag.getStateForDrawable(drawable);
-			if (pos != null) {
-				ui.moveCursorToPosition(pos - 1);
-			}
+	public void mouseClickedElement(DisplayList displayList, int element) {
+		int pos = displayList.getSource(element);
+		if (pos != -1) {
+			ui.moveCursorToPosition(pos - 1);
 		}
-		if (drawable instanceof Note) {
-			Note note = (Note) drawable;
-			URI link = note.getLink();
-			if (link != null) {
-				File current = ui.getCurrentFile();
-				File linked;
-				if (current != null) {
-					linked = new File(current.toURI().resolve(link));
-				} else {
-					linked = new File(link);
-				}
-				if (!ui.selectTabWith(linked)) {
-					try {
-						loadCode(linked);
-					} catch (RuntimeException e) {
-						throw e;
-					} catch (Exception e) {
-						ui
-								.errorMessage(linked.getAbsolutePath()
-										+ "\n"
-										+ "could not be loaded due to an exception of\n"
-										+ "type "
-										+ e.getClass().getSimpleName()
-										+ " with the message\n"
-										+ e.getMessage());
-					}
+		String linkText = displayList.getLink(element);
+		if (linkText != null) {
+			URI link = URI.create(linkText);
+			File current = ui.getCurrentFile();
+			File linked;
+			if (current != null) {
+				linked = new File(current.toURI().resolve(link));
+			} else {
+				linked = new File(link);
+			}
+			if (!ui.selectTabWith(linked)) {
+				try {
+					loadCode(linked);
+				} catch (RuntimeException e) {
+					throw e;
+				} catch (Exception e) {
+					ui
+							.errorMessage(linked.getAbsolutePath()
+									+ "\n"
+									+ "could not be loaded due to an exception of\n"
+									+ "type "
+									+ e.getClass().getSimpleName()
+									+ " with the message\n"
+									+ e.getMessage());
 				}
-
 			}
 		}
-
 	}
 
 	/**
-	 * Returns true if and only if the given drawable instance is associated by
-	 * the most recently used diagram with a DiagramDataProvider state, id est a
-	 * position in the text area.
+	 * Returns true if and only if the given element is associated by the
+	 * diagram with a DiagramDataProvider state, id est a position in the text
+	 * area.
 	 * 
-	 * @param drawable
-	 *            a drawable instance such that the mouse has just entered it
+	 * @param displayList
+	 *            the display list of the diagram
+	 * @param element
+	 *            the index of an element such that the mouse has just entered
+	 *            it
 	 * 
-	 * @return true if and only if the given drawable instance is associated by
-	 *         the most recently used diagram with a position in the text area
+	 * @return true if and only if the given element is associated by the
+	 *         diagram with a position in the text area
 	 */
-	public boolean mouseEnteredDrawable(Drawable drawable) {
-		Diagram diag = ui.getDiagram();
-		if (diag != null && diag.getStateForDrawable(drawable) != null) {
-			return true;
-		}
-		return false;
+	public boolean mouseEnteredElement(DisplayList displayList, int element) {
+		return displayList.getSource(element) != -1;
 	}
 
 	/**
-	 * @see net.sf.sdedit.ui.PanelPaintDeviceListener#mouseExitedDrawable(net.sf.sdedit.drawable.Drawable)
+	 * @see net.sf.sdedit.ui.PanelPaintDeviceListener#mouseExitedElement(net.sf.sdedit.diagram.DisplayList,
+	 *      int)
 	 */
-	public void mouseExitedDrawable(Drawable drawable) {
+	public void mouseExitedElement(DisplayList displayList, int element) {
 		/* empty */
 	}
 
@@ -32,9 +32,11 @@ import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.StringReader;
 import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.sf.sdedit.config.Configuration;
 import net.sf.sdedit.config.ConfigurationManager;
+import net.sf.sdedit.diagram.CancellationToken;
 import net.sf.sdedit.diagram.Diagram;
 import net.sf.sdedit.error.DiagramError;
 import net.sf.sdedit.error.FatalError;
@@ -43,6 +45,9 @@ import net.sf.sdedit.text.TextHandler;
 
 /**
  * Utility class for drawing diagrams on a separate thread.
+ * <p>
+ * A rendering that is running when a new one is requested is cancelled (see
+ * {@linkplain CancellationToken}), as its result would be replaced anyway.
  * 
  * @author Markus Strauch
  */
@@ -57,6 +62,9 @@ final class Engine extends Thread {
 		setName("Diagram-Engine");
 		setDaemon(true);
 		stack = new LinkedList<Boolean>();
+		started = new AtomicInteger();
+		cancelled = new AtomicInteger();
+		completed = new AtomicInteger();
 		start();
 	}
 
@@ -64,6 +72,24 @@ final class Engine extends Thread {
 
 	private final LinkedList<Boolean> stack;
 
+	/**
+	 * The token for cancelling the rendering running on this thread, or
+	 * <tt>null</tt> (guarded by the stack).
+	 */
+	private CancellationToken token;
+
+	/**
+	 * Flag denoting if the rendering running on this thread is to redraw the
+	 * diagram (guarded by the stack).
+	 */
+	private boolean redrawing;
+
+	private final AtomicInteger started;
+
+	private final AtomicInteger cancelled;
+
+	private final AtomicInteger completed;
+
 	/**
 	 * (A)synchronously initiates a new drawing process and returns a reference
 	 * to the diagram. When the processing is asynchronous and the diagram is
@@ -74,6 +100,9 @@ final class Engine extends Thread {
 	 * @param configuration
 	 *            the configuration of the diagram to be drawn
 	 * @param syntaxCheckOnly
+	 *            flag denoting if the code is only to be checked, without
+	 *            rendering a diagram (see
+	 *            {@linkplain net.sf.sdedit.ui.UserInterface#validateDiagram(CancellationToken)})
 	 * @param synchronous
 	 *            flag denoting if the diagram generation is to take place
 	 *            (synchronously) on the current thread (true) or on a
@@ -84,22 +113,68 @@ final class Engine extends Thread {
 	final void render(final Configuration configuration,
 			final boolean syntaxCheckOnly, final boolean synchronous) {
 		if (synchronous) {
-			_render(syntaxCheckOnly);
+			_render(syntaxCheckOnly, new CancellationToken());
 		} else {
 			synchronized (stack) {
-				stack.addLast(syntaxCheckOnly);
+				boolean checkOnly = syntaxCheckOnly;
+				if (token != null) {
+					token.cancel();
+					// the cancelled rendering would have redrawn the diagram
+					checkOnly &= !redrawing;
+				}
+				stack.addLast(checkOnly);
 				stack.notify();
 			}
 		}
 	}
 
-	private synchronized void _render(final boolean syntaxCheckOnly) {
+	/**
+	 * Returns the number of renderings that have been started.
+	 * 
+	 * @return the number of renderings that have been started
+	 */
+	int getStartedRenderings() {
+		return started.get();
+	}
+
+	/**
+	 * Returns the number of renderings that have been cancelled because a
+	 * newer rendering was requested.
+	 * 
+	 * @return the number of renderings that have been cancelled
+	 */
+	int getCancelledRenderings() {
+		return cancelled.get();
+	}
+
+	/**
+	 * Returns the number of renderings that have been completed without an
+	 * error (including those that found no diagram to render). A rendering
+	 * that stopped with an error is counted neither as completed nor as
+	 * cancelled.
+	 * 
+	 * @return the number of renderings that have been completed
+	 */
+	int getCompletedRenderings() {
+		return completed.get();
+	}
+
+	private synchronized void _render(final boolean syntaxCheckOnly,
+			final CancellationToken cancellationToken) {
+		started.incrementAndGet();
 		editor.getUI().leaveFilterMode();
-		Diagram diagram = editor.getUI().renderDiagram();
+		Diagram diagram = syntaxCheckOnly ? editor.getUI().validateDiagram(
+				cancellationToken) : editor.getUI().renderDiagram(
+				cancellationToken);
 		// TODO
 		// This reference can be null, at least when this
 		// method is not synchronized. Why?
 		if (diagram == null) {
+			if (cancellationToken.isCancelled()) {
+				cancelled.incrementAndGet();
+			} else {
+				completed.incrementAndGet();
+			}
 			return;
 		}
 		DiagramError error = editor.getUI().getDiagramError();
@@ -114,13 +189,14 @@ final class Engine extends Thread {
 								-1, -1);
 			}
 
+			String status = syntaxCheckOnly ? diagram.getMetrics()
+					.getValidationSummary() : diagram.getMetrics().getSummary();
 			int noteNumber = diagram.getNextFreeNoteNumber();
-			if (noteNumber == 0) {
-				editor.getUI().setStatus("");
-			} else {
-				editor.getUI().setStatus(
-						"Next note number: " + diagram.getNextFreeNoteNumber());
+			if (noteNumber != 0) {
+				status = "Next note number: " + noteNumber + "    " + status;
 			}
+			editor.getUI().setStatus(status);
+			completed.incrementAndGet();
 		} else {
 			editor.getUI().setStatus("");
 			if (error instanceof FatalError) {
@@ -235,12 +311,14 @@ final class Engine extends Thread {
 
 	/**
 	 * Draws diagrams submitted by calls to render(). When the diagram is
-	 * finished, it notifies the user interface.
+	 * finished, it notifies the user interface. A rendering is cancelled when
+	 * another diagram is submitted meanwhile.
 	 */
 	@Override
 	public void run() {
 		while (true) {
 			boolean syntaxCheckOnly;
+			CancellationToken current;
 			synchronized (stack) {
 				while (stack.isEmpty()) {
 					try {
@@ -251,8 +329,13 @@ final class Engine extends Thread {
 				}
 				syntaxCheckOnly = stack.removeLast();
 				stack.clear();
+				token = current = new CancellationToken();
+				redrawing = !syntaxCheckOnly;
+			}
+			_render(syntaxCheckOnly, current);
+			synchronized (stack) {
+				token = null;
 			}
-			_render(syntaxCheckOnly);
 		}
 	}
 }
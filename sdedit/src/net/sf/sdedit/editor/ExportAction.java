@@ -35,7 +35,6 @@ import javax.swing.AbstractAction;
 import javax.swing.Action;
 
 import net.sf.sdedit.Constants;
-import net.sf.sdedit.diagram.Diagram;
 import net.sf.sdedit.ui.PanelPaintDevice;
 import net.sf.sdedit.ui.impl.LookAndFeelManager;
 
@@ -74,12 +73,8 @@ public class ExportAction extends AbstractAction implements
     }
     
     public void actionPerformed(ActionEvent e) {
-    	Diagram diagram = editor.getUI().getDiagram();
-    	if (diagram == null) {
-    		return;
-    	}
-        exportDevice = (PanelPaintDevice) diagram.getPaintDevice();
-        if (exportDevice.isEmpty()) {
+        exportDevice = editor.getUI().getPaintDevice();
+        if (exportDevice == null || exportDevice.getDisplayList() == null) {
             return;
         }
         try {
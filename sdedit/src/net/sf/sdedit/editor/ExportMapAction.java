@@ -38,8 +38,10 @@ import net.sf.sdedit.config.ConfigurationManager;
 import net.sf.sdedit.diagram.Diagram;
 import net.sf.sdedit.diagram.Lifeline;
 import net.sf.sdedit.drawable.Drawable;
+import net.sf.sdedit.error.DiagramError;
 import net.sf.sdedit.icons.Icons;
 import net.sf.sdedit.text.TextHandler;
+import net.sf.sdedit.ui.PanelPaintDevice;
 import net.sf.sdedit.util.Grep;
 
 /**
@@ -77,16 +79,28 @@ class ExportMapAction extends AbstractAction {
 	}
 
 	/**
-	 * See {@linkplain ExportMapAction}.
+	 * See {@linkplain ExportMapAction}. The tab only keeps a display list of
+	 * the diagram it displays, so the diagram is generated again from the
+	 * current code here.
 	 * 
 	 * @param e
 	 */
 	public void actionPerformed(ActionEvent e) {
-		Diagram diagram = editor.getUI().getDiagram();
-		if (diagram == null || diagram.getLifelines().isEmpty()) {
+		if (!editor.getUI().isDiagramTabSelected()) {
+			return;
+		}
+		TextHandler textHandler = new TextHandler(editor.getUI().getCode());
+		Diagram diagram = new Diagram(editor.getUI().getConfiguration()
+				.getDataObject(), textHandler, new PanelPaintDevice(false));
+		try {
+			diagram.generate();
+		} catch (DiagramError ex) {
+			// like the diagram displayed, the map covers the lifelines
+			// that have been declared before the error
+		}
+		if (diagram.getLifelines().isEmpty()) {
 			return;
 		}
-		TextHandler textHandler = (TextHandler) diagram.getDataProvider();
 		File currentFile = editor.getUI().getCurrentFile();
 		if (currentFile == null) {
 			editor.getUI().message("Please save the diagram as a file first.");
@@ -85,6 +85,16 @@ public abstract class Message implements Constants {
         return arrow;
     }
 
+    /**
+     * Forgets the arrow of this message. This is done for answers that have
+     * been drawn after a checkpoint when the diagram is restored to it (see
+     * {@linkplain Diagram#restore(net.sf.sdedit.diagram.Checkpoint)}), as
+     * they are yet to be sent then.
+     */
+    public final void discardArrow() {
+        arrow = null;
+    }
+
     /**
      * Creates some space on the diagram, so that the message arrow and its
      * label can be drawn, then draws them and creates some more space. Changes
@@ -89,6 +89,9 @@ public class MultipageExporter extends JPanel {
 		paintDevice = new MultipagePaintDevice(properties, size);
 		TextHandler th = new TextHandler(source);
 		new Diagram(configuration, th, paintDevice).generate();
+		// the pages are painted from the display list, the diagram is not
+		// needed anymore while the preview is shown
+		paintDevice.release();
 		int n = paintDevice.getPanels().size();
 		setLayout(new BoxLayout(this, BoxLayout.X_AXIS));
 		int i = 0;
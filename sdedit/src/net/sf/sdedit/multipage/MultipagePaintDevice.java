@@ -5,16 +5,15 @@ import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Rectangle;
-import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.List;
 
 import javax.swing.JPanel;
 
 import net.sf.sdedit.config.PrintConfiguration;
-import net.sf.sdedit.diagram.Diagram;
+import net.sf.sdedit.diagram.DisplayList;
 import net.sf.sdedit.diagram.PaintDevice;
-import net.sf.sdedit.drawable.Drawable;
+import net.sf.sdedit.diagram.TextMetrics;
 import net.sf.sdedit.ui.components.ZoomPane;
 import net.sf.sdedit.ui.components.Zoomable;
 
@@ -26,16 +25,18 @@ public class MultipagePaintDevice extends PaintDevice {
 
 	private Dimension pageSize;
 
-	private Graphics2D graphics;
-
-	private Graphics2D boldGraphics;
-
 	private List<MultipagePanel> panels;
 
 	private double scale;
 
 	private PrintConfiguration properties;
 
+	/**
+	 * The recording of the diagram, taken by {@linkplain #close()}, from which
+	 * the pages are painted.
+	 */
+	private DisplayList displayList;
+
 	public MultipagePaintDevice(PrintConfiguration properties, Dimension pageSize) {
 		super();
 		this.pageSize = pageSize;
@@ -43,17 +44,6 @@ public class MultipagePaintDevice extends PaintDevice {
 		this.properties = properties;
 	}
 
-	@Override
-	public void setDiagram(Diagram diagram) {
-		super.setDiagram(diagram);
-		graphics = (Graphics2D) new BufferedImage(1, 1,
-				BufferedImage.TYPE_USHORT_GRAY).getGraphics();
-		graphics.setFont(getFont(false));
-		boldGraphics = (Graphics2D) new BufferedImage(1, 1,
-				BufferedImage.TYPE_USHORT_GRAY).getGraphics();
-		boldGraphics.setFont(getFont(false));
-	}
-
 	public Dimension getPageSize() {
 		return pageSize;
 	}
@@ -86,6 +76,7 @@ public class MultipagePaintDevice extends PaintDevice {
 
 	public void close() {
 		super.close();
+		displayList = createDisplayList();
 		scale = computeScale();
 		int numberOfPages;
 		if (properties.isMultipage()) {
@@ -132,15 +123,15 @@ public class MultipagePaintDevice extends PaintDevice {
 	// super.addSequenceElement(elem);
 	// }
 
+	/**
+	 * Bold text has always been measured with the plain font on printed
+	 * pages, so both metrics are those of the plain font.
+	 * 
+	 * @see net.sf.sdedit.diagram.PaintDevice#getTextMetrics(boolean)
+	 */
 	@Override
-	public int getTextHeight(boolean bold) {
-		return (bold ? boldGraphics : graphics).getFontMetrics().getHeight();
-	}
-
-	@Override
-	public int getTextWidth(String text, boolean bold) {
-		return (bold ? boldGraphics : graphics).getFontMetrics().stringWidth(
-				text);
+	protected TextMetrics getTextMetrics(boolean bold) {
+		return TextMetrics.getInstance(getFont(false));
 	}
 
 	public class MultipagePanel extends JPanel implements Zoomable<JPanel> {
@@ -199,22 +190,22 @@ public class MultipagePaintDevice extends PaintDevice {
 
 			} else {
 				if (properties.isCenterVertically()) {
-					int yg = h - MultipagePaintDevice.this.getHeight();
+					int yg = h - displayList.getHeight();
 					if (yg > 0) {
 						g2d.translate(0, yg / 2);
 					}
 				}
 			}
 			if (properties.isCenterHorizontally()) {
-				int xg = w - MultipagePaintDevice.this.getWidth();
+				int xg = w - displayList.getWidth();
 				if (xg > 0) {
 					g2d.translate(xg / 2, 0);
 				}
 			}
-			for (Drawable drawable : MultipagePaintDevice.this) {
-				if (rect == null || drawable.intersects(rect)) {
-					drawable.draw(g2d);
-				}
+			if (rect == null) {
+				displayList.paint(g2d);
+			} else {
+				displayList.paint(g2d, rect);
 			}
 			g2d.dispose();
 		}
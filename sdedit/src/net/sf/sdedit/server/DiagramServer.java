@@ -24,20 +24,50 @@
 package net.sf.sdedit.server;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.io.PrintStream;
 import java.io.PrintWriter;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.io.StringReader;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
 import java.util.LinkedList;
-import java.util.PriorityQueue;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import net.sf.sdedit.config.Configuration;
 import net.sf.sdedit.config.ConfigurationManager;
+import net.sf.sdedit.diagram.CancellationToken;
 import net.sf.sdedit.diagram.Diagram;
+import net.sf.sdedit.diagram.DiagramMetrics;
+import net.sf.sdedit.diagram.DiagramMetrics.Phase;
+import net.sf.sdedit.diagram.Lifeline;
+import net.sf.sdedit.diagram.MessageData;
+import net.sf.sdedit.diagram.ValidatingPaintDevice;
+import net.sf.sdedit.drawable.Note;
 import net.sf.sdedit.error.SemanticError;
 import net.sf.sdedit.error.SyntaxError;
 import net.sf.sdedit.text.TextHandler;
+import net.sf.sdedit.ui.StripPaintDevice;
+import net.sf.sdedit.ui.components.configuration.Bean;
+import net.sf.sdedit.util.Pair;
 
 /**
  * This class implements a simple server that uses a TCP socket to receive a
@@ -58,6 +88,12 @@ import net.sf.sdedit.text.TextHandler;
  * </li>
  * </ol>
  * 
+ * If the client appends <tt>;stats</tt> to the mimetype, for example
+ * <tt>image/png;stats</tt>, the server sends a line starting with
+ * <tt>STATS:</tt> after the image data, containing the
+ * {@linkplain DiagramMetrics} of the diagram, i. e. the time spent in the
+ * phases of its generation and its size.
+ * <p>
  * There are currently two mime-types supported:
  * 
  * <ol>
@@ -65,21 +101,203 @@ import net.sf.sdedit.text.TextHandler;
  * <li>image/svg+xml (requires the SVG plugin)</li>
  * </ol>
  * 
+ * Instead of a mimetype, the client may send <tt>check</tt> (or
+ * <tt>check;stats</tt>) in order to have the diagram source text checked for
+ * errors without drawing the diagram. If there is no error, the server sends
+ * a line containing <tt>OK</tt> instead of image data.
+ * 
+ * All connections are served by the <tt>DiagramServer</tt> thread itself,
+ * using non-blocking I/O, so a slow client does not occupy a worker thread.
+ * Only requests that have been received completely are put into a bounded
+ * work queue, from where a fixed number of worker threads take them in order
+ * to draw the diagrams. When the work queue is full, a new request is
+ * answered by <tt>ERROR:busy</tt>. When no data of a request has been
+ * received for the read timeout, the request is answered by
+ * <tt>ERROR:timeout: ...</tt>, and so is a request whose diagram cannot be
+ * parsed and laid out within the render timeout. The read timeout is an idle
+ * timeout, so a large request may take longer as long as the client keeps
+ * sending. A request that is longer than {@linkplain #MAX_REQUEST_SIZE} bytes
+ * is answered by <tt>ERROR:too large: ...</tt>, and the connection is closed.
+ * <p>
+ * The time each request spends in the work queue, on parsing, on the layout
+ * and on encoding the image is recorded in a {@linkplain RequestMetrics}
+ * object, which is written to the log (see {@linkplain #setLog(PrintStream)}).
+ * <p>
+ * If a {@linkplain RenderCache} is set (see
+ * {@linkplain #setCache(RenderCache)}), the images that have been sent are
+ * kept there, and a request for an image that is found in the cache is
+ * answered by the cached image without parsing or drawing the diagram again.
+ * The cache is looked up by the <tt>DiagramServer</tt> thread before a
+ * request is put into the work queue, so such a request neither waits for a
+ * worker thread nor is answered by <tt>ERROR:busy</tt>.
+ * Requests with <tt>;stats</tt> and <tt>check</tt> requests always bypass
+ * the cache.
+ * <p>
+ * A client that sends many diagrams should use the <i>framed protocol</i>
+ * instead, which carries any number of requests over the same connection.
+ * It is chosen by sending {@linkplain #MAGIC}, a space and the
+ * {@linkplain #PROTOCOL_VERSION} as the first line, terminated by a line
+ * feed. The server answers by the same line, or by an <tt>ERROR:</tt> line
+ * if it does not support the version. Then the client sends requests and
+ * the server sends responses as frames, where all integers are 4 bytes
+ * long, in network byte order:
+ * <ul>
+ * <li>A request consists of an ID chosen by the client, the length of the
+ * payload, and the payload, which is the mimetype (or <tt>check</tt>), a
+ * line feed and the diagram source text, encoded in UTF-8.</li>
+ * <li>A response consists of the ID of the request, a status (see
+ * {@linkplain #STATUS_OK} and the following constants), the length of the
+ * payload, and the payload, which is the image data if the status is
+ * {@linkplain #STATUS_OK}, otherwise the description of the error, encoded
+ * in UTF-8.</li>
+ * </ul>
+ * The client need not wait for a response before sending the next request.
+ * The requests of a connection are processed by the worker threads at the
+ * same time, so the responses are sent in the order in which they are
+ * ready, which is not necessarily the order of the requests. The server
+ * closes a connection that has been idle for the read timeout, and after it
+ * has sent all responses when the client has shut down output. A frame whose
+ * payload would be longer than {@linkplain #MAX_REQUEST_SIZE} bytes is
+ * answered by a response with {@linkplain #STATUS_PROTOCOL_ERROR}, then the
+ * server reads nothing more from the connection and closes it after it has
+ * sent the responses to the preceding requests.
+ * <p>
+ * The same worker threads can also draw diagrams requested via HTTP, see
+ * {@linkplain HttpEndpoint}.
+ * 
  * @author Markus Strauch
  * 
  */
 public class DiagramServer extends Thread {
 
-	private ServerSocket serverSocket;
+	/**
+	 * The default number of worker threads for processing requests (i. e.
+	 * drawing diagrams).
+	 */
+	public static final int DEFAULT_WORKERS = 5;
+
+	/**
+	 * The default number of requests that may wait for a worker thread.
+	 */
+	public static final int DEFAULT_QUEUE_CAPACITY = 50;
 
-	private PriorityQueue<ServerThread> threadPool;
+	/**
+	 * The default number of milliseconds a connection may be idle while a
+	 * request is received or a response is sent.
+	 */
+	public static final long DEFAULT_READ_TIMEOUT = 10000;
 
-	// the number of worker threads for processing requests (i. e. drawing
-	// diagrams)
-	private static int poolSize = 5;
+	/**
+	 * The maximal number of bytes of a request, including the mimetype.
+	 */
+	public static final int MAX_REQUEST_SIZE = 8 << 20;
 
 	/**
-	 * Creates and starts a new DiagramServer listening at the given port.
+	 * The default number of milliseconds a worker thread may spend on parsing
+	 * and laying out a diagram.
+	 */
+	public static final long DEFAULT_RENDER_TIMEOUT = 30000;
+
+	/**
+	 * The beginning of the first line of a connection that uses the framed
+	 * protocol, followed by a space and the {@linkplain #PROTOCOL_VERSION}.
+	 */
+	public static final String MAGIC = "SDEDIT-FRAMED";
+
+	/**
+	 * The version of the framed protocol.
+	 */
+	public static final int PROTOCOL_VERSION = 1;
+
+	/**
+	 * The status of a response of the framed protocol that contains an image
+	 * (or the result of a check).
+	 */
+	public static final int STATUS_OK = 0;
+
+	/**
+	 * The status of a response of the framed protocol to a diagram source
+	 * text that has a syntax error.
+	 */
+	public static final int STATUS_SYNTAX_ERROR = 1;
+
+	/**
+	 * The status of a response of the framed protocol to a diagram source
+	 * text that has a semantic error.
+	 */
+	public static final int STATUS_SEMANTIC_ERROR = 2;
+
+	/**
+	 * The status of a response of the framed protocol to a request that could
+	 * not be processed within the render timeout.
+	 */
+	public static final int STATUS_TIMEOUT = 3;
+
+	/**
+	 * The status of a response of the framed protocol to a request that has
+	 * been rejected because the work queue was full.
+	 */
+	public static final int STATUS_BUSY = 4;
+
+	/**
+	 * The status of a response of the framed protocol to a request that
+	 * failed for another reason, for example an unknown type.
+	 */
+	public static final int STATUS_FATAL_ERROR = 5;
+
+	/**
+	 * The status of a response of the framed protocol to a frame that
+	 * violates the protocol, for example by announcing a payload longer than
+	 * {@linkplain #MAX_REQUEST_SIZE} bytes. The response carries the ID of
+	 * the frame, and the server closes the connection after it has been
+	 * sent.
+	 */
+	public static final int STATUS_PROTOCOL_ERROR = 6;
+
+	// the maximal number of requests of a single connection that may be
+	// processed at the same time
+	private static final int MAX_PENDING = 16;
+
+	// the maximal number of milliseconds between two checks for connections
+	// that have timed out
+	private static final long CHECK_INTERVAL = 250;
+
+	private static final int READING = 0;
+
+	private static final int PROCESSING = 1;
+
+	private static final int WRITING = 2;
+
+	private final Selector selector;
+
+	private final ServerSocketChannel serverChannel;
+
+	private final ThreadPoolExecutor workers;
+
+	private final long readTimeout;
+
+	private final long renderTimeout;
+
+	// requests whose responses are ready to be sent, handed over from the
+	// worker threads to the server thread
+	private final Queue<Request> responses;
+
+	private volatile PrintStream log;
+
+	private volatile RenderCache cache;
+
+	private final LatencyHistogram latency;
+
+	private final LatencyHistogram queueWait;
+
+	private final ConcurrentHashMap<String, AtomicLong> outcomes;
+
+	private volatile boolean shutDown;
+
+	/**
+	 * Creates and starts a new DiagramServer listening at the given port,
+	 * using the default number of worker threads, the default capacity of the
+	 * work queue and the default timeouts.
 	 * 
 	 * @param port
 	 *            the TCP port where the diagram server listens
@@ -87,137 +305,1028 @@ public class DiagramServer extends Thread {
 	 *             if no DiagramServer listening at that port could be created
 	 */
 	public DiagramServer(int port) throws IOException {
-		serverSocket = new ServerSocket(port);
+		this(port, DEFAULT_WORKERS, DEFAULT_QUEUE_CAPACITY,
+				DEFAULT_READ_TIMEOUT, DEFAULT_RENDER_TIMEOUT);
+	}
+
+	/**
+	 * Creates and starts a new DiagramServer listening at the given port.
+	 * 
+	 * @param port
+	 *            the TCP port where the diagram server listens
+	 * @param workerCount
+	 *            the number of worker threads that draw diagrams
+	 * @param queueCapacity
+	 *            the number of requests that may wait for a worker thread
+	 *            before further requests are answered by <tt>ERROR:busy</tt>
+	 * @param readTimeout
+	 *            the number of milliseconds a connection may be idle while a
+	 *            request is received or a response is sent
+	 * @param renderTimeout
+	 *            the number of milliseconds a worker thread may spend on
+	 *            parsing and laying out a diagram
+	 * @throws IOException
+	 *             if no DiagramServer listening at that port could be created
+	 */
+	public DiagramServer(int port, int workerCount, int queueCapacity,
+			long readTimeout, long renderTimeout) throws IOException {
+		if (workerCount < 1 || queueCapacity < 1 || readTimeout < 1
+				|| renderTimeout < 1) {
+			throw new IllegalArgumentException(
+					"worker count, queue capacity and timeouts must be positive");
+		}
+		this.readTimeout = readTimeout;
+		this.renderTimeout = renderTimeout;
+		selector = Selector.open();
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.socket().bind(new InetSocketAddress(port));
+		serverChannel.configureBlocking(false);
+		serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+		workers = new ThreadPoolExecutor(workerCount, workerCount, 0L,
+				TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(
+						queueCapacity), new ThreadFactory() {
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable,
+								"DiagramServer worker thread");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		responses = new ConcurrentLinkedQueue<Request>();
+		latency = new LatencyHistogram();
+		queueWait = new LatencyHistogram();
+		outcomes = new ConcurrentHashMap<String, AtomicLong>();
 		setName("DiagramServer");
 		setDaemon(true);
-		threadPool = new PriorityQueue<ServerThread>();
-		for (int i = 0; i < poolSize; i++) {
-			ServerThread worker = new ServerThread();
-			worker.start();
-			threadPool.add(worker);
-		}
 		start();
 	}
 
-	private static class ServerThread extends Thread implements
-			Comparable<ServerThread> {
+	/**
+	 * Sets the stream where the {@linkplain RequestMetrics} of each request
+	 * are written to, one line per request.
+	 * 
+	 * @param log
+	 *            the stream for the metrics of the requests, or
+	 *            <tt>null</tt> if they are not to be written
+	 */
+	public void setLog(PrintStream log) {
+		this.log = log;
+	}
+
+	/**
+	 * Sets the cache where the images that have been sent are kept, so the
+	 * same diagram need not be drawn again.
+	 * 
+	 * @param cache
+	 *            the cache for the images, or <tt>null</tt> if every diagram
+	 *            is to be drawn
+	 */
+	public void setCache(RenderCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Returns the port where this server listens.
+	 * 
+	 * @return the port where this server listens
+	 */
+	public int getPort() {
+		return serverChannel.socket().getLocalPort();
+	}
 
-		private LinkedList<Socket> queue;
+	/**
+	 * Stops accepting connections, closes all open connections and stops the
+	 * worker threads. Requests of the {@linkplain HttpEndpoint} that are still
+	 * in the work queue are answered by {@linkplain #STATUS_BUSY}.
+	 */
+	public void shutDown() {
+		shutDown = true;
+		selector.wakeup();
+	}
 
-		ServerThread() {
-			queue = new LinkedList<Socket>();
-			setName("DiagramServer worker thread");
-			setDaemon(true);
+	/**
+	 * Waits for connections to be made and for data to be read or written,
+	 * until the server is shut down.
+	 */
+	public void run() {
+		long lastCheck = System.currentTimeMillis();
+		while (!shutDown) {
+			try {
+				selector.select(CHECK_INTERVAL);
+				Request request;
+				while ((request = responses.poll()) != null) {
+					request.connection.respond(request);
+				}
+				Iterator<SelectionKey> iterator = selector.selectedKeys()
+						.iterator();
+				while (iterator.hasNext()) {
+					SelectionKey key = iterator.next();
+					iterator.remove();
+					if (!key.isValid()) {
+						continue;
+					}
+					if (key.isAcceptable()) {
+						accept();
+						continue;
+					}
+					Connection connection = (Connection) key.attachment();
+					try {
+						if (key.isReadable()) {
+							connection.read();
+						}
+						if (key.isValid() && key.isWritable()) {
+							connection.write();
+						}
+					} catch (IOException e) {
+						connection.close();
+					}
+				}
+				long now = System.currentTimeMillis();
+				if (now - lastCheck >= CHECK_INTERVAL) {
+					lastCheck = now;
+					for (SelectionKey key : selector.keys()) {
+						if (key.attachment() != null) {
+							((Connection) key.attachment()).checkTimeout(now);
+						}
+					}
+				}
+			} catch (Throwable t) {
+				t.printStackTrace();
+			}
+		}
+		for (Runnable request : workers.shutdownNow()) {
+			((Request) request).abort();
 		}
+		for (SelectionKey key : selector.keys()) {
+			if (key.attachment() != null) {
+				((Connection) key.attachment()).close();
+			}
+		}
+		try {
+			serverChannel.close();
+			selector.close();
+		} catch (IOException ignored) {
+			/* empty */
+		}
+	}
 
-		synchronized void addJob(Socket socket) {
-			queue.addFirst(socket);
-			notify();
+	private void accept() throws IOException {
+		SocketChannel channel = serverChannel.accept();
+		if (channel != null) {
+			channel.configureBlocking(false);
+			SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+			key.attach(new Connection(channel, key));
 		}
+	}
 
-		public synchronized int compareTo(ServerThread st) {
-			return queue.size() - st.queue.size();
+	private static byte[] error(String message) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			PrintWriter pw = new PrintWriter(new OutputStreamWriter(bytes,
+					"utf-8"));
+			pw.println("ERROR:" + message);
+			pw.close();
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
 		}
+		return bytes.toByteArray();
+	}
 
-		public synchronized boolean equals(Object o) {
-			if (!(o instanceof ServerThread)) {
-				return false;
-			}
-			ServerThread st = (ServerThread) o;
-			return compareTo(st) == 0;
+	/**
+	 * A single connection, from reading the first request until the last
+	 * response has been written. Only the server thread reads from and writes
+	 * to the channel, worker threads just compute the responses (see
+	 * {@linkplain Request#run()}).
+	 * <p>
+	 * A connection carries a single request of the legacy protocol, unless its
+	 * first line is the {@linkplain DiagramServer#MAGIC} line, then it carries
+	 * any number of frames.
+	 */
+	private class Connection {
+
+		private final SocketChannel channel;
+
+		private final SelectionKey key;
+
+		private int state;
+
+		private boolean framed;
+
+		private byte[] data;
+
+		private int length;
+
+		// the beginning of the line that has not been terminated yet
+		private int lineBegin;
+
+		private int lines;
+
+		// the beginning of the frame that has not been read completely yet
+		private int frameBegin;
+
+		// the number of requests of the framed protocol whose responses have
+		// not been put into the output yet
+		private int pending;
+
+		// true if the client has shut down its side of the connection
+		private boolean inputClosed;
+
+		private final LinkedList<ByteBuffer> output;
+
+		// the time when the current state ends due to a timeout
+		private long deadline;
+
+		Connection(SocketChannel channel, SelectionKey key) {
+			this.channel = channel;
+			this.key = key;
+			state = READING;
+			data = new byte[1024];
+			output = new LinkedList<ByteBuffer>();
+			deadline = System.currentTimeMillis() + readTimeout;
 		}
 
-		public void run() {
-			while (true) {
-				Socket socket = null;
-				synchronized (this) {
-					while (queue.isEmpty()) {
-						try {
-							wait();
-						} catch (InterruptedException ignored) {
-							/* empty */
-						}
-					}
-					socket = queue.removeLast();
-				}
-				try {
-					InputStreamReader isr = new InputStreamReader(socket
-							.getInputStream(), "utf-8");
-					BufferedReader reader = new BufferedReader(isr);
-					String type = reader.readLine().trim();
-					StringBuffer buffer = new StringBuffer();
-					String line;
-					while (true) {
-						line = reader.readLine();
-						if (line == null || line.equals("END")) {
-							break;
-						}
-						buffer.append(line + "\n");
-					}
-					OutputStreamWriter osr = new OutputStreamWriter(socket
-							.getOutputStream(), "utf-8");
-					PrintWriter pw = new PrintWriter(osr);
-					try {
-						Exporter exporter = Exporter
-								.getExporter(type, null, "A4",
-										socket.getOutputStream());
-						if (exporter == null) {
-							throw new RuntimeException(
-									"FreeHEP library missing.");
-						}
-						Diagram diagram = new Diagram(ConfigurationManager
-								.createNewDefaultConfiguration().getDataObject(),
-								new TextHandler(buffer.toString()), exporter);
-						diagram.generate();
-						exporter.export();
-					} catch (SyntaxError se) {
-						TextHandler th = (TextHandler) se.getProvider();
-						String msg = "ERROR:syntax error in line "
-								+ th.getLineNumber() + ": " + se.getMessage();
-						pw.println(msg);
-						pw.flush();
-						pw.close();
-					} catch (SemanticError se) {
-						TextHandler th = (TextHandler) se.getProvider();
-						String msg = "ERROR:semantic error in line "
-								+ th.getLineNumber() + ": " + se.getMessage();
-						pw.println(msg);
-						pw.flush();
-						pw.close();
-					} catch (Throwable t) {
-						pw.println("ERROR:fatal error: " + t.getMessage());
-						pw.flush();
-						pw.close();
+		void read() throws IOException {
+			if (length == data.length) {
+				if (!framed && length >= MAX_REQUEST_SIZE) {
+					output.add(ByteBuffer.wrap(error("too large: a request "
+							+ "must not be longer than " + MAX_REQUEST_SIZE
+							+ " bytes")));
+					startWriting();
+					return;
+				}
+				byte[] newData = new byte[2 * data.length];
+				System.arraycopy(data, 0, newData, 0, length);
+				data = newData;
+			}
+			int n = channel.read(ByteBuffer.wrap(data, length, data.length
+					- length));
+			if (n == -1) {
+				if (framed) {
+					inputClosed = true;
+					update();
+				} else if (length == 0) {
+					close();
+				} else {
+					enqueue(new Request(this, 0, data, length));
+				}
+				return;
+			}
+			int i = length;
+			length += n;
+			deadline = System.currentTimeMillis() + readTimeout;
+			if (framed) {
+				readFrames();
+				return;
+			}
+			for (; i < length; i++) {
+				if (data[i] == '\n' || data[i] == '\r') {
+					if (lines == 0 && negotiate(i)) {
+						return;
 					}
-					socket.close();
-				} catch (Throwable t) {
-					t.printStackTrace();
-				} finally {
-					if (socket != null) {
-						try {
-							socket.close();
-						} catch (Exception ignored) {
-							/* empty */
-						}
+					if (lines > 0 && i - lineBegin == 3
+							&& data[lineBegin] == 'E'
+							&& data[lineBegin + 1] == 'N'
+							&& data[lineBegin + 2] == 'D') {
+						enqueue(new Request(this, 0, data, lineBegin));
+						return;
 					}
+					lines++;
+					lineBegin = i + 1;
 				}
 			}
 		}
+
+		/**
+		 * Switches to the framed protocol if the first line, ending at the
+		 * given index, is the magic line.
+		 */
+		private boolean negotiate(int end) throws IOException {
+			if (data[end] != '\n' || end < MAGIC.length()
+					|| !new String(data, 0, MAGIC.length(), "utf-8")
+							.equals(MAGIC)) {
+				return false;
+			}
+			String version = new String(data, MAGIC.length(), end
+					- MAGIC.length(), "utf-8").trim();
+			if (!version.equals(String.valueOf(PROTOCOL_VERSION))) {
+				output.add(ByteBuffer.wrap(error("unsupported protocol "
+						+ "version: " + version)));
+				startWriting();
+				return true;
+			}
+			framed = true;
+			output.add(ByteBuffer.wrap((MAGIC + " " + PROTOCOL_VERSION + "\n")
+					.getBytes("utf-8")));
+			frameBegin = end + 1;
+			deadline = System.currentTimeMillis() + readTimeout;
+			readFrames();
+			return true;
+		}
+
+		/**
+		 * Enqueues the requests of all frames that have been read completely,
+		 * as long as there are less than {@linkplain #MAX_PENDING} requests
+		 * pending. A frame announcing a payload that is negative or longer
+		 * than {@linkplain #MAX_REQUEST_SIZE} bytes is answered by a
+		 * {@linkplain #STATUS_PROTOCOL_ERROR} response, and everything the
+		 * client sends afterwards is ignored, so the buffer never grows
+		 * beyond a single maximal frame.
+		 */
+		private void readFrames() {
+			while (pending < MAX_PENDING && length - frameBegin >= 8) {
+				int size = getInt(frameBegin + 4);
+				if (size < 0 || size > MAX_REQUEST_SIZE) {
+					addFrame(getInt(frameBegin), STATUS_PROTOCOL_ERROR,
+							utf8("frame too large: the payload must not be "
+									+ "longer than " + MAX_REQUEST_SIZE
+									+ " bytes, but is " + (size & 0xffffffffL)
+									+ " bytes"));
+					inputClosed = true;
+					length = frameBegin;
+					break;
+				}
+				if (length - frameBegin - 8 < size) {
+					break;
+				}
+				byte[] payload = new byte[size];
+				System.arraycopy(data, frameBegin + 8, payload, 0, size);
+				int id = getInt(frameBegin);
+				frameBegin += 8 + size;
+				pending++;
+				enqueue(new Request(this, id, payload, size));
+			}
+			System.arraycopy(data, frameBegin, data, 0, length - frameBegin);
+			length -= frameBegin;
+			frameBegin = 0;
+			update();
+		}
+
+		private int getInt(int offset) {
+			return ((data[offset] & 0xff) << 24)
+					| ((data[offset + 1] & 0xff) << 16)
+					| ((data[offset + 2] & 0xff) << 8)
+					| (data[offset + 3] & 0xff);
+		}
+
+		private void enqueue(Request request) {
+			if (!framed) {
+				state = PROCESSING;
+				key.interestOps(0);
+			}
+			request.enqueued = System.currentTimeMillis();
+			if (request.lookUp()) {
+				complete(request);
+				if (!framed) {
+					startWriting();
+				}
+				return;
+			}
+			try {
+				workers.execute(request);
+			} catch (RejectedExecutionException e) {
+				request.reject();
+				complete(request);
+				if (!framed) {
+					startWriting();
+				}
+			}
+		}
+
+		/**
+		 * Puts the response to the given request into the output.
+		 */
+		private void complete(Request request) {
+			if (!framed) {
+				output.add(ByteBuffer
+						.wrap(request.status == STATUS_OK ? request.response
+								: error(request.message)));
+				return;
+			}
+			pending--;
+			addFrame(request.id, request.status,
+					request.status == STATUS_OK ? request.response
+							: utf8(request.message));
+		}
+
+		/**
+		 * Puts a response frame of the framed protocol into the output.
+		 */
+		private void addFrame(int id, int status, byte[] payload) {
+			ByteBuffer header = ByteBuffer.allocate(12);
+			header.putInt(id).putInt(status).putInt(payload.length);
+			header.flip();
+			output.add(header);
+			output.add(ByteBuffer.wrap(payload));
+		}
+
+		private byte[] utf8(String string) {
+			try {
+				return string.getBytes("utf-8");
+			} catch (UnsupportedEncodingException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		/**
+		 * Sends the response to a request that a worker thread has processed.
+		 */
+		void respond(Request request) {
+			if (!key.isValid()) {
+				return;
+			}
+			complete(request);
+			if (framed) {
+				readFrames();
+			} else {
+				startWriting();
+			}
+		}
+
+		/**
+		 * Sets the operations that the connection of the framed protocol is
+		 * interested in, or closes it when all responses have been written
+		 * and the client will not send any more requests.
+		 */
+		private void update() {
+			if (!key.isValid()) {
+				return;
+			}
+			if (inputClosed && pending == 0 && output.isEmpty()) {
+				close();
+				return;
+			}
+			int ops = 0;
+			if (!inputClosed && pending < MAX_PENDING) {
+				ops |= SelectionKey.OP_READ;
+			}
+			if (!output.isEmpty()) {
+				ops |= SelectionKey.OP_WRITE;
+			}
+			key.interestOps(ops);
+		}
+
+		void startWriting() {
+			state = WRITING;
+			deadline = System.currentTimeMillis() + readTimeout;
+			if (key.isValid()) {
+				key.interestOps(SelectionKey.OP_WRITE);
+			}
+		}
+
+		void write() throws IOException {
+			while (!output.isEmpty()) {
+				ByteBuffer buffer = output.getFirst();
+				if (channel.write(buffer) > 0) {
+					deadline = System.currentTimeMillis() + readTimeout;
+				}
+				if (buffer.hasRemaining()) {
+					return;
+				}
+				output.removeFirst();
+			}
+			if (framed) {
+				update();
+			} else {
+				close();
+			}
+		}
+
+		void checkTimeout(long now) {
+			if (now < deadline) {
+				return;
+			}
+			if (framed) {
+				// the connection is idle, or the client does not receive the
+				// responses
+				if (pending == 0 || !output.isEmpty()) {
+					close();
+				}
+			} else if (state == READING) {
+				output.add(ByteBuffer.wrap(error("timeout: no data has been "
+						+ "received for " + readTimeout + " ms")));
+				startWriting();
+			} else if (state == WRITING) {
+				close();
+			}
+		}
+
+		void close() {
+			key.cancel();
+			try {
+				channel.close();
+			} catch (IOException ignored) {
+				/* empty */
+			}
+		}
 	}
 
 	/**
-	 * Blocks until a connection is made, then creates a socket for the
-	 * connection and blocks again, waiting for the next connection.
+	 * Returns the key of the image of a diagram in the
+	 * {@linkplain RenderCache}, which is also the <tt>ETag</tt> of the image
+	 * sent by the {@linkplain HttpEndpoint}.
+	 * 
+	 * @param type
+	 *            the type of the image
+	 * @param orientation
+	 *            the orientation of the page, or <tt>null</tt>
+	 * @param format
+	 *            the format of the page
+	 * @param text
+	 *            the diagram source text
+	 * @param raster
+	 *            flag denoting if the image is drawn by a
+	 *            {@linkplain StripPaintDevice}
+	 * @return the key of the image
 	 */
-	public void run() {
-		while (true) {
+	static String getCacheKey(String type, String orientation, String format,
+			String text, boolean raster) {
+		try {
+			return getCacheKey(type, orientation, format, readText(
+					new BufferedReader(new StringReader(text))), raster,
+					ConfigurationManager.createNewDefaultConfiguration());
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String getCacheKey(String type, String orientation,
+			String format, String text, boolean raster,
+			Bean<Configuration> configuration) {
+		return RenderCache.key(raster ? type + ";raster" : type, orientation,
+				format, text, configuration);
+	}
+
+	// joins the remaining lines, so the text does not depend on the line
+	// terminators sent by the client
+	private static String readText(BufferedReader reader) throws IOException {
+		StringBuffer buffer = new StringBuffer();
+		String line;
+		while ((line = reader.readLine()) != null) {
+			buffer.append(line + "\n");
+		}
+		return buffer.toString();
+	}
+
+	/**
+	 * Has a request processed by a worker thread, just like a request
+	 * received by the socket, and waits until it has been processed, but not
+	 * longer than the render timeout plus the read timeout. A request for an
+	 * image that is in the cache is answered at once, on the calling thread. This is used by
+	 * the {@linkplain HttpEndpoint}.
+	 * 
+	 * @param type
+	 *            the type of the image
+	 * @param orientation
+	 *            the orientation of the page, or <tt>null</tt>
+	 * @param format
+	 *            the format of the page
+	 * @param text
+	 *            the diagram source text
+	 * @param raster
+	 *            flag denoting if the image is to be drawn by a
+	 *            {@linkplain StripPaintDevice} instead of an
+	 *            {@linkplain Exporter}
+	 * @return the processed request, or <tt>null</tt> if it has not been
+	 *         processed in time
+	 * @throws InterruptedException
+	 *             if the current thread is interrupted while waiting
+	 */
+	Request process(String type, String orientation, String format,
+			String text, boolean raster) throws InterruptedException {
+		byte[] data;
+		try {
+			data = (type + "\n" + text).getBytes("utf-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+		Request request = new Request(null, 0, data, data.length);
+		request.orientation = orientation;
+		request.format = format;
+		request.raster = raster;
+		request.enqueued = System.currentTimeMillis();
+		if (request.lookUp()) {
+			return request;
+		}
+		try {
+			workers.execute(request);
+		} catch (RejectedExecutionException e) {
+			request.reject();
+			return request;
+		}
+		if (!request.done.await(renderTimeout + readTimeout,
+				TimeUnit.MILLISECONDS)) {
+			return null;
+		}
+		return request;
+	}
+
+	ThreadPoolExecutor getWorkers() {
+		return workers;
+	}
+
+	RenderCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * Returns the histogram of the times from the moment a request has been
+	 * read completely until the response is ready to be sent.
+	 * 
+	 * @return the histogram of the total processing times
+	 */
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	/**
+	 * Returns the histogram of the times the requests have been waiting in
+	 * the work queue.
+	 * 
+	 * @return the histogram of the times spent in the work queue
+	 */
+	public LatencyHistogram getQueueWait() {
+		return queueWait;
+	}
+
+	/**
+	 * Returns the numbers of requests by their outcome (see
+	 * {@linkplain RequestMetrics#getOutcome()}).
+	 * 
+	 * @return a map from outcomes to the numbers of requests
+	 */
+	public Map<String, AtomicLong> getOutcomes() {
+		return outcomes;
+	}
+
+	/**
+	 * A single request, which is processed by a worker thread.
+	 */
+	class Request implements Runnable {
+
+		// the connection where the request has been received, or null if it
+		// has been received by the HTTP endpoint
+		private final Connection connection;
+
+		// the ID of the request of the framed protocol
+		private final int id;
+
+		private final byte[] data;
+
+		// the length of the request data, not including the 'END' line
+		private final int end;
+
+		private long enqueued;
+
+		private RequestMetrics metrics;
+
+		private int status;
+
+		// the image (or the 'OK' line) if the status is STATUS_OK
+		private byte[] response;
+
+		// the description of the error if the status is not STATUS_OK
+		private String message;
+
+		private String orientation;
+
+		private String format = "A4";
+
+		private boolean raster;
+
+		// the type of the image without the options, the options and the
+		// diagram source text, read from the data by parse()
+		private String type;
+
+		private boolean stats;
+
+		private String text;
+
+		// the key of the image in the cache, or null if the cache has not
+		// been looked up yet
+		private String cacheKey;
+
+		private final CountDownLatch done = new CountDownLatch(1);
+
+		Request(Connection connection, int id, byte[] data, int end) {
+			this.connection = connection;
+			this.id = id;
+			this.data = data;
+			this.end = end;
+		}
+
+		void reject() {
+			metrics = new RequestMetrics(readType());
+			metrics.setOutcome("busy");
+			status = STATUS_BUSY;
+			message = "busy";
+			log();
+		}
+
+		/**
+		 * Answers a request that has been removed from the work queue because
+		 * the server has been shut down, so a thread waiting for it in
+		 * {@linkplain DiagramServer#process(String, String, String, String, boolean)}
+		 * does not wait in vain.
+		 */
+		void abort() {
+			metrics = new RequestMetrics(readType());
+			metrics.setOutcome("shut down");
+			status = STATUS_BUSY;
+			message = "unavailable: the server has been shut down";
+			log();
+			done.countDown();
+		}
+
+		int getStatus() {
+			return status;
+		}
+
+		byte[] getResponse() {
+			return response;
+		}
+
+		String getMessage() {
+			return message;
+		}
+
+		private String readType() {
+			int i = 0;
+			while (i < end && data[i] != '\n' && data[i] != '\r') {
+				i++;
+			}
 			try {
-				Socket socket = serverSocket.accept();
-				ServerThread worker = threadPool.remove();
-				worker.addJob(socket);
-				threadPool.add(worker);
+				return new String(data, 0, i, "utf-8").trim();
+			} catch (UnsupportedEncodingException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		/**
+		 * Reads the type, the options and the source text from the request
+		 * data, unless this has been done before.
+		 */
+		private void parse() throws IOException {
+			if (text != null) {
+				return;
+			}
+			BufferedReader reader = new BufferedReader(new StringReader(
+					new String(data, 0, end, "utf-8")));
+			type = reader.readLine().trim();
+			int semicolon = type.indexOf(';');
+			if (semicolon >= 0) {
+				stats = type.substring(semicolon + 1).trim().equals("stats");
+				type = type.substring(0, semicolon).trim();
+			}
+			text = readText(reader);
+		}
+
+		/**
+		 * Looks up the image in the cache before the request is put into the
+		 * work queue, so a request whose image is in the cache does not wait
+		 * behind the diagrams that are being drawn and is not rejected when
+		 * the work queue is full. This is called by the thread that has
+		 * received the request.
+		 * 
+		 * @return true if the image has been found, then the request has been
+		 *         answered by it
+		 */
+		boolean lookUp() {
+			RenderCache cache = DiagramServer.this.cache;
+			if (cache == null || end == 0) {
+				return false;
+			}
+			try {
+				parse();
+			} catch (IOException e) {
+				return false;
+			}
+			if (stats || type.equals("check")) {
+				return false;
+			}
+			cacheKey = getCacheKey(type, orientation, format, text, raster,
+					ConfigurationManager.createNewDefaultConfiguration());
+			byte[] image = cache.get(cacheKey);
+			if (image == null) {
+				return false;
+			}
+			metrics = new RequestMetrics(readType());
+			metrics.setCache("hit");
+			response = image;
+			status = STATUS_OK;
+			metrics.setTotal(System.currentTimeMillis() - enqueued);
+			latency.record(metrics.getTotal());
+			queueWait.record(metrics.getQueueWait());
+			log();
+			done.countDown();
+			return true;
+		}
+
+		/**
+		 * Draws the diagram, this is called by a worker thread.
+		 */
+		public void run() {
+			long start = System.currentTimeMillis();
+			metrics = new RequestMetrics(readType());
+			metrics.setQueueWait(start - enqueued);
+			try {
+				response = draw(start + renderTimeout);
+				status = STATUS_OK;
+			} catch (SyntaxError se) {
+				TextHandler th = (TextHandler) se.getProvider();
+				metrics.setOutcome("syntax error");
+				status = STATUS_SYNTAX_ERROR;
+				message = "syntax error in line " + th.getLineNumber() + ": "
+						+ se.getMessage();
+			} catch (SemanticError se) {
+				TextHandler th = (TextHandler) se.getProvider();
+				metrics.setOutcome("semantic error");
+				status = STATUS_SEMANTIC_ERROR;
+				message = "semantic error in line " + th.getLineNumber()
+						+ ": " + se.getMessage();
+			} catch (CancellationException ce) {
+				metrics.setOutcome("timeout");
+				status = STATUS_TIMEOUT;
+				message = "timeout: the diagram could not be drawn within "
+						+ renderTimeout + " ms";
 			} catch (Throwable t) {
-				t.printStackTrace();
+				metrics.setOutcome("fatal error");
+				status = STATUS_FATAL_ERROR;
+				message = "fatal error: " + t.getMessage();
+			}
+			metrics.setTotal(System.currentTimeMillis() - enqueued);
+			latency.record(metrics.getTotal());
+			queueWait.record(metrics.getQueueWait());
+			log();
+			if (connection == null) {
+				done.countDown();
+			} else {
+				responses.add(this);
+				selector.wakeup();
+			}
+		}
+
+		private byte[] draw(long renderDeadline) throws IOException,
+				SemanticError, SyntaxError {
+			parse();
+			if (type.equals("check")) {
+				return check(text, renderDeadline, stats);
+			}
+			Bean<Configuration> configuration = ConfigurationManager
+					.createNewDefaultConfiguration();
+			RenderCache cache = stats ? null : DiagramServer.this.cache;
+			if (cache != null) {
+				// the image may have been drawn for another request since
+				// this one has been looked up
+				if (cacheKey == null) {
+					cacheKey = getCacheKey(type, orientation, format, text,
+							raster, configuration);
+				}
+				byte[] image = cache.get(cacheKey);
+				metrics.setCache(image != null ? "hit" : "miss");
+				if (image != null) {
+					return image;
+				}
+			}
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			Exporter exporter = null;
+			StripPaintDevice stripPaintDevice = null;
+			if (raster) {
+				stripPaintDevice = new StripPaintDevice();
+			} else {
+				exporter = Exporter.getExporter(type, orientation, format, out);
+				if (exporter == null) {
+					throw new RuntimeException("FreeHEP library missing.");
+				}
+			}
+			TimedTextHandler handler = new TimedTextHandler(text);
+			Diagram diagram = new Diagram(configuration.getDataObject(),
+					handler, raster ? stripPaintDevice : exporter);
+			diagram.setCancellationToken(new CancellationToken(renderDeadline));
+			long start = System.nanoTime();
+			diagram.generate();
+			long generated = System.nanoTime();
+			if (raster) {
+				stripPaintDevice.writeToStream(out);
+			} else {
+				exporter.export();
+			}
+			long exported = System.nanoTime();
+			metrics.setParse(handler.time / 1000000);
+			metrics.setLayout((generated - start - handler.time) / 1000000);
+			metrics.setExport((exported - generated) / 1000000);
+			DiagramMetrics diagramMetrics = diagram.getMetrics();
+			diagramMetrics.addTime(Phase.PAINT, exported - generated);
+			metrics.setDiagramMetrics(diagramMetrics);
+			if (stats) {
+				out.write(("\nSTATS:" + diagramMetrics + "\n")
+						.getBytes("utf-8"));
+			}
+			byte[] image = out.toByteArray();
+			if (cache != null) {
+				cache.put(cacheKey, image);
+			}
+			return image;
+		}
+
+		/**
+		 * Checks the diagram source text without drawing the diagram (see
+		 * {@linkplain ValidatingPaintDevice}), so the response is just an
+		 * <tt>OK</tt> line if no error is found.
+		 */
+		private byte[] check(String text, long renderDeadline, boolean stats)
+				throws IOException, SemanticError, SyntaxError {
+			TimedTextHandler handler = new TimedTextHandler(text);
+			Diagram diagram = new Diagram(ConfigurationManager
+					.createNewDefaultConfiguration().getDataObject(), handler,
+					new ValidatingPaintDevice());
+			diagram.setCancellationToken(new CancellationToken(renderDeadline));
+			long start = System.nanoTime();
+			diagram.generate();
+			long generated = System.nanoTime();
+			metrics.setParse(handler.time / 1000000);
+			metrics.setLayout((generated - start - handler.time) / 1000000);
+			DiagramMetrics diagramMetrics = diagram.getMetrics();
+			metrics.setDiagramMetrics(diagramMetrics);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			out.write("OK\n".getBytes("utf-8"));
+			if (stats) {
+				out.write(("STATS:" + diagramMetrics + "\n").getBytes("utf-8"));
+			}
+			return out.toByteArray();
+		}
+
+		private void log() {
+			AtomicLong count = outcomes.get(metrics.getOutcome());
+			if (count == null) {
+				outcomes.putIfAbsent(metrics.getOutcome(), new AtomicLong());
+				count = outcomes.get(metrics.getOutcome());
+			}
+			count.incrementAndGet();
+			PrintStream log = DiagramServer.this.log;
+			if (log != null) {
+				log.println("DiagramServer: " + metrics);
+			}
+		}
+	}
+
+	/**
+	 * A <tt>TextHandler</tt> that measures the time spent on reading and
+	 * parsing the text. The render timeout is enforced by a
+	 * {@linkplain CancellationToken} with a deadline, which the diagram
+	 * checks while reading lines and between the phases of the layout.
+	 */
+	private static class TimedTextHandler extends TextHandler {
+
+		// nanoseconds spent on parsing so far
+		long time;
+
+		TimedTextHandler(String text) {
+			super(text);
+		}
+
+		public boolean advance() {
+			long start = System.nanoTime();
+			try {
+				return super.advance();
+			} finally {
+				time += System.nanoTime() - start;
+			}
+		}
+
+		public Lifeline nextObject() throws SyntaxError {
+			long start = System.nanoTime();
+			try {
+				return super.nextObject();
+			} finally {
+				time += System.nanoTime() - start;
+			}
+		}
+
+		public MessageData nextMessage() throws SyntaxError {
+			long start = System.nanoTime();
+			try {
+				return super.nextMessage();
+			} finally {
+				time += System.nanoTime() - start;
+			}
+		}
+
+		public Note getNote() throws SyntaxError {
+			long start = System.nanoTime();
+			try {
+				return super.getNote();
+			} finally {
+				time += System.nanoTime() - start;
+			}
+		}
+
+		public Pair<Lifeline, Integer> getEventAssociation()
+				throws SyntaxError {
+			long start = System.nanoTime();
+			try {
+				return super.getEventAssociation();
+			} finally {
+				time += System.nanoTime() - start;
 			}
 		}
 	}
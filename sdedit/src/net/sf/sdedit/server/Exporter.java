@@ -64,7 +64,11 @@ public abstract class Exporter extends Graphics2DPaintDevice {
      * Returns an Exporter object if the exporting library is available,
      * otherwise <tt>null</tt>. The following output types are supported:
      * 
-     * ps, pdf, swf, emf, svg, png, gif, jpg, bmp
+     * ps, pdf, swf, emf, svg, svg-freehep, png, gif, jpg, bmp
+     * <p>
+     * svg is written by an {@linkplain SVGExporter}, which does not need the
+     * exporting library, so an Exporter for svg is always returned. The
+     * exporting library's SVG output is available as svg-freehep.
      * 
      * @param type
      *            describes the output format
@@ -77,6 +81,11 @@ public abstract class Exporter extends Graphics2DPaintDevice {
     public static Exporter getExporter(String type, String orientation, String format, OutputStream stream) {
         Exporter exporter;
 
+        if (type.equalsIgnoreCase("svg")) {
+            exporter = new SVGExporter();
+            exporter.setOutputStream(stream);
+            return exporter;
+        }
         try {
             // This fails if the export library is not on the class path
             // because ExporterImpl contains symbols that cannot be resolved
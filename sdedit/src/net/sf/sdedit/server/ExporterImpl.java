@@ -27,9 +27,18 @@ package net.sf.sdedit.server;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics2D;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import net.sf.sdedit.diagram.TextMetrics;
+import net.sf.sdedit.util.Pair;
 
 import org.freehep.graphics2d.VectorGraphics;
 import org.freehep.graphicsio.ImageGraphics2D;
@@ -42,6 +51,37 @@ import org.freehep.graphicsio.swf.SWFGraphics2D;
 
 class ExporterImpl extends Exporter
 {
+    /**
+     * Maps output types onto the metrics of the default font of a graphics
+     * context of the type. Text is always measured in that font, as it is
+     * never set before measuring. The font metrics of the graphics contexts
+     * do not depend on their font render contexts, so the default
+     * context is used.
+     */
+    private static final ConcurrentHashMap<String, TextMetrics> metrics =
+        new ConcurrentHashMap<String, TextMetrics>();
+    
+    /**
+     * Maps output types onto the pattern of the creation date that FreeHEP
+     * writes into the document and the fixed date that replaces it (see
+     * {@linkplain TimestampFilter}), so exporting a diagram twice yields the
+     * same bytes. The PDF date keeps its length, because the cross-reference
+     * table holds byte offsets.
+     */
+    static final Map<String, Pair<Pattern, String>> timestamps;
+    
+    static {
+        timestamps = new HashMap<String, Pair<Pattern, String>>();
+        timestamps.put("pdf", new Pair<Pattern, String>(Pattern
+                .compile("(?<=/(?:CreationDate|ModDate) \\(D:)\\d{14}"),
+                "19700101000000"));
+        timestamps.put("ps", new Pair<Pattern, String>(Pattern
+                .compile("(?<=%%CreationDate: )[^\r\n]*"),
+                "1970-01-01T00:00:00Z"));
+        timestamps.put("svg-freehep", new Pair<Pattern, String>(Pattern
+                .compile("(?<= Date: )[^<]*"), "1970-01-01T00:00:00Z"));
+    }
+    
     private OutputStream stream;
     
     private String type;
@@ -54,17 +94,16 @@ class ExporterImpl extends Exporter
     
     private Dimension dim;
     
+    private TimestampFilter timestampFilter;
+    
     public ExporterImpl (String orientation, String format) {
         super();
-        this.orientation = orientation;
+        this.orientation = orientation == null ? "Portrait" : orientation;
         this.format = format;
     }
     
-    private VectorGraphics getGraphics () {
+    private VectorGraphics getGraphics (OutputStream stream, Dimension dim) {
         VectorGraphics vectorGraphics;
-        if (orientation == null) {
-            orientation = dim.getWidth() <= dim.getHeight() ? "Portrait" : "Landscape";
-        }
         if (type.equals("gif")) {
             vectorGraphics = new GIFGraphics2D(stream, dim);
         } else if (type.equals("png")) {
@@ -90,7 +129,7 @@ class ExporterImpl extends Exporter
             vectorGraphics = ps;
         } else if (type.equals("emf")) {
             vectorGraphics = new EMFGraphics2D(stream, dim);
-        } else if (type.equals("svg")) {
+        } else if (type.equals("svg-freehep")) {
             vectorGraphics = new SVGGraphics2D(stream, dim);
         } else if (type.equals("swf")) {
             vectorGraphics = new SWFGraphics2D(stream, dim);
@@ -100,16 +139,31 @@ class ExporterImpl extends Exporter
         return vectorGraphics;
     }
 
+    /**
+     * @see net.sf.sdedit.diagram.PaintDevice#getTextMetrics(boolean)
+     */
     @Override
-    protected Graphics2D createDummyGraphics(boolean bold) {
-        dim = new Dimension(1,1);
-        return getGraphics();
+    protected TextMetrics getTextMetrics(boolean bold) {
+        TextMetrics textMetrics = metrics.get(type);
+        if (textMetrics == null) {
+            VectorGraphics dummy = getGraphics(new ByteArrayOutputStream(),
+                    new Dimension(1, 1));
+            textMetrics = TextMetrics.getInstance(dummy.getFont());
+            metrics.putIfAbsent(type, textMetrics);
+        }
+        return textMetrics;
     }
 
     @Override
     protected Graphics2D createGraphics() {
         dim = new Dimension(getWidth(), getHeight());
-        vg = getGraphics();
+        Pair<Pattern, String> timestamp = timestamps.get(type);
+        if (timestamp != null) {
+            timestampFilter = new TimestampFilter(stream, timestamp);
+            vg = getGraphics(timestampFilter, dim);
+        } else {
+            vg = getGraphics(stream, dim);
+        }
         if (vg instanceof ImageGraphics2D) {
             vg.setColor(Color.WHITE);
             vg.fillRect(0, 0, getWidth(), getHeight());
@@ -145,5 +199,113 @@ class ExporterImpl extends Exporter
             ((PSGraphics2D) vg).closePage();
         }
         vg.endExport();
+        if (timestampFilter != null) {
+            try {
+                timestampFilter.finish();
+            } catch (IOException ioe) {
+                ioe.printStackTrace();
+            }
+        }
+    }
+    
+    /**
+     * Replaces the creation date that FreeHEP writes into a document while
+     * passing the document on. The date is always part of a short line, so
+     * the document is searched line by line, and only the current line is
+     * held back, unless it is longer than {@linkplain #MAX_LINE} bytes (like
+     * the lines of binary data), then it is passed on unchanged.
+     */
+    static final class TimestampFilter extends FilterOutputStream {
+        
+        /**
+         * The maximal length of a line that is searched for the date.
+         */
+        static final int MAX_LINE = 1024;
+        
+        private final Pair<Pattern, String> timestamp;
+        
+        private final byte[] line;
+        
+        private int length;
+        
+        // true if the current line is longer than MAX_LINE
+        private boolean passing;
+        
+        TimestampFilter(OutputStream out, Pair<Pattern, String> timestamp) {
+            super(out);
+            this.timestamp = timestamp;
+            line = new byte[MAX_LINE];
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            if (passing) {
+                out.write(b);
+                passing = b != '\n' && b != '\r';
+            } else {
+                append((byte) b);
+            }
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            int end = off + len;
+            while (off < end) {
+                if (passing) {
+                    int i = off;
+                    while (i < end && b[i] != '\n' && b[i] != '\r') {
+                        i++;
+                    }
+                    if (i < end) {
+                        passing = false;
+                        i++;
+                    }
+                    out.write(b, off, i - off);
+                    off = i;
+                } else {
+                    append(b[off++]);
+                }
+            }
+        }
+        
+        @Override
+        public void flush() throws IOException {
+            // the line held back is not written, it might be incomplete
+            out.flush();
+        }
+        
+        @Override
+        public void close() throws IOException {
+            finish();
+            super.close();
+        }
+        
+        /**
+         * Writes the line held back, the document is complete.
+         */
+        void finish() throws IOException {
+            writeLine();
+            out.flush();
+        }
+        
+        private void append(byte b) throws IOException {
+            line[length++] = b;
+            if (b == '\n' || b == '\r') {
+                writeLine();
+            } else if (length == MAX_LINE) {
+                out.write(line, 0, length);
+                length = 0;
+                passing = true;
+            }
+        }
+        
+        private void writeLine() throws IOException {
+            if (length > 0) {
+                String text = new String(line, 0, length, "ISO-8859-1");
+                length = 0;
+                out.write(timestamp.getFirst().matcher(text).replaceAll(
+                        timestamp.getSecond()).getBytes("ISO-8859-1"));
+            }
+        }
     }
 }
@@ -0,0 +1,376 @@
+// Copyright (c) 2006 - 2008, Markus Strauch.
+// All rights reserved.
+// 
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright notice, 
+// this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright notice, 
+// this list of conditions and the following disclaimer in the documentation 
+// and/or other materials provided with the distribution.
+// 
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.sf.sdedit.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sf.sdedit.ui.StripPaintDevice;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An <tt>HttpEndpoint</tt> makes a {@linkplain DiagramServer} available via
+ * HTTP, using the HTTP server that is built into the JDK (since Java 6). The
+ * diagrams are drawn by the worker threads of the <tt>DiagramServer</tt>, so
+ * the requests received via HTTP and via the socket share the same work
+ * queue, timeouts and {@linkplain RenderCache}.
+ * <p>
+ * There are these resources:
+ * <ul>
+ * <li><tt>POST /render?type=</tt><i>type</i><tt>&format=</tt><i>format</i>
+ * <tt>&orientation=</tt><i>orientation</i> draws the diagram whose source
+ * text is the body of the request, encoded in UTF-8. The type is one of
+ * <tt>png</tt> (the default), <tt>svg</tt>, <tt>pdf</tt>, <tt>ps</tt>,
+ * <tt>emf</tt>, <tt>swf</tt>, <tt>gif</tt>, <tt>jpg</tt> and <tt>bmp</tt>;
+ * PNG images are drawn by a {@linkplain StripPaintDevice}, as on the command
+ * line, so drawing a long diagram does not need an image of its full size,
+ * the other types by an {@linkplain Exporter}. The format (<tt>A4</tt> by
+ * default) and the orientation (<tt>Portrait</tt> by default) are passed to
+ * the <tt>Exporter</tt>. The response carries an <tt>ETag</tt> that is
+ * computed from the request, and a <tt>Location</tt> where the image can be
+ * found while it is in the cache. If the request has an
+ * <tt>If-None-Match</tt> header with that <tt>ETag</tt>, the response is
+ * <tt>304 Not Modified</tt>, without drawing the diagram. Errors in the
+ * diagram source text are answered by <tt>400</tt>; a full work queue, a
+ * request that has not been processed within the render timeout plus the
+ * read timeout of the server, and a server that has been shut down by
+ * <tt>503</tt>; other failures by <tt>500</tt>, always with a plain text
+ * description.</li>
+ * <li><tt>GET /render/</tt><i>etag</i><tt>.</tt><i>type</i> returns the image
+ * from the cache, or <tt>404</tt> if it is not there (anymore).</li>
+ * <li><tt>GET /metrics</tt> returns the length of the work queue, the number
+ * of busy worker threads, the numbers of requests by outcome, histograms of
+ * the processing times and the time spent in the work queue, and the
+ * counters of the cache, in the text format of Prometheus.</li>
+ * </ul>
+ * 
+ * @author Markus Strauch
+ */
+public class HttpEndpoint {
+
+	private static final Map<String, String> CONTENT_TYPES;
+
+	static {
+		CONTENT_TYPES = new HashMap<String, String>();
+		CONTENT_TYPES.put("png", "image/png");
+		CONTENT_TYPES.put("svg", "image/svg+xml");
+		CONTENT_TYPES.put("svg-freehep", "image/svg+xml");
+		CONTENT_TYPES.put("pdf", "application/pdf");
+		CONTENT_TYPES.put("ps", "application/postscript");
+		CONTENT_TYPES.put("emf", "image/emf");
+		CONTENT_TYPES.put("swf", "application/x-shockwave-flash");
+		CONTENT_TYPES.put("gif", "image/gif");
+		CONTENT_TYPES.put("jpg", "image/jpeg");
+		CONTENT_TYPES.put("bmp", "image/bmp");
+	}
+
+	private static final String RENDER = "/render";
+
+	private final DiagramServer server;
+
+	private final HttpServer httpServer;
+
+	private final ThreadPoolExecutor executor;
+
+	/**
+	 * Creates and starts a new <tt>HttpEndpoint</tt> listening at the given
+	 * port.
+	 * 
+	 * @param server
+	 *            the diagram server whose worker threads draw the diagrams
+	 * @param port
+	 *            the TCP port where the endpoint listens
+	 * @throws IOException
+	 *             if no HTTP server listening at that port could be created
+	 */
+	public HttpEndpoint(DiagramServer server, int port) throws IOException {
+		this.server = server;
+		// the threads just wait for the worker threads of the server, whose
+		// work queue limits the number of requests being processed, the
+		// other requests are answered by 503 at once
+		executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L,
+				TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+				new ThreadFactory() {
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable,
+								"HttpEndpoint thread");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		httpServer = HttpServer.create(new InetSocketAddress(port), 0);
+		httpServer.createContext(RENDER, new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					if (exchange.getRequestMethod().equals("POST")
+							&& exchange.getRequestURI().getPath().equals(
+									RENDER)) {
+						render(exchange);
+					} else if (exchange.getRequestMethod().equals("GET")) {
+						get(exchange);
+					} else {
+						send(exchange, 405, "method not allowed");
+					}
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		httpServer.createContext("/metrics", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					send(exchange, 200, "text/plain; version=0.0.4",
+							getMetrics().getBytes("utf-8"));
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		httpServer.setExecutor(executor);
+		httpServer.start();
+	}
+
+	/**
+	 * Returns the port where this endpoint listens.
+	 * 
+	 * @return the port where this endpoint listens
+	 */
+	public int getPort() {
+		return httpServer.getAddress().getPort();
+	}
+
+	/**
+	 * Stops accepting requests and closes all connections. The
+	 * {@linkplain DiagramServer} is not affected.
+	 */
+	public void shutDown() {
+		httpServer.stop(0);
+		executor.shutdown();
+	}
+
+	private void render(HttpExchange exchange) throws IOException {
+		Map<String, String> parameters = getParameters(exchange);
+		String type = parameters.get("type");
+		if (type == null) {
+			type = "png";
+		}
+		String contentType = CONTENT_TYPES.get(type);
+		if (contentType == null) {
+			send(exchange, 400, "unknown type: " + type);
+			return;
+		}
+		String format = parameters.get("format");
+		if (format == null) {
+			format = "A4";
+		}
+		String orientation = parameters.get("orientation");
+		String text = new String(readBody(exchange), "utf-8");
+		boolean raster = type.equals("png");
+		String key = DiagramServer.getCacheKey(type, orientation, format,
+				text, raster);
+		String etag = "\"" + key + "\"";
+		exchange.getResponseHeaders().set("ETag", etag);
+		exchange.getResponseHeaders().set("Location",
+				RENDER + "/" + key + "." + type);
+		if (etag.equals(exchange.getRequestHeaders().getFirst(
+				"If-None-Match"))) {
+			send(exchange, 304, null, null);
+			return;
+		}
+		DiagramServer.Request request;
+		try {
+			request = server.process(type, orientation, format, text, raster);
+		} catch (InterruptedException e) {
+			send(exchange, 503, "interrupted");
+			return;
+		}
+		if (request == null) {
+			exchange.getResponseHeaders().set("Retry-After", "1");
+			send(exchange, 503, "timeout: the request has not been processed "
+					+ "in time");
+			return;
+		}
+		switch (request.getStatus()) {
+		case DiagramServer.STATUS_OK:
+			send(exchange, 200, contentType, request.getResponse());
+			break;
+		case DiagramServer.STATUS_SYNTAX_ERROR:
+		case DiagramServer.STATUS_SEMANTIC_ERROR:
+			send(exchange, 400, request.getMessage());
+			break;
+		case DiagramServer.STATUS_BUSY:
+			exchange.getResponseHeaders().set("Retry-After", "1");
+			send(exchange, 503, request.getMessage());
+			break;
+		default:
+			send(exchange, 500, request.getMessage());
+		}
+	}
+
+	private void get(HttpExchange exchange) throws IOException {
+		String name = exchange.getRequestURI().getPath().substring(
+				RENDER.length());
+		int dot = name.lastIndexOf('.');
+		RenderCache cache = server.getCache();
+		if (!name.startsWith("/") || dot < 0 || cache == null) {
+			send(exchange, 404, "not found");
+			return;
+		}
+		String key = name.substring(1, dot);
+		String contentType = CONTENT_TYPES.get(name.substring(dot + 1));
+		String etag = "\"" + key + "\"";
+		if (contentType == null) {
+			send(exchange, 404, "not found");
+		} else if (etag.equals(exchange.getRequestHeaders().getFirst(
+				"If-None-Match"))) {
+			exchange.getResponseHeaders().set("ETag", etag);
+			send(exchange, 304, null, null);
+		} else {
+			byte[] image = cache.get(key);
+			if (image == null) {
+				send(exchange, 404, "not found");
+			} else {
+				exchange.getResponseHeaders().set("ETag", etag);
+				send(exchange, 200, contentType, image);
+			}
+		}
+	}
+
+	private String getMetrics() {
+		StringBuffer buffer = new StringBuffer();
+		ThreadPoolExecutor workers = server.getWorkers();
+		appendValue(buffer, "sdedit_queue_depth", "gauge", workers
+				.getQueue().size());
+		appendValue(buffer, "sdedit_busy_workers", "gauge", workers
+				.getActiveCount());
+		buffer.append("# TYPE sdedit_requests_total counter\n");
+		for (Map.Entry<String, AtomicLong> entry : server.getOutcomes()
+				.entrySet()) {
+			buffer.append("sdedit_requests_total{outcome=\""
+					+ entry.getKey() + "\"} " + entry.getValue() + "\n");
+		}
+		appendHistogram(buffer, "sdedit_request_duration_ms", server
+				.getLatency());
+		appendHistogram(buffer, "sdedit_queue_wait_ms", server
+				.getQueueWait());
+		RenderCache cache = server.getCache();
+		if (cache != null) {
+			appendValue(buffer, "sdedit_cache_hits_total", "counter", cache
+					.getHits());
+			appendValue(buffer, "sdedit_cache_misses_total", "counter",
+					cache.getMisses());
+			appendValue(buffer, "sdedit_cache_evictions_total", "counter",
+					cache.getEvictions());
+			appendValue(buffer, "sdedit_cache_memory_bytes", "gauge", cache
+					.getMemorySize());
+		}
+		return buffer.toString();
+	}
+
+	private static void appendValue(StringBuffer buffer, String name,
+			String type, long value) {
+		buffer.append("# TYPE " + name + " " + type + "\n");
+		buffer.append(name + " " + value + "\n");
+	}
+
+	private static void appendHistogram(StringBuffer buffer, String name,
+			LatencyHistogram histogram) {
+		buffer.append("# TYPE " + name + " histogram\n");
+		long[] bounds = histogram.getBounds();
+		long[] counts = histogram.getCounts();
+		long count = 0;
+		for (int i = 0; i < counts.length; i++) {
+			count += counts[i];
+			String bound = i < bounds.length ? String.valueOf(bounds[i])
+					: "+Inf";
+			buffer.append(name + "_bucket{le=\"" + bound + "\"} " + count
+					+ "\n");
+		}
+		buffer.append(name + "_sum " + histogram.getSum() + "\n");
+		buffer.append(name + "_count " + count + "\n");
+	}
+
+	private static Map<String, String> getParameters(HttpExchange exchange)
+			throws UnsupportedEncodingException {
+		Map<String, String> parameters = new HashMap<String, String>();
+		String query = exchange.getRequestURI().getRawQuery();
+		if (query != null) {
+			for (String parameter : query.split("&")) {
+				int equals = parameter.indexOf('=');
+				if (equals > 0) {
+					parameters.put(URLDecoder.decode(parameter.substring(0,
+							equals), "utf-8"), URLDecoder.decode(parameter
+							.substring(equals + 1), "utf-8"));
+				}
+			}
+		}
+		return parameters;
+	}
+
+	private static byte[] readBody(HttpExchange exchange) throws IOException {
+		InputStream in = exchange.getRequestBody();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int n;
+		while ((n = in.read(buffer)) > 0) {
+			bytes.write(buffer, 0, n);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static void send(HttpExchange exchange, int code, String message)
+			throws IOException {
+		send(exchange, code, "text/plain; charset=utf-8", (message + "\n")
+				.getBytes("utf-8"));
+	}
+
+	private static void send(HttpExchange exchange, int code,
+			String contentType, byte[] body) throws IOException {
+		if (body == null) {
+			exchange.sendResponseHeaders(code, -1);
+			return;
+		}
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.sendResponseHeaders(code, body.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(body);
+		out.close();
+	}
+}
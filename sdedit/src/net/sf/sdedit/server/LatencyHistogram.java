@@ -0,0 +1,100 @@
+// Copyright (c) 2006 - 2008, Markus Strauch.
+// All rights reserved.
+// 
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright notice, 
+// this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright notice, 
+// this list of conditions and the following disclaimer in the documentation 
+// and/or other materials provided with the distribution.
+// 
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.sf.sdedit.server;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A <tt>LatencyHistogram</tt> counts how many of the times that are recorded
+ * fall into each of a fixed set of buckets, so the distribution of the times
+ * spent on requests can be seen without keeping all of them. The bounds of the buckets are
+ * given in milliseconds, see {@linkplain #getBounds()}.
+ * 
+ * @author Markus Strauch
+ */
+public final class LatencyHistogram {
+
+	private static final long[] BOUNDS = { 1, 2, 5, 10, 20, 50, 100, 200,
+			500, 1000, 2000, 5000, 10000, 30000, 60000 };
+
+	// the last count is the one of the times greater than all bounds,
+	// followed by the sum of all times
+	private final AtomicLongArray counts;
+
+	/**
+	 * Creates a new, empty <tt>LatencyHistogram</tt>.
+	 */
+	public LatencyHistogram() {
+		counts = new AtomicLongArray(BOUNDS.length + 2);
+	}
+
+	/**
+	 * Records a time.
+	 * 
+	 * @param millis
+	 *            a time in milliseconds
+	 */
+	public void record(long millis) {
+		int i = 0;
+		while (i < BOUNDS.length && millis > BOUNDS[i]) {
+			i++;
+		}
+		counts.incrementAndGet(i);
+		counts.addAndGet(BOUNDS.length + 1, millis);
+	}
+
+	/**
+	 * Returns the upper bounds of the buckets, in milliseconds. There is one
+	 * more bucket for the times greater than the last bound.
+	 * 
+	 * @return the upper bounds of the buckets
+	 */
+	public long[] getBounds() {
+		return BOUNDS.clone();
+	}
+
+	/**
+	 * Returns the numbers of times recorded in the buckets, the last number
+	 * being the one of the times greater than the last bound.
+	 * 
+	 * @return the numbers of times recorded in the buckets
+	 */
+	public long[] getCounts() {
+		long[] result = new long[BOUNDS.length + 1];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = counts.get(i);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the sum of all times that have been recorded.
+	 * 
+	 * @return the sum of all times, in milliseconds
+	 */
+	public long getSum() {
+		return counts.get(BOUNDS.length + 1);
+	}
+}
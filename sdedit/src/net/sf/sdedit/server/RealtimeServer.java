@@ -105,6 +105,7 @@ public class RealtimeServer extends Thread implements Constants {
 					public void run() {
 						String uniqueTitle = editor.getUI().addTab(title,
 								ConfigurationManager.createNewDefaultConfiguration());
+						editor.getUI().setStreaming(uniqueTitle, true);
 						Receiver receiver = new Receiver(editor, uniqueTitle,
 								decodingReader, socket);
 						receivers.add(receiver);
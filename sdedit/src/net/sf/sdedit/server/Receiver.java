@@ -28,6 +28,8 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.net.Socket;
 
+import javax.swing.SwingUtilities;
+
 import net.sf.sdedit.editor.Editor;
 import net.sf.sdedit.ui.UserInterface;
 import net.sf.sdedit.ui.components.DelayedActivity;
@@ -35,7 +37,13 @@ import net.sf.sdedit.ui.components.DelayedActivity;
 /**
  * A <tt>Receiver</tt> receives a diagram specification through a TCP socket.
  * The received code will be entered into the text area of some tab in the
- * {@linkplain UserInterface}.
+ * {@linkplain UserInterface}, which is in streaming mode (see
+ * {@linkplain UserInterface#setStreaming(String, boolean)}) until the
+ * transmission ends.
+ * <p>
+ * Received lines are collected and appended when no line has been received
+ * for a short delay, or when lines have been received continually for a
+ * longer time, so a continuous stream is displayed as it arrives.
  * 
  * @author Markus Strauch
  * 
@@ -46,6 +54,12 @@ public class Receiver implements Runnable
 
     private int delay = 100;
 
+    private int maxLatency = 1000;
+
+    private final Editor editor;
+
+    private final String tabTitle;
+
     private Socket socket;
 
     private boolean shutDown;
@@ -54,6 +68,19 @@ public class Receiver implements Runnable
 
     private StringBuffer appendBuffer;
 
+    /**
+     * The time when the collected lines have been appended for the last time,
+     * or when that has been initiated.
+     */
+    private long lastFlush;
+
+    private final Runnable flusher = new Runnable()
+    {
+        public void run() {
+            flush();
+        }
+    };
+
     /**
      * Creates a new Receiver.
      * 
@@ -69,6 +96,8 @@ public class Receiver implements Runnable
      */
     public Receiver(final Editor editor, final String tabTitle,
             BufferedReader reader, Socket socket) {
+        this.editor = editor;
+        this.tabTitle = tabTitle;
         this.reader = reader;
         this.socket = socket;
         shutDown = false;
@@ -80,13 +109,27 @@ public class Receiver implements Runnable
             }
 
             protected void perform() {
-                editor.getUI().appendText(tabTitle, appendBuffer.toString());
-                appendBuffer.setLength(0);
+                flush();
             }
         };
         waiter.start();
     }
 
+    /**
+     * Appends the lines that have been collected to the text of the tab. This
+     * method is called on the event dispatch thread.
+     */
+    private void flush() {
+        String text;
+        synchronized (waiter) {
+            text = appendBuffer.toString();
+            appendBuffer.setLength(0);
+        }
+        if (text.length() > 0) {
+            editor.getUI().appendText(tabTitle, text);
+        }
+    }
+
     /**
      * Closes the socket of this <tt>Receiver</tt>.
      */
@@ -113,10 +156,20 @@ public class Receiver implements Runnable
                     if (line.toLowerCase().equals("end")) {
                         return;
                     }
+                    boolean overdue;
                     synchronized (waiter) {
                         appendBuffer.append(line + "\n");
+                        long now = System.currentTimeMillis();
+                        overdue = now - lastFlush >= maxLatency;
+                        if (overdue) {
+                            lastFlush = now;
+                        }
+                    }
+                    if (overdue) {
+                        SwingUtilities.invokeLater(flusher);
+                    } else {
+                        waiter.indicateChange();
                     }
-                    waiter.indicateChange();
                 }
             } while (line != null);
         } catch (Exception e) {
@@ -124,6 +177,13 @@ public class Receiver implements Runnable
                 e.printStackTrace();
             }
         } finally {
+            SwingUtilities.invokeLater(new Runnable()
+            {
+                public void run() {
+                    flush();
+                    editor.getUI().setStreaming(tabTitle, false);
+                }
+            });
             if (!socket.isClosed()) {
                 try {
                     socket.close();
@@ -0,0 +1,385 @@
+// Copyright (c) 2006 - 2008, Markus Strauch.
+// All rights reserved.
+// 
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright notice, 
+// this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright notice, 
+// this list of conditions and the following disclaimer in the documentation 
+// and/or other materials provided with the distribution.
+// 
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.sf.sdedit.server;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A <tt>RenderCache</tt> keeps the images that the {@linkplain DiagramServer}
+ * has sent, so the same diagram need not be drawn again when it is requested
+ * once more. An image is found by a key that is computed from everything the
+ * image depends on (see {@linkplain #key(String, String, String, String,
+ * Object)}).
+ * <p>
+ * The images are kept in memory, up to a total number of bytes. When this
+ * budget is exceeded, the images that have not been used for the longest
+ * time are evicted. Optionally, the images are also stored as files in a
+ * directory, with a budget of its own, so they survive a restart of the
+ * server and can be used when they have been evicted from memory.
+ * <p>
+ * The numbers of hits, misses and evictions are counted, see
+ * {@linkplain #toString()}.
+ * 
+ * @author Markus Strauch
+ */
+public final class RenderCache {
+
+	/**
+	 * The default number of bytes that the images kept in memory may take.
+	 */
+	public static final long DEFAULT_SIZE = 32 << 20;
+
+	/**
+	 * The default number of bytes that the image files may take.
+	 */
+	public static final long DEFAULT_DISK_SIZE = 256 << 20;
+
+	private static final String SUFFIX = ".img";
+
+	private final long size;
+
+	private final LinkedHashMap<String, byte[]> memory;
+
+	private long memorySize;
+
+	private final File directory;
+
+	private final long diskSize;
+
+	// the sizes of the image files, in the order in which they have been used
+	private final LinkedHashMap<String, Long> disk;
+
+	private long diskUsed;
+
+	private long hits;
+
+	private long diskHits;
+
+	private long misses;
+
+	private long evictions;
+
+	/**
+	 * Creates a new <tt>RenderCache</tt> that keeps the images in memory
+	 * only.
+	 * 
+	 * @param size
+	 *            the number of bytes that the images may take
+	 */
+	public RenderCache(long size) {
+		this.size = size;
+		directory = null;
+		diskSize = 0;
+		memory = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+		disk = new LinkedHashMap<String, Long>(16, 0.75f, true);
+	}
+
+	/**
+	 * Creates a new <tt>RenderCache</tt> that keeps the images in memory and,
+	 * if a directory is given, as files in that directory. Image files that
+	 * are found in the directory are used, the ones that have been modified
+	 * least recently are evicted first.
+	 * 
+	 * @param size
+	 *            the number of bytes that the images kept in memory may take
+	 * @param directory
+	 *            the directory for the image files, or <tt>null</tt>
+	 * @param diskSize
+	 *            the number of bytes that the image files may take
+	 * @throws IOException
+	 *             if the directory does not exist and cannot be created
+	 */
+	public RenderCache(long size, File directory, long diskSize)
+			throws IOException {
+		this.size = size;
+		this.directory = directory;
+		this.diskSize = diskSize;
+		memory = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+		disk = new LinkedHashMap<String, Long>(16, 0.75f, true);
+		if (directory != null) {
+			if (!directory.isDirectory() && !directory.mkdirs()) {
+				throw new IOException("cannot create cache directory "
+						+ directory);
+			}
+			File[] files = directory.listFiles();
+			Arrays.sort(files, new Comparator<File>() {
+				public int compare(File f1, File f2) {
+					long m1 = f1.lastModified();
+					long m2 = f2.lastModified();
+					return m1 < m2 ? -1 : m1 == m2 ? 0 : 1;
+				}
+			});
+			for (File file : files) {
+				String name = file.getName();
+				if (file.isFile() && name.endsWith(SUFFIX)) {
+					disk.put(name.substring(0, name.length()
+							- SUFFIX.length()), file.length());
+					diskUsed += file.length();
+				}
+			}
+			synchronized (this) {
+				evictFiles();
+			}
+		}
+	}
+
+	/**
+	 * Computes the key of an image.
+	 * 
+	 * @param type
+	 *            the type of the image
+	 * @param orientation
+	 *            the orientation of the page
+	 * @param format
+	 *            the format of the page
+	 * @param source
+	 *            the diagram source text
+	 * @param configuration
+	 *            the configuration used for drawing the diagram, its string
+	 *            representation must contain all of its values
+	 * @return the key of the image
+	 */
+	public static String key(String type, String orientation, String format,
+			String source, Object configuration) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		for (Object part : new Object[] { type, orientation, format, source,
+				configuration }) {
+			byte[] bytes;
+			try {
+				bytes = String.valueOf(part).getBytes("utf-8");
+			} catch (UnsupportedEncodingException e) {
+				throw new IllegalStateException(e);
+			}
+			// the length makes sure that the parts cannot be confused
+			digest.update((bytes.length + ":").getBytes());
+			digest.update(bytes);
+		}
+		StringBuffer key = new StringBuffer();
+		for (byte b : digest.digest()) {
+			key.append(Character.forDigit((b >> 4) & 15, 16));
+			key.append(Character.forDigit(b & 15, 16));
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Returns the image with the given key, or <tt>null</tt> if it is not in
+	 * the cache.
+	 * 
+	 * @param key
+	 *            the key of the image
+	 * @return the image, or <tt>null</tt>
+	 */
+	public byte[] get(String key) {
+		synchronized (this) {
+			byte[] image = memory.get(key);
+			if (image != null) {
+				hits++;
+				return image;
+			}
+			if (disk.get(key) == null) {
+				misses++;
+				return null;
+			}
+		}
+		File file = getFile(key);
+		byte[] image = null;
+		try {
+			image = readFile(file);
+			file.setLastModified(System.currentTimeMillis());
+		} catch (IOException e) {
+			/* the file has been evicted meanwhile */
+		}
+		synchronized (this) {
+			if (image == null) {
+				misses++;
+				return null;
+			}
+			hits++;
+			diskHits++;
+			keep(key, image);
+			return image;
+		}
+	}
+
+	/**
+	 * Puts an image into the cache, unless it is larger than the budget.
+	 * 
+	 * @param key
+	 *            the key of the image
+	 * @param image
+	 *            the image
+	 */
+	public void put(String key, byte[] image) {
+		synchronized (this) {
+			keep(key, image);
+			if (directory == null || image.length > diskSize
+					|| disk.containsKey(key)) {
+				return;
+			}
+		}
+		File file = getFile(key);
+		File tmp = new File(directory, key + ".tmp"
+				+ Thread.currentThread().getId());
+		try {
+			FileOutputStream out = new FileOutputStream(tmp);
+			try {
+				out.write(image);
+			} finally {
+				out.close();
+			}
+			file.delete();
+			if (!tmp.renameTo(file)) {
+				tmp.delete();
+				return;
+			}
+		} catch (IOException e) {
+			tmp.delete();
+			return;
+		}
+		synchronized (this) {
+			Long old = disk.put(key, (long) image.length);
+			if (old != null) {
+				diskUsed -= old;
+			}
+			diskUsed += image.length;
+			evictFiles();
+		}
+	}
+
+	private void keep(String key, byte[] image) {
+		if (image.length > size) {
+			return;
+		}
+		byte[] old = memory.put(key, image);
+		if (old != null) {
+			memorySize -= old.length;
+		}
+		memorySize += image.length;
+		Iterator<byte[]> iterator = memory.values().iterator();
+		while (memorySize > size) {
+			memorySize -= iterator.next().length;
+			iterator.remove();
+			evictions++;
+		}
+	}
+
+	private void evictFiles() {
+		Iterator<Map.Entry<String, Long>> iterator = disk.entrySet()
+				.iterator();
+		while (diskUsed > diskSize) {
+			Map.Entry<String, Long> entry = iterator.next();
+			diskUsed -= entry.getValue();
+			getFile(entry.getKey()).delete();
+			iterator.remove();
+			evictions++;
+		}
+	}
+
+	private File getFile(String key) {
+		return new File(directory, key + SUFFIX);
+	}
+
+	private static byte[] readFile(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try {
+			byte[] bytes = new byte[(int) file.length()];
+			in.readFully(bytes);
+			return bytes;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Returns the number of requests for images that have been found.
+	 * 
+	 * @return the number of hits
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of requests for images that have been found as
+	 * files, but not in memory.
+	 * 
+	 * @return the number of hits on the disk
+	 */
+	public synchronized long getDiskHits() {
+		return diskHits;
+	}
+
+	/**
+	 * Returns the number of requests for images that have not been found.
+	 * 
+	 * @return the number of misses
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the number of images that have been evicted from memory or
+	 * from the directory.
+	 * 
+	 * @return the number of evictions
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Returns the number of bytes that the images kept in memory take.
+	 * 
+	 * @return the number of bytes in memory
+	 */
+	public synchronized long getMemorySize() {
+		return memorySize;
+	}
+
+	public synchronized String toString() {
+		return "hits=" + hits + " (disk=" + diskHits + ") misses=" + misses
+				+ " evictions=" + evictions + " memory=" + memory.size() + "/"
+				+ memorySize + "B disk=" + disk.size() + "/" + diskUsed + "B";
+	}
+}
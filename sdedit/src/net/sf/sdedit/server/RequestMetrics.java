@@ -0,0 +1,196 @@
+// Copyright (c) 2006 - 2008, Markus Strauch.
+// All rights reserved.
+// 
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright notice, 
+// this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright notice, 
+// this list of conditions and the following disclaimer in the documentation 
+// and/or other materials provided with the distribution.
+// 
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+package net.sf.sdedit.server;
+
+import net.sf.sdedit.diagram.DiagramMetrics;
+
+/**
+ * A <tt>RequestMetrics</tt> object records how much time the
+ * {@linkplain DiagramServer} spent on the phases of a single request. All
+ * times are given in milliseconds.
+ * 
+ * @author Markus Strauch
+ * 
+ */
+public final class RequestMetrics {
+
+	private final String type;
+
+	private String outcome;
+
+	private long queueWait;
+
+	private long parse;
+
+	private long layout;
+
+	private long export;
+
+	private long total;
+
+	private DiagramMetrics diagramMetrics;
+
+	private String cache;
+
+	RequestMetrics(String type) {
+		this.type = type;
+		outcome = "ok";
+	}
+
+	void setOutcome(String outcome) {
+		this.outcome = outcome;
+	}
+
+	void setQueueWait(long queueWait) {
+		this.queueWait = queueWait;
+	}
+
+	void setParse(long parse) {
+		this.parse = parse;
+	}
+
+	void setLayout(long layout) {
+		this.layout = layout;
+	}
+
+	void setExport(long export) {
+		this.export = export;
+	}
+
+	void setTotal(long total) {
+		this.total = total;
+	}
+
+	void setDiagramMetrics(DiagramMetrics diagramMetrics) {
+		this.diagramMetrics = diagramMetrics;
+	}
+
+	void setCache(String cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Returns the type of the image that has been requested.
+	 * 
+	 * @return the type of the image that has been requested
+	 */
+	public String getType() {
+		return type;
+	}
+
+	/**
+	 * Returns <tt>ok</tt> if the image has been sent, otherwise the error
+	 * that has been sent instead, without the <tt>ERROR:</tt> prefix and
+	 * without the description, for example <tt>busy</tt> or
+	 * <tt>syntax error</tt>.
+	 * 
+	 * @return the outcome of the request
+	 */
+	public String getOutcome() {
+		return outcome;
+	}
+
+	/**
+	 * Returns the time the request has been waiting in the work queue before
+	 * a worker thread took it.
+	 * 
+	 * @return the time spent in the work queue
+	 */
+	public long getQueueWait() {
+		return queueWait;
+	}
+
+	/**
+	 * Returns the time spent on reading and parsing the diagram source text.
+	 * 
+	 * @return the time spent on parsing
+	 */
+	public long getParse() {
+		return parse;
+	}
+
+	/**
+	 * Returns the time spent on computing the layout of the diagram, not
+	 * including the time spent on parsing.
+	 * 
+	 * @return the time spent on the layout
+	 */
+	public long getLayout() {
+		return layout;
+	}
+
+	/**
+	 * Returns the time spent on encoding the image.
+	 * 
+	 * @return the time spent on encoding the image
+	 */
+	public long getExport() {
+		return export;
+	}
+
+	/**
+	 * Returns the time from the moment the request has been read completely
+	 * until the response is ready to be sent.
+	 * 
+	 * @return the total processing time
+	 */
+	public long getTotal() {
+		return total;
+	}
+
+	/**
+	 * Returns the metrics of the diagram that has been drawn, with the
+	 * phases of its generation in more detail, or <tt>null</tt> if no
+	 * diagram could be drawn.
+	 * 
+	 * @return the metrics of the diagram, or <tt>null</tt>
+	 */
+	public DiagramMetrics getDiagramMetrics() {
+		return diagramMetrics;
+	}
+
+	/**
+	 * Returns <tt>hit</tt> if the image has been found in the
+	 * {@linkplain RenderCache}, <tt>miss</tt> if it has not been found, or
+	 * <tt>null</tt> if the cache has not been used for the request.
+	 * 
+	 * @return the result of the cache lookup, or <tt>null</tt>
+	 */
+	public String getCache() {
+		return cache;
+	}
+
+	public String toString() {
+		String string = "type=" + type + " outcome=" + outcome + " queue="
+				+ queueWait + "ms parse=" + parse + "ms layout=" + layout
+				+ "ms export=" + export + "ms total=" + total + "ms";
+		if (cache != null) {
+			string += " cache=" + cache;
+		}
+		if (diagramMetrics != null) {
+			string += " [" + diagramMetrics + "]";
+		}
+		return string;
+	}
+}
@@ -0,0 +1,88 @@
+// Copyright (c) 2006 - 2008, Markus Strauch.
+// All rights reserved.
+// 
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright notice, 
+// this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright notice, 
+// this list of conditions and the following disclaimer in the documentation 
+// and/or other materials provided with the distribution.
+// 
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.sf.sdedit.server;
+
+import java.awt.Graphics2D;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * An <tt>SVGExporter</tt> writes a diagram as an SVG document, without
+ * using the FreeHEP library. The SVG is written while the diagram's elements
+ * are drawn, by means of an {@linkplain SVGGraphics} context, and text is
+ * measured in the same way as for images.
+ * 
+ * @author Markus Strauch
+ */
+final class SVGExporter extends Exporter {
+
+	private OutputStream stream;
+
+	private SVGGraphics svg;
+
+	SVGExporter() {
+		super();
+	}
+
+	@Override
+	protected void setType(String type) {
+		/* empty, the type is always svg */
+	}
+
+	@Override
+	protected void setOutputStream(OutputStream stream) {
+		this.stream = stream;
+	}
+
+	@Override
+	protected Graphics2D createGraphics() {
+		BufferedWriter writer;
+		try {
+			writer = new BufferedWriter(new OutputStreamWriter(stream,
+					"UTF-8"), 1 << 16);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException("UTF-8 is not supported", e);
+		}
+		svg = new SVGGraphics(writer, getWidth(), getHeight(), getFont(false));
+		return svg;
+	}
+
+	/**
+	 * @see net.sf.sdedit.server.Exporter#export()
+	 */
+	@Override
+	public void export() {
+		svg.start();
+		drawAll();
+		try {
+			svg.finish();
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,978 @@
+// Copyright (c) 2006 - 2008, Markus Strauch.
+// All rights reserved.
+// 
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright notice, 
+// this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright notice, 
+// this list of conditions and the following disclaimer in the documentation 
+// and/or other materials provided with the distribution.
+// 
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.sf.sdedit.server;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.Paint;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.RenderingHints.Key;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.ImageObserver;
+import java.awt.image.RenderedImage;
+import java.awt.image.renderable.RenderableImage;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.AttributedCharacterIterator;
+import java.util.Map;
+
+/**
+ * An <tt>SVGGraphics</tt> is a graphics context that writes the drawing
+ * operations of drawable elements as SVG elements to a stream, while they
+ * are performed.
+ * <p>
+ * Like a <tt>DisplayListRecorder</tt>, it only supports the usual drawing
+ * operations for lines, rectangles, ovals, arcs, polygons, strings and shapes
+ * along with changes of the color, the stroke and the font, which are all
+ * the drawable elements use. Operations that draw images or change the
+ * transformation, the clip, the composite or the rendering hints throw an
+ * <tt>UnsupportedOperationException</tt>.
+ * <p>
+ * The SVG is kept compact: the color, the stroke and the font are
+ * attributes of a group that contains all elements drawn until one of them
+ * changes, and lines, rectangles and polygons that are drawn one after the
+ * other are written as a single path. Strings are written as text elements,
+ * in the font family that corresponds to the Java font. Font metrics are
+ * taken from a small image, like the <tt>TextMetrics</tt> of the layout.
+ * 
+ * @author Markus Strauch
+ * 
+ */
+final class SVGGraphics extends Graphics2D {
+
+	private static final BasicStroke DEFAULT_STROKE = new BasicStroke();
+
+	private final Writer out;
+
+	private final int width;
+
+	private final int height;
+
+	private final Graphics2D metrics;
+
+	private final Font initialFont;
+
+	private Color color;
+
+	private Stroke stroke;
+
+	private Font font;
+
+	// true if the current group does not match the color, the stroke or the
+	// font
+	private boolean styleChanged;
+
+	private boolean groupOpen;
+
+	// true if a path of drawn lines, rectangles or polygons has been
+	// started, but not yet finished
+	private boolean pathOpen;
+
+	// the first exception that occurred when writing, the drawing
+	// operations cannot throw it
+	private IOException exception;
+
+	/**
+	 * Creates a new <tt>SVGGraphics</tt> whose initial state is the given
+	 * font, black color and the default stroke.
+	 * 
+	 * @param out
+	 *            the writer where the SVG is written to
+	 * @param width
+	 *            the width of the image
+	 * @param height
+	 *            the height of the image
+	 * @param font
+	 *            the initial font
+	 */
+	SVGGraphics(Writer out, int width, int height, Font font) {
+		this.out = out;
+		this.width = width;
+		this.height = height;
+		metrics = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB)
+				.createGraphics();
+		metrics.setFont(font);
+		initialFont = font;
+		this.font = font;
+		color = Color.BLACK;
+		stroke = DEFAULT_STROKE;
+		styleChanged = true;
+	}
+
+	/**
+	 * Writes the beginning of the SVG document.
+	 */
+	void start() {
+		write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		write("<svg xmlns=\"http://www.w3.org/2000/svg\" version=\"1.1\" "
+				+ "width=\"" + width + "\" height=\"" + height
+				+ "\" viewBox=\"0 0 " + width + " " + height + "\"");
+		write(" font-family=\"" + getFamily(initialFont) + "\" font-size=\"");
+		number(initialFont.getSize2D());
+		write("\"");
+		if (initialFont.isBold()) {
+			write(" font-weight=\"bold\"");
+		}
+		if (initialFont.isItalic()) {
+			write(" font-style=\"italic\"");
+		}
+		write(" stroke-linecap=\"square\" stroke-miterlimit=\"10\" "
+				+ "fill-rule=\"evenodd\" xml:space=\"preserve\">\n");
+	}
+
+	/**
+	 * Writes the end of the SVG document and flushes the writer.
+	 * 
+	 * @throws IOException
+	 *             if the SVG could not be written
+	 */
+	void finish() throws IOException {
+		closePath();
+		if (groupOpen) {
+			write("</g>\n");
+		}
+		write("</svg>\n");
+		if (exception == null) {
+			try {
+				out.flush();
+			} catch (IOException e) {
+				exception = e;
+			}
+		}
+		if (exception != null) {
+			throw exception;
+		}
+	}
+
+	private void write(String string) {
+		if (exception == null) {
+			try {
+				out.write(string);
+			} catch (IOException e) {
+				exception = e;
+			}
+		}
+	}
+
+	private void number(double value) {
+		long thousandths = Math.round(value * 1000);
+		if (thousandths % 1000 == 0) {
+			write(String.valueOf(thousandths / 1000));
+		} else {
+			write(String.valueOf(thousandths / 1000.0));
+		}
+	}
+
+	// lines of width 1 are drawn on the centers of the pixels, as in Java2D
+	private void center(int value) {
+		number(value + 0.5);
+	}
+
+	private void point(double x, double y) {
+		number(x);
+		write(" ");
+		number(y);
+	}
+
+	private static String getFamily(Font font) {
+		String family = font.getFamily();
+		if (family.equals("Dialog") || family.equals("SansSerif")) {
+			return "sans-serif";
+		}
+		if (family.equals("Serif")) {
+			return "serif";
+		}
+		if (family.equals("Monospaced") || family.equals("DialogInput")) {
+			return "monospace";
+		}
+		return "'" + escape(family) + "', sans-serif";
+	}
+
+	private static String getColor(Color c) {
+		int rgb = c.getRGB() & 0xffffff;
+		if ((rgb & 0x0f0f0f) * 0x11 == rgb) {
+			// #rrggbb where each component has two equal digits
+			return "#" + Integer.toHexString(rgb >> 20 & 0xf)
+					+ Integer.toHexString(rgb >> 12 & 0xf)
+					+ Integer.toHexString(rgb >> 4 & 0xf);
+		}
+		String hex = Integer.toHexString(rgb | 0x1000000);
+		return "#" + hex.substring(1);
+	}
+
+	private static String escape(String string) {
+		StringBuffer buffer = null;
+		int length = string.length();
+		for (int i = 0; i < length; i++) {
+			char c = string.charAt(i);
+			String replacement = null;
+			if (c == '<') {
+				replacement = "&lt;";
+			} else if (c == '>') {
+				replacement = "&gt;";
+			} else if (c == '&') {
+				replacement = "&amp;";
+			} else if (c == '"') {
+				replacement = "&quot;";
+			} else if (c == '\'') {
+				replacement = "&apos;";
+			} else if (c < ' ' || c == 0xfffe || c == 0xffff) {
+				// not allowed in XML
+				replacement = "?";
+			}
+			if (replacement != null && buffer == null) {
+				buffer = new StringBuffer(string.substring(0, i));
+			}
+			if (buffer != null) {
+				if (replacement != null) {
+					buffer.append(replacement);
+				} else {
+					buffer.append(c);
+				}
+			}
+		}
+		return buffer == null ? string : buffer.toString();
+	}
+
+	/*
+	 * Opens a new group if the color, the stroke or the font has changed.
+	 */
+	private void style() {
+		if (!styleChanged) {
+			return;
+		}
+		closePath();
+		if (groupOpen) {
+			write("</g>\n");
+		}
+		String rgb = getColor(color);
+		write("<g stroke=\"" + rgb + "\" fill=\"" + rgb + "\"");
+		if (color.getAlpha() < 255) {
+			write(" stroke-opacity=\"");
+			number(color.getAlpha() / 255.0);
+			write("\" fill-opacity=\"");
+			number(color.getAlpha() / 255.0);
+			write("\"");
+		}
+		writeStroke();
+		writeFont();
+		write(">\n");
+		groupOpen = true;
+		styleChanged = false;
+	}
+
+	private void writeStroke() {
+		BasicStroke basic = (BasicStroke) stroke;
+		if (basic.getLineWidth() != 1) {
+			write(" stroke-width=\"");
+			number(basic.getLineWidth());
+			write("\"");
+		}
+		float[] dash = basic.getDashArray();
+		if (dash != null) {
+			write(" stroke-dasharray=\"");
+			for (int i = 0; i < dash.length; i++) {
+				if (i > 0) {
+					write(",");
+				}
+				number(dash[i]);
+			}
+			write("\"");
+			if (basic.getDashPhase() != 0) {
+				write(" stroke-dashoffset=\"");
+				number(basic.getDashPhase());
+				write("\"");
+			}
+		}
+		if (basic.getEndCap() == BasicStroke.CAP_BUTT) {
+			write(" stroke-linecap=\"butt\"");
+		} else if (basic.getEndCap() == BasicStroke.CAP_ROUND) {
+			write(" stroke-linecap=\"round\"");
+		}
+		if (basic.getLineJoin() == BasicStroke.JOIN_ROUND) {
+			write(" stroke-linejoin=\"round\"");
+		} else if (basic.getLineJoin() == BasicStroke.JOIN_BEVEL) {
+			write(" stroke-linejoin=\"bevel\"");
+		}
+		if (basic.getLineJoin() == BasicStroke.JOIN_MITER
+				&& basic.getMiterLimit() != 10) {
+			write(" stroke-miterlimit=\"");
+			number(basic.getMiterLimit());
+			write("\"");
+		}
+	}
+
+	private void writeFont() {
+		if (font.equals(initialFont)) {
+			return;
+		}
+		if (!font.getFamily().equals(initialFont.getFamily())) {
+			write(" font-family=\"" + getFamily(font) + "\"");
+		}
+		if (font.getSize2D() != initialFont.getSize2D()) {
+			write(" font-size=\"");
+			number(font.getSize2D());
+			write("\"");
+		}
+		if (font.isBold() != initialFont.isBold()) {
+			write(font.isBold() ? " font-weight=\"bold\""
+					: " font-weight=\"normal\"");
+		}
+		if (font.isItalic() != initialFont.isItalic()) {
+			write(font.isItalic() ? " font-style=\"italic\""
+					: " font-style=\"normal\"");
+		}
+	}
+
+	/*
+	 * Starts a new element that is not part of a path of drawn lines.
+	 */
+	private void element(String start) {
+		style();
+		closePath();
+		write(start);
+	}
+
+	/*
+	 * Starts or continues a path of drawn lines. Transparent lines are not
+	 * joined, as overlapping parts would be painted only once.
+	 */
+	private void path() {
+		style();
+		if (pathOpen && color.getAlpha() == 255) {
+			write(" ");
+		} else {
+			closePath();
+			write("<path fill=\"none\" d=\"");
+			pathOpen = true;
+		}
+	}
+
+	private void closePath() {
+		if (pathOpen) {
+			write("\"/>\n");
+			pathOpen = false;
+		}
+	}
+
+	private void points(int[] x, int[] y, int n, boolean centered) {
+		for (int i = 0; i < n; i++) {
+			write(i == 0 ? "M" : i == 1 ? "L" : " ");
+			if (centered) {
+				center(x[i]);
+				write(" ");
+				center(y[i]);
+			} else {
+				point(x[i], y[i]);
+			}
+		}
+	}
+
+	private void arc(double x, double y, double width, double height,
+			int startAngle, int arcAngle, boolean pie) {
+		double rx = width / 2;
+		double ry = height / 2;
+		double cx = x + rx;
+		double cy = y + ry;
+		if (Math.abs(arcAngle) >= 360) {
+			ellipse(cx, cy, rx, ry);
+			return;
+		}
+		double start = Math.toRadians(startAngle);
+		double end = Math.toRadians(startAngle + arcAngle);
+		if (pie) {
+			write("M");
+			point(cx, cy);
+			write("L");
+		} else {
+			write("M");
+		}
+		point(cx + rx * Math.cos(start), cy - ry * Math.sin(start));
+		write("A");
+		point(rx, ry);
+		// angles grow counterclockwise, but y grows downwards
+		write(" 0 " + (Math.abs(arcAngle) > 180 ? 1 : 0) + " "
+				+ (arcAngle > 0 ? 0 : 1) + " ");
+		point(cx + rx * Math.cos(end), cy - ry * Math.sin(end));
+		if (pie) {
+			write("z");
+		}
+		write("\"/>\n");
+	}
+
+	private void ellipse(double cx, double cy, double rx, double ry) {
+		// the path element has already been started, so the ellipse is
+		// written as two arcs
+		write("M");
+		point(cx - rx, cy);
+		write("A");
+		point(rx, ry);
+		write(" 0 1 0 ");
+		point(cx + rx, cy);
+		write("A");
+		point(rx, ry);
+		write(" 0 1 0 ");
+		point(cx - rx, cy);
+		write("z\"/>\n");
+	}
+
+	private void shape(Shape s, boolean fill) {
+		PathIterator iterator = s.getPathIterator(fill ? null
+				: AffineTransform.getTranslateInstance(0.5, 0.5));
+		if (fill && iterator.getWindingRule() == PathIterator.WIND_NON_ZERO) {
+			element("<path stroke=\"none\" fill-rule=\"nonzero\" d=\"");
+		} else {
+			element(fill ? "<path stroke=\"none\" d=\""
+					: "<path fill=\"none\" d=\"");
+		}
+		double[] c = new double[6];
+		while (!iterator.isDone()) {
+			switch (iterator.currentSegment(c)) {
+			case PathIterator.SEG_MOVETO:
+				write("M");
+				point(c[0], c[1]);
+				break;
+			case PathIterator.SEG_LINETO:
+				write("L");
+				point(c[0], c[1]);
+				break;
+			case PathIterator.SEG_QUADTO:
+				write("Q");
+				point(c[0], c[1]);
+				write(" ");
+				point(c[2], c[3]);
+				break;
+			case PathIterator.SEG_CUBICTO:
+				write("C");
+				point(c[0], c[1]);
+				write(" ");
+				point(c[2], c[3]);
+				write(" ");
+				point(c[4], c[5]);
+				break;
+			default:
+				write("z");
+			}
+			iterator.next();
+		}
+		write("\"/>\n");
+	}
+
+	private static UnsupportedOperationException unsupported(String operation) {
+		return new UnsupportedOperationException(operation
+				+ " cannot be written as SVG");
+	}
+
+	/*
+	 * Written operations
+	 */
+
+	@Override
+	public void setColor(Color c) {
+		if (c != null && !c.equals(color)) {
+			color = c;
+			styleChanged = true;
+		}
+	}
+
+	@Override
+	public void setPaint(Paint paint) {
+		if (paint instanceof Color) {
+			setColor((Color) paint);
+		} else if (paint != null) {
+			throw unsupported("setPaint");
+		}
+	}
+
+	@Override
+	public void setStroke(Stroke s) {
+		if (!(s instanceof BasicStroke)) {
+			throw unsupported("setStroke");
+		}
+		if (!s.equals(stroke)) {
+			stroke = s;
+			styleChanged = true;
+		}
+	}
+
+	@Override
+	public void setFont(Font f) {
+		if (f != null && !f.equals(font)) {
+			font = f;
+			metrics.setFont(f);
+			styleChanged = true;
+		}
+	}
+
+	@Override
+	public void drawLine(int x1, int y1, int x2, int y2) {
+		path();
+		write("M");
+		center(x1);
+		write(" ");
+		center(y1);
+		if (x1 == x2) {
+			write("V");
+			center(y2);
+		} else if (y1 == y2) {
+			write("H");
+			center(x2);
+		} else {
+			write("L");
+			center(x2);
+			write(" ");
+			center(y2);
+		}
+	}
+
+	@Override
+	public void drawRect(int x, int y, int width, int height) {
+		if (width < 0 || height < 0) {
+			return;
+		}
+		path();
+		write("M");
+		center(x);
+		write(" ");
+		center(y);
+		write("h" + width + "v" + height + "h" + -width + "z");
+	}
+
+	@Override
+	public void fillRect(int x, int y, int width, int height) {
+		if (width <= 0 || height <= 0) {
+			return;
+		}
+		element("<path stroke=\"none\" d=\"M");
+		point(x, y);
+		write("h" + width + "v" + height + "h" + -width + "z\"/>\n");
+	}
+
+	@Override
+	public void drawRoundRect(int x, int y, int width, int height,
+			int arcWidth, int arcHeight) {
+		if (width < 0 || height < 0) {
+			return;
+		}
+		element("<rect fill=\"none\" x=\"");
+		center(x);
+		write("\" y=\"");
+		center(y);
+		write("\" width=\"" + width + "\" height=\"" + height + "\" rx=\"");
+		number(arcWidth / 2.0);
+		write("\" ry=\"");
+		number(arcHeight / 2.0);
+		write("\"/>\n");
+	}
+
+	@Override
+	public void fillRoundRect(int x, int y, int width, int height,
+			int arcWidth, int arcHeight) {
+		if (width <= 0 || height <= 0) {
+			return;
+		}
+		element("<rect stroke=\"none\" x=\"" + x + "\" y=\"" + y
+				+ "\" width=\"" + width + "\" height=\"" + height
+				+ "\" rx=\"");
+		number(arcWidth / 2.0);
+		write("\" ry=\"");
+		number(arcHeight / 2.0);
+		write("\"/>\n");
+	}
+
+	@Override
+	public void drawOval(int x, int y, int width, int height) {
+		element("<path fill=\"none\" d=\"");
+		ellipse(x + 0.5 + width / 2.0, y + 0.5 + height / 2.0, width / 2.0,
+				height / 2.0);
+	}
+
+	@Override
+	public void fillOval(int x, int y, int width, int height) {
+		element("<path stroke=\"none\" d=\"");
+		ellipse(x + width / 2.0, y + height / 2.0, width / 2.0,
+				height / 2.0);
+	}
+
+	@Override
+	public void drawArc(int x, int y, int width, int height, int startAngle,
+			int arcAngle) {
+		if (arcAngle == 0) {
+			return;
+		}
+		element("<path fill=\"none\" d=\"");
+		arc(x + 0.5, y + 0.5, width, height, startAngle, arcAngle, false);
+	}
+
+	@Override
+	public void fillArc(int x, int y, int width, int height, int startAngle,
+			int arcAngle) {
+		if (arcAngle == 0) {
+			return;
+		}
+		element("<path stroke=\"none\" d=\"");
+		arc(x, y, width, height, startAngle, arcAngle, true);
+	}
+
+	@Override
+	public void drawPolyline(int[] xPoints, int[] yPoints, int nPoints) {
+		if (nPoints > 0) {
+			path();
+			points(xPoints, yPoints, nPoints, true);
+		}
+	}
+
+	@Override
+	public void drawPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+		if (nPoints > 0) {
+			path();
+			points(xPoints, yPoints, nPoints, true);
+			write("z");
+		}
+	}
+
+	@Override
+	public void fillPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+		if (nPoints > 0) {
+			element("<path stroke=\"none\" d=\"");
+			points(xPoints, yPoints, nPoints, false);
+			write("z\"/>\n");
+		}
+	}
+
+	@Override
+	public void drawString(String str, int x, int y) {
+		element("<text stroke=\"none\" x=\"" + x + "\" y=\"" + y + "\">");
+		write(escape(str));
+		write("</text>\n");
+	}
+
+	@Override
+	public void drawString(String str, float x, float y) {
+		element("<text stroke=\"none\" x=\"");
+		number(x);
+		write("\" y=\"");
+		number(y);
+		write("\">");
+		write(escape(str));
+		write("</text>\n");
+	}
+
+	@Override
+	public void draw(Shape s) {
+		shape(s, false);
+	}
+
+	@Override
+	public void fill(Shape s) {
+		shape(s, true);
+	}
+
+	/*
+	 * State and metrics
+	 */
+
+	@Override
+	public Color getColor() {
+		return color;
+	}
+
+	@Override
+	public Paint getPaint() {
+		return color;
+	}
+
+	@Override
+	public Stroke getStroke() {
+		return stroke;
+	}
+
+	@Override
+	public Font getFont() {
+		return font;
+	}
+
+	@Override
+	public FontMetrics getFontMetrics(Font f) {
+		return metrics.getFontMetrics(f);
+	}
+
+	@Override
+	public FontRenderContext getFontRenderContext() {
+		return metrics.getFontRenderContext();
+	}
+
+	@Override
+	public GraphicsConfiguration getDeviceConfiguration() {
+		return metrics.getDeviceConfiguration();
+	}
+
+	@Override
+	public boolean hit(Rectangle rect, Shape s, boolean onStroke) {
+		return metrics.hit(rect, s, onStroke);
+	}
+
+	@Override
+	public Composite getComposite() {
+		return metrics.getComposite();
+	}
+
+	@Override
+	public Object getRenderingHint(Key hintKey) {
+		return metrics.getRenderingHint(hintKey);
+	}
+
+	@Override
+	public RenderingHints getRenderingHints() {
+		return metrics.getRenderingHints();
+	}
+
+	@Override
+	public AffineTransform getTransform() {
+		return new AffineTransform();
+	}
+
+	@Override
+	public Color getBackground() {
+		return metrics.getBackground();
+	}
+
+	@Override
+	public void setBackground(Color c) {
+		metrics.setBackground(c);
+	}
+
+	@Override
+	public Shape getClip() {
+		return null;
+	}
+
+	@Override
+	public Rectangle getClipBounds() {
+		return null;
+	}
+
+	@Override
+	public void setPaintMode() {
+		/* empty */
+	}
+
+	@Override
+	public void dispose() {
+		/* empty */
+	}
+
+	/*
+	 * Unsupported operations
+	 */
+
+	@Override
+	public Graphics create() {
+		throw unsupported("create");
+	}
+
+	@Override
+	public void setXORMode(Color c1) {
+		throw unsupported("setXORMode");
+	}
+
+	@Override
+	public void setComposite(Composite comp) {
+		throw unsupported("setComposite");
+	}
+
+	@Override
+	public void setRenderingHint(Key hintKey, Object hintValue) {
+		throw unsupported("setRenderingHint");
+	}
+
+	@Override
+	public void setRenderingHints(Map<?, ?> hints) {
+		throw unsupported("setRenderingHints");
+	}
+
+	@Override
+	public void addRenderingHints(Map<?, ?> hints) {
+		throw unsupported("addRenderingHints");
+	}
+
+	@Override
+	public void translate(int x, int y) {
+		throw unsupported("translate");
+	}
+
+	@Override
+	public void translate(double tx, double ty) {
+		throw unsupported("translate");
+	}
+
+	@Override
+	public void rotate(double theta) {
+		throw unsupported("rotate");
+	}
+
+	@Override
+	public void rotate(double theta, double x, double y) {
+		throw unsupported("rotate");
+	}
+
+	@Override
+	public void scale(double sx, double sy) {
+		throw unsupported("scale");
+	}
+
+	@Override
+	public void shear(double shx, double shy) {
+		throw unsupported("shear");
+	}
+
+	@Override
+	public void transform(AffineTransform tx) {
+		throw unsupported("transform");
+	}
+
+	@Override
+	public void setTransform(AffineTransform tx) {
+		throw unsupported("setTransform");
+	}
+
+	@Override
+	public void clip(Shape s) {
+		throw unsupported("clip");
+	}
+
+	@Override
+	public void clipRect(int x, int y, int width, int height) {
+		throw unsupported("clipRect");
+	}
+
+	@Override
+	public void setClip(int x, int y, int width, int height) {
+		throw unsupported("setClip");
+	}
+
+	@Override
+	public void setClip(Shape clip) {
+		throw unsupported("setClip");
+	}
+
+	@Override
+	public void copyArea(int x, int y, int width, int height, int dx, int dy) {
+		throw unsupported("copyArea");
+	}
+
+	@Override
+	public void clearRect(int x, int y, int width, int height) {
+		throw unsupported("clearRect");
+	}
+
+	@Override
+	public void drawString(AttributedCharacterIterator iterator, int x, int y) {
+		throw unsupported("drawString");
+	}
+
+	@Override
+	public void drawString(AttributedCharacterIterator iterator, float x,
+			float y) {
+		throw unsupported("drawString");
+	}
+
+	@Override
+	public void drawGlyphVector(GlyphVector g, float x, float y) {
+		throw unsupported("drawGlyphVector");
+	}
+
+	@Override
+	public boolean drawImage(Image img, AffineTransform xform, ImageObserver obs) {
+		throw unsupported("drawImage");
+	}
+
+	@Override
+	public void drawImage(BufferedImage img, BufferedImageOp op, int x, int y) {
+		throw unsupported("drawImage");
+	}
+
+	@Override
+	public void drawRenderedImage(RenderedImage img, AffineTransform xform) {
+		throw unsupported("drawRenderedImage");
+	}
+
+	@Override
+	public void drawRenderableImage(RenderableImage img,
+			AffineTransform xform) {
+		throw unsupported("drawRenderableImage");
+	}
+
+	@Override
+	public boolean drawImage(Image img, int x, int y, ImageObserver observer) {
+		throw unsupported("drawImage");
+	}
+
+	@Override
+	public boolean drawImage(Image img, int x, int y, int width, int height,
+			ImageObserver observer) {
+		throw unsupported("drawImage");
+	}
+
+	@Override
+	public boolean drawImage(Image img, int x, int y, Color bgcolor,
+			ImageObserver observer) {
+		throw unsupported("drawImage");
+	}
+
+	@Override
+	public boolean drawImage(Image img, int x, int y, int width, int height,
+			Color bgcolor, ImageObserver observer) {
+		throw unsupported("drawImage");
+	}
+
+	@Override
+	public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2,
+			int sx1, int sy1, int sx2, int sy2, ImageObserver observer) {
+		throw unsupported("drawImage");
+	}
+
+	@Override
+	public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2,
+			int sx1, int sy1, int sx2, int sy2, Color bgcolor,
+			ImageObserver observer) {
+		throw unsupported("drawImage");
+	}
+}
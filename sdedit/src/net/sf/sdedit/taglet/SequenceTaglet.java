@@ -24,16 +24,30 @@
 
 package net.sf.sdedit.taglet;
 
+import java.beans.PropertyDescriptor;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
 
 import net.sf.sdedit.config.Configuration;
 import net.sf.sdedit.config.ConfigurationManager;
 import net.sf.sdedit.diagram.Diagram;
 import net.sf.sdedit.text.TextHandler;
-import net.sf.sdedit.ui.ImagePaintDevice;
+import net.sf.sdedit.ui.StripPaintDevice;
+import net.sf.sdedit.ui.components.configuration.Bean;
 
 import com.sun.javadoc.Doc;
 import com.sun.javadoc.PackageDoc;
@@ -58,6 +72,17 @@ import com.sun.tools.doclets.internal.toolkit.taglets.TagletWriter;
  *                   <p>
  *                   <tt>@sequence.diagram</tt> are no inline tags and they can be used inside
  *                   classes, and inside package documentation.
+ *                   <p>
+ *                   Two system properties (to be passed to javadoc via
+ *                   <tt>-J-D</tt>) speed up large javadoc runs: If
+ *                   <tt>sdedit.taglet.cache</tt> names a directory, each
+ *                   image is stored there under a hash of the diagram
+ *                   specification and the configuration, and an unchanged
+ *                   diagram is just copied from there instead of being drawn
+ *                   again. If <tt>sdedit.taglet.threads</tt> is a positive
+ *                   number, the images are drawn and saved by that many
+ *                   background threads, which javadoc waits for before it
+ *                   exits.
  * 
  * @sequence.diagram "Processing of <tt>@sequence.diagram</tt> tags" user:Actor javadoc:Javadoc[a] sourceFile:File
  *                   /docFile:File taglet:SequenceTaglet
@@ -81,6 +106,17 @@ public class SequenceTaglet implements Taglet
      */
     private static final String imageSubDirectory = "sequence-diagrams";
 
+    /**
+     * The name of the system property naming the cache directory.
+     */
+    private static final String cacheProperty = "sdedit.taglet.cache";
+
+    /**
+     * The name of the system property specifying the number of background
+     * threads for saving images.
+     */
+    private static final String threadsProperty = "sdedit.taglet.threads";
+
     /**
      * The directory where the png files are stored.
      */
@@ -91,6 +127,18 @@ public class SequenceTaglet implements Taglet
      */
     private Map<String, Integer> nameCounter;
 
+    /**
+     * The directory where images are cached under the hash of their
+     * specification and configuration, or <tt>null</tt>.
+     */
+    private File cacheDirectory;
+
+    /**
+     * The background threads saving images, or <tt>null</tt> if images are
+     * saved synchronously.
+     */
+    private ThreadPoolExecutor pool;
+
     /**
      * Registers an instance of this taglet class.
      * 
@@ -200,13 +248,58 @@ public class SequenceTaglet implements Taglet
         if (specification.length() == 0) {
             return "";
         }
-        Configuration conf = ConfigurationManager.createNewDefaultConfiguration().getDataObject();
+        Bean<Configuration> configuration = ConfigurationManager
+                .createNewDefaultConfiguration();
+        Configuration conf = configuration.getDataObject();
         conf.setHeadWidth(25);
         conf.setMainLifelineWidth(5);
         conf.setSubLifelineWidth(5);
         conf.setThreaded(true);
         conf.setGlue(3);
-        ImagePaintDevice device = new ImagePaintDevice();
+        String fileName = imageBaseName + ".png";
+        File imageFile = new File(diagramDirectory, fileName);
+        File cachedFile = null;
+        if (cacheDirectory != null) {
+            cachedFile = new File(cacheDirectory, hash(specification,
+                    configuration) + ".png");
+        }
+        if (cachedFile == null || !cachedFile.isFile()
+                || !copy(cachedFile, imageFile)) {
+            draw(conf, specification, source, imageFile, cachedFile);
+        }
+        if (diagramTitle == null) {
+            diagramTitle = "Sequence Diagram " + imageBaseName;
+        }
+        String imageUrl = path + imageSubDirectory + "/" + fileName;
+        String anchor = "<A name=\"" + imageBaseName + "\"/>";
+        return "<DT><HR><B>" + anchor + diagramTitle + ":</B><P></DT>"
+                + "<DD><img src='" + imageUrl + "'></DD>";
+
+    }
+
+    /**
+     * Generates a diagram and saves its image, in the background if there are
+     * background threads. The image is also put into the cache if a cache
+     * file is given.
+     * 
+     * @param conf
+     *            the configuration of the diagram
+     * @param specification
+     *            the diagram specification
+     * @param source
+     *            the lines of the tag content, for the error message
+     * @param imageFile
+     *            the file where the image is to be saved
+     * @param cachedFile
+     *            the file where the image is to be cached, or <tt>null</tt>
+     * @throws SequenceTagletException
+     *             if the creation of the diagram fails, or if the image is
+     *             saved synchronously and cannot be saved
+     */
+    private void draw(Configuration conf, String specification,
+            String[] source, final File imageFile, final File cachedFile)
+            throws SequenceTagletException {
+        final StripPaintDevice device = new StripPaintDevice();
         TextHandler handler = new TextHandler(specification);
         try {
             new Diagram(conf, handler, device).generate();
@@ -230,23 +323,99 @@ public class SequenceTaglet implements Taglet
                             + "<font color=\"red\">" + e.getMessage()
                             + "</font></B>" + code.toString() + "</DD>");
         }
-        String fileName = imageBaseName + ".png";
-        File imageFile = new File(diagramDirectory, fileName);
-
+        if (pool != null) {
+            pool.execute(new Runnable() {
+                public void run() {
+                    try {
+                        save(device, imageFile, cachedFile);
+                    } catch (IOException ioe) {
+                        System.err.println("Could not save diagram image "
+                                + imageFile + ": " + ioe.getMessage());
+                    }
+                }
+            });
+            return;
+        }
         try {
-            device.saveImage(imageFile.getAbsolutePath());
+            save(device, imageFile, cachedFile);
         } catch (IOException ioe) {
             throw new SequenceTagletException("Could not save diagram image: "
                     + ioe.getMessage(), "");
         }
-        if (diagramTitle == null) {
-            diagramTitle = "Sequence Diagram " + imageBaseName;
+    }
+
+    private static void save(StripPaintDevice device, File imageFile,
+            File cachedFile) throws IOException {
+        OutputStream stream = new FileOutputStream(imageFile);
+        try {
+            device.writeToStream(stream);
+        } finally {
+            stream.close();
         }
-        String imageUrl = path + imageSubDirectory + "/" + fileName;
-        String anchor = "<A name=\"" + imageBaseName + "\"/>";
-        return "<DT><HR><B>" + anchor + diagramTitle + ":</B><P></DT>"
-                + "<DD><img src='" + imageUrl + "'></DD>";
+        if (cachedFile != null) {
+            // copy via a temporary file, so a cached file is always complete
+            File tmp = new File(cachedFile.getParentFile(), cachedFile
+                    .getName() + "." + Thread.currentThread().getId() + ".tmp");
+            if (!copy(imageFile, tmp) || !tmp.renameTo(cachedFile)) {
+                tmp.delete();
+            }
+        }
+    }
+
+    private static boolean copy(File from, File to) {
+        try {
+            InputStream in = new FileInputStream(from);
+            try {
+                OutputStream out = new FileOutputStream(to);
+                try {
+                    byte[] buffer = new byte[8192];
+                    int n;
+                    while ((n = in.read(buffer)) > 0) {
+                        out.write(buffer, 0, n);
+                    }
+                } finally {
+                    out.close();
+                }
+            } finally {
+                in.close();
+            }
+            return true;
+        } catch (IOException ioe) {
+            return false;
+        }
+    }
 
+    /**
+     * Returns a hash (in hexadecimal notation) of a diagram specification and
+     * the values of the configuration used for drawing it.
+     * 
+     * @param specification
+     *            a diagram specification
+     * @param configuration
+     *            a configuration
+     * @return a hash of the specification and the configuration
+     */
+    private static String hash(String specification,
+            Bean<Configuration> configuration) {
+        StringBuffer key = new StringBuffer(specification);
+        for (PropertyDescriptor property : configuration.getProperties()) {
+            key.append("\n" + property.getName() + "="
+                    + configuration.getValue(property));
+        }
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1").digest(
+                    key.toString().getBytes("utf-8"));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        StringBuffer hex = new StringBuffer();
+        for (byte b : digest) {
+            hex.append(Integer.toHexString((b & 0xff) | 0x100).substring(1));
+        }
+        return hex.toString();
     }
 
     /**
@@ -343,6 +512,51 @@ public class SequenceTaglet implements Taglet
         File baseDir = new File(dir);
         diagramDirectory = new File(baseDir, imageSubDirectory);
         diagramDirectory.mkdirs();
+        String cache = System.getProperty(cacheProperty);
+        if (cache != null && cache.length() > 0) {
+            cacheDirectory = new File(cache);
+            cacheDirectory.mkdirs();
+        }
+        int threads = Integer.getInteger(threadsProperty, 0);
+        if (threads > 0) {
+            startPool(threads);
+        }
+    }
+
+    /**
+     * Starts the background threads for saving images. As a queued image
+     * occupies a lot of memory, the queue is short; when it is full, the
+     * thread generating the javadoc saves the image itself.
+     * 
+     * @param threads
+     *            the number of background threads
+     */
+    private void startPool(int threads) {
+        // ImageIO closes the streams of its file cache in a shutdown hook of
+        // its own, so images saved while javadoc exits must not use it
+        ImageIO.setUseCache(false);
+        pool = new ThreadPoolExecutor(threads, threads, 0L,
+                TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(
+                        2 * threads), new ThreadFactory() {
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable,
+                                "SequenceTaglet image writer");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        // the threads are daemons, so javadoc can exit when it is done,
+        // but only after all images have been saved
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            public void run() {
+                pool.shutdown();
+                try {
+                    pool.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+                } catch (InterruptedException ignored) {
+                    /* empty */
+                }
+            }
+        });
     }
 
     /**
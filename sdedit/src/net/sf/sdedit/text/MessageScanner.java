@@ -0,0 +1,536 @@
+// Copyright (c) 2006 - 2008, Markus Strauch.
+// All rights reserved.
+// 
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright notice, 
+// this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright notice, 
+// this list of conditions and the following disclaimer in the documentation 
+// and/or other materials provided with the distribution.
+// 
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+package net.sf.sdedit.text;
+
+import net.sf.sdedit.util.Grep;
+
+/**
+ * A <tt>MessageScanner</tt> splits a message string (see
+ * {@linkplain TextBasedMessageData}) into its parts without using regular
+ * expressions. A single pass over the characters classifies the unescaped
+ * separators (<tt>:</tt>, <tt>:&gt;</tt>, <tt>.</tt>, <tt>=</tt>,
+ * <tt>[</tt>, <tt>]</tt>, <tt>{</tt>), the parts are then found by looking
+ * only at the positions of these separators.
+ * <p>
+ * The scanner reproduces the results of the cascade of regular expressions
+ * used by {@linkplain TextBasedMessageData} exactly, including the
+ * preferences of greedy and reluctant groups. It tries the same alternatives
+ * in the same order, so for each string it chooses the same caller, callee,
+ * answer, message and so on. For the few strings where the regular
+ * expressions would make a setter fail (numbers that are too large, property
+ * lists with escape characters), {@linkplain #scan()} returns
+ * {@linkplain #UNDECIDED} and the caller falls back to the regular expressions.
+ * 
+ * @author Markus Strauch
+ */
+final class MessageScanner {
+
+	/**
+	 * The string is a valid message, its parts can be passed to a
+	 * {@linkplain TextBasedMessageData} via {@linkplain #apply}.
+	 */
+	static final int MATCH = 0;
+
+	/**
+	 * The string is not a valid message.
+	 */
+	static final int NO_MATCH = 1;
+
+	/**
+	 * The scanner cannot handle the string, it must be parsed by the regular
+	 * expressions.
+	 */
+	static final int UNDECIDED = 2;
+
+	private static final byte COLON = 1;
+
+	private static final byte SPAWN = 2;
+
+	private static final byte DOT = 3;
+
+	private static final byte EQ = 4;
+
+	private static final byte OPEN = 5;
+
+	private static final byte CLOSE = 6;
+
+	private static final byte BRACE = 7;
+
+	/*
+	 * The message patterns, in the order in which TextBasedMessageData has
+	 * always tried them.
+	 */
+	private static final int LEVEL_THREAD_ANSWER = 1;
+
+	private static final int LEVEL_THREAD = 2;
+
+	private static final int ANSWER = 3;
+
+	private static final int PLAIN = 4;
+
+	private static final int PRIMITIVE_LEVEL = 5;
+
+	private static final int PRIMITIVE = 6;
+
+	private static final int SPAWN_LEVEL = 7;
+
+	private static final int SPAWN_PLAIN = 8;
+
+	/*
+	 * Numbers with more digits than this might not fit into an int.
+	 */
+	private static final int MAX_DIGITS = 9;
+
+	private final String string;
+
+	private final int length;
+
+	/*
+	 * kind[i] is one of the constants above if the i-th character is an
+	 * (unescaped) separator, otherwise 0
+	 */
+	private byte[] kind;
+
+	/*
+	 * nextDot[i] is the smallest position >= i of an unescaped dot, or length
+	 * if there is none
+	 */
+	private int[] nextDot;
+
+	/*
+	 * prevEq[i] is the greatest position <= i of an unescaped equality sign,
+	 * or -1 if there is none
+	 */
+	private int[] prevEq;
+
+	private int lastDot;
+
+	/*
+	 * positions of '{' where a valid property list starts that reaches to the
+	 * end of the string
+	 */
+	private int[] propertyStarts;
+
+	private int numberOfPropertyStarts;
+
+	private boolean escaped;
+
+	private String noteId;
+
+	private String caller;
+
+	private String levelString;
+
+	private String threadString;
+
+	private String callerMnemonic;
+
+	private String answer;
+
+	private String callee;
+
+	private String message;
+
+	private String properties;
+
+	private boolean spawn;
+
+	/**
+	 * Creates a new <tt>MessageScanner</tt> for a message string.
+	 * 
+	 * @param string
+	 *            a message string
+	 */
+	MessageScanner(String string) {
+		this.string = string;
+		length = string.length();
+	}
+
+	/**
+	 * Scans the string.
+	 * 
+	 * @return one of {@linkplain #MATCH}, {@linkplain #NO_MATCH} and
+	 *         {@linkplain #UNDECIDED}
+	 */
+	int scan() {
+		if (!classify()) {
+			return UNDECIDED;
+		}
+		int noteEnd = noteIdEnd();
+		for (int pattern = LEVEL_THREAD_ANSWER; pattern <= SPAWN_PLAIN; pattern++) {
+			if ((noteEnd > 0 && matchPattern(pattern, noteEnd))
+					|| matchPattern(pattern, 0)) {
+				return isSafe() ? MATCH : UNDECIDED;
+			}
+		}
+		return NO_MATCH;
+	}
+
+	/**
+	 * Passes the parts of a string that has been scanned with the result
+	 * {@linkplain #MATCH} to a <tt>TextBasedMessageData</tt> object, in the
+	 * same order as the regular expressions would.
+	 * 
+	 * @param data
+	 *            the object to receive the parts of the message
+	 */
+	void apply(TextBasedMessageData data) {
+		data.setNoteId(noteId);
+		if (spawn) {
+			data.setSpawner(unescape(caller));
+		} else {
+			data.setCaller(unescape(caller));
+		}
+		data.setLevelString(levelString);
+		data.setThreadString(threadString);
+		data.setCallerMnemonic(unescape(callerMnemonic));
+		data.setAnswer(unescape(answer));
+		if (callee != null) {
+			data.setCallee(unescape(callee));
+		}
+		data.setMessage(unescape(message));
+		data.setProperties(properties);
+	}
+
+	/*
+	 * Fills the kind, nextDot and prevEq arrays. Returns false if the string
+	 * contains line terminators, which cannot be matched by '.' in the regular
+	 * expressions
+	 */
+	private boolean classify() {
+		kind = new byte[length];
+		prevEq = new int[length];
+		char previous = 0;
+		int eq = -1;
+		for (int i = 0; i < length; i++) {
+			char c = string.charAt(i);
+			boolean unescaped = previous != '\\';
+			switch (c) {
+			case '\n':
+			case '\r':
+			case '\u0085':
+			case '\u2028':
+			case '\u2029':
+				return false;
+			case '\\':
+				escaped = true;
+				break;
+			case ':':
+				if (unescaped) {
+					kind[i] = i + 1 < length && string.charAt(i + 1) == '>' ? SPAWN
+							: COLON;
+				}
+				break;
+			case '.':
+				if (unescaped) {
+					kind[i] = DOT;
+				}
+				break;
+			case '=':
+				if (unescaped) {
+					kind[i] = EQ;
+					eq = i;
+				}
+				break;
+			case '[':
+				kind[i] = OPEN;
+				break;
+			case ']':
+				kind[i] = CLOSE;
+				break;
+			case '{':
+				kind[i] = BRACE;
+				break;
+			default:
+			}
+			prevEq[i] = eq;
+			previous = c;
+		}
+		nextDot = new int[length + 1];
+		nextDot[length] = length;
+		lastDot = -1;
+		for (int i = length - 1; i >= 0; i--) {
+			nextDot[i] = kind[i] == DOT ? i : nextDot[i + 1];
+			if (lastDot == -1 && kind[i] == DOT) {
+				lastDot = i;
+			}
+		}
+		findPropertyStarts();
+		return true;
+	}
+
+	/*
+	 * A property list is {key=value,...,key=value} at the end of the string,
+	 * where neither keys nor values are empty or contain ',' or '='.
+	 */
+	private void findPropertyStarts() {
+		if (length < 2 || string.charAt(length - 1) != '}') {
+			return;
+		}
+		for (int j = 0; j < length - 1; j++) {
+			if (kind[j] == BRACE && isPropertyList(j + 1, length - 1)) {
+				if (propertyStarts == null) {
+					propertyStarts = new int[4];
+				} else if (numberOfPropertyStarts == propertyStarts.length) {
+					int[] larger = new int[2 * numberOfPropertyStarts];
+					System.arraycopy(propertyStarts, 0, larger, 0,
+							numberOfPropertyStarts);
+					propertyStarts = larger;
+				}
+				propertyStarts[numberOfPropertyStarts++] = j;
+			}
+		}
+	}
+
+	private boolean isPropertyList(int begin, int end) {
+		int pieceLength = 0;
+		int equalities = 0;
+		boolean valueFound = false;
+		for (int i = begin; i <= end; i++) {
+			char c = i < end ? string.charAt(i) : ',';
+			if (c == ',') {
+				if (equalities != 1 || !valueFound) {
+					return false;
+				}
+				pieceLength = 0;
+				equalities = 0;
+				valueFound = false;
+			} else if (c == '=') {
+				if (pieceLength == 0) {
+					return false;
+				}
+				equalities++;
+			} else {
+				pieceLength++;
+				valueFound = equalities == 1;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Returns the position after a note id (n,m) at the beginning of the
+	 * string, or -1 if there is none
+	 */
+	private int noteIdEnd() {
+		if (length == 0 || string.charAt(0) != '(') {
+			return -1;
+		}
+		int i = skipDigits(1);
+		if (i < length && string.charAt(i) == ',') {
+			int j = skipDigits(i + 1);
+			if (j > i + 1) {
+				i = j;
+			}
+		}
+		return i < length && string.charAt(i) == ')' ? i + 1 : -1;
+	}
+
+	private int skipDigits(int i) {
+		while (i < length && isDigit(string.charAt(i))) {
+			i++;
+		}
+		return i;
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B'
+				|| c == '\f' || c == '\r';
+	}
+
+	/*
+	 * The caller is greedy, so the caller's end positions are tried from right
+	 * to left. Whitespace between the note id and the caller is skipped unless
+	 * the caller would become empty.
+	 */
+	private boolean matchPattern(int pattern, int prefixEnd) {
+		int callerBegin = prefixEnd;
+		while (callerBegin < length && isWhitespace(string.charAt(callerBegin))) {
+			callerBegin++;
+		}
+		for (int end = length - 1; end > prefixEnd; end--) {
+			reset();
+			if (matchAfterCaller(pattern, end)) {
+				noteId = string.substring(0, prefixEnd);
+				caller = string.substring(Math.min(callerBegin, end - 1), end);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void reset() {
+		levelString = "";
+		threadString = "";
+		callerMnemonic = "";
+		answer = "";
+		callee = null;
+		message = null;
+		properties = "";
+		spawn = false;
+	}
+
+	private boolean matchAfterCaller(int pattern, int i) {
+		switch (pattern) {
+		case LEVEL_THREAD_ANSWER:
+		case LEVEL_THREAD:
+		case PRIMITIVE_LEVEL:
+		case SPAWN_LEVEL:
+			return matchLevels(pattern, i);
+		case ANSWER:
+			return kind[i] == COLON && matchAnswerAndCallee(i + 1);
+		case PLAIN:
+			return kind[i] == COLON && matchCallee(i + 1, 0);
+		case PRIMITIVE:
+			return kind[i] == COLON && matchMessage(i + 1);
+		case SPAWN_PLAIN:
+			spawn = true;
+			return kind[i] == SPAWN && matchCallee(i + 2, 1);
+		default:
+			throw new IllegalArgumentException("no such pattern: " + pattern);
+		}
+	}
+
+	/*
+	 * [level,thread] or [level] or [mnemonic], tried in this order
+	 */
+	private boolean matchLevels(int pattern, int i) {
+		if (kind[i] != OPEN) {
+			return false;
+		}
+		int comma = skipDigits(i + 1);
+		if (comma < length && string.charAt(comma) == ',') {
+			int close = skipDigits(comma + 1);
+			if (close > comma + 1 && close < length && kind[close] == CLOSE
+					&& matchAfterLevels(pattern, close + 1)) {
+				levelString = string.substring(i + 1, comma);
+				threadString = string.substring(comma + 1, close);
+				return true;
+			}
+		}
+		int close = skipDigits(i + 1);
+		if (close > i + 1 && close < length && kind[close] == CLOSE
+				&& matchAfterLevels(pattern, close + 1)) {
+			levelString = string.substring(i + 1, close);
+			return true;
+		}
+		if (i + 1 < length && !isDigit(string.charAt(i + 1))) {
+			for (close = length - 1; close >= i + 2; close--) {
+				if (kind[close] == CLOSE && matchAfterLevels(pattern, close + 1)) {
+					callerMnemonic = string.substring(i + 1, close);
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private boolean matchAfterLevels(int pattern, int i) {
+		if (i >= length) {
+			return false;
+		}
+		switch (pattern) {
+		case LEVEL_THREAD_ANSWER:
+			return kind[i] == COLON && matchAnswerAndCallee(i + 1);
+		case LEVEL_THREAD:
+			return kind[i] == COLON && matchCallee(i + 1, 1);
+		case PRIMITIVE_LEVEL:
+			return kind[i] == COLON && matchMessage(i + 1);
+		case SPAWN_LEVEL:
+			spawn = true;
+			return kind[i] == SPAWN && matchCallee(i + 2, 1);
+		default:
+			throw new IllegalArgumentException("no such pattern: " + pattern);
+		}
+	}
+
+	/*
+	 * The answer is greedy, so it ends at the last '=' that is followed by a
+	 * non-empty callee and a dot.
+	 */
+	private boolean matchAnswerAndCallee(int i) {
+		if (lastDot - 2 < i) {
+			return false;
+		}
+		int eq = prevEq[lastDot - 2];
+		if (eq < i) {
+			return false;
+		}
+		answer = string.substring(i, eq);
+		return matchCallee(eq + 1, 1);
+	}
+
+	/*
+	 * The callee is reluctant, so it ends at the first dot after at least
+	 * minLength characters.
+	 */
+	private boolean matchCallee(int i, int minLength) {
+		if (i + minLength > length) {
+			return false;
+		}
+		int dot = nextDot[i + minLength];
+		if (dot == length) {
+			return false;
+		}
+		callee = string.substring(i, dot);
+		return matchMessage(dot + 1);
+	}
+
+	/*
+	 * The message is reluctant, so it ends where the first property list
+	 * begins.
+	 */
+	private boolean matchMessage(int i) {
+		int end = length;
+		for (int j = 0; j < numberOfPropertyStarts; j++) {
+			if (propertyStarts[j] >= i) {
+				end = propertyStarts[j];
+				break;
+			}
+		}
+		message = string.substring(i, end);
+		properties = string.substring(end);
+		return true;
+	}
+
+	/*
+	 * Returns false if applying the parts would make a setter fail; in this
+	 * case the regular expressions must do the job, so the failure is reported
+	 * in the same way.
+	 */
+	private boolean isSafe() {
+		return noteId.length() <= MAX_DIGITS + 2
+				&& levelString.length() <= MAX_DIGITS
+				&& threadString.length() <= MAX_DIGITS
+				&& (!escaped || properties.indexOf('\\') == -1);
+	}
+
+	private String unescape(String part) {
+		return escaped ? Grep.unescape(part) : part;
+	}
+}
@@ -70,6 +70,26 @@ public class TextBasedMessageData extends MessageData {
 	private static final String MSG_PROP = "(.*?)(\\{([^,=]+=[^,=]+)(,[^,=]+=[^,=]+)*\\})?";
 	
 
+	/**
+	 * The name of the system property that determines how message strings are
+	 * parsed. If its value is <tt>regex</tt>, the strings are matched against
+	 * the regular expressions only. If it is <tt>verify</tt>, every string is
+	 * parsed by the {@linkplain MessageScanner} and by the regular expressions,
+	 * and any difference between the results is reported on the standard
+	 * error stream. Otherwise (and by default) the scanner is used, and the
+	 * regular expressions only serve as a fallback for strings the scanner
+	 * cannot handle.
+	 */
+	public static final String PARSER_PROPERTY = "sdedit.messageParser";
+
+	static final int SCAN = 0;
+
+	static final int REGEX = 1;
+
+	static final int VERIFY = 2;
+
+	private static final int PARSER_MODE = getParserMode();
+
 	private String string;
 
 	static {
@@ -91,9 +111,35 @@ public class TextBasedMessageData extends MessageData {
 	 *             if the string is not a valid message
 	 */
 	public TextBasedMessageData(String string) throws SyntaxError {
+		this(string, PARSER_MODE);
+	}
+
+	/**
+	 * Creates a new <tt>MessageParser</tt> for parsing a string in the given
+	 * mode, regardless of the {@linkplain #PARSER_PROPERTY}.
+	 * 
+	 * @param string
+	 *            the string to be parsed
+	 * @param mode
+	 *            one of SCAN, REGEX and VERIFY
+	 * @throws SyntaxError
+	 *             if the string is not a valid message
+	 */
+	TextBasedMessageData(String string, int mode) throws SyntaxError {
 		super();
 		this.string = string;
-		parse();
+		parse(mode);
+	}
+
+	private static int getParserMode() {
+		String mode = System.getProperty(PARSER_PROPERTY, "");
+		if (mode.equals("regex")) {
+			return REGEX;
+		}
+		if (mode.equals("verify")) {
+			return VERIFY;
+		}
+		return SCAN;
 	}
 
 	/**
@@ -101,12 +147,69 @@ public class TextBasedMessageData extends MessageData {
 	 * of the string (see {@linkplain TextBasedMessageData} can be fetched via
 	 * the <tt>get</tt> methods.
 	 * 
+	 * @param mode
+	 *            one of SCAN, REGEX and VERIFY
 	 */
-	private void parse() throws SyntaxError {
-		boolean success = false;
+	private void parse(int mode) throws SyntaxError {
 		if (string.indexOf(':') == -1) {
 			throw new SyntaxError(null, "not a valid message - ':' missing");
 		}
+		boolean success;
+		if (mode == REGEX) {
+			success = parseWithRegex();
+		} else {
+			MessageScanner scanner = new MessageScanner(string);
+			int result = scanner.scan();
+			if (result == MessageScanner.UNDECIDED) {
+				success = parseWithRegex();
+			} else {
+				success = result == MessageScanner.MATCH;
+				if (success) {
+					scanner.apply(this);
+				}
+			}
+			if (mode == VERIFY) {
+				verify(success);
+			}
+		}
+		if (!success) {
+			throw new SyntaxError(null, "not a valid message");
+		}
+	}
+
+	/**
+	 * Parses the string by parsing it again using the regular expressions and
+	 * reports on the standard error stream if the result differs from the
+	 * result of the scanner.
+	 * 
+	 * @param success
+	 *            flag denoting if the scanner found a valid message
+	 */
+	private void verify(boolean success) {
+		boolean same;
+		try {
+			TextBasedMessageData reference = new TextBasedMessageData(string,
+					REGEX);
+			same = success && hasSameData(reference);
+		} catch (SyntaxError e) {
+			same = !success;
+		} catch (RuntimeException e) {
+			same = false;
+		}
+		if (!same) {
+			System.err.println("Message scanner and regular expressions "
+					+ "disagree on: " + string);
+		}
+	}
+
+	/**
+	 * Tries the regular expressions for the different kinds of messages one
+	 * after another.
+	 * 
+	 * @return true if one of them matched the string
+	 */
+	private boolean parseWithRegex() {
+		boolean success = false;
 		try {
 			success = /* Level, thread, and answer */
 			Grep.parseAndSetProperties(this, PREFIX + LEVELS + COLON + "(.*)"
@@ -151,9 +254,7 @@ public class TextBasedMessageData extends MessageData {
 		} catch (IntrospectionException e) {
 			e.printStackTrace();
 		}
-		if (!success) {
-			throw new SyntaxError(null, "not a valid message");
-		}
+		return success;
 	}
 
 	@Override
@@ -23,15 +23,16 @@
 // THE POSSIBILITY OF SUCH DAMAGE.
 package net.sf.sdedit.text;
 
-import java.io.BufferedReader;
-import java.io.StringReader;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
+import net.sf.sdedit.diagram.Checkpoint;
 import net.sf.sdedit.diagram.Diagram;
 import net.sf.sdedit.diagram.DiagramDataProvider;
 import net.sf.sdedit.diagram.Lifeline;
@@ -50,10 +51,15 @@ import net.sf.sdedit.util.Pair;
  */
 public class TextHandler implements DiagramDataProvider {
 
-	private BufferedReader reader;
-
 	private String text;
 
+	/**
+	 * The index in the text where the next line to be read begins. Lines are
+	 * read from the text directly, rather than by a reader, so reading can be
+	 * continued at any line (see {@linkplain #rewind(String)}).
+	 */
+	private int position;
+
 	private String rawLine;
 
 	private String currentLine;
@@ -65,6 +71,13 @@ public class TextHandler implements DiagramDataProvider {
 	/* -1 = init, 0 = objects, 1 = messages */
 	private int section;
 
+	/**
+	 * Flag denoting if the object section has been terminated by an empty
+	 * line, rather than by the end of the text, so everything that follows can
+	 * only be read as messages.
+	 */
+	private boolean objectsTerminated;
+
 	private Diagram diagram;
 
 	private int lineNumber;
@@ -77,6 +90,30 @@ public class TextHandler implements DiagramDataProvider {
 	
 	private boolean parseProperties;
 
+	/**
+	 * If this is not -1, the generation of the diagram is suspended when the
+	 * next message line would begin at or after this index (see
+	 * {@linkplain #setSuspensionIndex(int)}).
+	 */
+	private int suspensionIndex;
+
+	/**
+	 * The number of lines between two checkpoints, or 0 if no checkpoints are
+	 * taken (see {@linkplain #setCheckpointInterval(int)}).
+	 */
+	private int checkpointInterval;
+
+	/**
+	 * The number of the line after which the next checkpoint is taken.
+	 */
+	private int nextCheckpoint;
+
+	/**
+	 * The checkpoints that have been taken, in the order of the lines where
+	 * they have been taken.
+	 */
+	private final List<Mark> marks;
+
 	/**
 	 * Creates a new <tt>TextHandler</tt> for the given text.
 	 * 
@@ -89,11 +126,158 @@ public class TextHandler implements DiagramDataProvider {
 		lineBegin = 0;
 		lineEnd = -1;
 		lineNumber = 0;
+		suspensionIndex = -1;
+		checkpointInterval = 0;
+		nextCheckpoint = 0;
+		marks = new ArrayList<Mark>();
 		this.text = text;
 		annotations = new HashMap<Lifeline, String>();
 		reset();
 	}
 
+	/**
+	 * Makes the diagram take a checkpoint (see
+	 * {@linkplain Diagram#takeCheckpoint()}) before the first message line
+	 * and then every time the given number of lines has been read, so its
+	 * generation can be continued from there when only the lines that follow
+	 * have changed (see {@linkplain #rewind(String)}). Checkpoints are only
+	 * taken if the object section is terminated by an empty line.
+	 * 
+	 * @param lines
+	 *            the number of lines between two checkpoints, or 0 if no
+	 *            checkpoints are to be taken
+	 */
+	public void setCheckpointInterval(int lines) {
+		checkpointInterval = lines;
+	}
+
+	/**
+	 * Makes the diagram suspend its generation (see
+	 * {@linkplain Diagram#suspend()}) instead of reading a message line that
+	 * begins at or after the given index. The index is counted like the values
+	 * of {@linkplain #getLineBegin()}. Lines belonging to a note that begins
+	 * before the index are always read.
+	 * 
+	 * @param index
+	 *            the index of the first line that is not to be read, or -1 if
+	 *            the whole text is to be read
+	 */
+	public void setSuspensionIndex(int index) {
+		suspensionIndex = index;
+	}
+
+	/**
+	 * Replaces the text read by this <tt>TextHandler</tt> by another text, so
+	 * a suspended diagram generation can be continued with that text (see
+	 * {@linkplain Diagram#resume()}). This is only possible if everything that
+	 * has been read so far - including the line break that ends the current
+	 * line - is unchanged in the new text, if the object section has been
+	 * terminated by an empty line, and if the new text has the same title and
+	 * description.
+	 * 
+	 * @param newText
+	 *            the text that is to be read from the current position on
+	 * @return true if the text has been replaced, false if the new text is not
+	 *         consistent with what has been read so far
+	 */
+	public boolean continueWith(String newText) {
+		if (section != 1 || !objectsTerminated
+				|| !newText.regionMatches(0, text, 0, lineEnd + 1)
+				|| !canContinueAt(lineEnd, newText)) {
+			return false;
+		}
+		text = newText;
+		position = lineEnd + 1;
+		suspensionIndex = -1;
+		return true;
+	}
+
+	/**
+	 * Returns true if a diagram can be continued with the given text after
+	 * the line that ends at the given index, provided that the text is
+	 * unchanged up to that index.
+	 * 
+	 * @param end
+	 *            the index of the line break that ends a line that has been
+	 *            read
+	 * @param newText
+	 *            the text that is to be read after that line
+	 * @return true if the diagram can be continued with the new text
+	 */
+	private boolean canContinueAt(int end, String newText) {
+		if (end < 0 || end >= text.length() || end >= newText.length()) {
+			return false;
+		}
+		/*
+		 * We assume single-character line breaks, as the line indices do.
+		 */
+		if (text.charAt(end) != '\n' || text.lastIndexOf('\r', end) >= 0) {
+			return false;
+		}
+		/*
+		 * The title and the description can only have changed if "#!" occurs
+		 * in the part that has not been read yet, of the old or the new text.
+		 */
+		if (text.indexOf("#!", end) >= 0 || newText.indexOf("#!", end) >= 0) {
+			if (!equal(parseTitle(newText), title)
+					|| !Arrays.equals(parseDescription(newText), description)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Prepares reading another text, which is the text read before with some
+	 * lines changed. The most recent checkpoint (see
+	 * {@linkplain #setCheckpointInterval(int)}) before the first change is
+	 * looked up, this handler is reset to the line where it has been taken
+	 * and the checkpoints taken later are discarded. The diagram must then be
+	 * restored to the checkpoint that is returned (see
+	 * {@linkplain Diagram#restore(Checkpoint)}), so its generation can be
+	 * resumed with the new text (see {@linkplain Diagram#resume()}).
+	 * <p>
+	 * If there is no such checkpoint, or if the title or the description
+	 * differ, nothing is changed and <tt>null</tt> is returned. The diagram
+	 * must be generated anew then.
+	 * 
+	 * @param newText
+	 *            the text that is to be read
+	 * @return the checkpoint to which the diagram must be restored, or
+	 *         <tt>null</tt>
+	 */
+	public Checkpoint rewind(String newText) {
+		int common = 0;
+		int length = Math.min(text.length(), newText.length());
+		while (common < length && text.charAt(common) == newText.charAt(common)) {
+			common++;
+		}
+		int m = marks.size() - 1;
+		while (m >= 0 && marks.get(m).lineEnd >= common) {
+			m--;
+		}
+		if (m < 0 || !canContinueAt(marks.get(m).lineEnd, newText)) {
+			return null;
+		}
+		Mark mark = marks.get(m);
+		marks.subList(m + 1, marks.size()).clear();
+		text = newText;
+		position = mark.lineEnd + 1;
+		lineBegin = mark.lineBegin;
+		lineEnd = mark.lineEnd;
+		lineNumber = mark.lineNumber;
+		rawLine = null;
+		currentLine = null;
+		section = 1;
+		suspensionIndex = -1;
+		nextCheckpoint = lineNumber + checkpointInterval;
+		return mark.checkpoint;
+	}
+
+	private static boolean equal(String s1, String s2) {
+		return s1 == null ? s2 == null : s1.equals(s2);
+	}
+
 	/**
 	 * Sets the diagram instance that corresponds to the specification read by
 	 * this <tt>TextHandler</tt>. This method is called inside
@@ -155,34 +339,41 @@ public class TextHandler implements DiagramDataProvider {
 	 * Resets the text handler so objects and messages can be read once again.
 	 */
 	private void reset() {
+		title = parseTitle(text);
+		description = parseDescription(text);
+		position = 0;
+		section = -1;
+		objectsTerminated = false;
+		lineBegin = 0;
+		lineEnd = -1;
+		currentLine = null;
+		rawLine = null;
+		annotations.clear();
+	}
+
+	private static String parseTitle(String text) {
 		// TODO this is a chance for optimization
 		String[] titleString = Grep.parse("(?s).*#!\\[([^\n\r]*?)\\].*", text);
 		if (titleString == null) {
-			title = null;
-		} else {
-			title = titleString[0];
+			return null;
 		}
+		return titleString[0];
+	}
+
+	private static String[] parseDescription(String text) {
 		String[] descString = Grep.parse("(?s).*#!>>(.*)#!<<.*", text);
 		if (descString == null) {
-			description = null;
-		} else {
-			description = descString[0].trim().split("\n");
+			return null;
 		}
-		for (int i = 0; description != null && i < description.length; i++) {
+		String[] description = descString[0].trim().split("\n");
+		for (int i = 0; i < description.length; i++) {
 			description[i] = description[i].trim();
 			if (!description[i].startsWith("#!")) {
-				description = null;
-			} else {
-				description[i] = description[i].replaceFirst("#!", "");
+				return null;
 			}
+			description[i] = description[i].replaceFirst("#!", "");
 		}
-		reader = new BufferedReader(new StringReader(text));
-		section = -1;
-		lineBegin = 0;
-		lineEnd = -1;
-		currentLine = null;
-		rawLine = null;
-		annotations.clear();
+		return description;
 	}
 
 	/**
@@ -206,22 +397,48 @@ public class TextHandler implements DiagramDataProvider {
 	 * @return flag denoting if another object or message line could be read
 	 */
 	public boolean advance() {
+		if (section == 1 && diagram != null) {
+			if (suspensionIndex != -1 && lineEnd + 2 >= suspensionIndex) {
+				diagram.suspend();
+				return false;
+			}
+			if (checkpointInterval > 0 && objectsTerminated
+					&& lineNumber >= nextCheckpoint) {
+				marks.add(new Mark(diagram.takeCheckpoint()));
+				nextCheckpoint = lineNumber + checkpointInterval;
+			}
+		}
 		return advance(true);
 	}
 
-	private boolean advance(boolean ignoreEmptyLines) {
-		if (reader == null) {
-			throw new IllegalStateException("null reader");
+	/**
+	 * A checkpoint of the diagram together with the position of this handler
+	 * when it was taken.
+	 */
+	private final class Mark {
+
+		private final int lineBegin;
+
+		private final int lineEnd;
+
+		private final int lineNumber;
+
+		private final Checkpoint checkpoint;
+
+		Mark(Checkpoint checkpoint) {
+			lineBegin = TextHandler.this.lineBegin;
+			lineEnd = TextHandler.this.lineEnd;
+			lineNumber = TextHandler.this.lineNumber;
+			this.checkpoint = checkpoint;
 		}
+	}
+
+	private boolean advance(boolean ignoreEmptyLines) {
 		try {
-			if (!reader.ready()) {
-				section = 1;
-				return false;
-			}
 			String line;
 			do {
 				lineBegin = lineEnd + 2;
-				rawLine = line = reader.readLine();
+				rawLine = line = readLine();
 				lineNumber++;
 				if (line == null) {
 					section = 1;
@@ -244,6 +461,7 @@ public class TextHandler implements DiagramDataProvider {
 				}
 				if (section == 0 && line.equals("")) {
 					section = 1;
+					objectsTerminated = true;
 					return false;
 				}
 			} while (ignoreEmptyLines
@@ -256,6 +474,33 @@ public class TextHandler implements DiagramDataProvider {
 		}
 	}
 
+	/**
+	 * Returns the line that begins at {@linkplain #position} without the line
+	 * break, like <tt>BufferedReader.readLine()</tt> does, and moves the
+	 * position to the next line.
+	 * 
+	 * @return the next line, or <tt>null</tt> if the end of the text has been
+	 *         reached
+	 */
+	private String readLine() {
+		int length = text.length();
+		if (position >= length) {
+			return null;
+		}
+		int end = position;
+		while (end < length && text.charAt(end) != '\n'
+				&& text.charAt(end) != '\r') {
+			end++;
+		}
+		String line = text.substring(position, end);
+		position = end + 1;
+		if (end + 1 < length && text.charAt(end) == '\r'
+				&& text.charAt(end + 1) == '\n') {
+			position++;
+		}
+		return line;
+	}
+
 	public String openFragment() {
 		if (section == 0) {
 			throw new IllegalStateException("not all objects have been read");
@@ -44,20 +44,6 @@ public abstract class Graphics2DPaintDevice extends PaintDevice
      */
     protected abstract Graphics2D createGraphics();
     
-    /**
-     * Creates a small-sized dummy graphics context that is used to
-     * gain information about the font metrics (which should be the same
-     * as in the final graphics context)
-     * 
-     * @param bold flag denoting if the bold font is set
-     * @return a small-sized dummy graphics context
-     */
-    protected abstract Graphics2D createDummyGraphics(boolean bold);
-    
-    private Graphics2D dummy;
-    
-    private Graphics2D boldDummy;
-    
     private Graphics2D g2d;
     
     protected Graphics2DPaintDevice () {
@@ -83,29 +69,4 @@ public abstract class Graphics2DPaintDevice extends PaintDevice
             drawable.draw(g2d);
         }
     }
-    
-    private Graphics2D dummy() {
-        if (dummy == null) {
-            dummy = createDummyGraphics(false);
-        }
-        return dummy;
-    }
-    
-    private Graphics2D boldDummy () {
-        if (boldDummy == null) {
-            boldDummy = createDummyGraphics(true);
-        }
-        return boldDummy;
-        
-    }
-
-    @Override
-    public int getTextHeight(boolean bold) {
-        return (bold ? boldDummy() : dummy()).getFontMetrics().getHeight();
-    }
-
-    @Override
-    public int getTextWidth(String text, boolean bold) {
-        return (bold ? boldDummy() : dummy()).getFontMetrics().stringWidth(text);
-    }
 }
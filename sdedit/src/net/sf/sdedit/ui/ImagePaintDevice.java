@@ -24,7 +24,6 @@
 package net.sf.sdedit.ui;
 
 import java.awt.Color;
-import java.awt.Font;
 import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.RenderingHints;
@@ -70,15 +69,6 @@ public class ImagePaintDevice extends Graphics2DPaintDevice implements
         writeToStream(new FileOutputStream(file));
     }
 
-    @Override
-    protected Graphics2D createDummyGraphics(boolean bold) {
-        Image img = new BufferedImage(1, 1, BufferedImage.TYPE_USHORT_GRAY);
-        Graphics2D g2d = (Graphics2D) img.getGraphics();
-        Font font = getFont(bold);
-        g2d.setFont(font);
-        return g2d;
-    }
-
     @Override
     protected Graphics2D createGraphics() {
         if (getDiagram().isThreaded()) {
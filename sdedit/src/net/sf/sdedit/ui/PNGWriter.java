@@ -0,0 +1,262 @@
+// Copyright (c) 2006 - 2008, Markus Strauch.
+// All rights reserved.
+// 
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright notice, 
+// this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright notice, 
+// this list of conditions and the following disclaimer in the documentation 
+// and/or other materials provided with the distribution.
+// 
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.sf.sdedit.ui;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * A <tt>PNGWriter</tt> encodes an image of 8-bit gray or 8-bit RGB pixels
+ * into a PNG stream row by row, so the image never needs to be in memory as a
+ * whole. Each row is filtered with the filter type that yields the smallest
+ * sum of absolute differences, as most PNG encoders do.
+ * 
+ * @author Markus Strauch
+ * 
+ */
+final class PNGWriter {
+
+	private static final byte[] SIGNATURE = { (byte) 137, 80, 78, 71, 13, 10,
+			26, 10 };
+
+	// the maximum size of the data of an IDAT chunk
+	private static final int CHUNK_SIZE = 1 << 16;
+
+	private final OutputStream stream;
+
+	private final int width;
+
+	private final int height;
+
+	// bytes per pixel
+	private final int bpp;
+
+	private final Deflater deflater;
+
+	private final CRC32 crc;
+
+	private final byte[] chunk;
+
+	private int chunkSize;
+
+	private byte[] previous;
+
+	private byte[] current;
+
+	// filtered[f] is the current row filtered with filter type f, preceded by
+	// the filter type
+	private final byte[][] filtered;
+
+	private int rowsWritten;
+
+	/**
+	 * Creates a new <tt>PNGWriter</tt> and writes the PNG signature and the
+	 * image header.
+	 * 
+	 * @param stream
+	 *            the stream to write the PNG data to
+	 * @param width
+	 *            the width of the image
+	 * @param height
+	 *            the height of the image
+	 * @param rgb
+	 *            flag denoting if the pixels are RGB triples, otherwise they
+	 *            are gray values
+	 * @throws IOException
+	 *             if the header cannot be written
+	 */
+	PNGWriter(OutputStream stream, int width, int height, boolean rgb)
+			throws IOException {
+		this.stream = stream;
+		this.width = width;
+		this.height = height;
+		bpp = rgb ? 3 : 1;
+		deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+		crc = new CRC32();
+		chunk = new byte[CHUNK_SIZE];
+		previous = new byte[width * bpp];
+		current = new byte[width * bpp];
+		filtered = new byte[5][1 + width * bpp];
+		stream.write(SIGNATURE);
+		byte[] header = new byte[13];
+		putInt(header, 0, width);
+		putInt(header, 4, height);
+		header[8] = 8;
+		header[9] = (byte) (rgb ? 2 : 0);
+		writeChunk("IHDR", header, header.length);
+	}
+
+	/**
+	 * Encodes the next row of the image, whose pixels are given as gray
+	 * values resp. as RGB triples.
+	 * 
+	 * @param pixels
+	 *            the bytes of the row, <tt>width</tt> gray values resp.
+	 *            <tt>3 * width</tt> red, green and blue values
+	 * @param offset
+	 *            the offset of the row in <tt>pixels</tt>
+	 * @throws IOException
+	 *             if the row cannot be written
+	 */
+	void writeRow(byte[] pixels, int offset) throws IOException {
+		System.arraycopy(pixels, offset, current, 0, current.length);
+		writeCurrentRow();
+	}
+
+	/**
+	 * Encodes the next row of the image, whose pixels are given as RGB
+	 * integers (the alpha component is ignored).
+	 * 
+	 * @param pixels
+	 *            the pixels of the row
+	 * @param offset
+	 *            the offset of the row in <tt>pixels</tt>
+	 * @throws IOException
+	 *             if the row cannot be written
+	 */
+	void writeRow(int[] pixels, int offset) throws IOException {
+		for (int x = 0, i = 0; x < width; x++) {
+			int rgb = pixels[offset + x];
+			current[i++] = (byte) (rgb >> 16);
+			current[i++] = (byte) (rgb >> 8);
+			current[i++] = (byte) rgb;
+		}
+		writeCurrentRow();
+	}
+
+	private void writeCurrentRow() throws IOException {
+		if (rowsWritten == height) {
+			throw new IllegalStateException("all rows have been written");
+		}
+		byte[] best = filter();
+		deflater.setInput(best, 0, best.length);
+		while (!deflater.needsInput()) {
+			deflate();
+		}
+		byte[] swap = previous;
+		previous = current;
+		current = swap;
+		rowsWritten++;
+	}
+
+	/**
+	 * Writes the remaining compressed data and the end of the image. All rows
+	 * must have been written before. The stream is not closed.
+	 * 
+	 * @throws IOException
+	 *             if the data cannot be written
+	 */
+	void finish() throws IOException {
+		if (rowsWritten < height) {
+			throw new IllegalStateException("only " + rowsWritten + " of "
+					+ height + " rows have been written");
+		}
+		deflater.finish();
+		while (!deflater.finished()) {
+			deflate();
+		}
+		deflater.end();
+		if (chunkSize > 0) {
+			writeChunk("IDAT", chunk, chunkSize);
+		}
+		writeChunk("IEND", chunk, 0);
+		stream.flush();
+	}
+
+	private void deflate() throws IOException {
+		chunkSize += deflater.deflate(chunk, chunkSize, CHUNK_SIZE - chunkSize);
+		if (chunkSize == CHUNK_SIZE) {
+			writeChunk("IDAT", chunk, chunkSize);
+			chunkSize = 0;
+		}
+	}
+
+	/*
+	 * Filters the current row with all five filter types and returns the
+	 * result with the smallest sum of absolute values.
+	 */
+	private byte[] filter() {
+		int n = current.length;
+		long[] sums = new long[5];
+		for (int i = 0; i < n; i++) {
+			int x = current[i] & 0xff;
+			int a = i >= bpp ? current[i - bpp] & 0xff : 0;
+			int b = previous[i] & 0xff;
+			int c = i >= bpp ? previous[i - bpp] & 0xff : 0;
+			filtered[0][i + 1] = (byte) x;
+			filtered[1][i + 1] = (byte) (x - a);
+			filtered[2][i + 1] = (byte) (x - b);
+			filtered[3][i + 1] = (byte) (x - ((a + b) >> 1));
+			filtered[4][i + 1] = (byte) (x - paeth(a, b, c));
+			for (int f = 0; f < 5; f++) {
+				sums[f] += Math.abs(filtered[f][i + 1]);
+			}
+		}
+		int best = 0;
+		for (int f = 1; f < 5; f++) {
+			if (sums[f] < sums[best]) {
+				best = f;
+			}
+		}
+		filtered[best][0] = (byte) best;
+		return filtered[best];
+	}
+
+	private static int paeth(int a, int b, int c) {
+		int p = a + b - c;
+		int pa = Math.abs(p - a);
+		int pb = Math.abs(p - b);
+		int pc = Math.abs(p - c);
+		if (pa <= pb && pa <= pc) {
+			return a;
+		}
+		return pb <= pc ? b : c;
+	}
+
+	private void writeChunk(String type, byte[] data, int length)
+			throws IOException {
+		byte[] buffer = new byte[8];
+		putInt(buffer, 0, length);
+		for (int i = 0; i < 4; i++) {
+			buffer[4 + i] = (byte) type.charAt(i);
+		}
+		stream.write(buffer, 0, 8);
+		stream.write(data, 0, length);
+		crc.reset();
+		crc.update(buffer, 4, 4);
+		crc.update(data, 0, length);
+		putInt(buffer, 0, (int) crc.getValue());
+		stream.write(buffer, 0, 4);
+	}
+
+	private static void putInt(byte[] buffer, int offset, int value) {
+		buffer[offset] = (byte) (value >>> 24);
+		buffer[offset + 1] = (byte) (value >>> 16);
+		buffer[offset + 2] = (byte) (value >>> 8);
+		buffer[offset + 3] = (byte) value;
+	}
+}
@@ -27,13 +27,13 @@ package net.sf.sdedit.ui;
 import java.awt.Color;
 import java.awt.Cursor;
 import java.awt.Dimension;
-import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.event.MouseEvent;
+import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 import java.util.LinkedList;
 import java.util.List;
@@ -44,11 +44,11 @@ import javax.swing.event.MouseInputListener;
 
 import net.sf.sdedit.Constants;
 import net.sf.sdedit.diagram.Diagram;
+import net.sf.sdedit.diagram.DisplayList;
 import net.sf.sdedit.diagram.Lifeline;
 import net.sf.sdedit.diagram.PaintDevice;
 import net.sf.sdedit.drawable.Drawable;
 import net.sf.sdedit.drawable.ExtensibleDrawable;
-import net.sf.sdedit.drawable.Fragment;
 import net.sf.sdedit.ui.components.ZoomPane;
 import net.sf.sdedit.ui.components.Zoomable;
 
@@ -63,20 +63,19 @@ import net.sf.sdedit.ui.components.Zoomable;
  */
 public class PanelPaintDevice extends PaintDevice implements
 		MouseInputListener, Constants {
-	/**
-	 * FontMetrics of the normal font.
-	 */
-	private FontMetrics fontMetrics;
+	private static final Color PLACEHOLDER_COLOR = new Color(0xF0F0F0);
 
 	/**
-	 * FontMetrics of the bold font.
+	 * The display list in which the mouse moved most recently over an element,
+	 * or <tt>null</tt>.
 	 */
-	private FontMetrics boldFontMetrics;
+	private DisplayList lastListMovedOver;
 
 	/**
-	 * The drawable object that the mouse move most recently over.
+	 * The index of the element of the {@linkplain #lastListMovedOver} that the
+	 * mouse moved most recently over.
 	 */
-	private Drawable lastDrawableMovedOver;
+	private int lastElementMovedOver;
 
 	/**
 	 * The unscaled size of the diagram.
@@ -103,6 +102,20 @@ public class PanelPaintDevice extends PaintDevice implements
 
 	private boolean blank;
 
+	/**
+	 * Counts how often this paint device has been closed, so tiles rendered
+	 * before can be recognized as outdated (see {@linkplain TileCache}).
+	 */
+	private volatile int generation;
+
+	/**
+	 * The recording of the diagram, taken by {@linkplain #close()}, from which
+	 * the diagram is painted. As it is immutable, painting does not interfere
+	 * with a diagram that is being changed when its generation is resumed (see
+	 * {@linkplain Diagram#layout()}).
+	 */
+	private volatile DisplayList displayList;
+
 	/**
 	 * Creates a new <tt>PanelPaintDevice</tt>.
 	 * 
@@ -122,22 +135,12 @@ public class PanelPaintDevice extends PaintDevice implements
 		blank = true;
 	}
 
-	public void setDiagram(Diagram diagram) {
-		super.setDiagram(diagram);
-		Graphics preGraphics = new BufferedImage(1, 1,
-				BufferedImage.TYPE_INT_RGB).getGraphics();
-		preGraphics.setFont(getFont(false));
-		fontMetrics = preGraphics.getFontMetrics();
-		Graphics boldGraphics = new BufferedImage(1, 1,
-				BufferedImage.TYPE_INT_RGB).getGraphics();
-		boldGraphics.setFont(getFont(true));
-		boldFontMetrics = boldGraphics.getFontMetrics();
-	}
-
 	/**
 	 * This method is called when the mouse moved over the panel. If it has
-	 * exited or entered a drawable object,
-	 * {@linkplain PanelPaintDeviceListener}s are notified.
+	 * exited or entered an element of the display list,
+	 * {@linkplain PanelPaintDeviceListener}s are notified. Only the display
+	 * list is used for this, never the diagram, which may be changed by
+	 * another thread in the meantime or be gone.
 	 * 
 	 * @param e
 	 */
@@ -145,29 +148,34 @@ public class PanelPaintDevice extends PaintDevice implements
 		if (interactive) {
 			JPanel zp = panel.getZoomPane().getPanel();
 			Point point = e.getPoint();
-			if (lastDrawableMovedOver != null) {
+			DisplayList list = displayList;
+			if (lastListMovedOver != null) {
 
-				if (!lastDrawableMovedOver.contains(point)) {
+				if (lastListMovedOver != list
+						|| !list.getArea(lastElementMovedOver).contains(point)) {
 					for (PanelPaintDeviceListener listener : listeners) {
-						listener.mouseExitedDrawable(lastDrawableMovedOver);
+						listener.mouseExitedElement(lastListMovedOver,
+								lastElementMovedOver);
 						zp.setCursor(Cursor.getDefaultCursor());
 					}
 				} else {
 					return;
 				}
 			}
-			lastDrawableMovedOver = null;
-			for (Drawable drawable : this) {
-				if (!(drawable instanceof Fragment)) {
-					if (drawable.contains(point)) {
-						lastDrawableMovedOver = drawable;
-						for (PanelPaintDeviceListener listener : listeners) {
-							if (listener.mouseEnteredDrawable(drawable)) {
-								zp.setCursor(HAND_CURSOR);
-							}
+			lastListMovedOver = null;
+			if (list == null) {
+				return;
+			}
+			for (int element : list.hit(point)) {
+				if (!list.isFragment(element)) {
+					lastListMovedOver = list;
+					lastElementMovedOver = element;
+					for (PanelPaintDeviceListener listener : listeners) {
+						if (listener.mouseEnteredElement(list, element)) {
+							zp.setCursor(HAND_CURSOR);
 						}
-						return;
 					}
+					return;
 				}
 			}
 		}
@@ -175,7 +183,7 @@ public class PanelPaintDevice extends PaintDevice implements
 
 	/**
 	 * Adds a <tt>PanelPaintDeviceListener</tt> that will be notified when the
-	 * mouse enters, exits or clicks drawable objects
+	 * mouse enters, exits or clicks elements of the display list
 	 * 
 	 * @param ppdl
 	 *            a a <tt>PanelPaintDeviceListener</tt>
@@ -190,21 +198,154 @@ public class PanelPaintDevice extends PaintDevice implements
 	public void close() {
 		super.close();
 		size = new Dimension(getWidth(), getHeight());
+		displayList = createDisplayList();
+		generation++;
 	}
 
 	/**
-	 * @see net.sf.sdedit.diagram.PaintDevice#getTextHeight(boolean)
+	 * Returns the recording of the diagram taken when it was finished, or
+	 * <tt>null</tt> if the diagram is not finished or empty. Unlike the
+	 * diagram, it can safely be used on the event dispatch thread.
+	 * 
+	 * @return the recording of the diagram, or <tt>null</tt>
 	 */
-	public int getTextHeight(boolean bold) {
-		return (bold ? boldFontMetrics : fontMetrics).getHeight();
+	public DisplayList getDisplayList() {
+		return displayList;
 	}
 
 	/**
-	 * @see net.sf.sdedit.diagram.PaintDevice#getTextWidth(java.lang.String,
-	 *      boolean)
+	 * Returns the name of the lifeline the element belongs to if it is part
+	 * of a lifeline, in threaded diagrams followed by the thread of an
+	 * activation bar.
+	 * 
+	 * @see net.sf.sdedit.diagram.PaintDevice#getToolTip(net.sf.sdedit.drawable.Drawable)
 	 */
-	public int getTextWidth(String text, boolean bold) {
-		return (bold ? boldFontMetrics : fontMetrics).stringWidth(text);
+	@Override
+	protected String getToolTip(Drawable drawable) {
+		if (!(drawable instanceof ExtensibleDrawable)) {
+			return null;
+		}
+		ExtensibleDrawable ed = (ExtensibleDrawable) drawable;
+		Lifeline lifeline = ed.getLifeline();
+		String text = lifeline.toString();
+		if (lifeline.getDiagram().getConfiguration().isThreaded()
+				&& !lifeline.isAlwaysActive()
+				&& (ed instanceof net.sf.sdedit.drawable.Rectangle)) {
+			text = text + " [thread=" + lifeline.getThread() + "]";
+		}
+		return text;
+	}
+
+	/**
+	 * Removes the tiles of the diagram displayed by this paint device from the
+	 * cache of rendered tiles. This should be called when the diagram is
+	 * replaced by another one.
+	 */
+	public void discardTiles() {
+		generation++;
+		TileCache.getInstance().invalidate(this);
+	}
+
+	int getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Renders a tile of the diagram, see {@linkplain TileCache}.
+	 * 
+	 * @param scale
+	 *            the scale at which the diagram is displayed
+	 * @param column
+	 *            the column of the tile
+	 * @param row
+	 *            the row of the tile
+	 * @return the image of the tile
+	 */
+	BufferedImage renderTile(double scale, int column, int row) {
+		int tileSize = TileCache.TILE_SIZE;
+		BufferedImage image = new BufferedImage(tileSize, tileSize,
+				BufferedImage.TYPE_INT_RGB);
+		Graphics2D g2 = image.createGraphics();
+		try {
+			g2.setColor(Color.WHITE);
+			g2.fillRect(0, 0, tileSize, tileSize);
+			g2.translate(-column * tileSize, -row * tileSize);
+			g2.scale(scale, scale);
+			int left = (int) Math.floor(column * tileSize / scale);
+			int top = (int) Math.floor(row * tileSize / scale);
+			int right = (int) Math.ceil((column + 1) * tileSize / scale);
+			int bottom = (int) Math.ceil((row + 1) * tileSize / scale);
+			paintDrawables(g2, new Rectangle(left, top, right - left, bottom
+					- top));
+		} finally {
+			g2.dispose();
+		}
+		return image;
+	}
+
+	/**
+	 * Called by the {@linkplain TileCache} when a tile of this paint device
+	 * has been rendered.
+	 */
+	void tileRendered() {
+		ZoomPane zoomPane = panel.getZoomPane();
+		if (zoomPane != null) {
+			zoomPane.getPanel().repaint();
+		}
+	}
+
+	private void paintDrawables(Graphics2D g2, Rectangle clipBounds) {
+		g2.setFont(getFont(false));
+		if (antialias) {
+			g2.setRenderingHints(new RenderingHints(
+					RenderingHints.KEY_ANTIALIASING,
+					RenderingHints.VALUE_ANTIALIAS_ON));
+		}
+		g2.setColor(Color.BLACK);
+		DisplayList list = displayList;
+		if (list != null) {
+			list.paint(g2, clipBounds);
+		}
+	}
+
+	/**
+	 * Paints the tiles of the diagram that intersect the clip of the given
+	 * graphics, whose transformation consists of a scaling by the given
+	 * factor and a translation. Tiles that have not been rendered yet are
+	 * painted as a light grey placeholder. Tiles that are still waiting to be
+	 * rendered but are no longer visible are dropped first.
+	 */
+	private void paintTiles(Graphics2D g2, Rectangle clipBounds, double scale) {
+		AffineTransform transform = g2.getTransform();
+		Graphics2D device = (Graphics2D) g2.create();
+		device.setTransform(AffineTransform.getTranslateInstance(transform
+				.getTranslateX(), transform.getTranslateY()));
+		int tileSize = TileCache.TILE_SIZE;
+		int firstColumn = (int) Math.floor(clipBounds.x * scale / tileSize);
+		int lastColumn = (int) Math.floor((clipBounds.x + clipBounds.width)
+				* scale / tileSize);
+		int firstRow = (int) Math.floor(clipBounds.y * scale / tileSize);
+		int lastRow = (int) Math.floor((clipBounds.y + clipBounds.height)
+				* scale / tileSize);
+		TileCache cache = TileCache.getInstance();
+		ZoomPane zoomPane = panel.getZoomPane();
+		if (zoomPane != null) {
+			cache.retain(this, scale, zoomPane.getPanel().getVisibleRect());
+		}
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int column = firstColumn; column <= lastColumn; column++) {
+				BufferedImage tile = cache.get(this, scale, column, row);
+				if (tile != null) {
+					device.drawImage(tile, column * tileSize, row * tileSize,
+							null);
+				} else {
+					device.setColor(PLACEHOLDER_COLOR);
+					device.fillRect(column * tileSize, row * tileSize,
+							tileSize, tileSize);
+				}
+			}
+		}
+		device.dispose();
 	}
 
 	/**
@@ -226,14 +367,15 @@ public class PanelPaintDevice extends PaintDevice implements
 
 	/**
 	 * Notifies all {@linkplain PanelPaintDeviceListener}s when the mouse has
-	 * clicked a drawable object.
+	 * clicked an element of the display list.
 	 * 
 	 * @param e
 	 */
 	public void mouseClicked(MouseEvent e) {
-		if (lastDrawableMovedOver != null) {
+		if (lastListMovedOver != null) {
 			for (PanelPaintDeviceListener listener : listeners) {
-				listener.mouseClickedDrawable(lastDrawableMovedOver);
+				listener.mouseClickedElement(lastListMovedOver,
+						lastElementMovedOver);
 			}
 		}
 	}
@@ -328,20 +470,11 @@ public class PanelPaintDevice extends PaintDevice implements
 		@Override
 		public String getToolTipText(MouseEvent e) {
 			String text = null;
-			Point mousePoint = e.getPoint();
-			for (Drawable drawable : PanelPaintDevice.this) {
-				if (drawable instanceof ExtensibleDrawable) {
-					ExtensibleDrawable ed = (ExtensibleDrawable) drawable;
-					if (ed.contains(mousePoint)) {
-						Lifeline lifeline = ed.getLifeline();
-						text = lifeline.toString();
-						if (lifeline.getDiagram().getConfiguration()
-								.isThreaded()
-								&& !lifeline.isAlwaysActive()
-								&& (ed instanceof net.sf.sdedit.drawable.Rectangle)) {
-							text = text + " [thread=" + lifeline.getThread()
-									+ "]";
-						}
+			DisplayList list = displayList;
+			if (list != null) {
+				for (int element : list.hit(e.getPoint())) {
+					if (list.getToolTip(element) != null) {
+						text = list.getToolTip(element);
 					}
 				}
 			}
@@ -354,19 +487,14 @@ public class PanelPaintDevice extends PaintDevice implements
 			Rectangle clipBounds = g2.getClipBounds();
 			g2.setColor(Color.WHITE);
 			g2.fill(clipBounds);
-			blank = isEmpty();
-			if (!isEmpty()) {
-				g2.setFont(PanelPaintDevice.this.getFont(false));
-				if (antialias) {
-					g2.setRenderingHints(new RenderingHints(
-							RenderingHints.KEY_ANTIALIASING,
-							RenderingHints.VALUE_ANTIALIAS_ON));
-				}
-				g2.setColor(Color.BLACK);
-				for (Drawable drawable : PanelPaintDevice.this) {
-					if (drawable.intersects(clipBounds)) {
-						drawable.draw(g2);
-					}
+			blank = displayList == null;
+			if (!blank) {
+				AffineTransform transform = g2.getTransform();
+				if (transform.getShearX() == 0 && transform.getShearY() == 0
+						&& transform.getScaleX() == transform.getScaleY()) {
+					paintTiles(g2, clipBounds, transform.getScaleX());
+				} else {
+					paintDrawables(g2, clipBounds);
 				}
 			}
 			g2.dispose();
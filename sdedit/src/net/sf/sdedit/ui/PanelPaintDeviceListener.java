@@ -24,12 +24,14 @@
 
 package net.sf.sdedit.ui;
 
-import net.sf.sdedit.drawable.Drawable;
+import net.sf.sdedit.diagram.DisplayList;
 
 /**
  * This interface can be implemented by classes whose instances are using a
  * {@linkplain PanelPaintDevice} and that are interested in the question which
- * drawable component is currently visited by the user's mouse.
+ * drawable component is currently visited by the user's mouse. The drawable
+ * components are identified by their index in the {@linkplain DisplayList}
+ * of the diagram, which tells everything about them that is needed.
  * 
  * @author Markus Strauch
  * 
@@ -40,29 +42,38 @@ public interface PanelPaintDeviceListener
      * This method is called when the mouse entered a rectangle belonging to
      * some drawable component.
      * 
-     * @param drawable
-     *            the drawable component that has been entered by the mouse
+     * @param displayList
+     *            the display list of the diagram
+     * @param element
+     *            the index of the element of the display list that has been
+     *            entered by the mouse
      * @return true if the listener is interested in the drawable component, the
      *         PanelPaintDevice will then change the shape of the cursor
      */
-    public boolean mouseEnteredDrawable(Drawable drawable);
+    public boolean mouseEnteredElement(DisplayList displayList, int element);
 
     /**
      * This method is called when the mouse exited a rectangle belonging to some
      * drawable component.
      * 
-     * @param drawable
-     *            the drawable component that has been entered by the mouse
+     * @param displayList
+     *            the display list of the diagram
+     * @param element
+     *            the index of the element of the display list that has been
+     *            exited by the mouse
      */
-    public void mouseExitedDrawable(Drawable drawable);
+    public void mouseExitedElement(DisplayList displayList, int element);
 
     /**
      * This method is called when the mouse clicked into the rectangle belonging
      * to some drawable component.
      * 
-     * @param drawable
-     *            the drawable component that has been clicked
+     * @param displayList
+     *            the display list of the diagram
+     * @param element
+     *            the index of the element of the display list that has been
+     *            clicked
      */
-    public void mouseClickedDrawable(Drawable drawable);
+    public void mouseClickedElement(DisplayList displayList, int element);
 
 }
@@ -0,0 +1,128 @@
+// Copyright (c) 2006 - 2008, Markus Strauch.
+// All rights reserved.
+// 
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright notice, 
+// this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright notice, 
+// this list of conditions and the following disclaimer in the documentation 
+// and/or other materials provided with the distribution.
+// 
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.sf.sdedit.ui;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import net.sf.sdedit.diagram.PaintDevice;
+import net.sf.sdedit.drawable.Drawable;
+
+/**
+ * A <tt>StripPaintDevice</tt> writes a diagram as a PNG image (see
+ * {@linkplain #writeToStream(OutputStream)}) without ever allocating an image
+ * of the size of the diagram. The image is rendered into a single buffer of
+ * {@linkplain #STRIP_HEIGHT} rows, one horizontal strip after the other, and
+ * each strip is encoded as soon as it has been rendered, so the memory needed
+ * does not depend on the height of the diagram.
+ * <p>
+ * The pixels are 8-bit gray values, unless the diagram is threaded, then
+ * they are RGB triples, as the activity bars of the threads are colored. The
+ * layout is the same as with an {@linkplain ImagePaintDevice}.
+ * 
+ * @author Markus Strauch
+ * 
+ */
+public class StripPaintDevice extends PaintDevice {
+
+	/**
+	 * The height of the strips in which the image is rendered.
+	 */
+	public static final int STRIP_HEIGHT = 256;
+
+	private final static RenderingHints AALIAS = new RenderingHints(
+			RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+	public StripPaintDevice() {
+		super();
+	}
+
+	/**
+	 * Renders the diagram strip by strip and writes it as a PNG image to the
+	 * given stream, which is not closed.
+	 * 
+	 * @param stream
+	 *            the stream to write the image to
+	 * @throws IOException
+	 *             if the image cannot be written
+	 */
+	@Override
+	public void writeToStream(OutputStream stream) throws IOException {
+		int width = getWidth();
+		int height = getHeight();
+		boolean rgb = getDiagram().isThreaded();
+		BufferedImage strip = new BufferedImage(width, Math.min(STRIP_HEIGHT,
+				height), rgb ? BufferedImage.TYPE_INT_RGB
+				: BufferedImage.TYPE_BYTE_GRAY);
+		PNGWriter writer = new PNGWriter(stream, width, height, rgb);
+		for (int top = 0; top < height; top += strip.getHeight()) {
+			int rows = Math.min(strip.getHeight(), height - top);
+			renderStrip(strip, top, rows);
+			if (rgb) {
+				int[] pixels = ((DataBufferInt) strip.getRaster()
+						.getDataBuffer()).getData();
+				for (int y = 0; y < rows; y++) {
+					writer.writeRow(pixels, y * width);
+				}
+			} else {
+				byte[] pixels = ((DataBufferByte) strip.getRaster()
+						.getDataBuffer()).getData();
+				for (int y = 0; y < rows; y++) {
+					writer.writeRow(pixels, y * width);
+				}
+			}
+		}
+		writer.finish();
+	}
+
+	/*
+	 * Renders the drawable elements intersecting the strip of the diagram
+	 * that begins at the given top position into the strip buffer.
+	 */
+	private void renderStrip(BufferedImage strip, int top, int rows) {
+		Graphics2D g2d = strip.createGraphics();
+		try {
+			g2d.setRenderingHints(AALIAS);
+			g2d.setFont(getFont(false));
+			g2d.setColor(Color.WHITE);
+			g2d.fillRect(0, 0, strip.getWidth(), strip.getHeight());
+			g2d.translate(0, -top);
+			g2d.setColor(Color.BLACK);
+			for (Drawable drawable : query(new Rectangle(0, top, getWidth(),
+					rows))) {
+				drawable.draw(g2d);
+			}
+		} finally {
+			g2d.dispose();
+		}
+	}
+}
@@ -0,0 +1,336 @@
+// Copyright (c) 2006 - 2008, Markus Strauch.
+// All rights reserved.
+// 
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright notice, 
+// this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright notice, 
+// this list of conditions and the following disclaimer in the documentation 
+// and/or other materials provided with the distribution.
+// 
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.sf.sdedit.ui;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A <tt>TileCache</tt> holds images of square sections (tiles) of the diagrams
+ * displayed by {@linkplain PanelPaintDevice}s, rendered at the resolution at
+ * which they are displayed. A tile is identified by the paint device, the
+ * scale and its column and row in the grid of tiles covering the diagram.
+ * <p>
+ * Tiles that are not yet in the cache are rendered on background threads,
+ * the tiles requested most recently are rendered first. All paint devices
+ * share a single cache, the memory used by the tiles is limited by the system
+ * property <tt>sdedit.tiles.memory</tt> (in megabytes, 64 by default), and
+ * the least recently used tiles are removed when the limit is exceeded.
+ * <p>
+ * Tiles waiting to be rendered are dropped when the paint device has changed
+ * since they were requested or when they have been scrolled out of view (see
+ * {@linkplain #retain(PanelPaintDevice, double, Rectangle)}), so the work
+ * queue holds little more than the tiles that are visible.
+ * 
+ * @author Markus Strauch
+ * 
+ */
+final class TileCache {
+
+	/**
+	 * The width and height of a tile, in pixels.
+	 */
+	static final int TILE_SIZE = 256;
+
+	private static final int DEFAULT_MEMORY = 64;
+
+	private static final TileCache instance = new TileCache();
+
+	static TileCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Maps tiles onto their images, in the order of the most recent access.
+	 */
+	private final LinkedHashMap<Tile, Entry> entries;
+
+	/**
+	 * Maps the tiles that are being rendered onto the generation of the paint
+	 * device for which they are rendered.
+	 */
+	private final Map<Tile, Integer> pending;
+
+	private final ThreadPoolExecutor workers;
+
+	private final long budget;
+
+	private long used;
+
+	private long sequence;
+
+	private TileCache() {
+		entries = new LinkedHashMap<Tile, Entry>(16, 0.75F, true);
+		pending = new HashMap<Tile, Integer>();
+		budget = Integer.getInteger("sdedit.tiles.memory", DEFAULT_MEMORY)
+				* 1024L * 1024L;
+		int threads = Math.max(1, Math.min(4, Runtime.getRuntime()
+				.availableProcessors() - 1));
+		workers = new ThreadPoolExecutor(threads, threads, 0,
+				TimeUnit.MILLISECONDS, new PriorityBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "Tile-Renderer");
+						thread.setDaemon(true);
+						thread.setPriority(Thread.NORM_PRIORITY - 1);
+						return thread;
+					}
+				});
+	}
+
+	/**
+	 * Returns the image of a tile in the current state of the paint device. If
+	 * there is no such image in the cache, the tile is rendered in the
+	 * background, the paint device is notified when it is ready (see
+	 * {@linkplain PanelPaintDevice#tileRendered()}), and in the meantime an
+	 * image of the tile in an earlier state of the paint device is returned,
+	 * or <tt>null</tt> if there is none.
+	 * 
+	 * @param owner
+	 *            the paint device
+	 * @param scale
+	 *            the scale at which the diagram is displayed
+	 * @param column
+	 *            the column of the tile
+	 * @param row
+	 *            the row of the tile
+	 * @return the image of the tile, possibly outdated, or <tt>null</tt>
+	 */
+	synchronized BufferedImage get(PanelPaintDevice owner, double scale,
+			int column, int row) {
+		Tile tile = new Tile(owner, scale, column, row);
+		int generation = owner.getGeneration();
+		Entry entry = entries.get(tile);
+		if (entry != null && entry.generation == generation) {
+			return entry.image;
+		}
+		Integer requested = pending.get(tile);
+		if (requested == null || requested.intValue() != generation) {
+			pending.put(tile, generation);
+			workers.execute(new Job(tile, generation, sequence++));
+		}
+		return entry == null ? null : entry.image;
+	}
+
+	/**
+	 * Removes all tiles of the given paint device from the cache, and drops
+	 * those that are waiting to be rendered, so the cache keeps no reference
+	 * to the paint device.
+	 * 
+	 * @param owner
+	 *            a paint device
+	 */
+	synchronized void invalidate(PanelPaintDevice owner) {
+		Iterator<Map.Entry<Tile, Entry>> iterator = entries.entrySet()
+				.iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<Tile, Entry> entry = iterator.next();
+			if (entry.getKey().owner == owner) {
+				used -= entry.getValue().size();
+				iterator.remove();
+			}
+		}
+		dropJobs(owner, 0, null);
+	}
+
+	/**
+	 * Drops the tiles of the given paint device that are waiting to be
+	 * rendered unless they are displayed at the given scale and intersect the
+	 * given area, and the tiles of any paint device that has changed since
+	 * they were requested. This is called before the visible tiles are
+	 * requested, so tiles that have been scrolled out of view are not
+	 * rendered.
+	 * 
+	 * @param owner
+	 *            a paint device
+	 * @param scale
+	 *            the scale at which the diagram is displayed
+	 * @param visible
+	 *            the visible area of the diagram, in pixels at that scale
+	 */
+	synchronized void retain(PanelPaintDevice owner, double scale,
+			Rectangle visible) {
+		dropJobs(owner, scale, visible);
+	}
+
+	/*
+	 * Removes the jobs from the work queue whose tiles are outdated or belong
+	 * to the given paint device and are not at the given scale or outside the
+	 * given area (all of them if it is null).
+	 */
+	private void dropJobs(PanelPaintDevice owner, double scale,
+			Rectangle visible) {
+		Iterator<Runnable> iterator = workers.getQueue().iterator();
+		while (iterator.hasNext()) {
+			Job job = (Job) iterator.next();
+			Tile tile = job.tile;
+			boolean drop;
+			if (job.generation != tile.owner.getGeneration()) {
+				drop = true;
+			} else if (tile.owner == owner) {
+				drop = visible == null || tile.scale != scale
+						|| !visible.intersects(tile.getBounds());
+			} else {
+				drop = false;
+			}
+			if (drop) {
+				iterator.remove();
+				Integer requested = pending.get(tile);
+				if (requested != null && requested.intValue() == job.generation) {
+					pending.remove(tile);
+				}
+			}
+		}
+	}
+
+	private synchronized void put(Tile tile, int generation,
+			BufferedImage image) {
+		if (pending.get(tile) != null
+				&& pending.get(tile).intValue() == generation) {
+			pending.remove(tile);
+		}
+		if (image == null || generation != tile.owner.getGeneration()) {
+			return;
+		}
+		Entry entry = new Entry(generation, image);
+		Entry old = entries.put(tile, entry);
+		if (old != null) {
+			used -= old.size();
+		}
+		used += entry.size();
+		Iterator<Entry> iterator = entries.values().iterator();
+		while (used > budget && iterator.hasNext()) {
+			Entry eldest = iterator.next();
+			if (eldest != entry) {
+				used -= eldest.size();
+				iterator.remove();
+			}
+		}
+	}
+
+	private static final class Tile {
+
+		final PanelPaintDevice owner;
+
+		final double scale;
+
+		final int column;
+
+		final int row;
+
+		Tile(PanelPaintDevice owner, double scale, int column, int row) {
+			this.owner = owner;
+			this.scale = scale;
+			this.column = column;
+			this.row = row;
+		}
+
+		Rectangle getBounds() {
+			return new Rectangle(column * TILE_SIZE, row * TILE_SIZE,
+					TILE_SIZE, TILE_SIZE);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Tile)) {
+				return false;
+			}
+			Tile tile = (Tile) obj;
+			return tile.owner == owner && tile.scale == scale
+					&& tile.column == column && tile.row == row;
+		}
+
+		@Override
+		public int hashCode() {
+			long bits = Double.doubleToLongBits(scale);
+			int hash = System.identityHashCode(owner);
+			hash = hash * 31 + (int) (bits ^ (bits >>> 32));
+			hash = hash * 31 + column;
+			return hash * 31 + row;
+		}
+	}
+
+	private static final class Entry {
+
+		final int generation;
+
+		final BufferedImage image;
+
+		Entry(int generation, BufferedImage image) {
+			this.generation = generation;
+			this.image = image;
+		}
+
+		long size() {
+			return 4L * image.getWidth() * image.getHeight();
+		}
+	}
+
+	/**
+	 * Renders a tile. Jobs are ordered such that the most recent one is
+	 * executed first.
+	 */
+	private final class Job implements Runnable, Comparable<Job> {
+
+		private final Tile tile;
+
+		private final int generation;
+
+		private final long number;
+
+		Job(Tile tile, int generation, long number) {
+			this.tile = tile;
+			this.generation = generation;
+			this.number = number;
+		}
+
+		public int compareTo(Job job) {
+			return number > job.number ? -1 : number < job.number ? 1 : 0;
+		}
+
+		public void run() {
+			BufferedImage image = null;
+			try {
+				if (generation == tile.owner.getGeneration()) {
+					image = tile.owner.renderTile(tile.scale, tile.column,
+							tile.row);
+				}
+			} finally {
+				put(tile, generation, image);
+			}
+			if (image != null) {
+				tile.owner.tileRendered();
+			}
+		}
+	}
+}
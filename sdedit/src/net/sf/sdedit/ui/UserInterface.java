@@ -30,6 +30,7 @@ import java.net.URL;
 import javax.swing.Action;
 
 import net.sf.sdedit.config.Configuration;
+import net.sf.sdedit.diagram.CancellationToken;
 import net.sf.sdedit.diagram.Diagram;
 import net.sf.sdedit.error.DiagramError;
 import net.sf.sdedit.ui.components.buttons.Activator;
@@ -79,19 +80,46 @@ public interface UserInterface {
 
 	/**
 	 * If a regular tab is open, creates a diagram from the code currently being
-	 * displayed and returns it. Otherwise returns <tt>null</tt>.
-	 * 
+	 * displayed and returns it. Otherwise returns <tt>null</tt>. If the
+	 * rendering is cancelled via the given token, <tt>null</tt> is returned as
+	 * well, and the tab is left as it was before. The diagram is only meant
+	 * for reading its metrics and errors on the rendering thread; the tab
+	 * keeps just its {@linkplain PanelPaintDevice#getDisplayList() display
+	 * list} for displaying it.
+	 * 
+	 * @param token
+	 *            the token by which the rendering can be cancelled
 	 * @return the newly created diagram
 	 */
-	public Diagram renderDiagram();
+	public Diagram renderDiagram(CancellationToken token);
+
+	/**
+	 * If a regular tab is open, checks the code currently being displayed
+	 * without rendering a diagram (see
+	 * {@linkplain net.sf.sdedit.diagram.ValidatingPaintDevice}) and returns
+	 * the diagram that has been used for checking. Otherwise returns
+	 * <tt>null</tt>. The error found, if any, is returned by
+	 * {@linkplain #getDiagramError()} afterwards, but the diagram displayed by
+	 * {@linkplain #getPaintDevice()} remains the one rendered most recently. If
+	 * the check is cancelled via the given token, <tt>null</tt> is returned
+	 * as well, and the tab is left as it was before.
+	 * 
+	 * @param token
+	 *            the token by which the check can be cancelled
+	 * @return the diagram used for checking the code
+	 */
+	public Diagram validateDiagram(CancellationToken token);
 
 	/**
-	 * Returns the diagram rendered most recently inside the current tab, or
-	 * null, if there is not a regular tab visible.
+	 * Returns the paint device displaying the diagram rendered most recently
+	 * inside the current tab, or null, if there is not a regular tab visible
+	 * or no diagram has been rendered yet. Only its display list (see
+	 * {@linkplain PanelPaintDevice#getDisplayList()}) and its panel are to be
+	 * used, the diagram itself may already have been released.
 	 * 
-	 * @return the diagram rendered most recently
+	 * @return the paint device displaying the diagram rendered most recently
 	 */
-	public Diagram getDiagram();
+	public PanelPaintDevice getPaintDevice();
 
 	/**
 	 * Returns the first error that has occurred during the most recent
@@ -129,6 +157,20 @@ public interface UserInterface {
 	 */
 	public void appendText(String tab, String text);
 
+	/**
+	 * Switches the streaming mode of the tab identified by the first argument
+	 * on or off. While the streaming mode is on, text that is appended to the
+	 * tab is rendered by continuing the diagram generated so far, instead of
+	 * generating the whole diagram anew. When it is switched off, the diagram
+	 * is finished.
+	 * 
+	 * @param tab
+	 *            the name of the tab
+	 * @param streaming
+	 *            flag denoting if the streaming mode is to be switched on
+	 */
+	public void setStreaming(String tab, boolean streaming);
+
 	/**
 	 * Returns the code from which a diagram is to be generated or an empty
 	 * string if there is no code.
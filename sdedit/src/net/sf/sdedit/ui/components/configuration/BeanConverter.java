@@ -28,6 +28,10 @@ import java.awt.Color;
 import java.awt.Font;
 import java.beans.PropertyDescriptor;
 import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import net.sf.sdedit.util.XMLWriter;
 
 import org.w3c.dom.CDATASection;
 import org.w3c.dom.Document;
@@ -44,6 +48,18 @@ public class BeanConverter {
 		this.document = document;
 		this.bean = bean;
 	}
+
+	/**
+	 * Creates a <tt>BeanConverter</tt> that does not use a document, it can
+	 * only write the bean to an <tt>XMLWriter</tt> and set its properties
+	 * from a streaming parser.
+	 * 
+	 * @param bean
+	 *            the bean to be converted
+	 */
+	public BeanConverter (Bean<? extends DataObject> bean) {
+		this(bean, null);
+	}
 	
 	public Element createElement (String name) {
 		Element root = document.createElement(name);
@@ -61,6 +77,47 @@ public class BeanConverter {
 			}
 		}
 	}
+
+	/**
+	 * Writes the same element as {@linkplain #createElement(String)} creates,
+	 * but directly to an <tt>XMLWriter</tt>, so no document is needed.
+	 * 
+	 * @param name
+	 *            the name of the element
+	 * @param writer
+	 *            the writer to which the element is written
+	 * @throws IOException
+	 */
+	public void writeElement (String name, XMLWriter writer) throws IOException {
+		writer.startElement(name);
+		for (PropertyDescriptor property : bean.getProperties()) {
+			writeProperty(property, writer);
+		}
+		writer.endElement();
+	}
+
+	/**
+	 * Sets a property of the bean from the attributes and the text of a
+	 * property element that has been read by a streaming parser, like
+	 * {@linkplain #setValues(Element)} does for each child element.
+	 * 
+	 * @param attributes
+	 *            the attributes of the property element, mapped from their
+	 *            names to their values
+	 * @param text
+	 *            the character data inside the property element
+	 */
+	public void setValue (final Map<String, String> attributes, final String text) {
+		setValue(new PropertySource() {
+			public String getAttribute(String name) {
+				String value = attributes.get(name);
+				return value == null ? "" : value;
+			}
+			public String getText() {
+				return text;
+			}
+		});
+	}
 	
 	private Element convertProperty (PropertyDescriptor property) {
 		Element elem = document.createElement("property");
@@ -90,7 +147,43 @@ public class BeanConverter {
 		return elem;
 	}
 	
-	private void setElementValue (Element element) {
+	private void writeProperty (PropertyDescriptor property, XMLWriter writer) throws IOException {
+		writer.startElement("property");
+		writer.attribute("name", property.getName());
+		Object value = bean.getValue(property.getName());
+		if (value instanceof String) {
+			writer.cdata((String) value);
+		} else if (value instanceof Integer) {
+			writer.attribute("value", value.toString());
+		} else if (value instanceof Boolean) {
+			writer.attribute("value", value.toString());
+		} else if (value instanceof Font) {
+			Font font = (Font) value;
+			writer.attribute("family", font.getFamily());
+			writer.attribute("style", String.valueOf(font.getStyle()));
+			writer.attribute("size", String.valueOf(font.getSize()));
+		} else if (value instanceof File) {
+			writer.attribute("value", ((File) value).getAbsolutePath());
+		} else if (value instanceof Color) {
+			writer.attribute("value", "" + ((Color) value).getRGB());
+		} else {
+			throw new IllegalArgumentException ("unknown property type: " + value.getClass().getName());
+		}
+		writer.endElement();
+	}
+	
+	private void setElementValue (final Element element) {
+		setValue(new PropertySource() {
+			public String getAttribute(String name) {
+				return element.getAttribute(name);
+			}
+			public String getText() {
+				return element.getTextContent();
+			}
+		});
+	}
+
+	private void setValue (PropertySource element) {
 		String name = element.getAttribute("name");
 		PropertyDescriptor property = bean.getProperty(name);
 		if (property == null) {
@@ -99,7 +192,7 @@ public class BeanConverter {
 			Object value = null;
 			Class<?> type = property.getPropertyType();
 			if (type.equals (String.class)) {
-				value = element.getTextContent();
+				value = element.getText();
 			} else if (type.equals(Integer.TYPE)) {
 				value = parseInt(element.getAttribute("value"));				
 			} else if (type.equals(Boolean.TYPE)) {
@@ -128,6 +221,21 @@ public class BeanConverter {
 		}
 	}
 	
+	/**
+	 * Provides the attributes and the text of a property element, which may
+	 * be a DOM element or have been read by a streaming parser.
+	 */
+	private interface PropertySource {
+		
+		/**
+		 * Returns the value of an attribute, or the empty string if the
+		 * attribute is not present.
+		 */
+		String getAttribute (String name);
+		
+		String getText ();
+	}
+	
 	private static int parseInt (String string) {
 		int number = 0;
 		try {
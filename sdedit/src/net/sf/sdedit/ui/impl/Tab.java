@@ -41,8 +41,10 @@ import java.awt.event.MouseEvent;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.io.File;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
@@ -53,14 +55,18 @@ import javax.swing.JScrollPane;
 import javax.swing.JSplitPane;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
 
 import net.sf.sdedit.Constants;
 import net.sf.sdedit.config.Configuration;
 import net.sf.sdedit.config.ConfigurationManager;
+import net.sf.sdedit.diagram.CancellationToken;
+import net.sf.sdedit.diagram.Checkpoint;
 import net.sf.sdedit.diagram.Diagram;
+import net.sf.sdedit.diagram.DisplayList;
 import net.sf.sdedit.diagram.Lifeline;
-import net.sf.sdedit.drawable.Arrow;
-import net.sf.sdedit.drawable.Drawable;
+import net.sf.sdedit.diagram.ValidatingPaintDevice;
 import net.sf.sdedit.error.DiagramError;
 import net.sf.sdedit.error.FatalError;
 import net.sf.sdedit.text.TextHandler;
@@ -89,7 +95,25 @@ public class Tab extends JPanel implements Stainable, DocumentListener,
 
 	private static final long serialVersionUID = -4105088603920744983L;
 
-	private LinkedList<Diagram> diagramStack;
+	/**
+	 * The generation of a diagram takes a checkpoint every this many lines
+	 * (see {@linkplain TextHandler#setCheckpointInterval(int)}).
+	 */
+	private static final int CHECKPOINT_LINES = 50;
+
+	/**
+	 * The paint devices of the diagrams rendered, the last one is displayed.
+	 * Apart from the one of the {@linkplain #lastDiagram}, they are released
+	 * (see {@linkplain PanelPaintDevice#release()}), so only their display
+	 * lists are kept.
+	 */
+	private LinkedList<PanelPaintDevice> paintDeviceStack;
+
+	/**
+	 * The names of the lifelines of the diagram rendered most recently, for
+	 * auto-completion.
+	 */
+	private volatile List<String> lifelineNames;
 
 	private DiagramError error;
 
@@ -161,13 +185,39 @@ public class Tab extends JPanel implements Stainable, DocumentListener,
 
 	private List<PanelPaintDeviceListener> ppdListeners;
 
+	/**
+	 * The diagram rendered most recently, or <tt>null</tt>. The next rendering
+	 * restores it to its last checkpoint before the first line that has
+	 * changed and continues it from there, instead of generating a new
+	 * diagram (see {@linkplain #reuseDiagram(String, boolean)}).
+	 */
+	private Diagram lastDiagram;
+
+	/**
+	 * The paint device of the diagram that is currently displayed (only
+	 * accessed on the event dispatch thread).
+	 */
+	private PanelPaintDevice displayedPaintDevice;
+
+	/**
+	 * Flag denoting if the tab is in streaming mode, see
+	 * {@linkplain #setStreaming(boolean)}.
+	 */
+	private volatile boolean streaming;
+
+	/**
+	 * The configuration that was used for the {@linkplain #lastDiagram}.
+	 */
+	private Bean<Configuration> lastConfiguration;
+
 	Tab(UserInterfaceImpl ui, RedrawThread redrawThread, Font codeFont,
 			Bean<Configuration> configuration
 
 	) {
 		this.ui = ui;
 		this.redrawThread = redrawThread;
-		diagramStack = new LinkedList<Diagram>();
+		paintDeviceStack = new LinkedList<PanelPaintDevice>();
+		lifelineNames = Collections.emptyList();
 		textArea = new TextArea();
 		textArea.setFont(codeFont);
 		textArea.getDocument().addDocumentListener(this);
@@ -179,7 +229,8 @@ public class Tab extends JPanel implements Stainable, DocumentListener,
 		zoomPane.addMouseListener(new MouseAdapter() {
 			@Override
 			public void mousePressed(MouseEvent e) {
-				if (getDiagram() != null && e.getButton() == MouseEvent.BUTTON3) {
+				if (getPaintDevice() != null
+						&& e.getButton() == MouseEvent.BUTTON3) {
 					menu.show((Component) e.getSource(), e.getX(), e.getY());
 					e.consume();
 					return;
@@ -277,42 +328,207 @@ public class Tab extends JPanel implements Stainable, DocumentListener,
 		return error;
 	}
 
-	void renderDiagram() {
+	private PanelPaintDevice createPaintDevice() {
 		PanelPaintDevice paintDevice = new PanelPaintDevice(true);
 		for (PanelPaintDeviceListener listener : ppdListeners) {
 			paintDevice.addListener(listener);
 		}
-		TextHandler textHandler = new TextHandler(getCode());
-		Diagram diagram = new Diagram(configuration.getDataObject(),
-				textHandler, paintDevice);
+		return paintDevice;
+	}
+
+	/**
+	 * Returns the diagram rendered most recently (see
+	 * {@linkplain #lastDiagram}), ready to be resumed with the given code, or
+	 * <tt>null</tt> if it cannot be reused for the code or the current
+	 * configuration. In streaming mode, a diagram that is suspended at the end
+	 * of the code it has read is continued with the code that has been
+	 * appended. Otherwise the diagram is restored to its last checkpoint
+	 * before the first change (see {@linkplain TextHandler#rewind(String)}).
+	 * If the diagram cannot be reused, its paint device is released.
+	 * 
+	 * @param code
+	 *            the code from which the diagram is to be rendered
+	 * @param streaming
+	 *            flag denoting if the tab is in streaming mode
+	 * @return the diagram to be resumed, or <tt>null</tt>
+	 */
+	private Diagram reuseDiagram(String code, boolean streaming) {
+		Diagram diagram = lastDiagram;
+		lastDiagram = null;
+		if (diagram == null) {
+			return null;
+		}
+		if (lastConfiguration.equals(configuration)) {
+			TextHandler textHandler = (TextHandler) diagram.getDataProvider();
+			if (streaming && diagram.isSuspended()
+					&& textHandler.continueWith(code)) {
+				return diagram;
+			}
+			Checkpoint checkpoint = textHandler.rewind(code);
+			if (checkpoint != null) {
+				diagram.restore(checkpoint);
+				return diagram;
+			}
+		}
+		diagram.getPaintDevice().release();
+		return null;
+	}
+
+	/**
+	 * Switches the streaming mode of this tab on or off. The streaming mode is
+	 * meant for code that is continually appended, for instance by a
+	 * {@linkplain net.sf.sdedit.server.Receiver}. In streaming mode, the
+	 * generation of the diagram is suspended at the end of the code, and the
+	 * part generated so far is displayed (see {@linkplain Diagram#layout()}).
+	 * When more code has been appended, the rendering resumes the generation
+	 * of that diagram, so the code that has been read before is not read
+	 * again. If something above the end of the code has changed, the diagram
+	 * is restored to a checkpoint like outside streaming mode. When the
+	 * streaming mode is switched off, the diagram is rendered again in order
+	 * to finish it.
+	 * 
+	 * @param streaming
+	 *            flag denoting if the streaming mode is to be switched on
+	 */
+	void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+		if (!streaming) {
+			redrawThread.indicateChange();
+		}
+	}
+
+	/**
+	 * Renders the diagram from the current code. If the code has only changed
+	 * below one of the checkpoints of the diagram rendered before, that
+	 * diagram is restored to the checkpoint and resumed, so the lines above
+	 * are not read again (see {@linkplain #reuseDiagram(String, boolean)}).
+	 * Otherwise a new diagram is generated, taking a checkpoint every
+	 * {@linkplain #CHECKPOINT_LINES} lines. In streaming mode, the generation
+	 * is suspended at the end of the code.
+	 * <p>
+	 * If the rendering is cancelled via the given token, the diagram and the
+	 * error are discarded, so the previous diagram and error remain. The
+	 * diagram itself is kept for the next rendering, which restores it like
+	 * any other. This is also the case if it contains an error, unless the
+	 * error is a fatal one.
+	 * <p>
+	 * The paint device of the diagram is released when the diagram is not
+	 * kept, so the tab only keeps its display list. The diagram is returned
+	 * for reading its metrics and errors.
+	 * 
+	 * @param token
+	 *            the token by which the rendering can be cancelled
+	 * @return the new diagram, or <tt>null</tt> if the rendering has been
+	 *         cancelled
+	 */
+	Diagram renderDiagram(CancellationToken token) {
+		String code = getCode();
+		boolean streaming = this.streaming;
+		int index = streaming ? code.length() : -1;
+		Diagram diagram = reuseDiagram(code, streaming);
 		DiagramError newError = null;
 		try {
-			diagram.generate();
+			if (diagram != null) {
+				((TextHandler) diagram.getDataProvider())
+						.setSuspensionIndex(index);
+				diagram.setCancellationToken(token);
+				diagram.resume();
+			} else {
+				TextHandler textHandler = new TextHandler(code);
+				textHandler.setSuspensionIndex(index);
+				textHandler.setCheckpointInterval(CHECKPOINT_LINES);
+				diagram = new Diagram(configuration.getDataObject(),
+						textHandler, createPaintDevice());
+				diagram.setCancellationToken(token);
+				diagram.generate();
+			}
+			if (diagram.isSuspended()) {
+				diagram.layout();
+			}
+		} catch (CancellationException e) {
+			if (diagram != null) {
+				lastDiagram = diagram;
+				lastConfiguration = configuration.copy();
+			}
+			return null;
 		} catch (RuntimeException e) {
-			newError = new FatalError(textHandler, e); 
+			newError = new FatalError(diagram.getDataProvider(), e);
 		} catch (DiagramError e) {
 			newError = e;
 		}
-		synchronized (diagramStack) {
-			diagramStack.addLast(diagram);
+		if (!(newError instanceof FatalError)) {
+			lastDiagram = diagram;
+			lastConfiguration = configuration.copy();
+		}
+		List<String> names = new LinkedList<String>();
+		for (Lifeline lifeline : diagram.getAllLifelines()) {
+			names.add(lifeline.getName());
+		}
+		PanelPaintDevice paintDevice = (PanelPaintDevice) diagram
+				.getPaintDevice();
+		if (diagram != lastDiagram) {
+			paintDevice.release();
+		}
+		synchronized (paintDeviceStack) {
+			paintDeviceStack.addLast(paintDevice);
+			lifelineNames = names;
 			synchronized (this) {
 				error = newError;
 			}
 		}
+		return diagram;
 	}
 
-	Diagram getDiagram() {
-		synchronized (diagramStack) {
-			switch (diagramStack.size()) {
+	/**
+	 * Checks the current code without rendering a diagram (see
+	 * {@linkplain ValidatingPaintDevice}) and sets the error that has been
+	 * found, if any. The diagram that is displayed and the one kept for the
+	 * next rendering remain as they are. If the check is cancelled via the
+	 * given token, the error remains as well.
+	 * 
+	 * @param token
+	 *            the token by which the check can be cancelled
+	 * @return the diagram used for checking the code, or <tt>null</tt> if the
+	 *         check has been cancelled
+	 */
+	Diagram validateDiagram(CancellationToken token) {
+		Diagram diagram = new Diagram(configuration.getDataObject(),
+				new TextHandler(getCode()), new ValidatingPaintDevice());
+		diagram.setCancellationToken(token);
+		DiagramError newError = null;
+		try {
+			diagram.generate();
+		} catch (CancellationException e) {
+			return null;
+		} catch (RuntimeException e) {
+			newError = new FatalError(diagram.getDataProvider(), e);
+		} catch (DiagramError e) {
+			newError = e;
+		}
+		synchronized (this) {
+			error = newError;
+		}
+		return diagram;
+	}
+
+	/**
+	 * Returns the paint device of the diagram rendered most recently, or
+	 * <tt>null</tt>.
+	 * 
+	 * @return the paint device of the diagram rendered most recently
+	 */
+	PanelPaintDevice getPaintDevice() {
+		synchronized (paintDeviceStack) {
+			switch (paintDeviceStack.size()) {
 			case 0:
 				return null;
 			case 1:
-				return diagramStack.getLast();
+				return paintDeviceStack.getLast();
 			default:
-				Diagram diagram = diagramStack.getLast();
-				diagramStack.clear();
-				diagramStack.addLast(diagram);
-				return diagram;
+				PanelPaintDevice paintDevice = paintDeviceStack.getLast();
+				paintDeviceStack.clear();
+				paintDeviceStack.addLast(paintDevice);
+				return paintDevice;
 			}
 		}
 	}
@@ -392,8 +608,9 @@ public class Tab extends JPanel implements Stainable, DocumentListener,
 	 * Clears the diagram view.
 	 */
 	void clear() {
-		synchronized (diagramStack) {
-			diagramStack.clear();
+		synchronized (paintDeviceStack) {
+			paintDeviceStack.clear();
+			lifelineNames = Collections.emptyList();
 		}
 		redraw();
 	}
@@ -442,10 +659,14 @@ public class Tab extends JPanel implements Stainable, DocumentListener,
 	void redraw() {
 		invokeLater(new Runnable() {
 			public void run() {
-				Diagram diagram = getDiagram();
-				if (diagram != null) {
-					zoomPane.setViewportView(((PanelPaintDevice) diagram
-							.getPaintDevice()).getPanel());
+				PanelPaintDevice paintDevice = getPaintDevice();
+				if (displayedPaintDevice != null
+						&& displayedPaintDevice != paintDevice) {
+					displayedPaintDevice.discardTiles();
+				}
+				displayedPaintDevice = paintDevice;
+				if (paintDevice != null) {
+					zoomPane.setViewportView(paintDevice.getPanel());
 					if (ConfigurationManager.getGlobalConfiguration()
 							.isAutoScroll()
 							&& currentTimeMillis() - timeOfLastKeyChange <= 500) {
@@ -460,6 +681,19 @@ public class Tab extends JPanel implements Stainable, DocumentListener,
 		});
 	}
 
+	/**
+	 * Called when the tab has been closed. The tiles of the diagram that was
+	 * displayed are removed from the cache of rendered tiles, which is shared
+	 * by all tabs and would otherwise keep them, and the paint device, until
+	 * they are evicted.
+	 */
+	void close() {
+		if (displayedPaintDevice != null) {
+			displayedPaintDevice.discardTiles();
+			displayedPaintDevice = null;
+		}
+	}
+
 	void moveCursorToPosition(int position) {
 		textArea.requestFocusInWindow();
 		textArea.setCaretPosition(position);
@@ -514,30 +748,19 @@ public class Tab extends JPanel implements Stainable, DocumentListener,
 
 	private void scrollToCurrentDrawable() {
 		int begin = textArea.getCurrentLineBegin();
-		Diagram diagram = getDiagram();
-		if (diagram != null) {
-			PanelPaintDevice ppd = (PanelPaintDevice) diagram.getPaintDevice();
-			Drawable drawable = diagram.getDrawableForState(begin);
-			if (drawable instanceof Arrow) {
-				Arrow arrow = (Arrow) drawable;
-				Point textPosition = arrow.getTextPosition();
-				int x = textPosition != null ? textPosition.x : arrow.getLeft();
-				float xratio = 1F * x / ppd.getWidth();
-				int y = drawable.getTop();
-				float yratio = 1F * y / ppd.getHeight();
+		PanelPaintDevice ppd = getPaintDevice();
+		DisplayList displayList = ppd == null ? null : ppd.getDisplayList();
+		if (displayList != null) {
+			int element = displayList.indexOfSource(begin);
+			if (element != -1) {
+				Point anchor = displayList.getAnchor(element);
+				float xratio = 1F * anchor.x / displayList.getWidth();
+				float yratio = 1F * anchor.y / displayList.getHeight();
 				zoomPane.scrollToPosition(xratio, yratio);
 			} else {
-				if (drawable != null) {
-					int x = drawable.getLeft();
-					float xratio = 1F * x / ppd.getWidth();
-					int y = drawable.getTop();
-					float yratio = 1F * y / ppd.getHeight();
-					zoomPane.scrollToPosition(xratio, yratio);
-				} else {
-					int caret = textArea.getCaretPosition();
-					if (textArea.getText().substring(caret).trim().length() == 0) {
-						zoomPane.scrollToBottom();
-					}
+				int caret = textArea.getCaretPosition();
+				if (textArea.getText().substring(caret).trim().length() == 0) {
+					zoomPane.scrollToBottom();
 				}
 			}
 		}
@@ -545,19 +768,36 @@ public class Tab extends JPanel implements Stainable, DocumentListener,
 
 	void append(final String text) {
 		if (isEventDispatchThread()) {
-			textArea.setText(textArea.getText() + text);
+			appendToDocument(text);
 			// happens automatically via DocumentListener
 			// redrawThread.indicateChange();
 		} else {
 			invokeLater(new Runnable() {
 				public void run() {
-					textArea.setText(textArea.getText() + text);
+					appendToDocument(text);
 					// redrawThread.indicateChange();
 				}
 			});
 		}
 	}
 
+	/**
+	 * Inserts the given text at the end of the document of the text area,
+	 * without replacing the text that is already there.
+	 * 
+	 * @param text
+	 *            the text to be appended
+	 */
+	private void appendToDocument(String text) {
+		Document document = textArea.getDocument();
+		try {
+			document.insertString(document.getLength(), text, null);
+		} catch (BadLocationException e) {
+			// cannot happen, the end of a document is always a valid location
+			throw new IllegalStateException(e);
+		}
+	}
+
 	void setStatus(final String status) {
 		invokeLater(new Runnable() {
 			public void run() {
@@ -614,13 +854,9 @@ public class Tab extends JPanel implements Stainable, DocumentListener,
 	 */
 	public List<String> getSuggestions(String prefix) {
 		List<String> suggestions = new LinkedList<String>();
-		Diagram diag = getDiagram();
-		if (diag != null) {
-			for (Lifeline lifeline : diag.getAllLifelines()) {
-				String name = lifeline.getName();
-				if (name.startsWith(prefix)) {
-					suggestions.add(name);
-				}
+		for (String name : lifelineNames) {
+			if (name.startsWith(prefix)) {
+				suggestions.add(name);
 			}
 		}
 		return suggestions;
@@ -70,6 +70,7 @@ import net.sf.sdedit.Constants;
 import net.sf.sdedit.config.Configuration;
 import net.sf.sdedit.config.ConfigurationManager;
 import net.sf.sdedit.config.GlobalConfiguration;
+import net.sf.sdedit.diagram.CancellationToken;
 import net.sf.sdedit.diagram.Diagram;
 import net.sf.sdedit.editor.Actions;
 import net.sf.sdedit.error.DiagramError;
@@ -472,7 +473,11 @@ public final class UserInterfaceImpl extends JFrame implements Constants,
 
 	public boolean removeCurrentTab(boolean check) {
 		setErrorStatus(false, "", -1, -1);
+		Tab tab = currentTab();
 		boolean flag = tabbedPane.removeCurrentTab(check);
+		if (flag && tab != null) {
+			tab.close();
+		}
 		enableComponents();
 		return flag;
 	}
@@ -564,9 +569,8 @@ public final class UserInterfaceImpl extends JFrame implements Constants,
 			errorMessage("Full-screen mode is not supported\nby your graphics environment.");
 			return;
 		}
-		Diagram diag = getDiagram();
-		if (diag != null) {
-			PanelPaintDevice ppd = (PanelPaintDevice) diag.getPaintDevice();
+		PanelPaintDevice ppd = getPaintDevice();
+		if (ppd != null) {
 			setVisible(false);
 			fullScreen.display(ppd.getPanel());
 			fullScreen.getZoomPane().fitSize();
@@ -804,14 +808,27 @@ public final class UserInterfaceImpl extends JFrame implements Constants,
 	}
 
 	public void appendText(final String tabTitle, final String text) {
+		Tab tab = findTab(tabTitle);
+		if (tab != null) {
+			tab.append(text);
+		}
+	}
+
+	public void setStreaming(String tabTitle, boolean streaming) {
+		Tab tab = findTab(tabTitle);
+		if (tab != null) {
+			tab.setStreaming(streaming);
+		}
+	}
+
+	private Tab findTab(String tabTitle) {
 		for (int i = 0; i < tabbedPane.getTabCount(); i++) {
-			if (tabbedPane.getTitleAt(i).equals(tabTitle)) {
-				if (tabbedPane.getComponentAt(i) instanceof Tab) {
-					Tab tab = (Tab) tabbedPane.getComponentAt(i);
-					tab.append(text);
-				}
+			if (tabbedPane.getTitleAt(i).equals(tabTitle)
+					&& tabbedPane.getComponentAt(i) instanceof Tab) {
+				return (Tab) tabbedPane.getComponentAt(i);
 			}
 		}
+		return null;
 	}
 
 	public String getString(String question, String initialValue) {
@@ -960,9 +977,9 @@ public final class UserInterfaceImpl extends JFrame implements Constants,
 		if (tab == null) {
 			return true;
 		}
-		Diagram diagram = tab.getDiagram();
-		if (diagram != null) {
-			return ((PanelPaintDevice) diagram.getPaintDevice()).isBlank();
+		PanelPaintDevice paintDevice = tab.getPaintDevice();
+		if (paintDevice != null) {
+			return paintDevice.isBlank();
 		}
 		return true;
 	}
@@ -971,18 +988,19 @@ public final class UserInterfaceImpl extends JFrame implements Constants,
 		return currentTab() != null;
 	}
 
-	public Diagram renderDiagram() {
+	public Diagram renderDiagram(CancellationToken token) {
 		Tab tab = currentTab();
-		if (tab == null) {
-			return null;
-		}
-		tab.renderDiagram();
-		return tab.getDiagram();
+		return tab == null ? null : tab.renderDiagram(token);
+	}
+
+	public Diagram validateDiagram(CancellationToken token) {
+		Tab tab = currentTab();
+		return tab == null ? null : tab.validateDiagram(token);
 	}
 
-	public Diagram getDiagram() {
+	public PanelPaintDevice getPaintDevice() {
 		Tab tab = currentTab();
-		return tab == null ? null : tab.getDiagram();
+		return tab == null ? null : tab.getPaintDevice();
 	}
 
 	public DiagramError getDiagramError() {
@@ -79,5 +79,21 @@ public class Bijection<P,I> {
 	public P getPreImage (I image) {
 		return inverse.get(image);
 	}
+	
+	/**
+	 * Removes the given pre-image and its image from the bijection. The image
+	 * is only removed if it has not been added with another pre-image since.
+	 * 
+	 * @param preImage the pre-image
+	 */
+	public void remove (P preImage) {
+		if (!map.containsKey(preImage)) {
+			return;
+		}
+		I image = map.remove(preImage);
+		if (inverse.get(image) == preImage) {
+			inverse.remove(image);
+		}
+	}
 
 }
@@ -30,6 +30,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Reader;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -40,6 +41,9 @@ import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
@@ -66,11 +70,21 @@ public class DocUtil {
 
 	private static XPathFactory xPathFactory = XPathFactory.newInstance();
 
+	private static XMLInputFactory xmlInputFactory = XMLInputFactory
+			.newInstance();
+
 	private DocUtil() {
 		/* empty */
 	}
 
+	// the parser of the JDK reports CDATA sections as ordinary character
+	// data unless it is told otherwise
+	private static final String REPORT_CDATA = "http://java.sun.com/xml/stream/properties/report-cdata-event";
+
 	static {
+		if (xmlInputFactory.isPropertySupported(REPORT_CDATA)) {
+			xmlInputFactory.setProperty(REPORT_CDATA, Boolean.TRUE);
+		}
 		DocumentBuilderFactory factory = null;
 		try {
 			factory = DocumentBuilderFactory.newInstance();
@@ -84,9 +98,20 @@ public class DocUtil {
 		}
 	}
 
+	// XPathFactory is not thread-safe
+	private static synchronized XPath newXPath() {
+		return xPathFactory.newXPath();
+	}
+
+	// neither is XMLInputFactory
+	private static synchronized XMLStreamReader newXMLStreamReader(Reader in)
+			throws XMLStreamException {
+		return xmlInputFactory.createXMLStreamReader(in);
+	}
+
 	public static String evalXPathAsString(Document document, String expression)
 			throws XMLException {
-		XPath xpath = xPathFactory.newXPath();
+		XPath xpath = newXPath();
 		try {
 			return xpath.evaluate("/extension/description", document);
 		} catch (XPathExpressionException xee) {
@@ -113,7 +138,7 @@ public class DocUtil {
 
 	public static Node evalXPathAsNode(Document document, String expression)
 			throws XMLException {
-		XPath xpath = xPathFactory.newXPath();
+		XPath xpath = newXPath();
 		try {
 			Node result = (Node) xpath.evaluate(expression, document,
 					XPathConstants.NODE);
@@ -126,7 +151,7 @@ public class DocUtil {
 
 	public static NodeList evalXPathAsNodeList(Document document,
 			String expression) throws XMLException {
-		XPath xpath = xPathFactory.newXPath();
+		XPath xpath = newXPath();
 		try {
 			return (NodeList) xpath.evaluate(expression, document,
 					XPathConstants.NODESET);
@@ -141,7 +166,7 @@ public class DocUtil {
 	 * 
 	 * @return an empty Document
 	 */
-	public static Document newDocument() {
+	public static synchronized Document newDocument() {
 		return documentBuilder.newDocument();
 	}
 
@@ -158,8 +183,8 @@ public class DocUtil {
 	 * @throws IOException
 	 */
 
-	public static void writeDocument(Document document, String encoding,
-			OutputStream out) throws IOException, XMLException {
+	public static synchronized void writeDocument(Document document,
+			String encoding, OutputStream out) throws IOException, XMLException {
 		OutputStreamWriter writer = new OutputStreamWriter(out, encoding);
 		transformer.setOutputProperty(OutputKeys.ENCODING, encoding);
 		Source source = new DOMSource(document);
@@ -181,8 +206,8 @@ public class DocUtil {
 	 *             if the Reader cannot read
 	 * @throws XMLException
 	 */
-	public static Document readDocument(InputStream in, String encoding)
-			throws IOException, XMLException {
+	public static synchronized Document readDocument(InputStream in,
+			String encoding) throws IOException, XMLException {
 		InputStreamReader reader = new InputStreamReader(in, encoding);
 		InputSource source = new InputSource(new BufferedReader(reader));
 		Document document;
@@ -194,6 +219,52 @@ public class DocUtil {
 		return document;
 	}
 
+	/**
+	 * Reads an XML document from a <tt>Reader</tt> by passing an
+	 * <tt>XMLStreamReader</tt> to the given handler, which pulls the elements
+	 * and the character data of the document from it as they are read, so no
+	 * Document object is built. CDATA sections are reported as such.
+	 * 
+	 * @param in
+	 *            a reader reading an XML document
+	 * @param handler
+	 *            the handler that reads the document
+	 * @throws XMLException
+	 *             if the document is not well-formed or the Reader cannot
+	 *             read
+	 */
+	public static void parse(Reader in, StreamHandler handler)
+			throws XMLException {
+		try {
+			XMLStreamReader reader = newXMLStreamReader(in);
+			try {
+				handler.read(reader);
+			} finally {
+				reader.close();
+			}
+		} catch (XMLStreamException e) {
+			throw new XMLException("parse failed", e);
+		}
+	}
+
+	/**
+	 * A <tt>StreamHandler</tt> reads an XML document from an
+	 * <tt>XMLStreamReader</tt> (see {@linkplain DocUtil#parse(Reader, StreamHandler)}).
+	 */
+	public interface StreamHandler {
+
+		/**
+		 * Reads the document, pulling its events from the given reader.
+		 * 
+		 * @param reader
+		 *            the reader that is positioned at the start of the
+		 *            document
+		 * @throws XMLStreamException
+		 *             if the document is not well-formed or cannot be read
+		 */
+		public void read(XMLStreamReader reader) throws XMLStreamException;
+	}
+
 	/**
 	 * An <tt>XMLException</tt> is thrown when an XML document is not
 	 * well-formed or not valid.
@@ -82,7 +82,16 @@ public final class Grep {
         return groups;
     }
     
-    private static final String unescape (String string) {
+    /**
+     * Removes the backslashes that escape characters in a string. A single
+     * backslash at the end of the string is kept.
+     * 
+     * @param string
+     *            a string, possibly containing escaped characters
+     * @return the string without escaping backslashes, or <tt>null</tt> if
+     *         the string is <tt>null</tt>
+     */
+    public static String unescape (String string) {
     	if (string == null) {
     		return null;
     	}
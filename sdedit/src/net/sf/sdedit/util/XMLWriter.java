@@ -0,0 +1,269 @@
+// Copyright (c) 2006 - 2008, Markus Strauch.
+// All rights reserved.
+// 
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+// 
+// * Redistributions of source code must retain the above copyright notice, 
+// this list of conditions and the following disclaimer.
+// * Redistributions in binary form must reproduce the above copyright notice, 
+// this list of conditions and the following disclaimer in the documentation 
+// and/or other materials provided with the distribution.
+// 
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE 
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF 
+// THE POSSIBILITY OF SUCH DAMAGE.
+
+package net.sf.sdedit.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.util.LinkedList;
+
+/**
+ * An <tt>XMLWriter</tt> writes an XML document element by element to a
+ * <tt>Writer</tt>, without building the document in memory first. Elements
+ * containing other elements are indented, elements containing character data
+ * are not, so the character data is read back exactly as it has been written.
+ * Characters that cannot be encoded by the encoding of the document are
+ * written as character references.
+ * 
+ * @author Markus Strauch
+ */
+public class XMLWriter {
+
+	/**
+	 * The number of characters after which a CDATA section is continued in a
+	 * new one at the next line end.
+	 */
+	private static final int SECTION_LENGTH = 1 << 16;
+
+	private final Writer writer;
+
+	private final CharsetEncoder encoder;
+
+	/**
+	 * The names of the elements that have been started but not yet ended.
+	 */
+	private final LinkedList<String> open;
+
+	/**
+	 * Flag denoting if the start tag of the innermost open element has not
+	 * been closed by a '&gt;' yet, so attributes can still be added.
+	 */
+	private boolean inStartTag;
+
+	/**
+	 * Flag denoting if the innermost open element contains other elements, so
+	 * its end tag is to be written on a line of its own.
+	 */
+	private boolean nested;
+
+	/**
+	 * Creates a new <tt>XMLWriter</tt> and writes the XML declaration.
+	 * 
+	 * @param writer
+	 *            the writer to which the document is written, it must use
+	 *            the given encoding
+	 * @param encoding
+	 *            the name of the encoding of the document
+	 * @throws IOException
+	 *             if the declaration cannot be written
+	 */
+	public XMLWriter(Writer writer, String encoding) throws IOException {
+		this.writer = writer;
+		Charset charset = Charset.forName(encoding);
+		encoder = charset.newEncoder();
+		open = new LinkedList<String>();
+		writer.write("<?xml version=\"1.0\" encoding=\"" + charset.name()
+				+ "\"?>");
+	}
+
+	/**
+	 * Starts a new element inside the current one.
+	 * 
+	 * @param name
+	 *            the name of the element
+	 * @throws IOException
+	 */
+	public void startElement(String name) throws IOException {
+		closeStartTag();
+		writer.write('\n');
+		indent(open.size());
+		writer.write('<');
+		writer.write(name);
+		open.addLast(name);
+		inStartTag = true;
+		nested = false;
+	}
+
+	/**
+	 * Adds an attribute to the element that has just been started.
+	 * 
+	 * @param name
+	 *            the name of the attribute
+	 * @param value
+	 *            the value of the attribute
+	 * @throws IOException
+	 */
+	public void attribute(String name, String value) throws IOException {
+		if (!inStartTag) {
+			throw new IllegalStateException("attribute " + name
+					+ " must follow the start of an element");
+		}
+		writer.write(' ');
+		writer.write(name);
+		writer.write("=\"");
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '&':
+				writer.write("&amp;");
+				break;
+			case '<':
+				writer.write("&lt;");
+				break;
+			case '"':
+				writer.write("&quot;");
+				break;
+			case '\t':
+			case '\n':
+			case '\r':
+				writer.write("&#" + (int) c + ";");
+				break;
+			default:
+				int n = charCount(value, i);
+				if (canEncode(value, i, n)) {
+					writer.write(value, i, n);
+				} else {
+					reference(value, i);
+				}
+				i += n - 1;
+			}
+		}
+		writer.write('"');
+	}
+
+	/**
+	 * Writes the given text as a CDATA section inside the current element.
+	 * If the text contains <tt>]]&gt;</tt> or characters that cannot be
+	 * encoded, the section is interrupted there. A long text is divided into
+	 * sections at line ends, so a parser does not need to hold all of it in
+	 * a buffer.
+	 * 
+	 * @param text
+	 *            the text
+	 * @throws IOException
+	 */
+	public void cdata(String text) throws IOException {
+		closeStartTag();
+		writer.write("<![CDATA[");
+		int length = text.length();
+		int from = 0;
+		for (int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+			if (c == '>' && i >= 2 && text.charAt(i - 1) == ']'
+					&& text.charAt(i - 2) == ']') {
+				writer.write(text, from, i - from);
+				writer.write("]]><![CDATA[");
+				from = i;
+			} else if (c == '\n' && i + 1 - from >= SECTION_LENGTH) {
+				writer.write(text, from, i + 1 - from);
+				writer.write("]]><![CDATA[");
+				from = i + 1;
+			} else if (c >= 0x80) {
+				int n = charCount(text, i);
+				if (!canEncode(text, i, n)) {
+					writer.write(text, from, i - from);
+					writer.write("]]>");
+					reference(text, i);
+					writer.write("<![CDATA[");
+					from = i + n;
+				}
+				i += n - 1;
+			}
+		}
+		writer.write(text, from, length - from);
+		writer.write("]]>");
+	}
+
+	/**
+	 * Ends the innermost open element.
+	 * 
+	 * @throws IOException
+	 */
+	public void endElement() throws IOException {
+		String name = open.removeLast();
+		if (inStartTag) {
+			writer.write("/>");
+			inStartTag = false;
+		} else {
+			if (nested) {
+				writer.write('\n');
+				indent(open.size());
+			}
+			writer.write("</");
+			writer.write(name);
+			writer.write('>');
+		}
+		nested = true;
+	}
+
+	/**
+	 * Ends all open elements and flushes the underlying writer, which is not
+	 * closed.
+	 * 
+	 * @throws IOException
+	 */
+	public void finish() throws IOException {
+		while (!open.isEmpty()) {
+			endElement();
+		}
+		writer.write('\n');
+		writer.flush();
+	}
+
+	private void closeStartTag() throws IOException {
+		if (inStartTag) {
+			writer.write('>');
+			inStartTag = false;
+		}
+	}
+
+	private void indent(int level) throws IOException {
+		for (int i = 0; i < level; i++) {
+			writer.write("  ");
+		}
+	}
+
+	/*
+	 * Returns the number of chars (1 or 2, for a surrogate pair) of the
+	 * character at the given index.
+	 */
+	private static int charCount(String text, int i) {
+		return Character.charCount(Character.codePointAt(text, i));
+	}
+
+	private boolean canEncode(String text, int i, int n) {
+		char c = text.charAt(i);
+		if (c < 0x80) {
+			return true;
+		}
+		return n == 1 ? encoder.canEncode(c) : encoder.canEncode(text
+				.subSequence(i, i + n));
+	}
+
+	private void reference(String text, int i) throws IOException {
+		writer.write("&#" + Character.codePointAt(text, i) + ";");
+	}
+}